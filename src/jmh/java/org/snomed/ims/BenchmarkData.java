@@ -0,0 +1,118 @@
+package org.snomed.ims;
+
+import org.snomed.ims.domain.User;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Base64;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Realistically sized inputs for the benchmarks: users, Keycloak token claims and access tokens. Generated from a
+ * fixed seed so that every run measures the same data.
+ */
+public final class BenchmarkData {
+	private static final List<String> REALM_ROLES = List.of("offline_access", "uma_authorization", "default-roles-snomed", "ims-users");
+	private static final List<String> CLIENT_ROLES = List.of("browser", "authoring", "author", "reviewer", "project-lead",
+			"release-manager", "admin", "translation-admin", "mlds-admin", "snowstorm-admin", "rf2-release", "validation");
+
+	private BenchmarkData() {
+	}
+
+	public static User user(int i) {
+		User user = new User("user" + i, "First" + i, "Last" + i, "user" + i + "@example.org", "en",
+				List.of("ROLE_ims-users", "ROLE_browser", "ROLE_author", "ROLE_reviewer"));
+		user.setId("3f1c2d4e-5b6a-4c7d-8e9f-" + String.format("%012d", i));
+		user.setDisplayName("First" + i + " Last" + i);
+		user.setActive(true);
+		user.setClientAccess(List.of("snomed-browser", "authoring-services", "account"));
+		user.setTokenExpiry(1_900_000_000_000L);
+		return user;
+	}
+
+	public static List<User> users(int count) {
+		List<User> users = new ArrayList<>(count);
+		for (int i = 0; i < count; i++) {
+			users.add(user(i));
+		}
+		return users;
+	}
+
+	/**
+	 * Claims of an active token as returned by Keycloak introspection, with realm roles and roles on several clients.
+	 */
+	public static Map<String, Object> introspectionClaims(int clients) {
+		Map<String, Object> resourceAccess = new LinkedHashMap<>();
+		for (int i = 0; i < clients; i++) {
+			resourceAccess.put("client-" + i, Map.of("roles", CLIENT_ROLES.subList(0, 1 + i % CLIENT_ROLES.size())));
+		}
+
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("active", true);
+		claims.put("exp", 1_900_000_000);
+		claims.put("iat", 1_899_999_700);
+		claims.put("jti", "0b6c4f1e-2d7a-4e8b-9c1d-3f5a6b7c8d9e");
+		claims.put("iss", "https://keycloak.example.org/realms/snomed");
+		claims.put("sub", "3f1c2d4e-5b6a-4c7d-8e9f-000000000001");
+		claims.put("typ", "Bearer");
+		claims.put("azp", "snomed-browser");
+		claims.put("scope", "openid profile email");
+		claims.put("email_verified", true);
+		claims.put("preferred_username", "user1");
+		claims.put("given_name", "First1");
+		claims.put("family_name", "Last1");
+		claims.put("email", "user1@example.org");
+		claims.put("realm_access", Map.of("roles", REALM_ROLES));
+		claims.put("resource_access", resourceAccess);
+		return claims;
+	}
+
+	/**
+	 * A signed Keycloak access token of about 1.5 kilobytes: its claims compress well, its RS256 signature does not.
+	 */
+	public static String accessToken() {
+		String header = "{\"alg\":\"RS256\",\"typ\":\"JWT\",\"kid\":\"Xk3pQ0m9s8Vw2yZr4tB6nD1fH5jL7cA0eG2iK4oM6qS\"}";
+		StringBuilder payload = new StringBuilder("{\"exp\":1900000000,\"iat\":1899999700,\"auth_time\":1899999690,"
+				+ "\"jti\":\"0b6c4f1e-2d7a-4e8b-9c1d-3f5a6b7c8d9e\",\"iss\":\"https://keycloak.example.org/realms/snomed\","
+				+ "\"aud\":[\"authoring-services\",\"snowstorm\",\"account\"],\"sub\":\"3f1c2d4e-5b6a-4c7d-8e9f-000000000001\","
+				+ "\"typ\":\"Bearer\",\"azp\":\"snomed-browser\",\"session_state\":\"7d9e1f2a-3b4c-5d6e-7f80-91a2b3c4d5e6\","
+				+ "\"realm_access\":{\"roles\":[\"offline_access\",\"uma_authorization\",\"default-roles-snomed\",\"ims-users\"]},"
+				+ "\"resource_access\":{");
+		for (int i = 0; i < 6; i++) {
+			payload.append(i > 0 ? "," : "").append("\"client-").append(i).append("\":{\"roles\":[\"browser\",\"author\",\"reviewer\"]}");
+		}
+		payload.append("},\"scope\":\"openid profile email\",\"email_verified\":true,\"name\":\"First1 Last1\","
+				+ "\"preferred_username\":\"user1\",\"given_name\":\"First1\",\"family_name\":\"Last1\",\"email\":\"user1@example.org\"}");
+
+		byte[] signature = new byte[256];
+		new Random(42).nextBytes(signature);
+
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return encoder.encodeToString(header.getBytes(StandardCharsets.UTF_8)) + "."
+				+ encoder.encodeToString(payload.toString().getBytes(StandardCharsets.UTF_8)) + "."
+				+ encoder.encodeToString(signature);
+	}
+
+	/**
+	 * Write users and user-groups files for the property file identity provider to a new temporary directory. User i
+	 * logs in as user{i} with password password{i}.
+	 */
+	public static Path propertyFileDirectory(int users) throws IOException {
+		Path directory = Files.createTempDirectory("ims-benchmark");
+		StringBuilder passwords = new StringBuilder();
+		StringBuilder groups = new StringBuilder();
+		for (int i = 0; i < users; i++) {
+			passwords.append("user").append(i).append("=password").append(i).append('\n');
+			groups.append("user").append(i).append("=ims-users,browser,author\n");
+		}
+		Files.writeString(directory.resolve("users.txt"), passwords);
+		Files.writeString(directory.resolve("user-groups.txt"), groups);
+		return directory;
+	}
+}
@@ -0,0 +1,43 @@
+package org.snomed.ims.domain;
+
+import com.fasterxml.jackson.core.JsonProcessingException;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.ims.BenchmarkData;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Serialization of users through {@link UserView}, for a single account and for a page of group members.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class UserViewBenchmark {
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private User user;
+	private List<User> members;
+
+	@Param({"100", "1000"})
+	private int memberCount;
+
+	@Setup
+	public void setUp() {
+		user = BenchmarkData.user(1);
+		members = BenchmarkData.users(memberCount);
+	}
+
+	@Benchmark
+	public byte[] account() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(user);
+	}
+
+	@Benchmark
+	public byte[] groupMembers() throws JsonProcessingException {
+		return objectMapper.writeValueAsBytes(members);
+	}
+}
@@ -0,0 +1,88 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.openjdk.jmh.annotations.*;
+import org.snomed.ims.BenchmarkData;
+import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.config.CacheConfig;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.springframework.cache.Cache;
+import org.springframework.cache.jcache.JCacheCacheManager;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The account cache as configured in ehcache.xml, reached through the Spring cache abstraction: raw gets and puts, and
+ * a token lookup served from the cache by {@link UserService}. The disk tier is left out.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(4)
+@Fork(1)
+public class AccountCacheBenchmark {
+	private static final int USERS = 1000;
+
+	private javax.cache.CacheManager jCacheManager;
+	private Cache accountCache;
+	private PropertyFileIdentityProvider identityProvider;
+	private UserService userService;
+	private String[] tokens;
+	private TokenKey[] keys;
+	private User[] users;
+
+	@Setup
+	public void setUp() throws Exception {
+		// In memory only, so runs do not read entries left on disk by the last one
+		jCacheManager = CacheConfig.createCacheManager(getClass().getResource("/ehcache.xml"), Duration.ofSeconds(900),
+				new CacheConfig.AccountCacheSize(10_000, 64, 0), null);
+		JCacheCacheManager cacheManager = new JCacheCacheManager(jCacheManager);
+		cacheManager.afterPropertiesSet();
+		accountCache = cacheManager.getCache(UserService.ACCOUNT_CACHE);
+
+		ApplicationProperties applicationProperties = new ApplicationProperties();
+		applicationProperties.setAccountCacheFreshSeconds(300);
+		applicationProperties.setAccountCacheMaxStaleSeconds(600);
+		applicationProperties.setAccountCacheRefreshThreads(1);
+		identityProvider = new PropertyFileIdentityProvider(BenchmarkData.propertyFileDirectory(USERS).toString());
+		userService = new UserService(identityProvider, cacheManager, applicationProperties, new SimpleMeterRegistry(), new LocalInvalidationBus());
+
+		tokens = new String[USERS];
+		keys = new TokenKey[USERS];
+		users = new User[USERS];
+		for (int i = 0; i < USERS; i++) {
+			tokens[i] = identityProvider.authenticate("user" + i, "password" + i);
+			keys[i] = TokenKey.of(tokens[i]);
+			// Resolves and caches the user
+			users[i] = userService.getUserByToken(tokens[i]);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		identityProvider.close();
+		jCacheManager.close();
+	}
+
+	@Benchmark
+	public User get() {
+		return accountCache.get(keys[ThreadLocalRandom.current().nextInt(USERS)], User.class);
+	}
+
+	@Benchmark
+	public void put() {
+		int i = ThreadLocalRandom.current().nextInt(USERS);
+		accountCache.put(keys[i], users[i]);
+	}
+
+	@Benchmark
+	public User getUserByToken() {
+		return userService.getUserByToken(tokens[ThreadLocalRandom.current().nextInt(USERS)]);
+	}
+}
@@ -0,0 +1,37 @@
+package org.snomed.ims.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.ims.BenchmarkData;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compression of access tokens into cookies, and back, done on every login and every cookie-authenticated request.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class CompressedTokenServiceBenchmark {
+	private final CompressedTokenService compressedTokenService = new CompressedTokenService();
+	private String accessToken;
+	private String compressedToken;
+
+	@Setup
+	public void setUp() {
+		accessToken = BenchmarkData.accessToken();
+		compressedToken = compressedTokenService.compressToken(accessToken);
+	}
+
+	@Benchmark
+	public String compressToken() {
+		return compressedTokenService.compressToken(accessToken);
+	}
+
+	@Benchmark
+	public String decompressToken() {
+		return compressedTokenService.decompressToken(compressedToken);
+	}
+}
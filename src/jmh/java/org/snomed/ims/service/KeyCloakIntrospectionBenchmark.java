@@ -0,0 +1,62 @@
+package org.snomed.ims.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.ims.BenchmarkData;
+import org.snomed.ims.domain.User;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Building a user from Keycloak introspection claims, including extracting roles and client access, with the call to
+ * Keycloak itself stubbed out so that only the service's own work is measured.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class KeyCloakIntrospectionBenchmark {
+	private KeyCloakIdentityProvider identityProvider;
+
+	@Param({"3", "20"})
+	private int clients;
+
+	@Setup
+	public void setUp() {
+		RestTemplate restTemplate = new IntrospectionStub(BenchmarkData.introspectionClaims(clients));
+		// Introspection never walks groups, so the traversal runs on the calling thread
+		identityProvider = new KeyCloakIdentityProvider(restTemplate, "http://localhost:8080", "snomed", "ims", "secret", "ims-admin", "secret",
+				new BoundedFanOut(Runnable::run, 1, Duration.ofSeconds(30)));
+	}
+
+	@Benchmark
+	public User getUserByToken() {
+		return identityProvider.getUserByToken("token");
+	}
+
+	/**
+	 * Answers every call with the same introspection claims.
+	 */
+	private static class IntrospectionStub extends RestTemplate {
+		private final Map<String, Object> claims;
+
+		IntrospectionStub(Map<String, Object> claims) {
+			this.claims = claims;
+		}
+
+		@Override
+		@SuppressWarnings("unchecked")
+		public <T> ResponseEntity<T> exchange(String url, HttpMethod method, HttpEntity<?> requestEntity, ParameterizedTypeReference<T> responseType,
+				Object... uriVariables) {
+			return ResponseEntity.ok((T) claims);
+		}
+	}
+}
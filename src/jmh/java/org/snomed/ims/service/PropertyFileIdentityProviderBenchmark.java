@@ -0,0 +1,51 @@
+package org.snomed.ims.service;
+
+import org.openjdk.jmh.annotations.*;
+import org.snomed.ims.BenchmarkData;
+import org.snomed.ims.domain.User;
+
+import java.io.IOException;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Logins and token lookups against the property file directory from many threads at once, as under load.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Threads(8)
+@Fork(1)
+public class PropertyFileIdentityProviderBenchmark {
+	private static final int USERS = 1000;
+
+	private PropertyFileIdentityProvider identityProvider;
+	private String[] tokens;
+
+	@Setup
+	public void setUp() throws IOException {
+		identityProvider = new PropertyFileIdentityProvider(BenchmarkData.propertyFileDirectory(USERS).toString());
+		tokens = new String[USERS];
+		for (int i = 0; i < USERS; i++) {
+			tokens[i] = identityProvider.authenticate("user" + i, "password" + i);
+		}
+	}
+
+	@TearDown
+	public void tearDown() throws IOException {
+		identityProvider.close();
+	}
+
+	@Benchmark
+	public String authenticate() {
+		int i = ThreadLocalRandom.current().nextInt(USERS);
+		return identityProvider.authenticate("user" + i, "password" + i);
+	}
+
+	@Benchmark
+	public User getUserByToken() {
+		return identityProvider.getUserByToken(tokens[ThreadLocalRandom.current().nextInt(USERS)]);
+	}
+}
@@ -0,0 +1,105 @@
+package org.snomed.ims.loadtest;
+
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.LockSupport;
+import java.util.function.Supplier;
+
+/**
+ * Sends requests at a fixed arrival rate, whether or not earlier ones have been answered, and measures each from the
+ * moment it was due to be sent. A service that falls behind therefore shows the full queueing delay its callers would
+ * see, rather than hiding it by slowing the load down.
+ */
+public final class LoadDriver implements AutoCloseable {
+	private static final Duration DRAIN_TIMEOUT = Duration.ofSeconds(60);
+
+	/**
+	 * Outcome of one run.
+	 *
+	 * @param sent       Requests sent.
+	 * @param succeeded  Requests answered with a 2xx status.
+	 * @param failed     Requests answered with another status, failed or left unanswered.
+	 * @param throughput Successful responses per second of the run.
+	 * @param p50Millis  Median latency, of every answered request.
+	 * @param p99Millis  99th percentile latency.
+	 * @param p999Millis 99.9th percentile latency.
+	 * @param maxMillis  Highest latency.
+	 */
+	public record Result(int sent, int succeeded, int failed, double throughput, double p50Millis, double p99Millis, double p999Millis,
+			double maxMillis) {
+	}
+
+	private final ExecutorService executor = Executors.newCachedThreadPool(runnable -> {
+		Thread thread = new Thread(runnable, "load-driver");
+		thread.setDaemon(true);
+		return thread;
+	});
+	private final HttpClient httpClient = HttpClient.newBuilder()
+			.version(HttpClient.Version.HTTP_1_1)
+			.connectTimeout(Duration.ofSeconds(5))
+			.executor(executor)
+			.build();
+
+	/**
+	 * Send requests at rate per second for duration.
+	 *
+	 * @param requests Builds each request in turn.
+	 */
+	public Result run(Supplier<HttpRequest> requests, int rate, Duration duration) throws InterruptedException {
+		int count = (int) Math.max(1, rate * duration.toMillis() / 1000);
+		long interval = TimeUnit.SECONDS.toNanos(1) / rate;
+		long[] latencies = new long[count];
+		AtomicInteger answered = new AtomicInteger();
+		AtomicInteger succeeded = new AtomicInteger();
+		CountDownLatch done = new CountDownLatch(count);
+
+		long start = System.nanoTime();
+		for (int i = 0; i < count; i++) {
+			long due = start + i * interval;
+			long wait = due - System.nanoTime();
+			if (wait > 0) {
+				LockSupport.parkNanos(wait);
+			}
+			httpClient.sendAsync(requests.get(), HttpResponse.BodyHandlers.discarding()).whenComplete((response, error) -> {
+				long latency = System.nanoTime() - due;
+				latencies[answered.getAndIncrement()] = latency;
+				if (error == null && response.statusCode() / 100 == 2) {
+					succeeded.incrementAndGet();
+				}
+				done.countDown();
+			});
+		}
+		done.await(DRAIN_TIMEOUT.toMillis(), TimeUnit.MILLISECONDS);
+		long elapsed = System.nanoTime() - start;
+
+		// Requests still outstanding are failures; their latency is unknown so they are left out of the percentiles
+		int measured = answered.get();
+		long[] sorted = Arrays.copyOf(latencies, Math.min(measured, count));
+		Arrays.sort(sorted);
+		int ok = succeeded.get();
+		return new Result(count, ok, count - ok, ok / (elapsed / 1e9),
+				percentile(sorted, 0.5), percentile(sorted, 0.99), percentile(sorted, 0.999),
+				sorted.length > 0 ? sorted[sorted.length - 1] / 1e6 : Double.NaN);
+	}
+
+	private static double percentile(long[] sorted, double quantile) {
+		if (sorted.length == 0) {
+			return Double.NaN;
+		}
+		int index = (int) Math.ceil(quantile * sorted.length) - 1;
+		return sorted[Math.max(0, Math.min(sorted.length - 1, index))] / 1e6;
+	}
+
+	@Override
+	public void close() {
+		executor.shutdownNow();
+	}
+}
@@ -0,0 +1,213 @@
+package org.snomed.ims.loadtest;
+
+import org.snomed.ims.Application;
+import org.snomed.ims.service.IdentityProvider;
+import org.snomed.ims.service.UserService;
+import org.springframework.boot.builder.SpringApplicationBuilder;
+import org.springframework.boot.web.context.WebServerApplicationContext;
+import org.springframework.context.ConfigurableApplicationContext;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpRequest;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.Supplier;
+
+/**
+ * Load test of IMS against an {@link UpstreamStandIn}, repeated for realms of increasing size to show how throughput
+ * and latency scale with the directory behind the service.
+ * <p>
+ * For each realm size, a realm is generated, the stand-in started with it, and IMS started in this JVM against the
+ * stand-in. /authenticate, /account and /group/user are then each driven at a fixed arrival rate, first to warm up and
+ * then to measure. Results are printed as a table and appended to a CSV file for plotting.
+ * <p>
+ * Run with: mvn -Ploadtest verify -DskipTests, passing options as -Dloadtest.args="name=value ...":
+ * <ul>
+ *     <li>provider: KEYCLOAK or CROWD; default KEYCLOAK.</li>
+ *     <li>sizes: realms to test, as users:groups:clients separated by commas; default 1000:100:5,10000:1000:20,100000:5000:50.</li>
+ *     <li>authenticate-rate, account-rate, group-rate: requests per second to each endpoint; default 50, 500 and 20.</li>
+ *     <li>warmup, duration: seconds to warm up and to measure each endpoint; default 10 and 30.</li>
+ *     <li>latency-ms, jitter-ms: time each upstream call takes, and random time added; default 5 and 5.</li>
+ *     <li>directory-seconds: Keycloak realm directory refresh interval, or 0 to walk the realm on each search; default 300.</li>
+ *     <li>token-pool: distinct logged in users /account is called for; default 5000.</li>
+ *     <li>seed: seed of the realm generator; default 1.</li>
+ *     <li>output: CSV file results are appended to; default target/loadtest/results.csv.</li>
+ * </ul>
+ * The service, the stand-in and the driver share one machine, so absolute numbers understate a real deployment; the
+ * shape of the curve as the realm grows is what to compare between builds.
+ */
+public final class LoadTest {
+	private static final String CONTEXT_PATH = "/identity-management-service";
+	private static final String COOKIE_NAME = "ims-loadtest";
+	private static final String ADMIN_USER = "loadtest";
+	private static final String ADMIN_PASSWORD = "loadtest";
+	private static final String CSV_HEADER = "provider,users,groups,clients,depth,endpoint,rate,sent,succeeded,failed,throughput,p50_ms,p99_ms,p999_ms,max_ms,upstream_calls_per_request";
+
+	private record Size(int users, int groups, int clients) {
+		static Size parse(String value) {
+			String[] parts = value.trim().split(":");
+			if (parts.length != 3) {
+				throw new IllegalArgumentException("Realm size '" + value + "' is not users:groups:clients.");
+			}
+			return new Size(Integer.parseInt(parts[0]), Integer.parseInt(parts[1]), Integer.parseInt(parts[2]));
+		}
+	}
+
+	private record Scenario(String endpoint, int rate, Supplier<HttpRequest> requests) {
+	}
+
+	private final Map<String, String> options;
+	private final String provider;
+	private final Duration warmup;
+	private final Duration duration;
+	private final Path output;
+	private final PrintStream out = System.out;
+
+	private LoadTest(Map<String, String> options) {
+		this.options = options;
+		this.provider = option("provider", "KEYCLOAK").toUpperCase(Locale.ROOT);
+		this.warmup = Duration.ofSeconds(intOption("warmup", 10));
+		this.duration = Duration.ofSeconds(intOption("duration", 30));
+		this.output = Path.of(option("output", "target/loadtest/results.csv"));
+	}
+
+	public static void main(String[] args) throws Exception {
+		Map<String, String> options = new HashMap<>();
+		for (String arg : args) {
+			int equals = arg.indexOf('=');
+			if (equals <= 0) {
+				throw new IllegalArgumentException("Option '" + arg + "' is not name=value.");
+			}
+			options.put(arg.substring(0, equals), arg.substring(equals + 1));
+		}
+		new LoadTest(options).run();
+	}
+
+	private void run() throws Exception {
+		Files.createDirectories(output.toAbsolutePath().getParent());
+		if (!Files.exists(output)) {
+			Files.writeString(output, CSV_HEADER + System.lineSeparator());
+		}
+
+		out.printf("%-8s %8s %7s %7s %5s  %-14s %6s %7s %7s %9s %9s %9s %9s %9s %9s%n", "provider", "users", "groups", "clients", "depth",
+				"endpoint", "rate", "sent", "failed", "req/s", "p50 ms", "p99 ms", "p999 ms", "max ms", "upstream");
+		for (String size : option("sizes", "1000:100:5,10000:1000:20,100000:5000:50").split(",")) {
+			run(Size.parse(size));
+		}
+		out.println("Results appended to " + output.toAbsolutePath());
+	}
+
+	private void run(Size size) throws Exception {
+		Realm realm = RealmGenerator.generate(size.users(), size.groups(), size.clients(), intOption("seed", 1));
+		Duration latency = Duration.ofMillis(intOption("latency-ms", 5));
+		Duration jitter = Duration.ofMillis(intOption("jitter-ms", 5));
+
+		try (UpstreamStandIn standIn = new UpstreamStandIn(realm, latency, jitter);
+			 LoadDriver driver = new LoadDriver()) {
+			ConfigurableApplicationContext context = startService(standIn);
+			try {
+				// Every size starts from empty caches and, if held, a loaded realm directory
+				context.getBean(UserService.class).clearAll();
+				context.getBean(IdentityProvider.class).refreshDirectory();
+
+				String baseUrl = "http://localhost:" + ((WebServerApplicationContext) context).getWebServer().getPort() + CONTEXT_PATH;
+				for (Scenario scenario : scenarios(baseUrl, realm, standIn)) {
+					driver.run(scenario.requests(), scenario.rate(), warmup);
+					long callsBefore = standIn.calls();
+					LoadDriver.Result result = driver.run(scenario.requests(), scenario.rate(), duration);
+					double upstreamCalls = (standIn.calls() - callsBefore) / (double) result.sent();
+					report(size, realm.depth(), scenario, result, upstreamCalls);
+				}
+			} finally {
+				context.close();
+			}
+		}
+	}
+
+	private ConfigurableApplicationContext startService(UpstreamStandIn standIn) {
+		Map<String, Object> properties = new HashMap<>();
+		properties.put("server.port", 0);
+		properties.put("identity-provider", provider);
+		properties.put("keycloak.server.url", standIn.baseUrl());
+		properties.put("keycloak.realms", Realm.NAME);
+		properties.put("keycloak.client-id", UpstreamStandIn.CLIENT_ID);
+		properties.put("keycloak.client-secret", UpstreamStandIn.CLIENT_SECRET);
+		properties.put("keycloak.admin.client-id", UpstreamStandIn.ADMIN_CLIENT_ID);
+		properties.put("keycloak.admin.client-secret", UpstreamStandIn.ADMIN_CLIENT_SECRET);
+		properties.put("keycloak.realm-directory.refresh-seconds", intOption("directory-seconds", 300));
+		properties.put("crowd.api.url", standIn.crowdUrl());
+		properties.put("cookie.name", COOKIE_NAME);
+		properties.put("spring.security.user.name", ADMIN_USER);
+		properties.put("spring.security.user.password", ADMIN_PASSWORD);
+
+		// As command line arguments, so that they take precedence over application.properties
+		String[] args = properties.entrySet().stream().map(property -> "--" + property.getKey() + "=" + property.getValue()).toArray(String[]::new);
+		return new SpringApplicationBuilder(Application.class)
+				.profiles("loadtest")
+				.run(args);
+	}
+
+	private List<Scenario> scenarios(String baseUrl, Realm realm, UpstreamStandIn standIn) {
+		List<Realm.User> users = realm.users();
+		List<Realm.Group> groups = realm.groups();
+
+		List<String> tokens = new ArrayList<>();
+		int tokenPool = Math.min(users.size(), intOption("token-pool", 5000));
+		for (int i = 0; i < tokenPool; i++) {
+			tokens.add(standIn.issueToken(users.get(i)));
+		}
+		String basicAuth = "Basic " + Base64.getEncoder().encodeToString((ADMIN_USER + ":" + ADMIN_PASSWORD).getBytes(StandardCharsets.UTF_8));
+
+		Supplier<HttpRequest> authenticate = () -> {
+			Realm.User user = users.get(ThreadLocalRandom.current().nextInt(users.size()));
+			String body = "{\"login\":\"" + user.username() + "\",\"password\":\"" + user.password() + "\"}";
+			return HttpRequest.newBuilder(URI.create(baseUrl + "/authenticate"))
+					.header("Content-Type", "application/json")
+					.POST(HttpRequest.BodyPublishers.ofString(body))
+					.build();
+		};
+		Supplier<HttpRequest> account = () -> HttpRequest.newBuilder(URI.create(baseUrl + "/account"))
+				.header("Cookie", COOKIE_NAME + "=" + tokens.get(ThreadLocalRandom.current().nextInt(tokens.size())))
+				.GET()
+				.build();
+		Supplier<HttpRequest> groupUsers = () -> {
+			Realm.Group group = groups.get(ThreadLocalRandom.current().nextInt(groups.size()));
+			String query = "?groupname=" + URLEncoder.encode(group.name(), StandardCharsets.UTF_8) + "&maxResults=50&startAt=0";
+			return HttpRequest.newBuilder(URI.create(baseUrl + "/group/user" + query))
+					.header("Authorization", basicAuth)
+					.GET()
+					.build();
+		};
+
+		return List.of(
+				new Scenario("/authenticate", intOption("authenticate-rate", 50), authenticate),
+				new Scenario("/account", intOption("account-rate", 500), account),
+				new Scenario("/group/user", intOption("group-rate", 20), groupUsers));
+	}
+
+	private void report(Size size, int depth, Scenario scenario, LoadDriver.Result result, double upstreamCalls) throws IOException {
+		out.printf(Locale.ROOT, "%-8s %8d %7d %7d %5d  %-14s %6d %7d %7d %9.1f %9.2f %9.2f %9.2f %9.2f %9.2f%n", provider, size.users(), size.groups(),
+				size.clients(), depth, scenario.endpoint(), scenario.rate(), result.sent(), result.failed(), result.throughput(), result.p50Millis(),
+				result.p99Millis(), result.p999Millis(), result.maxMillis(), upstreamCalls);
+		String line = String.format(Locale.ROOT, "%s,%d,%d,%d,%d,%s,%d,%d,%d,%d,%.1f,%.3f,%.3f,%.3f,%.3f,%.2f", provider, size.users(), size.groups(),
+				size.clients(), depth, scenario.endpoint(), scenario.rate(), result.sent(), result.succeeded(), result.failed(), result.throughput(),
+				result.p50Millis(), result.p99Millis(), result.p999Millis(), result.maxMillis(), upstreamCalls);
+		Files.writeString(output, line + System.lineSeparator(), StandardOpenOption.APPEND);
+	}
+
+	private String option(String name, String defaultValue) {
+		return options.getOrDefault(name, defaultValue);
+	}
+
+	private int intOption(String name, int defaultValue) {
+		return Integer.parseInt(option(name, String.valueOf(defaultValue)));
+	}
+}
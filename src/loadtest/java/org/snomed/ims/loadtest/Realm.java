@@ -0,0 +1,141 @@
+package org.snomed.ims.loadtest;
+
+import java.util.*;
+
+/**
+ * A synthetic identity realm: users, a tree of groups holding role mappings, and clients defining roles. Served by
+ * {@link UpstreamStandIn} as both a Keycloak realm and a Crowd directory.
+ */
+public final class Realm {
+	public static final String NAME = "loadtest";
+
+	public record User(String id, String username, String password, String firstName, String lastName, String email, List<String> groupIds) {
+	}
+
+	public record Group(String id, String name, String parentId, List<String> childIds, List<String> memberIds,
+			List<String> realmRoles, Map<String, List<String>> clientRoles) {
+	}
+
+	public record Client(String id, String clientId, List<String> roles) {
+	}
+
+	private final List<User> users;
+	private final List<Group> groups;
+	private final List<Client> clients;
+	private final List<String> realmRoles;
+	private final Map<String, User> usersById = new HashMap<>();
+	private final Map<String, User> usersByUsername = new HashMap<>();
+	private final Map<String, Group> groupsById = new HashMap<>();
+	private final Map<String, Group> groupsByName = new HashMap<>();
+	private final Map<String, Client> clientsById = new HashMap<>();
+	private final Map<String, Client> clientsByClientId = new HashMap<>();
+
+	Realm(List<User> users, List<Group> groups, List<Client> clients, List<String> realmRoles) {
+		this.users = List.copyOf(users);
+		this.groups = List.copyOf(groups);
+		this.clients = List.copyOf(clients);
+		this.realmRoles = List.copyOf(realmRoles);
+		for (User user : users) {
+			usersById.put(user.id(), user);
+			usersByUsername.put(user.username(), user);
+		}
+		for (Group group : groups) {
+			groupsById.put(group.id(), group);
+			groupsByName.put(group.name(), group);
+		}
+		for (Client client : clients) {
+			clientsById.put(client.id(), client);
+			clientsByClientId.put(client.clientId(), client);
+		}
+	}
+
+	public List<User> users() {
+		return users;
+	}
+
+	public List<Group> groups() {
+		return groups;
+	}
+
+	public List<Group> topLevelGroups() {
+		return groups.stream().filter(group -> group.parentId() == null).toList();
+	}
+
+	public List<Client> clients() {
+		return clients;
+	}
+
+	public List<String> realmRoles() {
+		return realmRoles;
+	}
+
+	public User user(String id) {
+		return usersById.get(id);
+	}
+
+	public User userByUsername(String username) {
+		return usersByUsername.get(username);
+	}
+
+	public Group group(String id) {
+		return groupsById.get(id);
+	}
+
+	public Group groupByName(String name) {
+		return groupsByName.get(name);
+	}
+
+	public Client client(String id) {
+		return clientsById.get(id);
+	}
+
+	public Client clientByClientId(String clientId) {
+		return clientsByClientId.get(clientId);
+	}
+
+	/**
+	 * @return The group and its ancestors, nearest first.
+	 */
+	public List<Group> lineage(Group group) {
+		List<Group> lineage = new ArrayList<>();
+		for (Group current = group; current != null; current = current.parentId() != null ? groupsById.get(current.parentId()) : null) {
+			lineage.add(current);
+		}
+		return lineage;
+	}
+
+	/**
+	 * Realm roles a user holds through their groups, as Keycloak resolves them: a group's roles apply to the members of
+	 * its subgroups too.
+	 */
+	public Set<String> effectiveRealmRoles(User user) {
+		Set<String> roles = new TreeSet<>();
+		for (String groupId : user.groupIds()) {
+			for (Group group : lineage(groupsById.get(groupId))) {
+				roles.addAll(group.realmRoles());
+			}
+		}
+		return roles;
+	}
+
+	/**
+	 * Client roles a user holds through their groups, by client id.
+	 */
+	public Map<String, Set<String>> effectiveClientRoles(User user) {
+		Map<String, Set<String>> roles = new TreeMap<>();
+		for (String groupId : user.groupIds()) {
+			for (Group group : lineage(groupsById.get(groupId))) {
+				group.clientRoles().forEach((clientId, names) -> roles.computeIfAbsent(clientId, id -> new TreeSet<>()).addAll(names));
+			}
+		}
+		return roles;
+	}
+
+	public int depth() {
+		int depth = 0;
+		for (Group group : groups) {
+			depth = Math.max(depth, lineage(group).size());
+		}
+		return depth;
+	}
+}
@@ -0,0 +1,98 @@
+package org.snomed.ims.loadtest;
+
+import java.util.*;
+
+/**
+ * Generates realms of a given size from a seed, so that every run at a size loads the same realm.
+ * <p>
+ * Groups form a random recursive tree: each group after the first few hangs under a randomly chosen earlier group,
+ * giving a depth that grows with the logarithm of the group count. Membership is skewed the way real directories are:
+ * a few groups hold most users, most hold a handful.
+ */
+public final class RealmGenerator {
+	private static final int TOP_LEVEL_GROUPS = 5;
+	private static final double TOP_LEVEL_PROBABILITY = 0.05;
+	private static final int MAX_GROUPS_PER_USER = 3;
+	private static final List<String> CLIENT_ROLES = List.of("browser", "author", "reviewer", "project-lead", "release-manager",
+			"admin", "translation-admin", "validation");
+	private static final List<String> REALM_ROLES = List.of("offline_access", "uma_authorization", "default-roles-loadtest",
+			"ims-users", "ims-admins");
+
+	private RealmGenerator() {
+	}
+
+	/**
+	 * @param userCount   Number of users.
+	 * @param groupCount  Number of groups, nested under each other.
+	 * @param clientCount Number of clients, each defining every client role.
+	 * @param seed        Seed of the generator.
+	 */
+	public static Realm generate(int userCount, int groupCount, int clientCount, long seed) {
+		if (userCount <= 0 || groupCount <= 0 || clientCount <= 0) {
+			throw new IllegalArgumentException("A realm needs at least one user, group and client.");
+		}
+		Random random = new Random(seed);
+
+		List<Realm.Client> clients = new ArrayList<>(clientCount);
+		for (int i = 0; i < clientCount; i++) {
+			clients.add(new Realm.Client(id(random), "client-" + i, CLIENT_ROLES));
+		}
+
+		// Build the tree mutably, then freeze it
+		List<String> groupIds = new ArrayList<>(groupCount);
+		List<String> parentIds = new ArrayList<>(groupCount);
+		Map<String, List<String>> childIds = new HashMap<>();
+		Map<String, List<String>> memberIds = new HashMap<>();
+		for (int i = 0; i < groupCount; i++) {
+			String id = id(random);
+			String parentId = i < TOP_LEVEL_GROUPS || random.nextDouble() < TOP_LEVEL_PROBABILITY ? null : groupIds.get(random.nextInt(i));
+			groupIds.add(id);
+			parentIds.add(parentId);
+			childIds.put(id, new ArrayList<>());
+			memberIds.put(id, new ArrayList<>());
+			if (parentId != null) {
+				childIds.get(parentId).add(id);
+			}
+		}
+
+		List<Realm.User> users = new ArrayList<>(userCount);
+		for (int i = 0; i < userCount; i++) {
+			String id = id(random);
+			Set<String> userGroups = new LinkedHashSet<>();
+			int memberships = 1 + random.nextInt(MAX_GROUPS_PER_USER);
+			for (int m = 0; m < memberships; m++) {
+				// Squaring a uniform value favours the low indexes, so early groups grow large
+				double skewed = random.nextDouble();
+				userGroups.add(groupIds.get((int) (skewed * skewed * groupCount)));
+			}
+			for (String groupId : userGroups) {
+				memberIds.get(groupId).add(id);
+			}
+			String username = String.format("user%06d", i);
+			users.add(new Realm.User(id, username, "password-" + i, "First" + i, "Last" + i, username + "@loadtest.example",
+					List.copyOf(userGroups)));
+		}
+
+		List<Realm.Group> groups = new ArrayList<>(groupCount);
+		for (int i = 0; i < groupCount; i++) {
+			String id = groupIds.get(i);
+			Map<String, List<String>> clientRoles = new TreeMap<>();
+			int mappings = 1 + random.nextInt(3);
+			for (int m = 0; m < mappings; m++) {
+				Realm.Client client = clients.get(random.nextInt(clientCount));
+				clientRoles.computeIfAbsent(client.clientId(), clientId -> new ArrayList<>())
+						.add(CLIENT_ROLES.get(random.nextInt(CLIENT_ROLES.size())));
+			}
+			clientRoles.replaceAll((clientId, roles) -> List.copyOf(new TreeSet<>(roles)));
+			List<String> realmRoles = parentIds.get(i) == null ? List.of("ims-users") : List.of();
+			groups.add(new Realm.Group(id, "group-" + i, parentIds.get(i), List.copyOf(childIds.get(id)), List.copyOf(memberIds.get(id)),
+					realmRoles, Collections.unmodifiableMap(clientRoles)));
+		}
+
+		return new Realm(users, groups, clients, REALM_ROLES);
+	}
+
+	private static String id(Random random) {
+		return new UUID(random.nextLong(), random.nextLong()).toString();
+	}
+}
@@ -0,0 +1,596 @@
+package org.snomed.ims.loadtest;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Embedded HTTP server standing in for Keycloak and Crowd, serving a {@link Realm}. It answers the calls the Keycloak
+ * and Crowd identity providers make: token grants, introspection, revocation and certs; the admin API's users, groups,
+ * members, clients, roles, role mappings and composites; and Crowd's sessions, users and group membership. Every call
+ * waits out a configurable latency first, standing in for the network and the real server's work.
+ * <p>
+ * Tokens are opaque, so IMS must validate them by introspection rather than locally. Group searches return matching
+ * groups nested under their top-level ancestors, as Keycloak does, so that a search for a nested group falls back to
+ * walking the tree unless the realm directory is in use.
+ */
+public final class UpstreamStandIn implements Closeable {
+	public static final String CROWD_PATH = "/crowd/rest/usermanagement/1";
+	public static final String CLIENT_ID = "ims";
+	public static final String CLIENT_SECRET = "ims-secret";
+	public static final String ADMIN_CLIENT_ID = "ims-admin";
+	public static final String ADMIN_CLIENT_SECRET = "ims-admin-secret";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UpstreamStandIn.class);
+	private static final String OPENID_CONNECT = "/realms/" + Realm.NAME + "/protocol/openid-connect/";
+	private static final String ADMIN = "/admin/realms/" + Realm.NAME + "/";
+	private static final long TOKEN_LIFETIME_SECONDS = 3600;
+	private static final int DEFAULT_PAGE_SIZE = 100;
+
+	private record Reply(int status, Object body) {
+	}
+
+	static {
+		// The JDK server writes headers and body separately; without this, Nagle's algorithm holds the body back until
+		// the client's delayed acknowledgement, adding tens of milliseconds to every call. Read once, when the server
+		// implementation is first loaded.
+		System.setProperty("sun.net.httpserver.nodelay", "true");
+	}
+
+	private static final Reply NOT_FOUND = new Reply(404, Map.of("error", "not_found"));
+	private static final Reply NO_CONTENT = new Reply(204, null);
+
+	private final Realm realm;
+	private final long latencyNanos;
+	private final long jitterNanos;
+	private final HttpServer server;
+	private final ExecutorService executor;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final Map<String, Realm.User> usersByToken = new ConcurrentHashMap<>();
+	private final LongAdder calls = new LongAdder();
+
+	/**
+	 * Start serving realm on a free loopback port.
+	 *
+	 * @param realm   Realm to serve.
+	 * @param latency Time every call takes at least.
+	 * @param jitter  Further time, chosen uniformly up to this, added to each call.
+	 */
+	public UpstreamStandIn(Realm realm, Duration latency, Duration jitter) throws IOException {
+		this.realm = realm;
+		this.latencyNanos = latency.toNanos();
+		this.jitterNanos = jitter.toNanos();
+		AtomicInteger threads = new AtomicInteger();
+		this.executor = Executors.newCachedThreadPool(runnable -> {
+			Thread thread = new Thread(runnable, "upstream-stand-in-" + threads.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 1024);
+		this.server.setExecutor(executor);
+		this.server.createContext("/", this::handle);
+		this.server.start();
+		LOGGER.info("Upstream stand-in serving {} users, {} groups and {} clients at {}", realm.users().size(), realm.groups().size(),
+				realm.clients().size(), baseUrl());
+	}
+
+	/**
+	 * @return Keycloak server URL.
+	 */
+	public String baseUrl() {
+		return "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+	}
+
+	/**
+	 * @return Crowd REST API URL.
+	 */
+	public String crowdUrl() {
+		return baseUrl() + CROWD_PATH;
+	}
+
+	/**
+	 * Log a user in without a call, as if they had authenticated earlier.
+	 */
+	public String issueToken(Realm.User user) {
+		String token = "lt-" + UUID.randomUUID();
+		usersByToken.put(token, user);
+		return token;
+	}
+
+	/**
+	 * @return Number of calls served so far.
+	 */
+	public long calls() {
+		return calls.sum();
+	}
+
+	@Override
+	public void close() {
+		server.stop(0);
+		executor.shutdownNow();
+	}
+
+	private void handle(HttpExchange exchange) throws IOException {
+		long start = System.nanoTime();
+		calls.increment();
+		try (exchange) {
+			String path = exchange.getRequestURI().getRawPath();
+			Map<String, String> query = parameters(exchange.getRequestURI().getRawQuery());
+			byte[] body = exchange.getRequestBody().readAllBytes();
+
+			Reply reply;
+			try {
+				reply = route(exchange.getRequestMethod(), path, query, body);
+			} catch (RuntimeException e) {
+				LOGGER.error("Stand-in failed to answer {} {}", exchange.getRequestMethod(), path, e);
+				reply = new Reply(500, Map.of("error", String.valueOf(e.getMessage())));
+			}
+
+			awaitLatency(start);
+			if (reply.body() == null) {
+				exchange.sendResponseHeaders(reply.status(), -1);
+				return;
+			}
+			byte[] json = objectMapper.writeValueAsBytes(reply.body());
+			exchange.getResponseHeaders().set("Content-Type", "application/json");
+			exchange.sendResponseHeaders(reply.status(), json.length);
+			try (OutputStream out = exchange.getResponseBody()) {
+				out.write(json);
+			}
+		}
+	}
+
+	private void awaitLatency(long start) {
+		long target = latencyNanos + (jitterNanos > 0 ? ThreadLocalRandom.current().nextLong(jitterNanos) : 0);
+		long remaining = target - (System.nanoTime() - start);
+		if (remaining > 0) {
+			try {
+				TimeUnit.NANOSECONDS.sleep(remaining);
+			} catch (InterruptedException e) {
+				Thread.currentThread().interrupt();
+			}
+		}
+	}
+
+	private Reply route(String method, String path, Map<String, String> query, byte[] body) throws IOException {
+		if (path.startsWith(CROWD_PATH)) {
+			return crowd(method, path.substring(CROWD_PATH.length()), query, body);
+		}
+		if (path.startsWith(OPENID_CONNECT)) {
+			return openIdConnect(path.substring(OPENID_CONNECT.length()), parameters(new String(body, StandardCharsets.UTF_8)));
+		}
+		if (path.startsWith(ADMIN)) {
+			List<String> segments = new ArrayList<>();
+			for (String segment : path.substring(ADMIN.length()).split("/")) {
+				segments.add(URLDecoder.decode(segment, StandardCharsets.UTF_8));
+			}
+			return admin(segments, query);
+		}
+		return NOT_FOUND;
+	}
+
+	// Keycloak OpenID Connect endpoints
+
+	private Reply openIdConnect(String endpoint, Map<String, String> form) {
+		switch (endpoint) {
+			case "token":
+				return token(form);
+			case "token/introspect":
+				Realm.User user = usersByToken.get(form.getOrDefault("token", ""));
+				return new Reply(200, user != null ? claims(user) : Map.of("active", false));
+			case "revoke":
+				usersByToken.remove(form.getOrDefault("token", ""));
+				return new Reply(200, Map.of());
+			case "certs":
+				return new Reply(200, Map.of("keys", List.of()));
+			default:
+				return NOT_FOUND;
+		}
+	}
+
+	private Reply token(Map<String, String> form) {
+		String grantType = form.getOrDefault("grant_type", "");
+		if (grantType.equals("client_credentials")) {
+			if (!ADMIN_CLIENT_ID.equals(form.get("client_id")) || !ADMIN_CLIENT_SECRET.equals(form.get("client_secret"))) {
+				return new Reply(401, Map.of("error", "unauthorized_client"));
+			}
+			return new Reply(200, tokenResponse("admin-" + UUID.randomUUID()));
+		}
+		if (grantType.equals("password")) {
+			Realm.User user = realm.userByUsername(form.getOrDefault("username", ""));
+			if (user == null || !user.password().equals(form.get("password"))) {
+				return new Reply(401, Map.of("error", "invalid_grant"));
+			}
+			return new Reply(200, tokenResponse(issueToken(user)));
+		}
+		return new Reply(400, Map.of("error", "unsupported_grant_type"));
+	}
+
+	private static Map<String, Object> tokenResponse(String accessToken) {
+		return Map.of("access_token", accessToken, "expires_in", TOKEN_LIFETIME_SECONDS, "token_type", "Bearer", "scope", "openid profile email");
+	}
+
+	private Map<String, Object> claims(Realm.User user) {
+		Map<String, Object> resourceAccess = new LinkedHashMap<>();
+		realm.effectiveClientRoles(user).forEach((clientId, roles) -> resourceAccess.put(clientId, Map.of("roles", List.copyOf(roles))));
+
+		Map<String, Object> claims = new LinkedHashMap<>();
+		claims.put("active", true);
+		claims.put("exp", System.currentTimeMillis() / 1000 + TOKEN_LIFETIME_SECONDS);
+		claims.put("iss", baseUrl() + "/realms/" + Realm.NAME);
+		claims.put("sub", user.id());
+		claims.put("typ", "Bearer");
+		claims.put("azp", CLIENT_ID);
+		claims.put("preferred_username", user.username());
+		claims.put("given_name", user.firstName());
+		claims.put("family_name", user.lastName());
+		claims.put("email", user.email());
+		claims.put("realm_access", Map.of("roles", List.copyOf(realm.effectiveRealmRoles(user))));
+		claims.put("resource_access", resourceAccess);
+		return claims;
+	}
+
+	// Keycloak admin API
+
+	private Reply admin(List<String> segments, Map<String, String> query) {
+		String collection = segments.get(0);
+		int size = segments.size();
+		switch (collection) {
+			case "users":
+				if (size == 1) {
+					Realm.User user = realm.userByUsername(query.getOrDefault("username", query.getOrDefault("search", "")));
+					return ok(user != null ? List.of(userRepresentation(user)) : List.of());
+				}
+				if (size == 3 && segments.get(2).equals("role-mappings")) {
+					Realm.User user = realm.user(segments.get(1));
+					return user != null ? ok(userRoleMappings(user)) : NOT_FOUND;
+				}
+				return NOT_FOUND;
+			case "groups":
+				return groups(segments, query);
+			case "clients":
+				return clients(segments, query);
+			case "roles":
+				return realmRoles(segments, query);
+			case "roles-by-id":
+				// Generated roles are never composite, and groups hold them by name
+				return ok(List.of());
+			default:
+				return NOT_FOUND;
+		}
+	}
+
+	private Reply groups(List<String> segments, Map<String, String> query) {
+		boolean full = "false".equals(query.get("briefRepresentation"));
+		if (segments.size() == 1) {
+			if (query.containsKey("search")) {
+				return ok(searchGroups(query.get("search")));
+			}
+			return ok(page(realm.topLevelGroups(), query).stream().map(group -> groupRepresentation(group, full)).toList());
+		}
+
+		Realm.Group group = realm.group(segments.get(1));
+		if (group == null) {
+			return NOT_FOUND;
+		}
+		String relation = segments.size() > 2 ? segments.get(2) : "";
+		switch (relation) {
+			case "":
+				return ok(groupRepresentation(group, true));
+			case "children":
+				return ok(page(group.childIds().stream().map(realm::group).toList(), query).stream().map(child -> groupRepresentation(child, full)).toList());
+			case "members":
+				return ok(page(group.memberIds().stream().map(realm::user).toList(), query).stream().map(this::userRepresentation).toList());
+			case "role-mappings":
+				if (segments.size() == 5 && segments.get(3).equals("clients")) {
+					Realm.Client client = realm.client(segments.get(4));
+					List<String> roles = client != null ? group.clientRoles().getOrDefault(client.clientId(), List.of()) : List.of();
+					return ok(roles.stream().map(role -> roleRepresentation(client, role)).toList());
+				}
+				return ok(groupRoleMappings(group));
+			default:
+				return NOT_FOUND;
+		}
+	}
+
+	/**
+	 * Groups whose names contain the search, nested in their top-level ancestors with only the branches leading to
+	 * matches, as Keycloak returns them.
+	 */
+	private List<Map<String, Object>> searchGroups(String search) {
+		String term = search.toLowerCase(Locale.ROOT);
+		Map<String, Map<String, Object>> nodes = new LinkedHashMap<>();
+		List<Map<String, Object>> roots = new ArrayList<>();
+		for (Realm.Group match : realm.groups()) {
+			if (!match.name().toLowerCase(Locale.ROOT).contains(term)) {
+				continue;
+			}
+			List<Realm.Group> lineage = realm.lineage(match);
+			Map<String, Object> child = null;
+			for (Realm.Group group : lineage) {
+				Map<String, Object> node = nodes.get(group.id());
+				boolean created = node == null;
+				if (created) {
+					node = groupRepresentation(group, false);
+					node.put("subGroups", new ArrayList<>());
+					nodes.put(group.id(), node);
+				}
+				if (child != null) {
+					subGroups(node).add(child);
+				}
+				if (!created) {
+					break;
+				}
+				if (group.parentId() == null) {
+					roots.add(node);
+				}
+				child = node;
+			}
+		}
+		return roots;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> subGroups(Map<String, Object> node) {
+		return (List<Map<String, Object>>) node.get("subGroups");
+	}
+
+	private Reply clients(List<String> segments, Map<String, String> query) {
+		if (segments.size() == 1) {
+			if (query.containsKey("clientId")) {
+				Realm.Client client = realm.clientByClientId(query.get("clientId"));
+				return ok(client != null ? List.of(clientRepresentation(client)) : List.of());
+			}
+			return ok(page(realm.clients(), query).stream().map(this::clientRepresentation).toList());
+		}
+
+		Realm.Client client = realm.client(segments.get(1));
+		if (client == null || segments.size() < 3 || !segments.get(2).equals("roles")) {
+			return NOT_FOUND;
+		}
+		if (segments.size() == 3) {
+			return ok(matchingRoles(client.roles(), query).stream().map(role -> roleRepresentation(client, role)).toList());
+		}
+		String role = segments.get(3);
+		String relation = segments.size() > 4 ? segments.get(4) : "";
+		switch (relation) {
+			case "":
+				return client.roles().contains(role) ? ok(roleRepresentation(client, role)) : NOT_FOUND;
+			case "groups":
+				List<Realm.Group> groups = realm.groups().stream()
+						.filter(group -> group.clientRoles().getOrDefault(client.clientId(), List.of()).contains(role))
+						.toList();
+				return ok(page(groups, query).stream().map(group -> groupRepresentation(group, false)).toList());
+			case "users":
+			case "composites":
+				// Roles are only granted through groups, and none are composite
+				return ok(List.of());
+			default:
+				return NOT_FOUND;
+		}
+	}
+
+	private Reply realmRoles(List<String> segments, Map<String, String> query) {
+		if (segments.size() == 1) {
+			return ok(page(matchingRoles(realm.realmRoles(), query), query).stream().map(role -> roleRepresentation(null, role)).toList());
+		}
+		String role = segments.get(1);
+		if (!realm.realmRoles().contains(role)) {
+			return NOT_FOUND;
+		}
+		String relation = segments.size() > 2 ? segments.get(2) : "";
+		switch (relation) {
+			case "":
+				return ok(roleRepresentation(null, role));
+			case "groups":
+				List<Realm.Group> groups = realm.groups().stream().filter(group -> group.realmRoles().contains(role)).toList();
+				return ok(page(groups, query).stream().map(group -> groupRepresentation(group, false)).toList());
+			case "users":
+			case "composites":
+				return ok(List.of());
+			default:
+				return NOT_FOUND;
+		}
+	}
+
+	private static List<String> matchingRoles(List<String> roles, Map<String, String> query) {
+		String search = query.get("search");
+		if (search == null) {
+			return roles;
+		}
+		boolean exact = "true".equals(query.get("exact"));
+		return roles.stream().filter(role -> exact ? role.equals(search) : role.contains(search)).toList();
+	}
+
+	private Map<String, Object> userRepresentation(Realm.User user) {
+		Map<String, Object> representation = new LinkedHashMap<>();
+		representation.put("id", user.id());
+		representation.put("username", user.username());
+		representation.put("firstName", user.firstName());
+		representation.put("lastName", user.lastName());
+		representation.put("email", user.email());
+		representation.put("emailVerified", true);
+		representation.put("enabled", true);
+		return representation;
+	}
+
+	private Map<String, Object> groupRepresentation(Realm.Group group, boolean full) {
+		List<Realm.Group> lineage = realm.lineage(group);
+		StringBuilder path = new StringBuilder();
+		for (int i = lineage.size() - 1; i >= 0; i--) {
+			path.append('/').append(lineage.get(i).name());
+		}
+
+		Map<String, Object> representation = new LinkedHashMap<>();
+		representation.put("id", group.id());
+		representation.put("name", group.name());
+		representation.put("path", path.toString());
+		if (group.parentId() != null) {
+			representation.put("parentId", group.parentId());
+		}
+		representation.put("subGroupCount", group.childIds().size());
+		representation.put("subGroups", List.of());
+		if (full) {
+			representation.put("attributes", Map.of());
+			representation.put("realmRoles", group.realmRoles());
+			representation.put("clientRoles", group.clientRoles());
+		}
+		return representation;
+	}
+
+	private Map<String, Object> clientRepresentation(Realm.Client client) {
+		return Map.of("id", client.id(), "clientId", client.clientId(), "enabled", true);
+	}
+
+	private static Map<String, Object> roleRepresentation(Realm.Client client, String role) {
+		String owner = client != null ? client.id() : Realm.NAME;
+		Map<String, Object> representation = new LinkedHashMap<>();
+		representation.put("id", UUID.nameUUIDFromBytes((owner + "/" + role).getBytes(StandardCharsets.UTF_8)).toString());
+		representation.put("name", role);
+		representation.put("composite", false);
+		representation.put("clientRole", client != null);
+		representation.put("containerId", owner);
+		return representation;
+	}
+
+	private Map<String, Object> groupRoleMappings(Realm.Group group) {
+		Map<String, Object> clientMappings = new LinkedHashMap<>();
+		group.clientRoles().forEach((clientId, roles) -> {
+			Realm.Client client = realm.clientByClientId(clientId);
+			clientMappings.put(clientId, Map.of("id", client.id(), "client", clientId,
+					"mappings", roles.stream().map(role -> roleRepresentation(client, role)).toList()));
+		});
+		return Map.of("realmMappings", group.realmRoles().stream().map(role -> roleRepresentation(null, role)).toList(),
+				"clientMappings", clientMappings);
+	}
+
+	private Map<String, Object> userRoleMappings(Realm.User user) {
+		Map<String, Object> clientMappings = new LinkedHashMap<>();
+		realm.effectiveClientRoles(user).forEach((clientId, roles) -> {
+			Realm.Client client = realm.clientByClientId(clientId);
+			clientMappings.put(clientId, Map.of("id", client.id(), "client", clientId,
+					"mappings", roles.stream().map(role -> roleRepresentation(client, role)).toList()));
+		});
+		return Map.of("realmMappings", realm.effectiveRealmRoles(user).stream().map(role -> roleRepresentation(null, role)).toList(),
+				"clientMappings", clientMappings);
+	}
+
+	// Crowd REST API
+
+	private Reply crowd(String method, String path, Map<String, String> query, byte[] body) throws IOException {
+		if (path.equals("/session") && method.equals("POST")) {
+			Map<?, ?> credentials = objectMapper.readValue(body, Map.class);
+			Realm.User user = realm.userByUsername(String.valueOf(credentials.get("username")));
+			if (user == null || !user.password().equals(credentials.get("password"))) {
+				return new Reply(400, Map.of("reason", "INVALID_USER_AUTHENTICATION", "message", "Account is invalid"));
+			}
+			return new Reply(201, session(issueToken(user), user));
+		}
+		if (path.startsWith("/session/")) {
+			String token = URLDecoder.decode(path.substring("/session/".length()), StandardCharsets.UTF_8);
+			if (method.equals("DELETE")) {
+				usersByToken.remove(token);
+				return NO_CONTENT;
+			}
+			Realm.User user = usersByToken.get(token);
+			return user != null ? ok(session(token, user)) : NOT_FOUND;
+		}
+		if (path.equals("/user")) {
+			Realm.User user = realm.userByUsername(query.getOrDefault("username", ""));
+			return user != null ? ok(crowdUser(user)) : NOT_FOUND;
+		}
+		if (path.equals("/user/group/direct")) {
+			Realm.User user = realm.userByUsername(query.getOrDefault("username", ""));
+			if (user == null) {
+				return NOT_FOUND;
+			}
+			return ok(Map.of("expand", "group", "groups", user.groupIds().stream().map(id -> Map.of("name", realm.group(id).name())).toList()));
+		}
+		if (path.equals("/group/user/direct")) {
+			Realm.Group group = realm.groupByName(query.getOrDefault("groupname", ""));
+			if (group == null) {
+				return NOT_FOUND;
+			}
+			int startIndex = Integer.parseInt(query.getOrDefault("start-index", "0"));
+			int maxResults = Integer.parseInt(query.getOrDefault("max-results", "1000"));
+			String username = query.get("username");
+			List<Map<String, Object>> users = group.memberIds().stream()
+					.map(realm::user)
+					.filter(user -> username == null || user.username().contains(username))
+					.skip(startIndex)
+					.limit(maxResults)
+					.map(this::crowdUser)
+					.toList();
+			return ok(Map.of("expand", "user", "users", users));
+		}
+		return NOT_FOUND;
+	}
+
+	private Map<String, Object> session(String token, Realm.User user) {
+		long now = System.currentTimeMillis();
+		return Map.of("token", token, "user", crowdUser(user), "created-date", now, "expiry-date", now + TOKEN_LIFETIME_SECONDS * 1000);
+	}
+
+	private Map<String, Object> crowdUser(Realm.User user) {
+		Map<String, Object> representation = new LinkedHashMap<>();
+		representation.put("name", user.username());
+		representation.put("key", user.id());
+		representation.put("active", true);
+		representation.put("first-name", user.firstName());
+		representation.put("last-name", user.lastName());
+		representation.put("display-name", user.firstName() + " " + user.lastName());
+		representation.put("email", user.email());
+		return representation;
+	}
+
+	// Helpers
+
+	private static Reply ok(Object body) {
+		return new Reply(200, body);
+	}
+
+	/**
+	 * Page a listing by its first and max parameters, as the admin API does; max of -1 returns everything.
+	 */
+	private static <T> List<T> page(List<T> items, Map<String, String> query) {
+		int first = Integer.parseInt(query.getOrDefault("first", "0"));
+		int max = Integer.parseInt(query.getOrDefault("max", String.valueOf(DEFAULT_PAGE_SIZE)));
+		if (first >= items.size()) {
+			return List.of();
+		}
+		return items.subList(first, max < 0 ? items.size() : Math.min(items.size(), first + max));
+	}
+
+	private static Map<String, String> parameters(String encoded) {
+		Map<String, String> parameters = new HashMap<>();
+		if (encoded == null || encoded.isEmpty()) {
+			return parameters;
+		}
+		for (String pair : encoded.split("&")) {
+			int equals = pair.indexOf('=');
+			String name = equals < 0 ? pair : pair.substring(0, equals);
+			String value = equals < 0 ? "" : pair.substring(equals + 1);
+			parameters.put(URLDecoder.decode(name, StandardCharsets.UTF_8), URLDecoder.decode(value, StandardCharsets.UTF_8));
+		}
+		return parameters;
+	}
+}
@@ -44,6 +44,18 @@ public class ApplicationProperties {
 	@Value("${keycloak.admin.client-secret}")
 	private String keycloakAdminClientSecret;
 
+	@Value("${keycloak.token.validation}")
+	private String keycloakTokenValidation;
+
+	@Value("${keycloak.token.audience}")
+	private String keycloakTokenAudience;
+
+	@Value("${keycloak.token.issuer}")
+	private String keycloakTokenIssuer;
+
+	@Value("${keycloak.token.revocation-check}")
+	private String keycloakTokenRevocationCheck;
+
 	@Value("${crowd.api.url}")
 	private String crowdApiUrl;
 
@@ -56,6 +68,102 @@ public class ApplicationProperties {
 	@Value("${basic.auth.enabled}")
 	private String basicAuthEnabled;
 
+	@Value("${identity-provider.file.reload}")
+	private String fileReload;
+
+	@Value("${identity-provider.file.poll-seconds}")
+	private int filePollSeconds;
+
+	@Value("${keycloak.traversal.threads}")
+	private int keycloakTraversalThreads;
+
+	@Value("${keycloak.traversal.parallelism}")
+	private int keycloakTraversalParallelism;
+
+	@Value("${keycloak.traversal.timeout-seconds}")
+	private int keycloakTraversalTimeoutSeconds;
+
+	@Value("${keycloak.realm-directory.refresh-seconds}")
+	private int keycloakRealmDirectoryRefreshSeconds;
+
+	@Value("${keycloak.realm-directory.load-timeout-seconds}")
+	private int keycloakRealmDirectoryLoadTimeoutSeconds;
+
+	@Value("${http.client.max-connections-per-route}")
+	private int httpClientMaxConnectionsPerRoute;
+
+	@Value("${http.client.max-connections-total}")
+	private int httpClientMaxConnectionsTotal;
+
+	@Value("${http.client.connect-timeout-ms}")
+	private int httpClientConnectTimeoutMs;
+
+	@Value("${http.client.read-timeout-ms}")
+	private int httpClientReadTimeoutMs;
+
+	@Value("${http.client.idle-eviction-seconds}")
+	private int httpClientIdleEvictionSeconds;
+
+	@Value("${http.client.connection-ttl-seconds}")
+	private int httpClientConnectionTtlSeconds;
+
+	@Value("${account-cache.fresh-seconds}")
+	private int accountCacheFreshSeconds;
+
+	@Value("${account-cache.max-stale-seconds}")
+	private int accountCacheMaxStaleSeconds;
+
+	@Value("${account-cache.max-ttl-seconds}")
+	private int accountCacheMaxTtlSeconds;
+
+	@Value("${account-cache.refresh-threads}")
+	private int accountCacheRefreshThreads;
+
+	@Value("${account-cache.heap.entries}")
+	private long accountCacheHeapEntries;
+
+	@Value("${account-cache.offheap.megabytes}")
+	private long accountCacheOffHeapMegabytes;
+
+	@Value("${account-cache.disk.megabytes}")
+	private long accountCacheDiskMegabytes;
+
+	@Value("${account-cache.disk.directory}")
+	private String accountCacheDiskDirectory;
+
+	@Value("${cache.event-log.sample-every}")
+	private int cacheEventLogSampleEvery;
+
+	@Value("${upstream.calls.response-header}")
+	private String upstreamCallsResponseHeader;
+
+	@Value("${upstream.max-concurrent-calls}")
+	private int upstreamMaxConcurrentCalls;
+
+	@Value("${execution.threads}")
+	private String executionThreads;
+
+	@Value("${invalidation.bus}")
+	private String invalidationBus;
+
+	@Value("${invalidation.consul.host}")
+	private String invalidationConsulHost;
+
+	@Value("${invalidation.consul.port}")
+	private int invalidationConsulPort;
+
+	@Value("${invalidation.consul.token}")
+	private String invalidationConsulToken;
+
+	@Value("${invalidation.consul.prefix}")
+	private String invalidationConsulPrefix;
+
+	@Value("${invalidation.consul.wait-seconds}")
+	private int invalidationConsulWaitSeconds;
+
+	@Value("${invalidation.consul.retention-seconds}")
+	private int invalidationConsulRetentionSeconds;
+
 	public String getProjectName() {
 		return projectName;
 	}
@@ -180,6 +288,50 @@ public class ApplicationProperties {
 		this.keycloakAdminClientSecret = keycloakAdminClientSecret;
 	}
 
+	public String getKeycloakTokenValidation() {
+		return keycloakTokenValidation;
+	}
+
+	public void setKeycloakTokenValidation(String keycloakTokenValidation) {
+		this.keycloakTokenValidation = keycloakTokenValidation;
+	}
+
+	public boolean isKeycloakLocalTokenValidation() {
+		return "LOCAL".equalsIgnoreCase(keycloakTokenValidation);
+	}
+
+	public String getKeycloakTokenAudience() {
+		if (keycloakTokenAudience == null || keycloakTokenAudience.isEmpty()) {
+			return keycloakClientId;
+		}
+
+		return keycloakTokenAudience;
+	}
+
+	public void setKeycloakTokenAudience(String keycloakTokenAudience) {
+		this.keycloakTokenAudience = keycloakTokenAudience;
+	}
+
+	public String getKeycloakTokenIssuer() {
+		return keycloakTokenIssuer;
+	}
+
+	public void setKeycloakTokenIssuer(String keycloakTokenIssuer) {
+		this.keycloakTokenIssuer = keycloakTokenIssuer;
+	}
+
+	public String getKeycloakTokenRevocationCheck() {
+		return keycloakTokenRevocationCheck;
+	}
+
+	public void setKeycloakTokenRevocationCheck(String keycloakTokenRevocationCheck) {
+		this.keycloakTokenRevocationCheck = keycloakTokenRevocationCheck;
+	}
+
+	public boolean isKeycloakTokenRevocationCheck() {
+		return "true".equals(keycloakTokenRevocationCheck);
+	}
+
 	public String getCrowdApiUrl() {
 		return crowdApiUrl;
 	}
@@ -215,4 +367,280 @@ public class ApplicationProperties {
 	public boolean isBasicAuthEnabled() {
 		return "true".equals(basicAuthEnabled);
 	}
+
+	public int getHttpClientMaxConnectionsPerRoute() {
+		return httpClientMaxConnectionsPerRoute;
+	}
+
+	public void setHttpClientMaxConnectionsPerRoute(int httpClientMaxConnectionsPerRoute) {
+		this.httpClientMaxConnectionsPerRoute = httpClientMaxConnectionsPerRoute;
+	}
+
+	public int getHttpClientMaxConnectionsTotal() {
+		return httpClientMaxConnectionsTotal;
+	}
+
+	public void setHttpClientMaxConnectionsTotal(int httpClientMaxConnectionsTotal) {
+		this.httpClientMaxConnectionsTotal = httpClientMaxConnectionsTotal;
+	}
+
+	public int getHttpClientConnectTimeoutMs() {
+		return httpClientConnectTimeoutMs;
+	}
+
+	public void setHttpClientConnectTimeoutMs(int httpClientConnectTimeoutMs) {
+		this.httpClientConnectTimeoutMs = httpClientConnectTimeoutMs;
+	}
+
+	public int getHttpClientReadTimeoutMs() {
+		return httpClientReadTimeoutMs;
+	}
+
+	public void setHttpClientReadTimeoutMs(int httpClientReadTimeoutMs) {
+		this.httpClientReadTimeoutMs = httpClientReadTimeoutMs;
+	}
+
+	public int getHttpClientIdleEvictionSeconds() {
+		return httpClientIdleEvictionSeconds;
+	}
+
+	public void setHttpClientIdleEvictionSeconds(int httpClientIdleEvictionSeconds) {
+		this.httpClientIdleEvictionSeconds = httpClientIdleEvictionSeconds;
+	}
+
+	public int getHttpClientConnectionTtlSeconds() {
+		return httpClientConnectionTtlSeconds;
+	}
+
+	public void setHttpClientConnectionTtlSeconds(int httpClientConnectionTtlSeconds) {
+		this.httpClientConnectionTtlSeconds = httpClientConnectionTtlSeconds;
+	}
+
+	public int getKeycloakTraversalThreads() {
+		return keycloakTraversalThreads;
+	}
+
+	public void setKeycloakTraversalThreads(int keycloakTraversalThreads) {
+		this.keycloakTraversalThreads = keycloakTraversalThreads;
+	}
+
+	public int getKeycloakTraversalParallelism() {
+		return keycloakTraversalParallelism;
+	}
+
+	public void setKeycloakTraversalParallelism(int keycloakTraversalParallelism) {
+		this.keycloakTraversalParallelism = keycloakTraversalParallelism;
+	}
+
+	public int getKeycloakTraversalTimeoutSeconds() {
+		return keycloakTraversalTimeoutSeconds;
+	}
+
+	public void setKeycloakTraversalTimeoutSeconds(int keycloakTraversalTimeoutSeconds) {
+		this.keycloakTraversalTimeoutSeconds = keycloakTraversalTimeoutSeconds;
+	}
+
+	public int getKeycloakRealmDirectoryRefreshSeconds() {
+		return keycloakRealmDirectoryRefreshSeconds;
+	}
+
+	public void setKeycloakRealmDirectoryRefreshSeconds(int keycloakRealmDirectoryRefreshSeconds) {
+		this.keycloakRealmDirectoryRefreshSeconds = keycloakRealmDirectoryRefreshSeconds;
+	}
+
+	public int getKeycloakRealmDirectoryLoadTimeoutSeconds() {
+		return keycloakRealmDirectoryLoadTimeoutSeconds;
+	}
+
+	public void setKeycloakRealmDirectoryLoadTimeoutSeconds(int keycloakRealmDirectoryLoadTimeoutSeconds) {
+		this.keycloakRealmDirectoryLoadTimeoutSeconds = keycloakRealmDirectoryLoadTimeoutSeconds;
+	}
+
+	public boolean isKeycloakRealmDirectoryEnabled() {
+		return keycloakRealmDirectoryRefreshSeconds > 0;
+	}
+
+	public String getFileReload() {
+		return fileReload;
+	}
+
+	public void setFileReload(String fileReload) {
+		this.fileReload = fileReload;
+	}
+
+	public boolean isFileReloadPolling() {
+		return "POLL".equalsIgnoreCase(fileReload);
+	}
+
+	public int getFilePollSeconds() {
+		return filePollSeconds;
+	}
+
+	public void setFilePollSeconds(int filePollSeconds) {
+		this.filePollSeconds = filePollSeconds;
+	}
+
+	public int getAccountCacheFreshSeconds() {
+		return accountCacheFreshSeconds;
+	}
+
+	public void setAccountCacheFreshSeconds(int accountCacheFreshSeconds) {
+		this.accountCacheFreshSeconds = accountCacheFreshSeconds;
+	}
+
+	public int getAccountCacheMaxStaleSeconds() {
+		return accountCacheMaxStaleSeconds;
+	}
+
+	public void setAccountCacheMaxStaleSeconds(int accountCacheMaxStaleSeconds) {
+		this.accountCacheMaxStaleSeconds = accountCacheMaxStaleSeconds;
+	}
+
+	public int getAccountCacheMaxTtlSeconds() {
+		return accountCacheMaxTtlSeconds;
+	}
+
+	public void setAccountCacheMaxTtlSeconds(int accountCacheMaxTtlSeconds) {
+		this.accountCacheMaxTtlSeconds = accountCacheMaxTtlSeconds;
+	}
+
+	public int getAccountCacheRefreshThreads() {
+		return accountCacheRefreshThreads;
+	}
+
+	public void setAccountCacheRefreshThreads(int accountCacheRefreshThreads) {
+		this.accountCacheRefreshThreads = accountCacheRefreshThreads;
+	}
+
+	public long getAccountCacheHeapEntries() {
+		return accountCacheHeapEntries;
+	}
+
+	public void setAccountCacheHeapEntries(long accountCacheHeapEntries) {
+		this.accountCacheHeapEntries = accountCacheHeapEntries;
+	}
+
+	public long getAccountCacheOffHeapMegabytes() {
+		return accountCacheOffHeapMegabytes;
+	}
+
+	public void setAccountCacheOffHeapMegabytes(long accountCacheOffHeapMegabytes) {
+		this.accountCacheOffHeapMegabytes = accountCacheOffHeapMegabytes;
+	}
+
+	public long getAccountCacheDiskMegabytes() {
+		return accountCacheDiskMegabytes;
+	}
+
+	public void setAccountCacheDiskMegabytes(long accountCacheDiskMegabytes) {
+		this.accountCacheDiskMegabytes = accountCacheDiskMegabytes;
+	}
+
+	public String getAccountCacheDiskDirectory() {
+		return accountCacheDiskDirectory;
+	}
+
+	public void setAccountCacheDiskDirectory(String accountCacheDiskDirectory) {
+		this.accountCacheDiskDirectory = accountCacheDiskDirectory;
+	}
+
+	public int getCacheEventLogSampleEvery() {
+		return cacheEventLogSampleEvery;
+	}
+
+	public void setCacheEventLogSampleEvery(int cacheEventLogSampleEvery) {
+		this.cacheEventLogSampleEvery = cacheEventLogSampleEvery;
+	}
+
+	public String getUpstreamCallsResponseHeader() {
+		return upstreamCallsResponseHeader;
+	}
+
+	public void setUpstreamCallsResponseHeader(String upstreamCallsResponseHeader) {
+		this.upstreamCallsResponseHeader = upstreamCallsResponseHeader;
+	}
+
+	public boolean isUpstreamCallsResponseHeader() {
+		return "true".equals(upstreamCallsResponseHeader);
+	}
+
+	public String getInvalidationBus() {
+		return invalidationBus;
+	}
+
+	public void setInvalidationBus(String invalidationBus) {
+		this.invalidationBus = invalidationBus;
+	}
+
+	public boolean isInvalidationBusConsul() {
+		return "CONSUL".equalsIgnoreCase(invalidationBus);
+	}
+
+	public String getInvalidationConsulHost() {
+		return invalidationConsulHost;
+	}
+
+	public void setInvalidationConsulHost(String invalidationConsulHost) {
+		this.invalidationConsulHost = invalidationConsulHost;
+	}
+
+	public int getInvalidationConsulPort() {
+		return invalidationConsulPort;
+	}
+
+	public void setInvalidationConsulPort(int invalidationConsulPort) {
+		this.invalidationConsulPort = invalidationConsulPort;
+	}
+
+	public String getInvalidationConsulToken() {
+		return invalidationConsulToken;
+	}
+
+	public void setInvalidationConsulToken(String invalidationConsulToken) {
+		this.invalidationConsulToken = invalidationConsulToken;
+	}
+
+	public String getInvalidationConsulPrefix() {
+		return invalidationConsulPrefix;
+	}
+
+	public void setInvalidationConsulPrefix(String invalidationConsulPrefix) {
+		this.invalidationConsulPrefix = invalidationConsulPrefix;
+	}
+
+	public int getInvalidationConsulWaitSeconds() {
+		return invalidationConsulWaitSeconds;
+	}
+
+	public void setInvalidationConsulWaitSeconds(int invalidationConsulWaitSeconds) {
+		this.invalidationConsulWaitSeconds = invalidationConsulWaitSeconds;
+	}
+
+	public int getInvalidationConsulRetentionSeconds() {
+		return invalidationConsulRetentionSeconds;
+	}
+
+	public void setInvalidationConsulRetentionSeconds(int invalidationConsulRetentionSeconds) {
+		this.invalidationConsulRetentionSeconds = invalidationConsulRetentionSeconds;
+	}
+
+	public int getUpstreamMaxConcurrentCalls() {
+		return upstreamMaxConcurrentCalls;
+	}
+
+	public void setUpstreamMaxConcurrentCalls(int upstreamMaxConcurrentCalls) {
+		this.upstreamMaxConcurrentCalls = upstreamMaxConcurrentCalls;
+	}
+
+	public String getExecutionThreads() {
+		return executionThreads;
+	}
+
+	public void setExecutionThreads(String executionThreads) {
+		this.executionThreads = executionThreads;
+	}
+
+	public boolean isVirtualThreads() {
+		return "VIRTUAL".equalsIgnoreCase(executionThreads);
+	}
 }
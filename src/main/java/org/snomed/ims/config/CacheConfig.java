@@ -1,9 +1,112 @@
 package org.snomed.ims.config;
 
+import org.ehcache.config.ResourcePools;
+import org.ehcache.config.builders.CacheConfigurationBuilder;
+import org.ehcache.config.builders.ConfigurationBuilder;
+import org.ehcache.config.builders.ResourcePoolsBuilder;
+import org.ehcache.config.units.MemoryUnit;
+import org.ehcache.impl.config.persistence.CacheManagerPersistenceConfiguration;
+import org.ehcache.jsr107.EhcacheCachingProvider;
+import org.ehcache.xml.XmlConfiguration;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.snomed.ims.service.IdentityProviderFactory;
+import org.snomed.ims.service.UserService;
+import org.springframework.beans.factory.annotation.Value;
 import org.springframework.cache.annotation.EnableCaching;
+import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.core.io.Resource;
+
+import javax.cache.CacheManager;
+import javax.cache.Caching;
+import java.io.File;
+import java.io.IOException;
+import java.net.URISyntaxException;
+import java.net.URL;
+import java.time.Duration;
 
 @Configuration
 @EnableCaching
 public class CacheConfig {
+	private static final Logger LOGGER = LoggerFactory.getLogger(CacheConfig.class);
+
+	@Bean(destroyMethod = "close")
+	public CacheManager jCacheManager(@Value("${spring.cache.jcache.config}") Resource config, @Value("${identity-provider}") IdentityProviderFactory.ProviderType providerType,
+			ApplicationProperties applicationProperties) throws IOException {
+		String diskDirectory = applicationProperties.getAccountCacheDiskDirectory();
+		File disk = null;
+		if (providerType == IdentityProviderFactory.ProviderType.FILE) {
+			// Tokens are held in memory by the provider, so users restored from disk would be served for tokens it no longer knows
+			LOGGER.info("Keeping the account cache in memory only; tokens of the {} identity provider do not survive a restart", providerType);
+		} else if (diskDirectory != null && !diskDirectory.isBlank()) {
+			disk = new File(diskDirectory.strip());
+			LOGGER.info("Account cache disk tier in {}", disk.getAbsolutePath());
+		}
+		AccountCacheSize size = new AccountCacheSize(applicationProperties.getAccountCacheHeapEntries(),
+				applicationProperties.getAccountCacheOffHeapMegabytes(), applicationProperties.getAccountCacheDiskMegabytes());
+		return createCacheManager(config.getURL(), Duration.ofSeconds(applicationProperties.getAccountCacheMaxTtlSeconds()), size, disk);
+	}
+
+	/**
+	 * Create a cache manager from ehcache.xml. The account cache is built from the template of the same name, with an
+	 * expiry policy that needs the configured maximum time to live and tiers sized from configuration, neither of which
+	 * can be declared in the file.
+	 *
+	 * @param config        Location of ehcache.xml.
+	 * @param maxTimeToLive Longest time a cached user is kept, however long its token lives.
+	 * @param size          Size of each of the account cache's tiers.
+	 * @param diskDirectory Directory for the account cache's disk tier; null to drop the disk tier.
+	 * @return A new cache manager; the caller closes it.
+	 */
+	public static CacheManager createCacheManager(URL config, Duration maxTimeToLive, AccountCacheSize size, File diskDirectory) {
+		XmlConfiguration xml = new XmlConfiguration(config, CacheConfig.class.getClassLoader());
+		CacheConfigurationBuilder<TokenKey, User> accountCache;
+		try {
+			accountCache = xml.newCacheConfigurationBuilderFromTemplate(UserService.ACCOUNT_CACHE, TokenKey.class, User.class);
+		} catch (ReflectiveOperationException e) {
+			throw new IllegalStateException("Failed to read cache template '" + UserService.ACCOUNT_CACHE + "' from " + config, e);
+		}
+		if (accountCache == null) {
+			throw new IllegalStateException("Cache template '" + UserService.ACCOUNT_CACHE + "' is not configured in " + config);
+		}
+
+		boolean disk = diskDirectory != null && size.diskMegabytes() > 0;
+		accountCache = accountCache.withExpiry(new TokenLifetimeExpiryPolicy(maxTimeToLive))
+				.withResourcePools(size.toResourcePools(disk));
+		ConfigurationBuilder builder = ConfigurationBuilder.newConfigurationBuilder(xml);
+		if (disk) {
+			builder = builder.withService(new CacheManagerPersistenceConfiguration(diskDirectory));
+		}
+		org.ehcache.config.Configuration configuration = builder.withCache(UserService.ACCOUNT_CACHE, accountCache.build()).build();
+		EhcacheCachingProvider provider = (EhcacheCachingProvider) Caching.getCachingProvider(EhcacheCachingProvider.class.getName());
+		try {
+			return provider.getCacheManager(config.toURI(), configuration);
+		} catch (URISyntaxException e) {
+			throw new IllegalArgumentException("Invalid cache config location " + config, e);
+		}
+	}
+
+	/**
+	 * Size of the account cache's tiers.
+	 *
+	 * @param heapEntries      Users kept on heap.
+	 * @param offHeapMegabytes Size of the off-heap tier; 0 for none.
+	 * @param diskMegabytes    Size of the disk tier; 0 for none.
+	 */
+	public record AccountCacheSize(long heapEntries, long offHeapMegabytes, long diskMegabytes) {
+
+		ResourcePools toResourcePools(boolean disk) {
+			ResourcePoolsBuilder builder = ResourcePoolsBuilder.heap(heapEntries);
+			if (offHeapMegabytes > 0) {
+				builder = builder.offheap(offHeapMegabytes, MemoryUnit.MB);
+			}
+			if (disk) {
+				builder = builder.disk(diskMegabytes, MemoryUnit.MB, true);
+			}
+			return builder.build();
+		}
+	}
 }
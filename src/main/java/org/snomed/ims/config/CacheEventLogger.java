@@ -5,15 +5,30 @@ import org.ehcache.event.CacheEventListener;
 import org.snomed.ims.domain.User;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.springframework.stereotype.Component;
 
-@Component
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Logs one in every so many cache events at TRACE, for following what a cache does without logging every event.
+ * Registered only when cache.event-log.sample-every is set.
+ */
 @SuppressWarnings("rawtypes")
 public class CacheEventLogger implements CacheEventListener<Object, Object> {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CacheEventLogger.class);
 
+	private final int sampleEvery;
+	private final AtomicLong events = new AtomicLong();
+
+	public CacheEventLogger(int sampleEvery) {
+		this.sampleEvery = Math.max(1, sampleEvery);
+	}
+
 	@Override
 	public void onEvent(CacheEvent cacheEvent) {
+		if (!LOGGER.isTraceEnabled() || events.getAndIncrement() % sampleEvery != 0) {
+			return;
+		}
+
 		Object newValue = cacheEvent.getNewValue();
 
 		if (newValue == null) {
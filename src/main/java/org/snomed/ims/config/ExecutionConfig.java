@@ -0,0 +1,25 @@
+package org.snomed.ims.config;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.service.VirtualThreads;
+import org.springframework.boot.web.embedded.tomcat.TomcatServletWebServerFactory;
+import org.springframework.boot.web.server.WebServerFactoryCustomizer;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class ExecutionConfig {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ExecutionConfig.class);
+
+	@Bean
+	public WebServerFactoryCustomizer<TomcatServletWebServerFactory> requestThreadsCustomizer(ApplicationProperties applicationProperties) {
+		return factory -> {
+			if (!applicationProperties.isVirtualThreads()) {
+				return;
+			}
+			LOGGER.info("Serving requests on virtual threads");
+			factory.addProtocolHandlerCustomizers(protocolHandler -> protocolHandler.setExecutor(VirtualThreads.newExecutor("tomcat-handler")));
+		};
+	}
+}
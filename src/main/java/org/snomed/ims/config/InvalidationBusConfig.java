@@ -0,0 +1,29 @@
+package org.snomed.ims.config;
+
+import com.ecwid.consul.v1.ConsulClient;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.service.ConsulInvalidationBus;
+import org.snomed.ims.service.InvalidationBus;
+import org.snomed.ims.service.LocalInvalidationBus;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+import java.time.Duration;
+
+@Configuration
+public class InvalidationBusConfig {
+	private static final Logger LOGGER = LoggerFactory.getLogger(InvalidationBusConfig.class);
+
+	@Bean
+	public InvalidationBus invalidationBus(ApplicationProperties applicationProperties) {
+		if (!applicationProperties.isInvalidationBusConsul()) {
+			return new LocalInvalidationBus();
+		}
+
+		LOGGER.info("Sharing invalidations with other nodes through Consul at {}:{}", applicationProperties.getInvalidationConsulHost(), applicationProperties.getInvalidationConsulPort());
+		return new ConsulInvalidationBus(new ConsulClient(applicationProperties.getInvalidationConsulHost(), applicationProperties.getInvalidationConsulPort()),
+				applicationProperties.getInvalidationConsulToken(), applicationProperties.getInvalidationConsulPrefix(),
+				Duration.ofSeconds(applicationProperties.getInvalidationConsulWaitSeconds()), Duration.ofSeconds(applicationProperties.getInvalidationConsulRetentionSeconds()));
+	}
+}
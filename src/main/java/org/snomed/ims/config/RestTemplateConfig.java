@@ -1,36 +1,118 @@
 package org.snomed.ims.config;
 
+import io.micrometer.core.instrument.MeterRegistry;
+import org.apache.hc.client5.http.config.ConnectionConfig;
+import org.apache.hc.client5.http.config.RequestConfig;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.apache.hc.client5.http.impl.classic.HttpClients;
+import org.apache.hc.client5.http.impl.io.PoolingHttpClientConnectionManagerBuilder;
+import org.apache.hc.client5.http.ssl.SSLConnectionSocketFactoryBuilder;
+import org.apache.hc.core5.ssl.SSLContexts;
+import org.apache.hc.core5.util.TimeValue;
+import org.apache.hc.core5.util.Timeout;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.boot.web.client.RestTemplateBuilder;
 import org.springframework.context.annotation.Bean;
 import org.springframework.context.annotation.Configuration;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.HttpComponentsClientHttpRequestFactory;
 import org.springframework.web.client.RestTemplate;
 
+import javax.net.ssl.SSLContext;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.function.BiFunction;
+
 @Configuration
 public class RestTemplateConfig {
 	private static final Logger LOGGER = LoggerFactory.getLogger(RestTemplateConfig.class);
-	
+
 	private final ApplicationProperties applicationProperties;
+	private final MeterRegistry meterRegistry;
+
+	// Shared so that the JSSE client session cache lets reconnects resume TLS sessions rather than renegotiate
+	private final SSLContext sslContext = SSLContexts.createSystemDefault();
 
-	public RestTemplateConfig(ApplicationProperties applicationProperties) {
+	public RestTemplateConfig(ApplicationProperties applicationProperties, MeterRegistry meterRegistry) {
 		this.applicationProperties = applicationProperties;
+		this.meterRegistry = meterRegistry;
+	}
+
+	@Bean(name = "crowdHttpClient", destroyMethod = "close")
+	public CloseableHttpClient crowdHttpClient() {
+		return buildPooledHttpClient();
+	}
+
+	@Bean(name = "keycloakHttpClient", destroyMethod = "close")
+	public CloseableHttpClient keyCloakHttpClient() {
+		return buildPooledHttpClient();
 	}
 
 	@Bean(name = "crowd")
-	public RestTemplate crowdRestTemplate() {
+	public RestTemplate crowdRestTemplate(@Qualifier("crowdHttpClient") CloseableHttpClient httpClient) {
 		LOGGER.info("Creating Crowd RestTemplate with rootUri: {}", applicationProperties.getCrowdApiUrl());
 		return new RestTemplateBuilder()
 				.rootUri(applicationProperties.getCrowdApiUrl())
 				.basicAuthentication(applicationProperties.getCrowdApiAppName(), applicationProperties.getCrowdApiAppPassword())
+				.requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+				.additionalInterceptors(interceptors("crowd", UpstreamOperations::crowd))
 				.build();
 	}
 
 	@Bean(name = "keycloak")
-	public RestTemplate keyCloakRestTemplate() {
+	public RestTemplate keyCloakRestTemplate(@Qualifier("keycloakHttpClient") CloseableHttpClient httpClient) {
 		LOGGER.info("Creating Keycloak RestTemplate with rootUri: {}", applicationProperties.getKeycloakUrl());
 		return new RestTemplateBuilder()
 				.rootUri(applicationProperties.getKeycloakUrl())
+				.requestFactory(() -> new HttpComponentsClientHttpRequestFactory(httpClient))
+				.additionalInterceptors(interceptors("keycloak", UpstreamOperations::keycloak))
+				.build();
+	}
+
+	private List<ClientHttpRequestInterceptor> interceptors(String upstream, BiFunction<HttpRequest, byte[], String> operations) {
+		List<ClientHttpRequestInterceptor> interceptors = new ArrayList<>();
+		int maxConcurrentCalls = applicationProperties.getUpstreamMaxConcurrentCalls();
+		if (maxConcurrentCalls > 0) {
+			// Ahead of the call timing, so time spent waiting for a permit is not counted as the upstream's
+			interceptors.add(new UpstreamConcurrencyLimit(upstream, maxConcurrentCalls,
+					Duration.ofMillis(applicationProperties.getHttpClientConnectTimeoutMs()), meterRegistry));
+		}
+		interceptors.add(new UpstreamCallInterceptor(upstream, meterRegistry, operations));
+		return interceptors;
+	}
+
+	private CloseableHttpClient buildPooledHttpClient() {
+		Timeout connectTimeout = Timeout.ofMilliseconds(applicationProperties.getHttpClientConnectTimeoutMs());
+		Timeout readTimeout = Timeout.ofMilliseconds(applicationProperties.getHttpClientReadTimeoutMs());
+
+		ConnectionConfig connectionConfig = ConnectionConfig.custom()
+				.setConnectTimeout(connectTimeout)
+				.setSocketTimeout(readTimeout)
+				.setTimeToLive(TimeValue.ofSeconds(applicationProperties.getHttpClientConnectionTtlSeconds()))
+				.setValidateAfterInactivity(TimeValue.ofSeconds(2))
+				.build();
+
+		RequestConfig requestConfig = RequestConfig.custom()
+				.setConnectionRequestTimeout(connectTimeout)
+				.setResponseTimeout(readTimeout)
+				.build();
+
+		return HttpClients.custom()
+				.setConnectionManager(PoolingHttpClientConnectionManagerBuilder.create()
+						.setSSLSocketFactory(SSLConnectionSocketFactoryBuilder.create().setSslContext(sslContext).build())
+						.setMaxConnPerRoute(applicationProperties.getHttpClientMaxConnectionsPerRoute())
+						.setMaxConnTotal(applicationProperties.getHttpClientMaxConnectionsTotal())
+						.setDefaultConnectionConfig(connectionConfig)
+						.build())
+				.setDefaultRequestConfig(requestConfig)
+				// Connections are not tied to a user principal, so any pooled connection may serve any request
+				.disableConnectionState()
+				.evictExpiredConnections()
+				.evictIdleConnections(TimeValue.ofSeconds(applicationProperties.getHttpClientIdleEvictionSeconds()))
 				.build();
 	}
 }
@@ -0,0 +1,32 @@
+package org.snomed.ims.config;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.snomed.ims.domain.TokenKey;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Writes token keys to the off-heap and disk tiers as their 16 bytes.
+ */
+public class TokenKeySerializer implements Serializer<TokenKey> {
+	public TokenKeySerializer(ClassLoader classLoader) {
+		// Required by Ehcache; no classes are loaded
+	}
+
+	@Override
+	public ByteBuffer serialize(TokenKey key) {
+		ByteBuffer buffer = ByteBuffer.allocate(16);
+		buffer.putLong(key.getMostSignificantBits()).putLong(key.getLeastSignificantBits());
+		return buffer.flip();
+	}
+
+	@Override
+	public TokenKey read(ByteBuffer binary) {
+		return TokenKey.of(binary.getLong(), binary.getLong());
+	}
+
+	@Override
+	public boolean equals(TokenKey key, ByteBuffer binary) {
+		return key.equals(read(binary));
+	}
+}
@@ -0,0 +1,45 @@
+package org.snomed.ims.config;
+
+import org.ehcache.expiry.ExpiryPolicy;
+import org.snomed.ims.domain.User;
+
+import java.time.Duration;
+import java.util.function.Supplier;
+
+/**
+ * Expires each cached user when the token it was resolved from expires, or after the configured maximum time to live
+ * if that is sooner. Users whose token expiry is unknown are kept for the maximum. Reading an entry does not extend it;
+ * replacing it does, using the new user's token. Created by {@link CacheConfig} with the configured maximum.
+ */
+public class TokenLifetimeExpiryPolicy implements ExpiryPolicy<Object, Object> {
+	private final Duration maxTimeToLive;
+
+	public TokenLifetimeExpiryPolicy(Duration maxTimeToLive) {
+		this.maxTimeToLive = maxTimeToLive;
+	}
+
+	@Override
+	public Duration getExpiryForCreation(Object key, Object value) {
+		Duration max = maxTimeToLive;
+		if (value instanceof User user && user.getTokenExpiry() != null) {
+			long remaining = user.getTokenExpiry() - System.currentTimeMillis();
+			if (remaining <= 0) {
+				// Already expired; not worth storing
+				return Duration.ZERO;
+			}
+			return remaining < max.toMillis() ? Duration.ofMillis(remaining) : max;
+		}
+		return max;
+	}
+
+	@Override
+	public Duration getExpiryForAccess(Object key, Supplier<?> value) {
+		// Unchanged
+		return null;
+	}
+
+	@Override
+	public Duration getExpiryForUpdate(Object key, Supplier<?> oldValue, Object newValue) {
+		return getExpiryForCreation(key, newValue);
+	}
+}
@@ -0,0 +1,66 @@
+package org.snomed.ims.config;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.snomed.ims.service.UpstreamCalls;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+import java.util.function.BiFunction;
+
+/**
+ * Times every call made through a RestTemplate, tagged by upstream, logical operation and outcome, and counts it
+ * against the inbound request it was made for.
+ */
+public class UpstreamCallInterceptor implements ClientHttpRequestInterceptor {
+	private final String upstream;
+	private final MeterRegistry meterRegistry;
+	private final BiFunction<HttpRequest, byte[], String> operations;
+
+	/**
+	 * @param upstream      Name of the upstream, such as keycloak.
+	 * @param meterRegistry Registry of the call timers.
+	 * @param operations    Names the operation a call performs, given the request and its body.
+	 */
+	public UpstreamCallInterceptor(String upstream, MeterRegistry meterRegistry, BiFunction<HttpRequest, byte[], String> operations) {
+		this.upstream = upstream;
+		this.meterRegistry = meterRegistry;
+		this.operations = operations;
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+		String operation = operations.apply(request, body);
+		long start = System.nanoTime();
+		String outcome = "io_error";
+		try {
+			ClientHttpResponse response = execution.execute(request, body);
+			outcome = outcome(response.getStatusCode().value());
+			return response;
+		} finally {
+			long duration = System.nanoTime() - start;
+			UpstreamCalls.record(duration);
+			Timer.builder("ims.upstream.calls")
+					.description("Calls to upstream identity providers by logical operation")
+					.tag("upstream", upstream)
+					.tag("operation", operation)
+					.tag("outcome", outcome)
+					.register(meterRegistry)
+					.record(duration, TimeUnit.NANOSECONDS);
+		}
+	}
+
+	private static String outcome(int status) {
+		if (status >= 500) {
+			return "server_error";
+		}
+		if (status >= 400) {
+			return "client_error";
+		}
+		return "success";
+	}
+}
@@ -0,0 +1,130 @@
+package org.snomed.ims.config;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpRequest;
+import org.springframework.http.HttpStatusCode;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpRequestInterceptor;
+import org.springframework.http.client.ClientHttpResponse;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the calls in flight to one upstream, so that however many threads are serving requests, and with virtual
+ * threads that may be thousands, the upstream is never sent more than a set number at once. A call holds its permit
+ * until its response is closed; calls beyond the cap wait their turn, and fail if no permit frees up in time.
+ */
+public class UpstreamConcurrencyLimit implements ClientHttpRequestInterceptor {
+	private final String upstream;
+	private final Semaphore permits;
+	private final long maxWaitNanos;
+	private final Timer waits;
+	private final Counter rejections;
+
+	/**
+	 * @param upstream           Name of the upstream, such as keycloak.
+	 * @param maxConcurrentCalls Most calls in flight at once.
+	 * @param maxWait            Longest a call waits for a permit.
+	 * @param meterRegistry      Registry of the permit metrics.
+	 */
+	public UpstreamConcurrencyLimit(String upstream, int maxConcurrentCalls, Duration maxWait, MeterRegistry meterRegistry) {
+		if (maxConcurrentCalls < 1) {
+			throw new IllegalArgumentException("Max concurrent calls must be at least 1");
+		}
+		this.upstream = upstream;
+		// Fair, so that calls are let through in the order they arrived rather than the most recent first
+		this.permits = new Semaphore(maxConcurrentCalls, true);
+		this.maxWaitNanos = maxWait.toNanos();
+
+		Gauge.builder("ims.upstream.concurrency", permits, available -> maxConcurrentCalls - available.availablePermits())
+				.description("Calls in flight to the upstream")
+				.tag("upstream", upstream)
+				.register(meterRegistry);
+		this.waits = Timer.builder("ims.upstream.permit.wait")
+				.description("Time calls waited for the upstream's concurrency limit")
+				.tag("upstream", upstream)
+				.register(meterRegistry);
+		this.rejections = Counter.builder("ims.upstream.permit.rejected")
+				.description("Calls failed for waiting too long for the upstream's concurrency limit")
+				.tag("upstream", upstream)
+				.register(meterRegistry);
+	}
+
+	@Override
+	public ClientHttpResponse intercept(HttpRequest request, byte[] body, ClientHttpRequestExecution execution) throws IOException {
+		long start = System.nanoTime();
+		boolean acquired;
+		try {
+			acquired = permits.tryAcquire(maxWaitNanos, TimeUnit.NANOSECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			throw new InterruptedIOException("Interrupted while waiting to call " + upstream);
+		} finally {
+			waits.record(System.nanoTime() - start, TimeUnit.NANOSECONDS);
+		}
+		if (!acquired) {
+			rejections.increment();
+			throw new IOException("Too many calls in flight to " + upstream + "; none finished within " + TimeUnit.NANOSECONDS.toMillis(maxWaitNanos) + " ms");
+		}
+
+		try {
+			return new PermitHoldingResponse(execution.execute(request, body));
+		} catch (IOException | RuntimeException e) {
+			permits.release();
+			throw e;
+		}
+	}
+
+	/**
+	 * Returns the permit once the response has been read and closed, as RestTemplate always does.
+	 */
+	private class PermitHoldingResponse implements ClientHttpResponse {
+		private final ClientHttpResponse response;
+		private final AtomicBoolean released = new AtomicBoolean();
+
+		PermitHoldingResponse(ClientHttpResponse response) {
+			this.response = response;
+		}
+
+		@Override
+		public HttpStatusCode getStatusCode() throws IOException {
+			return response.getStatusCode();
+		}
+
+		@Override
+		public String getStatusText() throws IOException {
+			return response.getStatusText();
+		}
+
+		@Override
+		public InputStream getBody() throws IOException {
+			return response.getBody();
+		}
+
+		@Override
+		public HttpHeaders getHeaders() {
+			return response.getHeaders();
+		}
+
+		@Override
+		public void close() {
+			try {
+				response.close();
+			} finally {
+				if (released.compareAndSet(false, true)) {
+					permits.release();
+				}
+			}
+		}
+	}
+}
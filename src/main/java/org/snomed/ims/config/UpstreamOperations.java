@@ -0,0 +1,101 @@
+package org.snomed.ims.config;
+
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpRequest;
+
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Names the logical operation an upstream call performs, from its method and path, for tagging call metrics. Names
+ * are few and fixed, unlike paths, which hold ids and role names.
+ */
+public final class UpstreamOperations {
+	private static final String OTHER = "other";
+
+	private record Rule(HttpMethod method, Pattern path, String operation) {
+		boolean matches(HttpRequest request) {
+			return (method == null || method.equals(request.getMethod())) && path.matcher(request.getURI().getRawPath()).matches();
+		}
+	}
+
+	private static final String ADMIN_REALM = ".*/admin/realms/[^/]+";
+	private static final String CLIENT_OR_REALM = "(/clients/[^/]+)?";
+
+	private static final List<Rule> KEYCLOAK = List.of(
+			rule(null, ".*/protocol/openid-connect/token/introspect", "introspect"),
+			rule(null, ".*/protocol/openid-connect/revoke", "revoke"),
+			rule(null, ".*/protocol/openid-connect/certs", "certs"),
+			rule(null, ".*/realms/[^/]+/account/?", "account-update"),
+			rule(null, ADMIN_REALM + "/users", "user-search"),
+			rule(null, ADMIN_REALM + "/users/[^/]+/role-mappings.*", "user-roles"),
+			rule(null, ADMIN_REALM + "/groups", "group-search"),
+			rule(null, ADMIN_REALM + "/groups/[^/]+/members", "members"),
+			rule(null, ADMIN_REALM + "/groups/[^/]+/children", "group-children"),
+			rule(null, ADMIN_REALM + "/groups/[^/]+/role-mappings.*", "group-roles"),
+			rule(null, ADMIN_REALM + CLIENT_OR_REALM + "/roles/[^/]+/users", "role-users"),
+			rule(null, ADMIN_REALM + CLIENT_OR_REALM + "/roles/[^/]+/groups", "role-groups"),
+			rule(null, ADMIN_REALM + CLIENT_OR_REALM + "/roles/[^/]+/composites", "role-composites"),
+			rule(null, ADMIN_REALM + "/roles-by-id/[^/]+/groups", "role-groups"),
+			rule(null, ADMIN_REALM + "/roles-by-id/[^/]+/composites", "role-composites"),
+			rule(null, ADMIN_REALM + CLIENT_OR_REALM + "/roles", "role-search"),
+			rule(null, ADMIN_REALM + "/clients", "client-page")
+	);
+
+	private static final List<Rule> CROWD = List.of(
+			rule(HttpMethod.POST, ".*/session", "authenticate"),
+			rule(HttpMethod.GET, ".*/session/[^/]+", "session"),
+			rule(HttpMethod.DELETE, ".*/session/[^/]+", "logout"),
+			rule(null, ".*/user/group/direct", "user-groups"),
+			rule(null, ".*/group/user/direct", "members"),
+			rule(null, ".*/user/password", "password-update"),
+			rule(HttpMethod.PUT, ".*/user", "user-update"),
+			rule(HttpMethod.GET, ".*/user", "user")
+	);
+
+	private UpstreamOperations() {
+	}
+
+	/**
+	 * Name a Keycloak call. Calls to the token endpoint are named by their grant type, telling admin tokens apart from
+	 * user logins.
+	 */
+	public static String keycloak(HttpRequest request, byte[] body) {
+		if (request.getURI().getRawPath().endsWith("/protocol/openid-connect/token")) {
+			String form = new String(body, StandardCharsets.UTF_8);
+			if (form.contains("grant_type=client_credentials")) {
+				return "admin-token";
+			}
+			if (form.contains("grant_type=password")) {
+				return "login";
+			}
+			if (form.contains("grant_type=authorization_code")) {
+				return "code-exchange";
+			}
+			return "token";
+		}
+
+		return classify(KEYCLOAK, request);
+	}
+
+	/**
+	 * Name a Crowd call.
+	 */
+	public static String crowd(HttpRequest request, byte[] body) {
+		return classify(CROWD, request);
+	}
+
+	private static String classify(List<Rule> rules, HttpRequest request) {
+		for (Rule rule : rules) {
+			if (rule.matches(request)) {
+				return rule.operation();
+			}
+		}
+		return OTHER;
+	}
+
+	private static Rule rule(HttpMethod method, String path, String operation) {
+		return new Rule(method, Pattern.compile(path), operation);
+	}
+}
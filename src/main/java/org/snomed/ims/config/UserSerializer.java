@@ -0,0 +1,126 @@
+package org.snomed.ims.config;
+
+import org.ehcache.spi.serialization.Serializer;
+import org.ehcache.spi.serialization.SerializerException;
+import org.snomed.ims.domain.User;
+
+import java.io.*;
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes cached users to the off-heap and disk tiers field by field, rather than with Java serialization, which would
+ * repeat class descriptors in every entry. The leading version byte lets entries persisted by an older release be
+ * recognised; entries that cannot be read are reported to Ehcache, which treats them as absent.
+ */
+public class UserSerializer implements Serializer<User> {
+	private static final byte VERSION = 1;
+
+	public UserSerializer(ClassLoader classLoader) {
+		// Required by Ehcache; no classes are loaded
+	}
+
+	@Override
+	public ByteBuffer serialize(User user) throws SerializerException {
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream(256);
+		try (DataOutputStream out = new DataOutputStream(bytes)) {
+			out.writeByte(VERSION);
+			writeString(out, user.getId());
+			writeString(out, user.getLogin());
+			writeString(out, user.getLangKey());
+			out.writeByte(user.getActive() == null ? -1 : user.getActive() ? 1 : 0);
+			writeString(out, user.getFirstName());
+			writeString(out, user.getLastName());
+			writeString(out, user.getDisplayName());
+			writeString(out, user.getEmail());
+			writeStrings(out, user.getRoles());
+			writeStrings(out, user.getClientAccess());
+			writeLong(out, user.getTokenExpiry());
+			writeLong(out, user.getResolvedAt());
+		} catch (IOException e) {
+			throw new SerializerException("Failed to serialize user " + user.getLogin(), e);
+		}
+		return ByteBuffer.wrap(bytes.toByteArray());
+	}
+
+	@Override
+	public User read(ByteBuffer binary) throws SerializerException {
+		byte[] bytes = new byte[binary.remaining()];
+		binary.get(bytes);
+		try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+			byte version = in.readByte();
+			if (version != VERSION) {
+				throw new SerializerException("Unknown user serialization version " + version);
+			}
+
+			User user = new User();
+			user.setId(readString(in));
+			user.setLogin(readString(in));
+			user.setLangKey(readString(in));
+			byte active = in.readByte();
+			user.setActive(active == -1 ? null : active == 1);
+			user.setFirstName(readString(in));
+			user.setLastName(readString(in));
+			user.setDisplayName(readString(in));
+			user.setEmail(readString(in));
+			user.setRoles(readStrings(in));
+			user.setClientAccess(readStrings(in));
+			user.setTokenExpiry(readLong(in));
+			user.setResolvedAt(readLong(in));
+			return user;
+		} catch (IOException e) {
+			throw new SerializerException("Failed to read user", e);
+		}
+	}
+
+	@Override
+	public boolean equals(User user, ByteBuffer binary) throws SerializerException {
+		// User.equals only compares logins; entries are equal only if every field is
+		return serialize(user).equals(binary);
+	}
+
+	private static void writeString(DataOutputStream out, String value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeUTF(value);
+		}
+	}
+
+	private static String readString(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readUTF() : null;
+	}
+
+	private static void writeStrings(DataOutputStream out, List<String> values) throws IOException {
+		out.writeInt(values == null ? -1 : values.size());
+		if (values != null) {
+			for (String value : values) {
+				writeString(out, value);
+			}
+		}
+	}
+
+	private static List<String> readStrings(DataInputStream in) throws IOException {
+		int size = in.readInt();
+		if (size == -1) {
+			return null;
+		}
+
+		List<String> values = new ArrayList<>(size);
+		for (int i = 0; i < size; i++) {
+			values.add(readString(in));
+		}
+		return values;
+	}
+
+	private static void writeLong(DataOutputStream out, Long value) throws IOException {
+		out.writeBoolean(value != null);
+		if (value != null) {
+			out.writeLong(value);
+		}
+	}
+
+	private static Long readLong(DataInputStream in) throws IOException {
+		return in.readBoolean() ? in.readLong() : null;
+	}
+}
@@ -0,0 +1,116 @@
+package org.snomed.ims.domain;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Shares role and client names, and whole lists of them, between users. Thousands of cached users hold the same few
+ * combinations of roles, so each combination is held once, as an immutable list with a constant-time contains. The
+ * dictionary stops growing at a fixed size, after which further lists are still immutable but no longer shared.
+ */
+public final class RoleDictionary {
+	private static final int MAX_NAMES = 10_000;
+	private static final int MAX_LISTS = 10_000;
+
+	private static final Map<String, String> NAMES = new ConcurrentHashMap<>();
+	private static final Map<RoleList, RoleList> LISTS = new ConcurrentHashMap<>();
+	private static final RoleList EMPTY = new RoleList(new String[0]);
+
+	private RoleDictionary() {
+	}
+
+	/**
+	 * @return The shared instance of the given name.
+	 */
+	public static String intern(String name) {
+		if (name == null) {
+			return null;
+		}
+
+		String shared = NAMES.get(name);
+		if (shared != null) {
+			return shared;
+		}
+		if (NAMES.size() >= MAX_NAMES) {
+			return name;
+		}
+		shared = NAMES.putIfAbsent(name, name);
+		return shared != null ? shared : name;
+	}
+
+	/**
+	 * @return The shared, immutable list of the given names, in the same order; null if names is null.
+	 */
+	public static List<String> share(Collection<String> names) {
+		if (names == null) {
+			return null;
+		}
+		if (names instanceof RoleList roleList) {
+			return roleList;
+		}
+		if (names.isEmpty()) {
+			return EMPTY;
+		}
+
+		String[] elements = new String[names.size()];
+		int i = 0;
+		for (String name : names) {
+			elements[i++] = intern(name);
+		}
+		RoleList candidate = new RoleList(elements);
+
+		RoleList shared = LISTS.get(candidate);
+		if (shared != null) {
+			return shared;
+		}
+		if (LISTS.size() >= MAX_LISTS) {
+			return candidate;
+		}
+		shared = LISTS.putIfAbsent(candidate, candidate);
+		return shared != null ? shared : candidate;
+	}
+
+	/**
+	 * Immutable list of names whose contains is a hash lookup.
+	 */
+	static final class RoleList extends AbstractList<String> implements RandomAccess, Serializable {
+		@Serial
+		private static final long serialVersionUID = 1L;
+
+		private final String[] elements;
+		private transient volatile Set<String> members;
+
+		private RoleList(String[] elements) {
+			this.elements = elements;
+		}
+
+		@Override
+		public String get(int index) {
+			return elements[index];
+		}
+
+		@Override
+		public int size() {
+			return elements.length;
+		}
+
+		@Override
+		public boolean contains(Object o) {
+			Set<String> set = members;
+			if (set == null) {
+				// Built on first use, so lists only ever compared or iterated cost nothing extra
+				set = new HashSet<>(Arrays.asList(elements));
+				members = set;
+			}
+			return set.contains(o);
+		}
+
+		@Serial
+		private Object readResolve() {
+			// Deserialized lists join the dictionary like any other
+			return share(Arrays.asList(elements));
+		}
+	}
+}
@@ -0,0 +1,102 @@
+package org.snomed.ims.domain;
+
+import java.io.Serial;
+import java.io.Serializable;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+/**
+ * Cache key standing in for a token: the first 128 bits of the token's SHA-256 digest. A Keycloak JWT is one to two
+ * kilobytes, so keying caches by this rather than the token itself keeps entries small, and keeps tokens out of the
+ * caches and any heap dump of them. Keys compare in constant time.
+ */
+public final class TokenKey implements Serializable {
+	@Serial
+	private static final long serialVersionUID = 1L;
+
+	/**
+	 * SpEL key for caching annotations on methods taking a String parameter named token.
+	 */
+	public static final String TOKEN_PARAMETER = "T(org.snomed.ims.domain.TokenKey).of(#token)";
+
+	private final long mostSignificantBits;
+	private final long leastSignificantBits;
+
+	private TokenKey(long mostSignificantBits, long leastSignificantBits) {
+		this.mostSignificantBits = mostSignificantBits;
+		this.leastSignificantBits = leastSignificantBits;
+	}
+
+	public static TokenKey of(String token) {
+		if (token == null) {
+			throw new IllegalArgumentException("Token cannot be null.");
+		}
+
+		byte[] digest;
+		try {
+			digest = MessageDigest.getInstance("SHA-256").digest(token.getBytes(StandardCharsets.UTF_8));
+		} catch (NoSuchAlgorithmException e) {
+			// Every JVM is required to provide SHA-256
+			throw new IllegalStateException(e);
+		}
+
+		ByteBuffer buffer = ByteBuffer.wrap(digest);
+		return new TokenKey(buffer.getLong(), buffer.getLong());
+	}
+
+	/**
+	 * Recreate a key from its bits, as when reading it back from storage.
+	 */
+	public static TokenKey of(long mostSignificantBits, long leastSignificantBits) {
+		return new TokenKey(mostSignificantBits, leastSignificantBits);
+	}
+
+	/**
+	 * Parse a key from the 32 hexadecimal digits of {@link #toHex()}; that is, the first half of the token's SHA-256
+	 * digest in hex.
+	 *
+	 * @throws IllegalArgumentException if hex is not 32 hexadecimal digits.
+	 */
+	public static TokenKey fromHex(String hex) {
+		if (hex == null || hex.length() != 32) {
+			throw new IllegalArgumentException("Token key must be 32 hexadecimal digits.");
+		}
+		try {
+			return new TokenKey(Long.parseUnsignedLong(hex.substring(0, 16), 16), Long.parseUnsignedLong(hex.substring(16), 16));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Token key must be 32 hexadecimal digits.", e);
+		}
+	}
+
+	public String toHex() {
+		return String.format("%016x%016x", mostSignificantBits, leastSignificantBits);
+	}
+
+	public long getMostSignificantBits() {
+		return mostSignificantBits;
+	}
+
+	public long getLeastSignificantBits() {
+		return leastSignificantBits;
+	}
+
+	@Override
+	public boolean equals(Object o) {
+		if (!(o instanceof TokenKey other)) return false;
+		// No early exit, so comparison time does not reveal how much of a key matched
+		return ((mostSignificantBits ^ other.mostSignificantBits) | (leastSignificantBits ^ other.leastSignificantBits)) == 0;
+	}
+
+	@Override
+	public int hashCode() {
+		// Digest bits are already uniformly distributed
+		return (int) mostSignificantBits;
+	}
+
+	@Override
+	public String toString() {
+		return "TokenKey{" + String.format("%08x", (int) (mostSignificantBits >>> 32)) + "...}";
+	}
+}
@@ -42,6 +42,16 @@ public class User implements Serializable {
 
 	private List<String> clientAccess;
 
+	/**
+	 * Expiry of the token this user was resolved from, in epoch milliseconds. Null when unknown.
+	 */
+	private Long tokenExpiry;
+
+	/**
+	 * When this user was last resolved from the identity provider, in epoch milliseconds. Set when the user is cached.
+	 */
+	private Long resolvedAt;
+
 	public User() {
 	}
 
@@ -52,7 +62,7 @@ public class User implements Serializable {
 		this.lastName = lastName;
 		this.email = email;
 		this.langKey = langKey;
-		this.roles = roles;
+		this.roles = RoleDictionary.share(roles);
 	}
 
 	public User publicClone() {
@@ -144,16 +154,52 @@ public class User implements Serializable {
 		return roles;
 	}
 
+	/**
+	 * @param roles Roles, held as a shared immutable list.
+	 */
 	public void setRoles(List<String> roles) {
-		this.roles = roles;
+		this.roles = RoleDictionary.share(roles);
+	}
+
+	/**
+	 * @return Whether the user has the given role, for example {@code ROLE_ims-administrators}.
+	 */
+	public boolean hasRole(String role) {
+		return roles != null && roles.contains(role);
 	}
 
 	public List<String> getClientAccess() {
 		return clientAccess;
 	}
 	
+	/**
+	 * @param clientAccess Clients the user can access, held as a shared immutable list.
+	 */
 	public void setClientAccess(List<String> clientAccess) {
-		this.clientAccess = clientAccess;
+		this.clientAccess = RoleDictionary.share(clientAccess);
+	}
+
+	@JsonIgnore
+	public Long getTokenExpiry() {
+		return tokenExpiry;
+	}
+
+	public void setTokenExpiry(Long tokenExpiry) {
+		this.tokenExpiry = tokenExpiry;
+	}
+
+	@JsonIgnore
+	public Long getResolvedAt() {
+		return resolvedAt;
+	}
+
+	public void setResolvedAt(Long resolvedAt) {
+		this.resolvedAt = resolvedAt;
+	}
+
+	@JsonIgnore
+	public boolean isTokenExpired() {
+		return tokenExpiry != null && tokenExpiry <= System.currentTimeMillis();
 	}
 
 	@Override
@@ -12,7 +12,8 @@ import org.snomed.ims.config.ApplicationProperties;
 import org.snomed.ims.domain.AuthenticationResponse;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.service.IdentityProvider;
-import org.snomed.ims.service.KeyCloakIdentityProvider;
+import org.snomed.ims.service.RuntimeServiceException;
+import org.snomed.ims.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -32,7 +33,7 @@ public class AccountController {
     private static final String AUTH_HEADER_USERNAME = AUTH_HEADER_PREFIX + "username";
 
     	private final IdentityProvider identityProvider;
-
+	private final UserService userService;
 
 	private final String cookieName;
 	private final Integer cookieMaxAge;
@@ -40,8 +41,9 @@ public class AccountController {
 	private final boolean cookieSecureFlag;
 
 
-	public AccountController(IdentityProvider identityProvider, ApplicationProperties applicationProperties) {
+	public AccountController(IdentityProvider identityProvider, UserService userService, ApplicationProperties applicationProperties) {
 		this.identityProvider = identityProvider;
+		this.userService = userService;
 		this.cookieName = applicationProperties.getCookieName();
 		this.cookieMaxAge = applicationProperties.getCookieMaxAgeInt();
 		this.cookieDomain = applicationProperties.getCookieDomain();
@@ -68,7 +70,7 @@ public class AccountController {
                     try {
                         // Invalidate the opaque token with Keycloak
                         String token = cookie.getValue();
-                        identityProvider.invalidateToken(token);
+                        userService.invalidateToken(token);
                         LOGGER.debug("Successfully invalidated token with identity provider");
                     } catch (Exception e) {
                         LOGGER.error("Error during token invalidation, but continuing with cookie cleanup", e);
@@ -97,7 +99,7 @@ public class AccountController {
 					try {
 						// Get the opaque token from the cookie (no decompression needed)
 						String token = cookie.getValue();
-                        User user = getUserFromToken(token);
+                        User user = userService.getUserByToken(token);
                         if (user == null) {
 							LOGGER.error("60037224-9b55-4f37-b944-eb4c1abc8fd9 Failed to get user; invalidating cookie");
 
@@ -117,6 +119,10 @@ public class AccountController {
 						response.setHeader(AUTH_HEADER_PREFIX + "roles", StringUtils.join(user.getRoles(), ","));
 
 						return ResponseEntity.ok(AuthenticationResponse.authenticated(user));
+					} catch (RuntimeServiceException e) {
+						// The token could not be checked, not rejected; keep the cookie so the user stays logged in
+						LOGGER.warn("Identity provider unavailable while getting user by token: {}", e.getMessage());
+						return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).build();
 					} catch (Exception e) {
 						LOGGER.error("Failed to get user by token; invalidating cookie", e);
 						
@@ -138,18 +144,6 @@ public class AccountController {
         return getAccountForRequestWithoutCookie(request, response);
     }
 
-    private User getUserFromToken(String token) {
-        User user;
-        // Introspect the token to get user information
-        if (identityProvider instanceof KeyCloakIdentityProvider keyCloakIdentityProvider) {
-            user = keyCloakIdentityProvider.introspectToken(token);
-        } else {
-            // Fallback to existing method for other identity providers
-            user = identityProvider.getUserByToken(token);
-        }
-        return user;
-    }
-
     private boolean isCookieValid(Cookie cookie) {
         return cookie.getName().equals(cookieName) && cookie.getMaxAge() != 0;
     }
@@ -186,7 +180,7 @@ public class AccountController {
                 imsCookie.setPath("/");
                 response.addCookie(imsCookie);
 
-                User user = identityProvider.getUserByToken(accessToken);
+                User user = userService.getUserByToken(accessToken);
                 if (user == null) {
                     String loginUrl = buildLoginUrl(request);
                     return ResponseEntity.status(HttpStatus.FORBIDDEN)
@@ -9,6 +9,7 @@ import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
 import org.snomed.ims.config.ApplicationProperties;
 import org.snomed.ims.service.IdentityProvider;
+import org.snomed.ims.service.RuntimeServiceException;
 
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
@@ -65,7 +66,12 @@ public class AuthController {
 			return new ResponseEntity<>(HttpStatus.BAD_REQUEST);
 		}
 
-		String token = identityProvider.authenticate(username, password);
+		String token;
+		try {
+			token = identityProvider.authenticate(username, password);
+		} catch (RuntimeServiceException e) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
 		if (token == null) {
 			LOGGER.error("Failed to authenticate");
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
@@ -6,31 +6,35 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 
 import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.domain.TokenKey;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.service.AuthoritiesConstants;
+import org.snomed.ims.service.CacheStatistics;
+import org.snomed.ims.service.IdentityProvider;
+import org.snomed.ims.service.RuntimeServiceException;
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
-import org.snomed.ims.service.IdentityProvider;
-import org.snomed.ims.service.KeyCloakIdentityProvider;
-import org.springframework.cache.Cache;
-import org.springframework.cache.CacheManager;
+import org.snomed.ims.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
 import org.springframework.web.bind.annotation.*;
 
+import java.util.Map;
+import java.util.function.Supplier;
+
 @RestController
 @Tag(name = "CacheController")
 public class CacheController {
 	private static final Logger LOGGER = LoggerFactory.getLogger(CacheController.class);
 
 	private final IdentityProvider identityProvider;
-	private final CacheManager cacheManager;
+	private final UserService userService;
 
 	private final String cookieName;
 
-	public CacheController(IdentityProvider identityProvider, CacheManager cacheManager, ApplicationProperties applicationProperties) {
+	public CacheController(IdentityProvider identityProvider, UserService userService, ApplicationProperties applicationProperties) {
 		this.identityProvider = identityProvider;
-		this.cacheManager = cacheManager;
+		this.userService = userService;
 		this.cookieName = applicationProperties.getCookieName();
 	}
 
@@ -49,47 +53,157 @@ public class CacheController {
 		return doClearCache(response, cookies);
 	}
 
+	/**
+	 * Evict the cached sessions of one user, by login
+	 */
+	@PostMapping("/cache/evict/user")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<String> evictUser(@RequestParam String username, HttpServletRequest request, HttpServletResponse response) {
+		return asAdmin(request, response, () -> evicted(userService.evictByLogin(username)));
+	}
+
+	/**
+	 * Evict the cached sessions of one user, by identity provider id
+	 */
+	@PostMapping("/cache/evict/user-id")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<String> evictUserId(@RequestParam String id, HttpServletRequest request, HttpServletResponse response) {
+		return asAdmin(request, response, () -> evicted(userService.evictByUserId(id)));
+	}
+
+	/**
+	 * Evict the cached session of one token, identified by the first 32 hex digits of its SHA-256 digest
+	 */
+	@PostMapping("/cache/evict/token")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<String> evictToken(@RequestParam String digest, HttpServletRequest request, HttpServletResponse response) {
+		return asAdmin(request, response, () -> {
+			TokenKey key;
+			try {
+				key = TokenKey.fromHex(digest);
+			} catch (IllegalArgumentException e) {
+				return new ResponseEntity<>(e.getMessage(), HttpStatus.BAD_REQUEST);
+			}
+			return evicted(userService.evictByTokenKey(key) ? 1 : 0);
+		});
+	}
+
+	/**
+	 * Evict the cached sessions of every user holding a role or group, as after its membership or mappings change
+	 */
+	@PostMapping("/cache/evict/role")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<String> evictRole(@RequestParam String role, HttpServletRequest request, HttpServletResponse response) {
+		// Matched with or without the ROLE_ prefix, which FILE mode roles do not have
+		return asAdmin(request, response, () -> evicted(userService.evictByRole(role)));
+	}
+
+	/**
+	 * Statistics of each cache: entries, estimated size, hits and misses, evictions, expiries and load times
+	 */
+	@GetMapping("/cache/stats")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<?> getCacheStatistics(HttpServletRequest request, HttpServletResponse response) {
+		ResponseEntity<String> denied = denyUnlessAdmin(request, response);
+		if (denied != null) {
+			return denied;
+		}
+
+		Map<String, CacheStatistics.Snapshot> statistics = userService.getCacheStatistics();
+		return new ResponseEntity<>(statistics, HttpStatus.OK);
+	}
+
+	/**
+	 * Reload the identity provider's in-memory directory of groups, roles and clients now rather than waiting for its
+	 * next scheduled refresh
+	 */
+	@PostMapping("/cache/refresh-directory")
+	@ResponseStatus(HttpStatus.OK)
+	public ResponseEntity<String> refreshDirectory(HttpServletRequest request, HttpServletResponse response) {
+		return asAdmin(request, response, () -> {
+			if (!identityProvider.refreshDirectory()) {
+				return new ResponseEntity<>("No directory refreshed", HttpStatus.CONFLICT);
+			}
+			LOGGER.info("Identity provider directory refreshed");
+			return new ResponseEntity<>(HttpStatus.OK);
+		});
+	}
+
 	private ResponseEntity<String> doClearCache(HttpServletResponse response, Cookie[] cookies) {
 		for (Cookie cookie : cookies) {
 			if (cookie.getName().equals(cookieName) && cookie.getMaxAge() != 0) {
-				// Get the opaque token from the cookie (no decompression needed)
-				String token = cookie.getValue();
-				
-				// Introspect the token to get user information
-				User user = null;
-				if (identityProvider instanceof KeyCloakIdentityProvider) {
-					user = ((KeyCloakIdentityProvider) identityProvider).introspectToken(token);
-				} else {
-					// Fallback to existing method for other identity providers
-					user = identityProvider.getUserByToken(token);
+				ResponseEntity<String> denied = checkAdmin(response, cookie);
+				if (denied != null) {
+					return denied;
 				}
-				if (user == null) {
-					LOGGER.error("4a19d36a-7cd1-4f25-be16-c7c19d63238e Failed to find user by token; invalidating cookie.");
 
-					cookie.setMaxAge(0);
-					cookie.setValue("");
-					cookie.setPath("/");
-					response.addCookie(cookie);
+				userService.clearAll();
+			}
+		}
 
-					return new ResponseEntity<>("User not found from token", HttpStatus.FORBIDDEN);
-				}
+		return new ResponseEntity<>(HttpStatus.OK);
+	}
 
-				boolean hasPermission = user.getRoles().contains(AuthoritiesConstants.IMS_ADMIN);
-				if (!hasPermission) {
-					LOGGER.error("b357c992-8586-4a82-a994-9a504bf68bd9 Failed to clear cache; incorrect permissions.");
-					return new ResponseEntity<>("User lacks permission", HttpStatus.FORBIDDEN);
-				}
+	/**
+	 * Perform the action if the request's cookie belongs to an administrator; otherwise return FORBIDDEN, or
+	 * SERVICE_UNAVAILABLE if the user could not be resolved.
+	 */
+	private ResponseEntity<String> asAdmin(HttpServletRequest request, HttpServletResponse response, Supplier<ResponseEntity<String>> action) {
+		ResponseEntity<String> denied = denyUnlessAdmin(request, response);
+		return denied != null ? denied : action.get();
+	}
 
-				cacheManager.getCacheNames().parallelStream().forEach(name -> {
-					Cache cache = cacheManager.getCache(name);
-					if (cache != null) {
-						LOGGER.info("Cache {} cleared", name);
-						cache.clear();
-					}
-				});
+	/**
+	 * Return a FORBIDDEN or SERVICE_UNAVAILABLE response unless the request's cookie belongs to an administrator;
+	 * otherwise null.
+	 */
+	private ResponseEntity<String> denyUnlessAdmin(HttpServletRequest request, HttpServletResponse response) {
+		Cookie[] cookies = request.getCookies();
+		if (cookies != null) {
+			for (Cookie cookie : cookies) {
+				if (cookie.getName().equals(cookieName) && cookie.getMaxAge() != 0) {
+					return checkAdmin(response, cookie);
+				}
 			}
 		}
 
-		return new ResponseEntity<>(HttpStatus.OK);
+		return new ResponseEntity<>("Required cookie missing", HttpStatus.FORBIDDEN);
+	}
+
+	private static ResponseEntity<String> evicted(int count) {
+		return new ResponseEntity<>("Evicted " + count + " cached users", HttpStatus.OK);
+	}
+
+	/**
+	 * Return a FORBIDDEN response if the cookie's user is not an administrator, or SERVICE_UNAVAILABLE if the user could
+	 * not be resolved; otherwise null.
+	 */
+	private ResponseEntity<String> checkAdmin(HttpServletResponse response, Cookie cookie) {
+		// Get the opaque token from the cookie (no decompression needed)
+		String token = cookie.getValue();
+		User user;
+		try {
+			user = userService.getUserByToken(token);
+		} catch (RuntimeServiceException e) {
+			// The token may well be valid, so the cookie is kept
+			return new ResponseEntity<>("Identity provider unavailable", HttpStatus.SERVICE_UNAVAILABLE);
+		}
+		if (user == null) {
+			LOGGER.error("4a19d36a-7cd1-4f25-be16-c7c19d63238e Failed to find user by token; invalidating cookie.");
+
+			cookie.setMaxAge(0);
+			cookie.setValue("");
+			cookie.setPath("/");
+			response.addCookie(cookie);
+
+			return new ResponseEntity<>("User not found from token", HttpStatus.FORBIDDEN);
+		}
+
+		boolean hasPermission = user.hasRole(AuthoritiesConstants.IMS_ADMIN);
+		if (!hasPermission) {
+			LOGGER.error("b357c992-8586-4a82-a994-9a504bf68bd9 Refused cache administration; incorrect permissions.");
+			return new ResponseEntity<>("User lacks permission", HttpStatus.FORBIDDEN);
+		}
+		return null;
 	}
 }
@@ -6,8 +6,8 @@ import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
 import org.snomed.ims.config.ApplicationProperties;
 import org.snomed.ims.domain.User;
-import org.snomed.ims.service.IdentityProvider;
-import org.snomed.ims.service.KeyCloakIdentityProvider;
+import org.snomed.ims.service.RuntimeServiceException;
+import org.snomed.ims.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -19,13 +19,12 @@ import java.util.List;
 @RestController
 @Tag(name = "GroupController")
 public class GroupController {
-	private final IdentityProvider identityProvider;
-
+	private final UserService userService;
 
 	private final String cookieName;
 
-	public GroupController(IdentityProvider identityProvider, ApplicationProperties applicationProperties) {
-		this.identityProvider = identityProvider;
+	public GroupController(UserService userService, ApplicationProperties applicationProperties) {
+		this.userService = userService;
 		this.cookieName = applicationProperties.getCookieName();
 	}
 
@@ -38,9 +37,15 @@ public class GroupController {
 													 @RequestParam int startAt,
 													 HttpServletRequest request,
 													 HttpServletResponse response) {
-		User currentUser = getCurrentUser(request, response);
-		String currentUserId = currentUser != null ? currentUser.getId() : null;
-		List<User> users = identityProvider.searchUsersByGroup(currentUserId, groupname, username, maxResults, startAt);
+		List<User> users;
+		try {
+			User currentUser = getCurrentUser(request, response);
+			String currentUserId = currentUser != null ? currentUser.getId() : null;
+			users = userService.searchUsersByGroup(currentUserId, groupname, username, maxResults, startAt);
+		} catch (RuntimeServiceException e) {
+			// The identity provider is unavailable or could not complete the search in time; not the same as an empty group
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
 		return new ResponseEntity<>(users, HttpStatus.OK);
 	}
 
@@ -53,14 +58,7 @@ public class GroupController {
 					try {
 						// Get the opaque token from the cookie (no decompression needed)
 						String token = cookie.getValue();
-						
-						// Introspect the token to get user information
-						if (identityProvider instanceof KeyCloakIdentityProvider) {
-							user = ((KeyCloakIdentityProvider) identityProvider).introspectToken(token);
-						} else {
-							// Fallback to existing method for other identity providers
-							user = identityProvider.getUserByToken(token);
-						}
+						user = userService.getUserByToken(token);
 					} catch (RestClientException ex) {
 						// invalidate cookie
 						cookie.setMaxAge(0);
@@ -0,0 +1,96 @@
+package org.snomed.ims.rest;
+
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.service.UpstreamCalls;
+import org.springframework.security.web.util.OnCommittedResponseWrapper;
+import org.springframework.stereotype.Component;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Counts the upstream calls each inbound request causes, and their total time, by endpoint, so the endpoints that fan
+ * out most can be found and budgeted. Optionally reports them to the caller in a Server-Timing header, which browser
+ * developer tools display alongside the request.
+ */
+@Component
+public class UpstreamCallFilter extends OncePerRequestFilter {
+	static final String SERVER_TIMING = "Server-Timing";
+
+	private final MeterRegistry meterRegistry;
+	private final boolean responseHeader;
+
+	public UpstreamCallFilter(MeterRegistry meterRegistry, ApplicationProperties applicationProperties) {
+		this.meterRegistry = meterRegistry;
+		this.responseHeader = applicationProperties.isUpstreamCallsResponseHeader();
+	}
+
+	@Override
+	protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain) throws ServletException, IOException {
+		UpstreamCalls calls = UpstreamCalls.begin();
+		ServerTimingResponse timedResponse = responseHeader ? new ServerTimingResponse(response, calls) : null;
+		try {
+			filterChain.doFilter(request, timedResponse != null ? timedResponse : response);
+			if (timedResponse != null && !response.isCommitted()) {
+				// Nothing was written, so the response is committed after this filter returns
+				timedResponse.writeServerTiming();
+			}
+		} finally {
+			UpstreamCalls.end();
+			record(request, calls);
+		}
+	}
+
+	private void record(HttpServletRequest request, UpstreamCalls calls) {
+		Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+		String uri = pattern != null ? pattern.toString() : "UNKNOWN";
+
+		DistributionSummary.builder("ims.request.upstream.calls")
+				.description("Upstream calls made per inbound request")
+				.tag("uri", uri)
+				.publishPercentileHistogram()
+				.register(meterRegistry)
+				.record(calls.count());
+		Timer.builder("ims.request.upstream.time")
+				.description("Total time of the upstream calls made per inbound request")
+				.tag("uri", uri)
+				.register(meterRegistry)
+				.record(calls.time());
+	}
+
+	/**
+	 * Adds the Server-Timing header as the response is committed, the last moment headers can be set.
+	 */
+	private static class ServerTimingResponse extends OnCommittedResponseWrapper {
+		private final UpstreamCalls calls;
+		private boolean written;
+
+		ServerTimingResponse(HttpServletResponse response, UpstreamCalls calls) {
+			super(response);
+			this.calls = calls;
+		}
+
+		@Override
+		protected void onResponseCommitted() {
+			writeServerTiming();
+		}
+
+		void writeServerTiming() {
+			if (written) {
+				return;
+			}
+			written = true;
+			((HttpServletResponse) getResponse()).addHeader(SERVER_TIMING,
+					String.format(Locale.ROOT, "upstream;desc=\"%d calls\";dur=%.1f", calls.count(), calls.time().toNanos() / 1_000_000.0));
+		}
+	}
+}
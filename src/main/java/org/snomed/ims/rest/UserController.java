@@ -9,7 +9,8 @@ import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.UserPasswordUpdateRequest;
 import org.snomed.ims.domain.UserInformationUpdateRequest;
 import org.snomed.ims.service.IdentityProvider;
-import org.snomed.ims.service.KeyCloakIdentityProvider;
+import org.snomed.ims.service.RuntimeServiceException;
+import org.snomed.ims.service.UserService;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
@@ -23,19 +24,25 @@ import java.util.List;
 public class UserController {
 
 	private final IdentityProvider identityProvider;
-
+	private final UserService userService;
 
 	private final String cookieName;
 
-	public UserController(IdentityProvider identityProvider, ApplicationProperties applicationProperties) {
+	public UserController(IdentityProvider identityProvider, UserService userService, ApplicationProperties applicationProperties) {
 		this.identityProvider = identityProvider;
+		this.userService = userService;
 		this.cookieName = applicationProperties.getCookieName();
 	}
 
 	@GetMapping(value = "/user", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseStatus(HttpStatus.OK)
 	public ResponseEntity<User> getUserDetails(@RequestParam String username) {
-		User user = identityProvider.getUser(username);
+		User user;
+		try {
+			user = identityProvider.getUser(username);
+		} catch (RuntimeServiceException ex) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
 		if (user == null) {
 			return new ResponseEntity<>(HttpStatus.NOT_FOUND);
 		} else {
@@ -54,6 +61,8 @@ public class UserController {
 			user = getCurrentUser(request, response);
 		} catch (RestClientException ex) {
 			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		} catch (RuntimeServiceException ex) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
 		if (user == null) {
@@ -70,7 +79,7 @@ public class UserController {
 					}
 				}
 			}
-			return new ResponseEntity<>(identityProvider.updateUser(user, requestBody, token), HttpStatus.OK);
+			return new ResponseEntity<>(userService.updateUser(user, requestBody, token), HttpStatus.OK);
 		}
 	}
 
@@ -83,6 +92,8 @@ public class UserController {
 			user = getCurrentUser(request, response);
 		} catch (RestClientException ex) {
 			return new ResponseEntity<>(HttpStatus.FORBIDDEN);
+		} catch (RuntimeServiceException ex) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
 		}
 
 		if (user == null) {
@@ -96,7 +107,11 @@ public class UserController {
 	@GetMapping(value = "/user/role", produces = MediaType.APPLICATION_JSON_VALUE)
 	@ResponseStatus(HttpStatus.OK)
 	public ResponseEntity<List<String>> getUserRoles(@RequestParam String username) {
-		return new ResponseEntity<>(identityProvider.getUserRoles(username), HttpStatus.OK);
+		try {
+			return new ResponseEntity<>(userService.getUserRoles(username), HttpStatus.OK);
+		} catch (RuntimeServiceException ex) {
+			return new ResponseEntity<>(HttpStatus.SERVICE_UNAVAILABLE);
+		}
 	}
 
 	private User getCurrentUser(HttpServletRequest request, HttpServletResponse response) {
@@ -108,14 +123,7 @@ public class UserController {
 					try {
 						// Get the opaque token from the cookie (no decompression needed)
 						String token = cookie.getValue();
-						
-						// Introspect the token to get user information
-						if (identityProvider instanceof KeyCloakIdentityProvider) {
-							user = ((KeyCloakIdentityProvider) identityProvider).introspectToken(token);
-						} else {
-							// Fallback to existing method for other identity providers
-							user = identityProvider.getUserByToken(token);
-						}
+						user = userService.getUserByToken(token);
 					} catch (RestClientException ex) {
 						// invalidate cookie
 						cookie.setMaxAge(0);
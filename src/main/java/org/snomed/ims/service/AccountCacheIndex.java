@@ -0,0 +1,130 @@
+package org.snomed.ims.service;
+
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index from login, user id and role to the keys of the account cache entries holding them, so those entries can be
+ * evicted without clearing the whole cache. Kept up to date by listening to the cache's events where the cache is
+ * Ehcache; otherwise {@link UserService} updates it as it writes to the cache. Events are delivered asynchronously and
+ * in no particular order, so the index may briefly lag the cache, or keep a key whose removal overtook its creation;
+ * evicting such a key drops it. Roles are indexed without their ROLE_ prefix, so either form finds them.
+ */
+class AccountCacheIndex implements CacheEventListener<Object, Object> {
+	private record Indexed(String login, String userId, List<String> roles) {
+	}
+
+	private final Map<TokenKey, Indexed> entries = new ConcurrentHashMap<>();
+	private final Map<String, Set<TokenKey>> byLogin = new ConcurrentHashMap<>();
+	private final Map<String, Set<TokenKey>> byUserId = new ConcurrentHashMap<>();
+	private final Map<String, Set<TokenKey>> byRole = new ConcurrentHashMap<>();
+
+	@Override
+	public void onEvent(CacheEvent<?, ?> event) {
+		if (!(event.getKey() instanceof TokenKey key)) {
+			return;
+		}
+
+		switch (event.getType()) {
+			case CREATED, UPDATED -> {
+				if (event.getNewValue() instanceof User user) {
+					add(key, user);
+				}
+			}
+			case REMOVED, EXPIRED, EVICTED -> remove(key);
+		}
+	}
+
+	void add(TokenKey key, User user) {
+		Indexed indexed = new Indexed(user.getLogin(), user.getId(), user.getRoles() != null ? user.getRoles() : List.of());
+		// Changes to one key are serialised by the entries map; other keys are not held up
+		entries.compute(key, (k, previous) -> {
+			if (previous != null) {
+				unlink(key, previous);
+			}
+			link(byLogin, indexed.login(), key);
+			link(byUserId, indexed.userId(), key);
+			for (String role : indexed.roles()) {
+				link(byRole, roleName(role), key);
+			}
+			return indexed;
+		});
+	}
+
+	void remove(TokenKey key) {
+		entries.computeIfPresent(key, (k, previous) -> {
+			unlink(key, previous);
+			return null;
+		});
+	}
+
+	void clear() {
+		for (TokenKey key : entries.keySet()) {
+			remove(key);
+		}
+	}
+
+	Set<TokenKey> keysForLogin(String login) {
+		return keys(byLogin, login);
+	}
+
+	Set<TokenKey> keysForUserId(String userId) {
+		return keys(byUserId, userId);
+	}
+
+	Set<TokenKey> keysForRole(String role) {
+		return keys(byRole, roleName(role));
+	}
+
+	int size() {
+		return entries.size();
+	}
+
+	private void unlink(TokenKey key, Indexed indexed) {
+		unlink(byLogin, indexed.login(), key);
+		unlink(byUserId, indexed.userId(), key);
+		for (String role : indexed.roles()) {
+			unlink(byRole, roleName(role), key);
+		}
+	}
+
+	/**
+	 * @return The role without its ROLE_ prefix, as the identity providers match roles and groups by name.
+	 */
+	private static String roleName(String role) {
+		return role != null && role.startsWith(AuthoritiesConstants.ROLE_PREFIX) ? role.substring(AuthoritiesConstants.ROLE_PREFIX.length()) : role;
+	}
+
+	private static void link(Map<String, Set<TokenKey>> index, String value, TokenKey key) {
+		if (value != null) {
+			// Within compute, so an unlink emptying the set cannot drop it while the key is being added
+			index.compute(value, (v, keys) -> {
+				Set<TokenKey> linked = keys != null ? keys : ConcurrentHashMap.newKeySet();
+				linked.add(key);
+				return linked;
+			});
+		}
+	}
+
+	private static void unlink(Map<String, Set<TokenKey>> index, String value, TokenKey key) {
+		if (value != null) {
+			index.computeIfPresent(value, (v, keys) -> {
+				keys.remove(key);
+				return keys.isEmpty() ? null : keys;
+			});
+		}
+	}
+
+	private static Set<TokenKey> keys(Map<String, Set<TokenKey>> index, String value) {
+		if (value == null) {
+			return Set.of();
+		}
+		Set<TokenKey> keys = index.get(value);
+		return keys != null ? Set.copyOf(keys) : Set.of();
+	}
+}
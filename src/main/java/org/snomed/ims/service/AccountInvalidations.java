@@ -0,0 +1,134 @@
+package org.snomed.ims.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
+
+import java.util.UUID;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Shares this node's evictions with the other nodes over the invalidation bus, and repeats theirs on this node. Owns
+ * the text form of each invalidation's value, so the account cache deals only in token keys, logins and roles.
+ */
+class AccountInvalidations {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AccountInvalidations.class);
+
+	/**
+	 * Evictions made by other nodes, to be repeated on this one.
+	 */
+	interface Target {
+
+		/**
+		 * @param revocation The token's id and expiry, if the origin node verifies tokens locally; otherwise null.
+		 */
+		void logOut(TokenKey key, TokenRevocation revocation);
+
+		void evictToken(TokenKey key);
+
+		void evictLogin(String login);
+
+		void evictUserId(String userId);
+
+		void evictRole(String role);
+
+		void clear();
+	}
+
+	/**
+	 * Value of a {@link Invalidation.Scope#LOGOUT} invalidation.
+	 *
+	 * @param key        Key of the logged out token.
+	 * @param revocation The token's id and expiry; null if the origin node does not verify tokens locally.
+	 */
+	record LogOut(TokenKey key, TokenRevocation revocation) {
+
+		/**
+		 * @return Token key in hex, then the token's expiry and id if known, space separated.
+		 */
+		String encode() {
+			return revocation != null
+					? key.toHex() + " " + revocation.expiresAt() + " " + revocation.tokenId()
+					: key.toHex();
+		}
+
+		/**
+		 * Parse the text form of {@link #encode()}.
+		 *
+		 * @throws IllegalArgumentException if value is not an encoded logout.
+		 */
+		static LogOut decode(String value) {
+			String[] parts = value.split(" ", 3);
+			if (parts.length == 2) {
+				throw new IllegalArgumentException("Not an encoded logout.");
+			}
+			TokenKey key = TokenKey.fromHex(parts[0]);
+			try {
+				return new LogOut(key, parts.length == 3 ? new TokenRevocation(parts[2], Long.parseLong(parts[1])) : null);
+			} catch (NumberFormatException e) {
+				throw new IllegalArgumentException("Not an encoded logout.", e);
+			}
+		}
+	}
+
+	private final InvalidationBus invalidationBus;
+	private final Target target;
+	private final String nodeId = UUID.randomUUID().toString();
+	private final AtomicLong sequence = new AtomicLong();
+
+	AccountInvalidations(InvalidationBus invalidationBus, Target target) {
+		this.invalidationBus = invalidationBus;
+		this.target = target;
+		invalidationBus.subscribe(this::apply);
+	}
+
+	void logOut(TokenKey key, TokenRevocation revocation) {
+		publish(Invalidation.Scope.LOGOUT, new LogOut(key, revocation).encode());
+	}
+
+	void evictToken(TokenKey key) {
+		publish(Invalidation.Scope.TOKEN, key.toHex());
+	}
+
+	void evictLogin(String login) {
+		publish(Invalidation.Scope.LOGIN, login);
+	}
+
+	void evictUserId(String userId) {
+		publish(Invalidation.Scope.USER_ID, userId);
+	}
+
+	void evictRole(String role) {
+		publish(Invalidation.Scope.ROLE, role);
+	}
+
+	void clear() {
+		publish(Invalidation.Scope.ALL, null);
+	}
+
+	/**
+	 * Repeat an invalidation published by another node.
+	 */
+	private void apply(Invalidation invalidation) {
+		if (nodeId.equals(invalidation.origin())) {
+			return;
+		}
+
+		LOGGER.debug("Applying {} invalidation from node {}", invalidation.scope(), invalidation.origin());
+		switch (invalidation.scope()) {
+			case LOGOUT -> {
+				LogOut logOut = LogOut.decode(invalidation.value());
+				target.logOut(logOut.key(), logOut.revocation());
+			}
+			case TOKEN -> target.evictToken(TokenKey.fromHex(invalidation.value()));
+			case LOGIN -> target.evictLogin(invalidation.value());
+			case USER_ID -> target.evictUserId(invalidation.value());
+			case ROLE -> target.evictRole(invalidation.value());
+			case ALL -> target.clear();
+		}
+	}
+
+	private void publish(Invalidation.Scope scope, String value) {
+		invalidationBus.publish(new Invalidation(scope, value, nodeId, sequence.incrementAndGet()));
+	}
+}
@@ -0,0 +1,174 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.MeterRegistry;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.springframework.cache.Cache;
+
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.function.Supplier;
+
+/**
+ * Decides whether a cached user is served as it is, served while it is resolved again in the background, or resolved
+ * again first, and remembers the tokens the identity provider rejected. Each outcome is counted.
+ */
+class AccountRefreshPolicy {
+	private static final Logger LOGGER = LoggerFactory.getLogger(AccountRefreshPolicy.class);
+
+	enum Freshness {
+		/**
+		 * Served as it is.
+		 */
+		FRESH,
+		/**
+		 * Served, and resolved again in the background.
+		 */
+		STALE,
+		/**
+		 * Resolved again before anything is served.
+		 */
+		TOO_STALE,
+		/**
+		 * The token has expired; evicted and resolved again.
+		 */
+		EXPIRED
+	}
+
+	// Tokens the identity provider rejected, so stale cookies and retries are answered without an upstream call
+	private final Cache rejectedTokenCache;
+	private final long freshMillis;
+	private final long maxStaleMillis;
+	private final Executor refreshExecutor;
+	private final Set<TokenKey> refreshing = ConcurrentHashMap.newKeySet();
+	private final Counter freshHits;
+	private final Counter staleHits;
+	private final Counter misses;
+	private final Counter expiredHits;
+	private final Counter tooStaleHits;
+	private final Counter rejectedHits;
+	private final Counter refreshSuccesses;
+	private final Counter refreshRejections;
+	private final Counter refreshFailures;
+
+	/**
+	 * @param rejectedTokenCache Cache of rejected tokens; null to check them upstream every time.
+	 * @param freshMillis        How long a cached user is served as it is; 0 to serve it until the cache expires it.
+	 * @param maxStaleMillis     How much longer a cached user is served while it is resolved again.
+	 * @param refreshExecutor    Runs background refreshes.
+	 */
+	AccountRefreshPolicy(Cache rejectedTokenCache, long freshMillis, long maxStaleMillis, Executor refreshExecutor, MeterRegistry meterRegistry) {
+		this.rejectedTokenCache = rejectedTokenCache;
+		this.freshMillis = freshMillis;
+		this.maxStaleMillis = maxStaleMillis;
+		this.refreshExecutor = refreshExecutor;
+
+		this.freshHits = cacheRequests(meterRegistry, "fresh");
+		this.staleHits = cacheRequests(meterRegistry, "stale");
+		this.misses = cacheRequests(meterRegistry, "miss");
+		this.expiredHits = cacheRequests(meterRegistry, "expired");
+		this.tooStaleHits = cacheRequests(meterRegistry, "too_stale");
+		this.rejectedHits = cacheRequests(meterRegistry, "rejected");
+		this.refreshSuccesses = cacheRefreshes(meterRegistry, "success");
+		this.refreshRejections = cacheRefreshes(meterRegistry, "rejected");
+		this.refreshFailures = cacheRefreshes(meterRegistry, "failed");
+	}
+
+	/**
+	 * @return Whether the token was recently rejected, and need not be resolved again.
+	 */
+	boolean isRejected(TokenKey key) {
+		if (rejectedTokenCache != null && rejectedTokenCache.get(key) != null) {
+			rejectedHits.increment();
+			LOGGER.debug("Token was recently rejected; not resolving again");
+			return true;
+		}
+		return false;
+	}
+
+	/**
+	 * Remember that the token was rejected, or logged out. Only for a definitive answer; a token that could not be
+	 * checked is not rejected.
+	 */
+	void reject(TokenKey key) {
+		if (rejectedTokenCache != null) {
+			rejectedTokenCache.put(key, Boolean.TRUE);
+		}
+	}
+
+	/**
+	 * Count a lookup the account cache could not answer.
+	 */
+	void missed() {
+		// Entries found but not served are counted apart from misses, which count only entries the cache did not hold
+		misses.increment();
+	}
+
+	/**
+	 * @return How the cached user is to be served.
+	 */
+	Freshness check(User cached) {
+		if (cached.isTokenExpired()) {
+			LOGGER.debug("Cached user {} has an expired token; resolving again", cached.getLogin());
+			expiredHits.increment();
+			return Freshness.EXPIRED;
+		}
+
+		long age = cached.getResolvedAt() != null ? System.currentTimeMillis() - cached.getResolvedAt() : 0;
+		if (freshMillis <= 0 || age < freshMillis) {
+			freshHits.increment();
+			return Freshness.FRESH;
+		}
+		if (age < freshMillis + maxStaleMillis) {
+			staleHits.increment();
+			return Freshness.STALE;
+		}
+
+		LOGGER.debug("Cached user {} is too stale to serve; resolving again", cached.getLogin());
+		tooStaleHits.increment();
+		return Freshness.TOO_STALE;
+	}
+
+	/**
+	 * Resolve a stale user again in the background, unless it already is. If that fails the stale user is left cached,
+	 * to be served until it is too stale.
+	 *
+	 * @param resolve Resolves the token again; returns null if the token was ruled out, and does not reject it.
+	 */
+	void refreshInBackground(TokenKey key, Supplier<User> resolve) {
+		if (!refreshing.add(key)) {
+			// Already being refreshed
+			return;
+		}
+
+		refreshExecutor.execute(() -> {
+			try {
+				User user = resolve.get();
+				(user != null ? refreshSuccesses : refreshRejections).increment();
+			} catch (RuntimeException e) {
+				refreshFailures.increment();
+				LOGGER.warn("Failed to refresh cached user; serving it stale. {}", e.getMessage());
+			} finally {
+				refreshing.remove(key);
+			}
+		});
+	}
+
+	private static Counter cacheRequests(MeterRegistry meterRegistry, String result) {
+		return Counter.builder("ims.account.cache.requests")
+				.description("Token lookups by whether a cached user was served fresh or stale, found expired or too stale, or missing")
+				.tag("result", result)
+				.register(meterRegistry);
+	}
+
+	private static Counter cacheRefreshes(MeterRegistry meterRegistry, String outcome) {
+		return Counter.builder("ims.account.cache.refreshes")
+				.description("Background refreshes of stale cached users by outcome")
+				.tag("outcome", outcome)
+				.register(meterRegistry);
+	}
+}
@@ -0,0 +1,187 @@
+package org.snomed.ims.service;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+/**
+ * Runs blocking upstream calls on a shared executor while limiting how many calls any one request may have in flight.
+ * Each request opens a {@link Scope}; tasks submitted to it queue until one of the scope's permits is free and the
+ * scope shares a single deadline. Tasks never wait on one another: recursive walks compose the returned futures, so a
+ * small pool cannot deadlock however deep the tree is.
+ */
+public class BoundedFanOut {
+	private final Executor executor;
+	private final int parallelism;
+	private final Duration timeout;
+
+	public BoundedFanOut(Executor executor, int parallelism, Duration timeout) {
+		if (parallelism < 1) {
+			throw new IllegalArgumentException("Parallelism must be at least 1");
+		}
+		this.executor = executor;
+		this.parallelism = parallelism;
+		this.timeout = timeout;
+	}
+
+	/**
+	 * Create a fixed size pool of daemon threads suitable for blocking HTTP calls.
+	 *
+	 * @param threads    Maximum number of pool threads.
+	 * @param namePrefix Prefix for the thread names.
+	 * @return A new executor; idle threads are released after a minute.
+	 */
+	public static ExecutorService newExecutor(int threads, String namePrefix) {
+		AtomicInteger count = new AtomicInteger();
+		ThreadPoolExecutor executor = new ThreadPoolExecutor(threads, threads, 60, TimeUnit.SECONDS, new LinkedBlockingQueue<>(), runnable -> {
+			Thread thread = new Thread(runnable, namePrefix + "-" + count.incrementAndGet());
+			thread.setDaemon(true);
+			return thread;
+		});
+		executor.allowCoreThreadTimeOut(true);
+		return executor;
+	}
+
+	/**
+	 * Concatenate the results of the given futures, keeping the order of the futures rather than completion order.
+	 */
+	public static <T> CompletableFuture<List<T>> concat(List<CompletableFuture<List<T>>> parts) {
+		if (parts.isEmpty()) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+		return CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).thenApply(ignored -> {
+			List<T> combined = new ArrayList<>();
+			for (CompletableFuture<List<T>> part : parts) {
+				combined.addAll(part.join());
+			}
+			return combined;
+		});
+	}
+
+	public Scope open() {
+		return new Scope(System.nanoTime() + timeout.toNanos());
+	}
+
+	/**
+	 * The calls made on behalf of one request.
+	 */
+	public final class Scope {
+		private final long deadline;
+		private final Queue<Pending> pending = new ConcurrentLinkedQueue<>();
+		private final AtomicInteger running = new AtomicInteger();
+		private volatile boolean cancelled;
+
+		private Scope(long deadline) {
+			this.deadline = deadline;
+		}
+
+		/**
+		 * Queue a blocking task to run once a permit is free.
+		 *
+		 * @param task Task to run.
+		 * @return Future completed with the task's result; cancelled if the scope is cancelled or its deadline passes first.
+		 */
+		public <T> CompletableFuture<T> supply(Supplier<T> task) {
+			CompletableFuture<T> result = new CompletableFuture<>();
+			if (cancelled) {
+				result.cancel(false);
+				return result;
+			}
+			// Counted against the submitting request, including tasks submitted as this one's result completes
+			pending.add(new Pending(UpstreamCalls.propagate(() -> {
+				if (cancelled || System.nanoTime() - deadline > 0) {
+					result.cancel(false);
+					return;
+				}
+				try {
+					result.complete(task.get());
+				} catch (Throwable e) {
+					result.completeExceptionally(e);
+				}
+			}), result));
+			if (cancelled) {
+				// Raced with cancel(); make sure nothing is left queued
+				cancelPending();
+			}
+			drain();
+			return result;
+		}
+
+		/**
+		 * Wait for a result until the scope's deadline.
+		 *
+		 * @param future Future built from tasks in this scope.
+		 * @return The future's result.
+		 * @throws RuntimeServiceException if the deadline passes or the work fails.
+		 */
+		public <T> T join(CompletableFuture<T> future) {
+			try {
+				return future.get(Math.max(deadline - System.nanoTime(), 0), TimeUnit.NANOSECONDS);
+			} catch (TimeoutException | CancellationException e) {
+				cancel();
+				throw new RuntimeServiceException("Upstream calls did not complete within " + timeout, e);
+			} catch (InterruptedException e) {
+				cancel();
+				Thread.currentThread().interrupt();
+				throw new RuntimeServiceException("Interrupted while waiting for upstream calls", e);
+			} catch (ExecutionException e) {
+				cancel();
+				throw new RuntimeServiceException("Upstream calls failed", e.getCause());
+			}
+		}
+
+		private void cancel() {
+			cancelled = true;
+			cancelPending();
+		}
+
+		private void cancelPending() {
+			// Complete queued futures so nothing composed on them waits for tasks that will never run
+			Pending next;
+			while ((next = pending.poll()) != null) {
+				next.result().cancel(false);
+			}
+		}
+
+		private void drain() {
+			while (!pending.isEmpty()) {
+				int current = running.get();
+				if (current >= parallelism) {
+					// A running task will pick the queue up again when it finishes
+					return;
+				}
+				if (!running.compareAndSet(current, current + 1)) {
+					continue;
+				}
+				Pending next = pending.poll();
+				if (next == null) {
+					running.decrementAndGet();
+					continue;
+				}
+				try {
+					executor.execute(() -> {
+						try {
+							next.task().run();
+						} finally {
+							running.decrementAndGet();
+							drain();
+						}
+					});
+				} catch (RejectedExecutionException e) {
+					running.decrementAndGet();
+					next.result().completeExceptionally(e);
+					cancel();
+					throw e;
+				}
+			}
+		}
+
+		private record Pending(Runnable task, CompletableFuture<?> result) {
+		}
+	}
+}
@@ -0,0 +1,169 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.FunctionCounter;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import io.micrometer.core.instrument.distribution.ValueAtPercentile;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.CacheEventListener;
+import org.ehcache.event.EventType;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.LongSupplier;
+import java.util.function.Supplier;
+import java.util.function.ToIntFunction;
+
+/**
+ * Counts one cache's events and loads, and estimates its entries and their size, for the metrics endpoint and the
+ * cache statistics view. Registered as a synchronous listener, so an event costs a few increments on the thread that
+ * caused it rather than a dispatch to another. Ehcache raises no events when a cache is cleared, so clearing is
+ * reported separately. Size is estimated from the serialized size of a sample of the values written, which is what the
+ * off-heap and disk tiers hold. Hits and misses are read from the cache's own statistics, where they are published.
+ */
+public class CacheStatistics implements CacheEventListener<Object, Object> {
+	private static final int SAMPLE_EVERY = 64;
+	private static final int SAMPLE_WINDOW = 32;
+
+	private final String cacheName;
+	private final MeterRegistry meterRegistry;
+	private final Map<EventType, Counter> events = new EnumMap<>(EventType.class);
+	private final AtomicLong trackedEntries = new AtomicLong();
+	private final LongSupplier entries;
+	private final ToIntFunction<Object> sizer;
+	private final AtomicLong writes = new AtomicLong();
+	private final AtomicLong samples = new AtomicLong();
+	private final Timer loads;
+	private volatile double meanEntryBytes;
+
+	/**
+	 * Statistics of a single cache's content and events.
+	 *
+	 * @param entries        Number of entries held.
+	 * @param estimatedBytes Estimated serialized size of all entries; null if not estimated.
+	 * @param hits           Reads that found an entry; null if the cache does not publish statistics.
+	 * @param misses         Reads that found no entry; null if the cache does not publish statistics.
+	 * @param evicted        Entries evicted to make space.
+	 * @param expired        Entries expired.
+	 * @param removed        Entries removed or evicted on request.
+	 * @param loads          Number of values loaded from upstream for the cache.
+	 * @param meanLoadMillis Mean time to load a value.
+	 * @param p99LoadMillis  99th percentile of the time to load a value.
+	 */
+	public record Snapshot(long entries, Long estimatedBytes, Long hits, Long misses, long evicted, long expired, long removed,
+	                       long loads, double meanLoadMillis, double p99LoadMillis) {
+	}
+
+	/**
+	 * @param cacheName     Name of the cache, used to tag its meters.
+	 * @param meterRegistry Registry of the cache's meters.
+	 * @param entries       Source of the number of entries where known more accurately than by counting events, as
+	 *                      for entries restored from disk; null to count events.
+	 * @param sizer         Serialized size of an entry, key included, given its value; null not to estimate size.
+	 */
+	public CacheStatistics(String cacheName, MeterRegistry meterRegistry, LongSupplier entries, ToIntFunction<Object> sizer) {
+		this.cacheName = cacheName;
+		this.meterRegistry = meterRegistry;
+		this.entries = entries != null ? entries : trackedEntries::get;
+		this.sizer = sizer;
+
+		for (EventType type : EventType.values()) {
+			events.put(type, Counter.builder("ims.cache.events")
+					.description("Cache events by type")
+					.tag("cache", cacheName)
+					.tag("type", type.name().toLowerCase())
+					.register(meterRegistry));
+		}
+		this.loads = Timer.builder("ims.cache.loads")
+				.description("Time to load values from upstream for the cache")
+				.tag("cache", cacheName)
+				.publishPercentiles(0.5, 0.99)
+				.publishPercentileHistogram()
+				.register(meterRegistry);
+
+		Gauge.builder("ims.cache.entries", this, CacheStatistics::entries)
+				.description("Entries held by the cache")
+				.tag("cache", cacheName)
+				.register(meterRegistry);
+		if (sizer != null) {
+			Gauge.builder("ims.cache.size.estimated", this, CacheStatistics::estimatedBytes)
+					.description("Estimated serialized size of the cache's entries")
+					.tag("cache", cacheName)
+					.baseUnit("bytes")
+					.register(meterRegistry);
+		}
+	}
+
+	@Override
+	public void onEvent(CacheEvent<?, ?> event) {
+		events.get(event.getType()).increment();
+		switch (event.getType()) {
+			case CREATED -> {
+				trackedEntries.incrementAndGet();
+				sample(event.getNewValue());
+			}
+			case UPDATED -> sample(event.getNewValue());
+			case REMOVED, EXPIRED, EVICTED -> trackedEntries.updateAndGet(count -> Math.max(0, count - 1));
+		}
+	}
+
+	/**
+	 * Record that the cache has been cleared.
+	 */
+	public void cleared() {
+		trackedEntries.set(0);
+	}
+
+	/**
+	 * Load a value for the cache, recording how long it takes.
+	 */
+	public <T> T recordLoad(Supplier<T> load) {
+		return loads.record(load);
+	}
+
+	public long entries() {
+		return entries.getAsLong();
+	}
+
+	public double estimatedBytes() {
+		return entries() * meanEntryBytes;
+	}
+
+	public Snapshot snapshot() {
+		double p99 = 0;
+		for (ValueAtPercentile percentile : loads.takeSnapshot().percentileValues()) {
+			if (percentile.percentile() == 0.99) {
+				p99 = percentile.value(TimeUnit.MILLISECONDS);
+			}
+		}
+
+		return new Snapshot(entries(), sizer != null ? Math.round(estimatedBytes()) : null, gets("hit"), gets("miss"),
+				count(EventType.EVICTED), count(EventType.EXPIRED), count(EventType.REMOVED),
+				loads.count(), loads.mean(TimeUnit.MILLISECONDS), p99);
+	}
+
+	private void sample(Object value) {
+		if (sizer == null || value == null || writes.getAndIncrement() % SAMPLE_EVERY != 0) {
+			return;
+		}
+
+		// Moving average over the most recent samples, so the estimate follows changes in what is cached
+		long n = Math.min(samples.incrementAndGet(), SAMPLE_WINDOW);
+		double mean = meanEntryBytes;
+		meanEntryBytes = mean + (sizer.applyAsInt(value) - mean) / n;
+	}
+
+	private long count(EventType type) {
+		return (long) events.get(type).count();
+	}
+
+	private Long gets(String result) {
+		// Published by the actuator's cache metrics where the cache keeps statistics
+		FunctionCounter counter = meterRegistry.find("cache.gets").tags("cache", cacheName, "result", result).functionCounter();
+		return counter != null ? (long) counter.count() : null;
+	}
+}
@@ -0,0 +1,219 @@
+package org.snomed.ims.service;
+
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.function.Consumer;
+
+/**
+ * Bus exchanging invalidations through the Consul key/value store. Each invalidation is written under the prefix as
+ * its own key, and every node watches the prefix with blocking queries, applying keys modified since the last it
+ * applied. Writes that fail are retried in order until they succeed, and a failed watch resumes from the last applied
+ * key, so every invalidation reaches every node at least once. Keys are deleted once older than the retention, which
+ * should cover the account cache's time to live: a node starting up applies all retained invalidations, so users it
+ * restores from its disk tier are not served after being logged out elsewhere while it was down.
+ */
+public class ConsulInvalidationBus implements InvalidationBus, Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(ConsulInvalidationBus.class);
+	private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+
+	private record Entry(String key, String value) {
+	}
+
+	private final ConsulClient consul;
+	private final String token;
+	private final String prefix;
+	private final Duration wait;
+	private final Duration retention;
+	private final Queue<Entry> pending = new ConcurrentLinkedQueue<>();
+	private final List<Consumer<Invalidation>> subscribers = new CopyOnWriteArrayList<>();
+	private final ScheduledExecutorService publisher;
+	private Thread watchThread;
+	private long lastApplied;
+	private long nextCleanUp;
+	private volatile boolean closed;
+
+	/**
+	 * @param consul    Client of the local Consul agent.
+	 * @param token     ACL token; null or empty for none.
+	 * @param prefix    Key prefix under which invalidations are exchanged, ending with a slash.
+	 * @param wait      Longest a blocking query waits for changes.
+	 * @param retention How long invalidations are kept.
+	 */
+	public ConsulInvalidationBus(ConsulClient consul, String token, String prefix, Duration wait, Duration retention) {
+		this.consul = consul;
+		this.token = token == null || token.isEmpty() ? null : token;
+		this.prefix = prefix.endsWith("/") ? prefix : prefix + "/";
+		this.wait = wait;
+		this.retention = retention;
+		this.publisher = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "invalidation-publisher");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	@Override
+	public void publish(Invalidation invalidation) {
+		// The publish time in the key lets any node delete it once it is past retention
+		String key = prefix + invalidation.origin() + "/" + System.currentTimeMillis() + "-" + invalidation.sequence();
+		pending.add(new Entry(key, invalidation.encode()));
+		publisher.execute(this::flush);
+	}
+
+	@Override
+	public synchronized void subscribe(Consumer<Invalidation> subscriber) {
+		subscribers.add(subscriber);
+		if (watchThread == null && !closed) {
+			watchThread = new Thread(this::watchLoop, "invalidation-watcher");
+			watchThread.setDaemon(true);
+			watchThread.start();
+			LOGGER.info("Watching Consul for invalidations under {}", prefix);
+		}
+	}
+
+	/**
+	 * @return Number of invalidations not yet written to Consul.
+	 */
+	public int pending() {
+		return pending.size();
+	}
+
+	@Override
+	public synchronized void close() {
+		closed = true;
+		if (!pending.isEmpty()) {
+			LOGGER.warn("{} invalidations were not sent to other nodes before shutting down.", pending.size());
+		}
+		publisher.shutdownNow();
+		if (watchThread != null) {
+			watchThread.interrupt();
+		}
+	}
+
+	void flush() {
+		Entry entry;
+		while ((entry = pending.peek()) != null) {
+			try {
+				consul.setKVValue(entry.key(), entry.value(), token, new PutParams());
+				pending.remove();
+			} catch (RuntimeException e) {
+				LOGGER.warn("Failed to send invalidation to Consul; retrying in {}. {}", RETRY_DELAY, e.getMessage());
+				if (!closed) {
+					publisher.schedule(this::flush, RETRY_DELAY.toMillis(), TimeUnit.MILLISECONDS);
+				}
+				return;
+			}
+		}
+	}
+
+	private void watchLoop() {
+		long index = 0;
+		while (!closed) {
+			try {
+				index = watch(index);
+			} catch (RuntimeException e) {
+				if (closed) {
+					return;
+				}
+				LOGGER.warn("Failed to watch Consul for invalidations; retrying in {}. {}", RETRY_DELAY, e.getMessage());
+				try {
+					Thread.sleep(RETRY_DELAY.toMillis());
+				} catch (InterruptedException interrupted) {
+					Thread.currentThread().interrupt();
+					return;
+				}
+			}
+		}
+	}
+
+	/**
+	 * Wait for invalidations modified after index, and apply any not yet applied.
+	 *
+	 * @return Index to wait from next.
+	 */
+	long watch(long index) {
+		Response<List<GetValue>> response = consul.getKVValues(prefix, token, new QueryParams(wait.toSeconds(), index));
+		long nextIndex = response.getConsulIndex() != null ? response.getConsulIndex() : 0;
+		if (nextIndex < index) {
+			// Consul's index went backwards, as after restoring a snapshot, so modify indexes start again too
+			lastApplied = 0;
+		}
+
+		List<GetValue> values = response.getValue() != null ? new ArrayList<>(response.getValue()) : new ArrayList<>();
+		values.sort(Comparator.comparingLong(GetValue::getModifyIndex));
+		for (GetValue value : values) {
+			if (value.getModifyIndex() > lastApplied) {
+				deliver(value);
+				lastApplied = value.getModifyIndex();
+			}
+		}
+
+		cleanUp(values);
+		return Math.max(nextIndex, 0);
+	}
+
+	private void deliver(GetValue value) {
+		Invalidation invalidation;
+		try {
+			invalidation = Invalidation.decode(value.getDecodedValue());
+		} catch (IllegalArgumentException e) {
+			LOGGER.warn("Ignoring unreadable invalidation {}", value.getKey());
+			return;
+		}
+
+		for (Consumer<Invalidation> subscriber : subscribers) {
+			try {
+				subscriber.accept(invalidation);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Failed to apply invalidation {}. {}", invalidation.scope(), e.getMessage());
+			}
+		}
+	}
+
+	private void cleanUp(List<GetValue> values) {
+		long now = System.currentTimeMillis();
+		if (now < nextCleanUp) {
+			return;
+		}
+		nextCleanUp = now + retention.toMillis() / 4;
+
+		long cutOff = now - retention.toMillis();
+		for (GetValue value : values) {
+			Long publishedAt = publishedAt(value.getKey());
+			if (publishedAt != null && publishedAt < cutOff) {
+				// Any node may delete it; deleting twice is harmless
+				consul.deleteKVValue(value.getKey(), token);
+			}
+		}
+	}
+
+	private static Long publishedAt(String key) {
+		String name = key.substring(key.lastIndexOf('/') + 1);
+		int dash = name.indexOf('-');
+		if (dash <= 0) {
+			return null;
+		}
+		try {
+			return Long.parseLong(name.substring(0, dash));
+		} catch (NumberFormatException e) {
+			return null;
+		}
+	}
+}
@@ -2,16 +2,18 @@ package org.snomed.ims.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.UserInformationUpdateRequest;
 import org.snomed.ims.domain.crowd.*;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.http.HttpEntity;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.util.*;
@@ -59,14 +61,17 @@ public class CrowdRestClient implements IdentityProvider {
 
 		try {
 			return restTemplate.getForObject("/user?username={username}", User.class, Map.of(USERNAME, username));
-		} catch (Exception e) {
-			LOGGER.error("806fd9be-4c61-41aa-87dd-e3ab0ef1250f Failed to get user", e);
+		} catch (HttpClientErrorException e) {
+			if (!isNotFound(e)) {
+				throw new RuntimeServiceException("806fd9be-4c61-41aa-87dd-e3ab0ef1250f Failed to get user", e);
+			}
 			return null;
+		} catch (Exception e) {
+			throw new RuntimeServiceException("806fd9be-4c61-41aa-87dd-e3ab0ef1250f Failed to get user", e);
 		}
 	}
 
 	@Override
-	@Cacheable(value = "accountCache", key = "#token", unless = "#result == null")
 	public User getUserByToken(String token) {
 		if (token == null || token.isEmpty()) {
 			return null;
@@ -83,11 +88,21 @@ public class CrowdRestClient implements IdentityProvider {
 				return null;
 			}
 
+			user.setTokenExpiry(session.getExpiryDate());
 			user.setRoles(getUserRoles(user.getLogin()));
 			return user;
-		} catch (Exception e) {
-			LOGGER.error("0cdbce8a-e4cc-411f-bc71-64659ad027b3 Failed to get user by token", e);
+		} catch (HttpClientErrorException e) {
+			if (!isNotFound(e)) {
+				// Crowd refused this application rather than the session, for example because its password is wrong
+				throw new RuntimeServiceException("0cdbce8a-e4cc-411f-bc71-64659ad027b3 Failed to get user by token", e);
+			}
+			// Crowd does not know the session
+			LOGGER.debug("Session not found: {}", e.getStatusCode());
 			return null;
+		} catch (RuntimeServiceException e) {
+			throw e;
+		} catch (Exception e) {
+			throw new RuntimeServiceException("0cdbce8a-e4cc-411f-bc71-64659ad027b3 Failed to get user by token", e);
 		}
 	}
 
@@ -110,12 +125,22 @@ public class CrowdRestClient implements IdentityProvider {
 			}
 
 			return roles;
-		} catch (Exception e) {
-			LOGGER.error("7b0fe742-a69a-4a34-8cdc-ce86a312c95a Failed to get user's roles", e);
+		} catch (HttpClientErrorException e) {
+			if (!isNotFound(e)) {
+				throw new RuntimeServiceException("7b0fe742-a69a-4a34-8cdc-ce86a312c95a Failed to get user's roles", e);
+			}
+			// Crowd does not know the user
 			return Collections.emptyList();
+		} catch (Exception e) {
+			// An empty list would be taken for a user without roles, and replace the roles of a cached user
+			throw new RuntimeServiceException("7b0fe742-a69a-4a34-8cdc-ce86a312c95a Failed to get user's roles", e);
 		}
 	}
 
+	private static boolean isNotFound(HttpClientErrorException e) {
+		return e.getStatusCode().value() == HttpStatus.NOT_FOUND.value();
+	}
+
 	@Override
 	public List<User> searchUsersByGroup(String currentUserId, String groupName, String username, int maxResults, int startAt) {
 		if (groupName == null || groupName.isEmpty()) {
@@ -131,7 +156,8 @@ public class CrowdRestClient implements IdentityProvider {
 		}
 
 		try {
-			UsersCollection response = restTemplate.getForObject("/group/user/direct?groupname={groupname}&max-results={maxResults}&start-index={startIndex}" + (StringUtils.hasLength(username) ? "&username={username}" : ""), UsersCollection.class, params);
+			// expand=user returns each member's details inline rather than just a name and link
+			UsersCollection response = restTemplate.getForObject("/group/user/direct?groupname={groupname}&max-results={maxResults}&start-index={startIndex}&expand=user" + (StringUtils.hasLength(username) ? "&username={username}" : ""), UsersCollection.class, params);
 			if (response == null) {
 				return Collections.emptyList();
 			}
@@ -144,7 +170,8 @@ public class CrowdRestClient implements IdentityProvider {
 
 			List<User> users = new ArrayList<>();
 			for (User u : response.getUsers()) {
-				User user = getUser(u.getLogin());
+				// Expanded users always carry their active flag; look up any member that came back without details
+				User user = u.getActive() != null ? u : getUser(u.getLogin());
 				if (user == null) {
 					continue;
 				}
@@ -161,7 +188,7 @@ public class CrowdRestClient implements IdentityProvider {
 	}
 
 	@Override
-	@CacheEvict(value = "accountCache", key = "#token")
+	@CacheEvict(value = "accountCache", key = TokenKey.TOKEN_PARAMETER)
 	public boolean invalidateToken(String token) {
 		if (token == null || token.isEmpty()) {
 			return false;
@@ -181,7 +208,6 @@ public class CrowdRestClient implements IdentityProvider {
 	}
 
 	@Override
-	@CacheEvict(value = "accountCache", key = "#token")
 	public User updateUser(User user, UserInformationUpdateRequest request, String token) {
         Map<String, String> updatedFields = new HashMap<>();
         updatedFields.put(NAME, user.getLogin());
@@ -0,0 +1,129 @@
+package org.snomed.ims.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.file.*;
+import java.time.Duration;
+import java.util.Set;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Calls back when any of a set of files in a directory changes, from a background thread. Bursts of changes (an editor
+ * writing a file in several steps, or both files being replaced together) are coalesced into a single callback once
+ * the directory has been quiet for the debounce period. Where the filesystem cannot deliver change events, or polling
+ * is requested, the callback is instead made on every poll interval and is expected to check for changes itself.
+ */
+public class DirectoryWatcher implements Closeable {
+	private static final Logger LOGGER = LoggerFactory.getLogger(DirectoryWatcher.class);
+
+	private final Path directory;
+	private final Set<String> filenames;
+	private final Duration debounce;
+	private final Runnable onChange;
+	private WatchService watchService;
+	private Thread watchThread;
+	private ScheduledExecutorService poller;
+	private volatile boolean closed;
+
+	public DirectoryWatcher(Path directory, Set<String> filenames, Duration debounce, Runnable onChange) {
+		this.directory = directory;
+		this.filenames = Set.copyOf(filenames);
+		this.debounce = debounce;
+		this.onChange = onChange;
+	}
+
+	/**
+	 * Watch for filesystem change events, polling instead if the filesystem does not support them.
+	 */
+	public synchronized void watch(Duration pollInterval) {
+		try {
+			watchService = directory.getFileSystem().newWatchService();
+			directory.register(watchService, StandardWatchEventKinds.ENTRY_CREATE, StandardWatchEventKinds.ENTRY_MODIFY, StandardWatchEventKinds.ENTRY_DELETE);
+		} catch (IOException | UnsupportedOperationException e) {
+			LOGGER.warn("Cannot watch {} for changes ({}); polling every {} instead.", directory, e.getMessage(), pollInterval);
+			poll(pollInterval);
+			return;
+		}
+
+		watchThread = new Thread(this::watchLoop, "directory-watcher");
+		watchThread.setDaemon(true);
+		watchThread.start();
+		LOGGER.info("Watching {} for changes to {}", directory, filenames);
+	}
+
+	/**
+	 * Call back on a fixed interval rather than waiting for change events.
+	 */
+	public synchronized void poll(Duration pollInterval) {
+		poller = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "directory-poller");
+			thread.setDaemon(true);
+			return thread;
+		});
+		poller.scheduleWithFixedDelay(this::notifyChange, pollInterval.toMillis(), pollInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	@Override
+	public synchronized void close() throws IOException {
+		closed = true;
+		if (poller != null) {
+			poller.shutdownNow();
+		}
+		if (watchThread != null) {
+			watchThread.interrupt();
+		}
+		if (watchService != null) {
+			watchService.close();
+		}
+	}
+
+	private void watchLoop() {
+		try {
+			while (!closed) {
+				WatchKey key = watchService.take();
+				boolean relevant = isRelevant(key);
+				if (!relevant) {
+					continue;
+				}
+
+				// Wait for the directory to go quiet before reloading
+				while ((key = watchService.poll(debounce.toMillis(), TimeUnit.MILLISECONDS)) != null) {
+					isRelevant(key);
+				}
+				notifyChange();
+			}
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		} catch (ClosedWatchServiceException e) {
+			// Closed; nothing more to watch
+		}
+	}
+
+	private boolean isRelevant(WatchKey key) {
+		boolean relevant = false;
+		for (WatchEvent<?> event : key.pollEvents()) {
+			// Events may have been lost, so any of our files may have changed
+			if (event.kind() == StandardWatchEventKinds.OVERFLOW || (event.context() instanceof Path path && filenames.contains(path.toString()))) {
+				relevant = true;
+			}
+		}
+		if (!key.reset()) {
+			LOGGER.error("{} can no longer be watched; changes will not be picked up.", directory);
+			closed = true;
+		}
+		return relevant;
+	}
+
+	private void notifyChange() {
+		try {
+			onChange.run();
+		} catch (RuntimeException e) {
+			LOGGER.error("Failed to handle change to files in {}", directory, e);
+		}
+	}
+}
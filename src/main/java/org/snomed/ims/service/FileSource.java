@@ -14,7 +14,8 @@ import java.util.Properties;
 public class FileSource {
 
 	private final File file;
-	private Instant lastModified;
+	private volatile Instant lastModified;
+	private volatile Instant lastRead;
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	public FileSource(File directory, String filename) {
@@ -30,11 +31,19 @@ public class FileSource {
 		return !Files.getLastModifiedTime(file.toPath()).toInstant().equals(lastModified);
 	}
 
+	/**
+	 * Record the contents last read as applied, so that {@link #hasChanged()} only reports later changes. Not called
+	 * when the contents are rejected, so a bad file is retried on the next check.
+	 */
+	public void markLoaded() {
+		lastModified = lastRead;
+	}
+
 	public Properties readProperties() throws IOException {
 		try (InputStream resourceAsStream = new FileInputStream(file)) {
 			Properties properties = new Properties();
 			properties.load(resourceAsStream);
-			lastModified = Files.getLastModifiedTime(file.toPath()).toInstant();
+			lastRead = Files.getLastModifiedTime(file.toPath()).toInstant();
 			return properties;
 		} catch (IOException e) {
 			throw new IOException("Failed to read %s properties file.".formatted(file.getAbsolutePath()), e);
@@ -36,7 +36,10 @@ public interface IdentityProvider {
 	 * Return user if found by token; otherwise return null.
 	 *
 	 * @param token Token to match against User.
-	 * @return User if found by token; otherwise return null.
+	 * @return User if found by token; otherwise return null. Null is remembered as a rejection of the token, so it is only
+	 * returned when the upstream ruled the token out.
+	 * @throws RuntimeServiceException if the token could not be checked, for example because the upstream is unavailable
+	 * or refused this service's credentials.
 	 */
 	User getUserByToken(String token);
 
@@ -56,6 +59,7 @@ public interface IdentityProvider {
 	 * @param maxResults Size of page request.
 	 * @param startAt    Offset of page request.
 	 * @return Users in group. If group or username not found, return empty.
+	 * @throws RuntimeServiceException if the search could not complete, for example because walking the group tree ran out of time.
 	 */
 	List<User> searchUsersByGroup(String currentUserId, String groupName, String username, int maxResults, int startAt);
 
@@ -74,4 +78,32 @@ public interface IdentityProvider {
 	String buildAuthorizationUrl(String redirectUri, boolean promptNone);
 
 	String exchangeCodeForAccessToken(String code, String redirectUri);
+
+	/**
+	 * Reload any directory structure (groups, roles, clients) the provider holds in memory.
+	 *
+	 * @return Whether a directory was reloaded; false if the provider holds none or reloading failed.
+	 */
+	default boolean refreshDirectory() {
+		return false;
+	}
+
+	/**
+	 * Describe a token being logged out so that other nodes can reject it too. Only needed where tokens are verified
+	 * locally, as the upstream rejects logged out tokens itself.
+	 *
+	 * @param token Token being logged out.
+	 * @return The token's id and expiry; null if tokens are not verified locally.
+	 */
+	default TokenRevocation getRevocation(String token) {
+		return null;
+	}
+
+	/**
+	 * Reject a token logged out on another node until it expires.
+	 *
+	 * @param revocation Token id and expiry from {@link #getRevocation(String)} on that node.
+	 */
+	default void revoke(TokenRevocation revocation) {
+	}
 }
@@ -9,10 +9,13 @@ import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
 import org.springframework.web.client.RestTemplate;
 
+import java.io.Closeable;
 import java.io.IOException;
+import java.time.Duration;
+import java.util.concurrent.ExecutorService;
 
 @Service
-public class IdentityProviderFactory {
+public class IdentityProviderFactory implements Closeable {
 
     private final RestTemplate crowdRestTemplate;
     private final RestTemplate keyCloakRestTemplate;
@@ -20,6 +23,7 @@ public class IdentityProviderFactory {
     private final String fileDirectory;
 
     private final ApplicationProperties applicationProperties;
+    private ExecutorService traversalExecutor;
     private final Logger logger = LoggerFactory.getLogger(getClass());
 
     public enum ProviderType {
@@ -39,9 +43,53 @@ public class IdentityProviderFactory {
         logger.info("Using identity provider type {}", providerType);
         return switch (providerType) {
             case CROWD -> new CrowdRestClient(crowdRestTemplate);
-            case FILE -> new PropertyFileIdentityProvider(fileDirectory);
-            case KEYCLOAK -> new KeyCloakIdentityProvider(keyCloakRestTemplate, applicationProperties.getKeycloakUrl(), applicationProperties.getKeycloakRealms(), applicationProperties.getKeycloakClientId(), applicationProperties.getKeycloakClientSecrete(), applicationProperties.getKeycloakAdminClientId(), applicationProperties.getKeycloakAdminClientSecret());
+            case FILE -> new PropertyFileIdentityProvider(fileDirectory, applicationProperties.isFileReloadPolling(), Duration.ofSeconds(applicationProperties.getFilePollSeconds()));
+            case KEYCLOAK -> getKeyCloakIdentityProvider();
         };
     }
 
+    private KeyCloakIdentityProvider getKeyCloakIdentityProvider() {
+        return configure(new KeyCloakIdentityProvider(keyCloakRestTemplate, applicationProperties.getKeycloakUrl(), applicationProperties.getKeycloakRealms(),
+                applicationProperties.getKeycloakClientId(), applicationProperties.getKeycloakClientSecrete(), applicationProperties.getKeycloakAdminClientId(),
+                applicationProperties.getKeycloakAdminClientSecret(), getGroupTraversal()));
+    }
+
+    private BoundedFanOut getGroupTraversal() {
+        if (traversalExecutor == null) {
+            if (applicationProperties.isVirtualThreads()) {
+                // Walks block on admin API calls; their concurrency is bounded by the traversal parallelism and the upstream limit
+                traversalExecutor = VirtualThreads.newExecutor("keycloak-group-traversal");
+            } else {
+                traversalExecutor = BoundedFanOut.newExecutor(applicationProperties.getKeycloakTraversalThreads(), "keycloak-group-traversal");
+            }
+        }
+        return new BoundedFanOut(traversalExecutor, applicationProperties.getKeycloakTraversalParallelism(),
+                Duration.ofSeconds(applicationProperties.getKeycloakTraversalTimeoutSeconds()));
+    }
+
+    private KeyCloakIdentityProvider configure(KeyCloakIdentityProvider identityProvider) {
+        if (applicationProperties.isKeycloakLocalTokenValidation()) {
+            logger.info("Verifying Keycloak access tokens locally");
+            identityProvider.setTokenVerifier(new KeyCloakTokenVerifier(keyCloakRestTemplate, applicationProperties.getKeycloakUrl(), applicationProperties.getKeycloakRealms(),
+                    applicationProperties.getKeycloakTokenIssuer(), applicationProperties.getKeycloakTokenAudience(), applicationProperties.isKeycloakTokenRevocationCheck()));
+        }
+        if (applicationProperties.isKeycloakRealmDirectoryEnabled()) {
+            Duration refreshInterval = Duration.ofSeconds(applicationProperties.getKeycloakRealmDirectoryRefreshSeconds());
+            logger.info("Holding Keycloak realm directory in memory, refreshed every {}", refreshInterval);
+            identityProvider.enableRealmDirectory(refreshInterval, new BoundedFanOut(traversalExecutor, applicationProperties.getKeycloakTraversalParallelism(),
+                    Duration.ofSeconds(applicationProperties.getKeycloakRealmDirectoryLoadTimeoutSeconds())));
+        }
+        return identityProvider;
+    }
+
+    /**
+     * Shut down the traversal executor shared by the Keycloak providers this factory built.
+     */
+    @Override
+    public void close() {
+        if (traversalExecutor != null) {
+            traversalExecutor.shutdownNow();
+        }
+    }
+
 }
@@ -0,0 +1,98 @@
+package org.snomed.ims.service;
+
+import org.snomed.ims.domain.TokenKey;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.IntConsumer;
+
+/**
+ * Compact, probabilistic record of tokens that have been invalidated (a Bloom filter). It can report a token that was
+ * never invalidated, but never misses one that was, so it is used only to decide that a token must not be served from
+ * or written to the account cache. Entries age out in two generations: each generation is retired after the retention
+ * period, so a token is remembered for between one and two retention periods.
+ */
+class InvalidatedTokenFilter {
+	private final int bits;
+	private final int hashes;
+	private final long retentionMillis;
+	private final Clock clock;
+	private volatile Generation current;
+	private volatile Generation previous;
+
+	private record Generation(AtomicLongArray words, long startedAt) {
+	}
+
+	InvalidatedTokenFilter(int expectedTokens, double falsePositiveRate, Duration retention) {
+		this(expectedTokens, falsePositiveRate, retention, Clock.systemUTC());
+	}
+
+	InvalidatedTokenFilter(int expectedTokens, double falsePositiveRate, Duration retention, Clock clock) {
+		// Standard sizing: m = -n ln p / (ln 2)^2 bits and k = m/n ln 2 hash functions
+		double ln2 = Math.log(2);
+		this.bits = (int) Math.max(64, Math.ceil(-expectedTokens * Math.log(falsePositiveRate) / (ln2 * ln2)));
+		this.hashes = (int) Math.max(1, Math.round((double) bits / expectedTokens * ln2));
+		this.retentionMillis = retention.toMillis();
+		this.clock = clock;
+		this.current = newGeneration(clock.millis());
+		this.previous = newGeneration(0);
+	}
+
+	void add(TokenKey key) {
+		AtomicLongArray words = rotateIfDue().words();
+		forEachBit(key, bit -> words.getAndAccumulate(bit >>> 6, 1L << bit, (word, mask) -> word | mask));
+	}
+
+	/**
+	 * @return False if the token has certainly not been invalidated recently; true if it may have been.
+	 */
+	boolean mightContain(TokenKey key) {
+		rotateIfDue();
+		return contains(current, key) || contains(previous, key);
+	}
+
+	private boolean contains(Generation generation, TokenKey key) {
+		long h1 = key.getMostSignificantBits();
+		long h2 = key.getLeastSignificantBits();
+		for (int i = 0; i < hashes; i++) {
+			int bit = bitIndex(h1, h2, i);
+			if ((generation.words().get(bit >>> 6) & (1L << bit)) == 0) {
+				return false;
+			}
+		}
+		return true;
+	}
+
+	private void forEachBit(TokenKey key, IntConsumer action) {
+		// Two independent 64-bit hashes from the digest combine into any number of hash functions (Kirsch-Mitzenmacher)
+		long h1 = key.getMostSignificantBits();
+		long h2 = key.getLeastSignificantBits();
+		for (int i = 0; i < hashes; i++) {
+			action.accept(bitIndex(h1, h2, i));
+		}
+	}
+
+	private int bitIndex(long h1, long h2, int i) {
+		return (int) Math.floorMod(h1 + i * h2, (long) bits);
+	}
+
+	private Generation rotateIfDue() {
+		Generation generation = current;
+		long now = clock.millis();
+		if (now - generation.startedAt() < retentionMillis) {
+			return generation;
+		}
+		synchronized (this) {
+			if (current == generation) {
+				previous = generation;
+				current = newGeneration(now);
+			}
+			return current;
+		}
+	}
+
+	private Generation newGeneration(long startedAt) {
+		return new Generation(new AtomicLongArray((bits + 63) / 64), startedAt);
+	}
+}
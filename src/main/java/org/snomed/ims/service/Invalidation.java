@@ -0,0 +1,63 @@
+package org.snomed.ims.service;
+
+/**
+ * Eviction made on one node, to be repeated on the others.
+ *
+ * @param scope    What is evicted.
+ * @param value    Token key in hex, login, user id or role, according to scope; empty for {@link Scope#ALL}. For
+ *                 {@link Scope#LOGOUT}, a logout as encoded by {@link AccountInvalidations.LogOut#encode()}.
+ * @param origin   Id of the node that made the eviction.
+ * @param sequence Position of the eviction among those made by the origin node.
+ */
+public record Invalidation(Scope scope, String value, String origin, long sequence) {
+	public enum Scope {
+		/**
+		 * A token has been logged out; it is evicted and rejected and, where tokens are verified locally, refused until it expires.
+		 */
+		LOGOUT,
+		/**
+		 * The cached user for a token is evicted.
+		 */
+		TOKEN,
+		LOGIN,
+		USER_ID,
+		ROLE,
+		/**
+		 * Every cache is cleared.
+		 */
+		ALL
+	}
+
+	public Invalidation {
+		if (scope == null || origin == null || origin.isEmpty() || origin.contains(" ")) {
+			throw new IllegalArgumentException("Invalidation must have a scope and an origin without spaces.");
+		}
+		if (value == null) {
+			value = "";
+		}
+	}
+
+	/**
+	 * @return Single line text form, as stored by transports between nodes.
+	 */
+	public String encode() {
+		return scope + " " + origin + " " + sequence + " " + value;
+	}
+
+	/**
+	 * Parse the text form of {@link #encode()}.
+	 *
+	 * @throws IllegalArgumentException if text is not an encoded invalidation.
+	 */
+	public static Invalidation decode(String text) {
+		String[] parts = text != null ? text.split(" ", 4) : new String[0];
+		if (parts.length < 3) {
+			throw new IllegalArgumentException("Not an encoded invalidation.");
+		}
+		try {
+			return new Invalidation(Scope.valueOf(parts[0]), parts.length == 4 ? parts[3] : "", parts[1], Long.parseLong(parts[2]));
+		} catch (NumberFormatException e) {
+			throw new IllegalArgumentException("Not an encoded invalidation.", e);
+		}
+	}
+}
@@ -0,0 +1,26 @@
+package org.snomed.ims.service;
+
+import java.util.function.Consumer;
+
+/**
+ * Carries evictions between the nodes behind the load balancer, so a token logged out or a user evicted on one node is
+ * not served from another node's cache. Delivery is at least once: an invalidation may arrive more than once, late, or
+ * back at the node that published it, so subscribers apply them idempotently and ignore their own.
+ */
+public interface InvalidationBus {
+
+	/**
+	 * Send invalidation to every subscribed node. Never blocks on an unavailable transport; undelivered invalidations
+	 * are retried in the background.
+	 *
+	 * @param invalidation Invalidation to send.
+	 */
+	void publish(Invalidation invalidation);
+
+	/**
+	 * Receive invalidations published by any node, on a thread belonging to the bus.
+	 *
+	 * @param subscriber Called for each invalidation received.
+	 */
+	void subscribe(Consumer<Invalidation> subscriber);
+}
@@ -0,0 +1,160 @@
+package org.snomed.ims.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.web.client.HttpClientErrorException;
+
+import java.time.Clock;
+import java.time.Duration;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Supplier;
+
+/**
+ * Holds the Keycloak admin access token in memory and refreshes it in the background shortly before it expires.
+ * Callers that find no usable token share a single in-flight token request rather than each requesting their own.
+ */
+class KeyCloakAdminTokenCache {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KeyCloakAdminTokenCache.class);
+	private static final Duration RETRY_DELAY = Duration.ofSeconds(5);
+	// Treat the token as expired slightly early so it is not sent to Keycloak in its final moments
+	private static final long EXPIRY_SAFETY_MILLIS = 5_000;
+
+	/**
+	 * Admin access token together with the time, in epoch milliseconds, at which Keycloak will stop accepting it.
+	 */
+	record AdminToken(String value, long expiresAt) {
+		boolean isUsable(long now, long safetyMillis) {
+			return value != null && !value.isEmpty() && now < expiresAt - safetyMillis;
+		}
+	}
+
+	private final Supplier<AdminToken> tokenRequest;
+	private final Duration refreshBeforeExpiry;
+	private final Clock clock;
+	private final ScheduledExecutorService scheduler;
+	private final AtomicReference<CompletableFuture<AdminToken>> inFlight = new AtomicReference<>();
+	private final AtomicReference<AdminToken> current = new AtomicReference<>();
+	private ScheduledFuture<?> scheduledRefresh;
+
+	KeyCloakAdminTokenCache(Supplier<AdminToken> tokenRequest, Duration refreshBeforeExpiry) {
+		this(tokenRequest, refreshBeforeExpiry, Clock.systemUTC(), Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "keycloak-admin-token-refresh");
+			thread.setDaemon(true);
+			return thread;
+		}));
+	}
+
+	KeyCloakAdminTokenCache(Supplier<AdminToken> tokenRequest, Duration refreshBeforeExpiry, Clock clock, ScheduledExecutorService scheduler) {
+		this.tokenRequest = tokenRequest;
+		this.refreshBeforeExpiry = refreshBeforeExpiry;
+		this.clock = clock;
+		this.scheduler = scheduler;
+	}
+
+	/**
+	 * Return a usable admin token, requesting one from Keycloak only when none is held.
+	 *
+	 * @return Admin access token, or null if Keycloak could not issue one.
+	 */
+	String getToken() {
+		AdminToken token = current.get();
+		if (token != null && token.isUsable(clock.millis(), EXPIRY_SAFETY_MILLIS)) {
+			return token.value();
+		}
+
+		try {
+			AdminToken fetched = fetch().get();
+			return fetched != null ? fetched.value() : null;
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+			return null;
+		} catch (ExecutionException e) {
+			LOGGER.error("Failed to obtain admin token", e.getCause());
+			return null;
+		}
+	}
+
+	/**
+	 * Drop the held token if it is the one Keycloak has just refused, for example after a restart or a revoked
+	 * session, and return a new one. Callers refused with an older token pick up the current one instead.
+	 *
+	 * @param rejectedToken Admin token Keycloak answered with 401.
+	 * @return Admin access token to retry with, or null if Keycloak could not issue one.
+	 */
+	String renew(String rejectedToken) {
+		AdminToken token = current.get();
+		if (token != null && token.value().equals(rejectedToken) && current.compareAndSet(token, null)) {
+			LOGGER.info("Keycloak refused the cached admin token; requesting a new one");
+		}
+		return getToken();
+	}
+
+	/**
+	 * @return Whether the failure, or any of its causes, is Keycloak refusing the admin token.
+	 */
+	static boolean isRejection(Throwable failure) {
+		for (Throwable cause = failure; cause != null; cause = cause.getCause()) {
+			if (cause instanceof HttpClientErrorException.Unauthorized) {
+				return true;
+			}
+		}
+		return false;
+	}
+
+	private CompletableFuture<AdminToken> fetch() {
+		CompletableFuture<AdminToken> request = new CompletableFuture<>();
+		CompletableFuture<AdminToken> existing = inFlight.compareAndExchange(null, request);
+		if (existing != null) {
+			// Another thread is already talking to Keycloak; share its result
+			return existing;
+		}
+
+		try {
+			AdminToken token = tokenRequest.get();
+			if (token != null && token.isUsable(clock.millis(), 0)) {
+				current.set(token);
+				scheduleRefresh(token);
+			} else {
+				scheduleRetry();
+			}
+			request.complete(token);
+		} catch (RuntimeException e) {
+			scheduleRetry();
+			request.completeExceptionally(e);
+		} finally {
+			inFlight.set(null);
+		}
+		return request;
+	}
+
+	private void scheduleRefresh(AdminToken token) {
+		long lifetime = token.expiresAt() - clock.millis();
+		long delay = Math.max(lifetime - Math.min(refreshBeforeExpiry.toMillis(), lifetime / 2), 0);
+		schedule(delay);
+		LOGGER.debug("Admin token refresh scheduled in {} ms", delay);
+	}
+
+	private void scheduleRetry() {
+		// Only worth retrying in the background while the token we hold is still good
+		AdminToken token = current.get();
+		if (token != null && token.isUsable(clock.millis(), 0)) {
+			schedule(RETRY_DELAY.toMillis());
+		}
+	}
+
+	private synchronized void schedule(long delayMillis) {
+		if (scheduledRefresh != null) {
+			scheduledRefresh.cancel(false);
+		}
+		scheduledRefresh = scheduler.schedule(this::refresh, delayMillis, TimeUnit.MILLISECONDS);
+	}
+
+	private void refresh() {
+		try {
+			fetch();
+		} catch (Exception e) {
+			LOGGER.warn("Background admin token refresh failed", e);
+		}
+	}
+}
@@ -2,24 +2,30 @@ package org.snomed.ims.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.UserInformationUpdateRequest;
 import org.snomed.ims.domain.keycloak.KeyCloakGroup;
 import org.snomed.ims.domain.keycloak.KeyCloakUser;
 import org.springframework.cache.annotation.CacheEvict;
-import org.springframework.cache.annotation.Cacheable;
 import org.springframework.core.ParameterizedTypeReference;
 import org.springframework.http.*;
 import org.springframework.util.CollectionUtils;
 import org.springframework.util.LinkedMultiValueMap;
 import org.springframework.util.MultiValueMap;
 import org.springframework.util.StringUtils;
+import org.springframework.web.client.HttpClientErrorException;
 import org.springframework.web.client.RestTemplate;
 
 import java.net.URLEncoder;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.Function;
 import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class KeyCloakIdentityProvider implements IdentityProvider {
 
@@ -42,6 +48,7 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
     private static final String QUERY_EXACT_TRUE = "&exact=true";
     private static final String QUERY_FIRST = "?first=";
     private static final String QUERY_MAX = "&max=";
+    private static final int USER_PAGE_SIZE = 100;
     private static final String ADMIN_GROUPS_CHILDREN = "/children";
     public static final String CLIENT_ID = "client_id";
     public static final String CLIENT_SECRET = "client_secret";
@@ -52,6 +59,10 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
     public static final String ROLES = "roles";
     public static final String OPENID_PROFILE_EMAIL = "openid profile email";
     public static final String PROTOCOL_OPENID_CONNECT_TOKEN = "/protocol/openid-connect/token";
+    public static final String EXPIRES_IN = "expires_in";
+    // OAuth error code for refused user credentials, as opposed to a refused client
+    private static final String INVALID_GRANT = "invalid_grant";
+    private static final Duration ADMIN_TOKEN_REFRESH_BEFORE_EXPIRY = Duration.ofSeconds(30);
 
     private final RestTemplate restTemplate;
 
@@ -67,7 +78,20 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
 
     private final String keycloakAdminClientSecret;
 
-    public KeyCloakIdentityProvider(RestTemplate restTemplate, String keycloakUrl, String keycloakRealms, String keycloakClientId, String keycloakClientSecrete, String keycloakAdminClientId, String keycloakAdminClientSecret) {
+    private final KeyCloakAdminTokenCache adminTokenCache;
+
+    private KeyCloakTokenVerifier tokenVerifier;
+
+    private final BoundedFanOut groupTraversal;
+
+    private KeyCloakRealmDirectory realmDirectory;
+
+    /**
+     * @param groupTraversal the executor, per-request parallelism and deadline to use for group and role-mapping traversals;
+     *                       the executor belongs to the caller, which shuts it down
+     */
+    public KeyCloakIdentityProvider(RestTemplate restTemplate, String keycloakUrl, String keycloakRealms, String keycloakClientId, String keycloakClientSecrete,
+                                    String keycloakAdminClientId, String keycloakAdminClientSecret, BoundedFanOut groupTraversal) {
         this.restTemplate = restTemplate;
         this.keycloakUrl = keycloakUrl;
         this.keycloakRealms = keycloakRealms;
@@ -75,6 +99,10 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         this.keycloakClientSecrete = keycloakClientSecrete;
         this.keycloakAdminClientId = keycloakAdminClientId;
         this.keycloakAdminClientSecret = keycloakAdminClientSecret;
+        this.groupTraversal = groupTraversal;
+        this.adminTokenCache = new KeyCloakAdminTokenCache(
+                () -> authenticateAsClient(this.keycloakAdminClientId, this.keycloakAdminClientSecret),
+                ADMIN_TOKEN_REFRESH_BEFORE_EXPIRY);
         
         LOGGER.info("KeyCloakIdentityProvider initialized with:");
         LOGGER.info("  - keycloakUrl: {}", keycloakUrl);
@@ -113,6 +141,46 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             keycloakUrl, ADMIN_REALMS, keycloakRealms);
     }
 
+    /**
+     * Verify access tokens locally against the realm signing keys instead of calling the introspection endpoint.
+     * @param tokenVerifier the verifier to use, or null to introspect every token remotely
+     */
+    public void setTokenVerifier(KeyCloakTokenVerifier tokenVerifier) {
+        this.tokenVerifier = tokenVerifier;
+    }
+
+    @Override
+    public TokenRevocation getRevocation(String token) {
+        return tokenVerifier != null ? tokenVerifier.getRevocation(token) : null;
+    }
+
+    @Override
+    public void revoke(TokenRevocation revocation) {
+        if (tokenVerifier != null) {
+            tokenVerifier.revoke(revocation);
+        }
+    }
+
+    /**
+     * Keep an in-memory snapshot of the realm's groups, clients and roles, reloaded on the given interval, and resolve
+     * group and role structure from it instead of walking the admin API on every search.
+     * @param refreshInterval how often to reload the realm
+     * @param loader fan-out used to load the realm; its deadline applies to each whole load
+     */
+    public void enableRealmDirectory(Duration refreshInterval, BoundedFanOut loader) {
+        this.realmDirectory = new KeyCloakRealmDirectory(restTemplate, keycloakUrl, keycloakRealms, this::getAdminToken, adminTokenCache::renew, loader);
+        this.realmDirectory.start(refreshInterval);
+    }
+
+    @Override
+    public boolean refreshDirectory() {
+        return realmDirectory != null && realmDirectory.refresh();
+    }
+
+    private KeyCloakRealmDirectory.Snapshot getRealmSnapshot() {
+        return realmDirectory != null ? realmDirectory.getSnapshot() : null;
+    }
+
     @Override
     public String authenticate(String username, String password) {
         if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
@@ -136,9 +204,15 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
                 return null;
             }
             return response.getOrDefault(ACCESS_TOKEN, "");
-        } catch (Exception e) {
-            LOGGER.error("ed680e99-d64b-4852-8006-7b7481890590 Failed to authenticate", e);
+        } catch (HttpClientErrorException e) {
+            if (!e.getResponseBodyAsString().contains(INVALID_GRANT)) {
+                // The client itself was refused, for example because its secret is wrong
+                throw new RuntimeServiceException("ed680e99-d64b-4852-8006-7b7481890590 Failed to authenticate", e);
+            }
+            LOGGER.debug("Credentials were refused for {}", username);
             return null;
+        } catch (Exception e) {
+            throw new RuntimeServiceException("ed680e99-d64b-4852-8006-7b7481890590 Failed to authenticate", e);
         }
     }
 
@@ -152,9 +226,8 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             HttpHeaders headers = new HttpHeaders();
             headers.setBearerAuth(adminToken);
             HttpEntity<String> requestEntity = new HttpEntity<>(headers);
-            ResponseEntity<List<KeyCloakUser>> response = restTemplate.exchange(
+            ResponseEntity<List<KeyCloakUser>> response = adminGet(
                     ADMIN_REALMS + this.keycloakRealms + "/users?exact=true&username=" + username,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {
                     }
@@ -162,13 +235,11 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             List<KeyCloakUser> keyCloakUsers = response.getBody();
             return !CollectionUtils.isEmpty(keyCloakUsers) ? toUser(keyCloakUsers.get(0)) : null;
         } catch (Exception e) {
-            LOGGER.error("fa34d4a5-2739-467a-a350-76f22bc463fb Failed to get user", e);
-            return null;
+            throw new RuntimeServiceException("fa34d4a5-2739-467a-a350-76f22bc463fb Failed to get user", e);
         }
     }
 
     @Override
-    @Cacheable(value = "accountCache", key = "#token", unless = "#result == null")
     public User getUserByToken(String token) {
         if (token == null || token.isEmpty()) {
             return null;
@@ -189,9 +260,8 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             headers.setBearerAuth(adminToken);
             HttpEntity<String> requestEntity = new HttpEntity<>(headers);
 
-            ResponseEntity<List<KeyCloakUser>> response = restTemplate.exchange(
+            ResponseEntity<List<KeyCloakUser>> response = adminGet(
                     ADMIN_REALMS + this.keycloakRealms + "/users?exact=true&username=" + username,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {
                     }
@@ -200,11 +270,11 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             if (CollectionUtils.isEmpty(users)) return Collections.emptyList();
 
             KeyCloakUser user = users.get(0);
-            ResponseEntity<Map> roleMappingsResponse = restTemplate.exchange(
+            ResponseEntity<Map<String, Object>> roleMappingsResponse = adminGet(
                     ADMIN_REALMS + this.keycloakRealms + USERS + user.getId() + "/role-mappings",
-                    HttpMethod.GET,
                     requestEntity,
-                    Map.class
+                    new ParameterizedTypeReference<>() {
+                    }
             );
 
             Map<String, Object> roleMappings = roleMappingsResponse.getBody();
@@ -254,44 +324,31 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         HttpHeaders headers = new HttpHeaders();
         headers.setBearerAuth(adminToken);
         HttpEntity<String> requestEntity = new HttpEntity<>(headers);
+        // Group tree walks below share one parallelism budget and deadline for this request
+        BoundedFanOut.Scope traversal = groupTraversal.open();
         
         try {
             // Since we have admin credentials (adminToken), we can search any group directly
             // No need to check current user's group membership when using admin access
             LOGGER.debug("Using admin credentials to search for group directly: {}", groupName);
-            List<KeyCloakGroup> keyCloakGroups = findGroupByName(groupName, requestEntity);
+            List<KeyCloakGroup> keyCloakGroups = findGroupByName(groupName, requestEntity, traversal);
             
             if (CollectionUtils.isEmpty(keyCloakGroups)) {
                 LOGGER.debug("Group not found: {}. Falling back to role search.", groupName);
-                List<User> usersByRole = getUsersForRole(groupName, username, requestEntity);
-                if (!CollectionUtils.isEmpty(usersByRole)) {
-                    if (startAt >= 0 && startAt < usersByRole.size()) {
-                        int toIndex = Math.min(startAt + maxResults, usersByRole.size());
-                        List<User> paginatedUsers = usersByRole.subList(startAt, toIndex);
-                        LOGGER.debug("Returning paginated users by role: {} to {} (total: {})", startAt, toIndex - 1, paginatedUsers.size());
-                        return paginatedUsers;
-                    }
-                    LOGGER.debug("No users found after pagination for role search");
-                    return Collections.emptyList();
-                }
-                return Collections.emptyList();
+                List<User> usersByRole = getUsersForRole(groupName, username, requestEntity, traversal, startAt, maxResults);
+                LOGGER.debug("Returning {} users by role from offset {}", usersByRole.size(), startAt);
+                return usersByRole;
             }
             
             LOGGER.debug("Found {} groups for admin search", keyCloakGroups.size());
             keyCloakGroups.forEach(group -> LOGGER.debug("Group: {} (ID: {})", group.getName(), group.getId()));
             
-            List<User> users = getUsersForGroup(groupName, username, keyCloakGroups, requestEntity);
-            LOGGER.debug("Retrieved {} users for group: {}", users.size(), groupName);
-            
-            if (startAt >= 0 && startAt < users.size()) {
-                int toIndex = Math.min(startAt + maxResults, users.size());
-                List<User> paginatedUsers = users.subList(startAt, toIndex);
-                LOGGER.debug("Returning paginated users: {} to {} (total: {})", startAt, toIndex - 1, paginatedUsers.size());
-                return paginatedUsers;
-            }
-            
-            LOGGER.debug("No users found after pagination");
-            return Collections.emptyList();
+            List<User> users = getUsersForGroup(groupName, username, keyCloakGroups, requestEntity, startAt, maxResults);
+            LOGGER.debug("Returning {} users for group: {} from offset {}", users.size(), groupName, startAt);
+            return users;
+        } catch (RuntimeServiceException e) {
+            // The walk ran out of time or failed part way; an empty list would read as "no members"
+            throw e;
         } catch (Exception e) {
             LOGGER.error("620cdd4c-f4c4-4105-8ebd-96b1925df746 Failed to get users by group name. Group: {}, CurrentUserId: {}, Error: {}", 
                 groupName, currentUserId, e.getMessage(), e);
@@ -300,11 +357,14 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
     }
 
     @Override
-    @CacheEvict(value = "accountCache", key = "#token")
+    @CacheEvict(value = "accountCache", key = TokenKey.TOKEN_PARAMETER)
     public boolean invalidateToken(String token) {
         if (token == null || token.isEmpty()) {
             return false;
         }
+        if (tokenVerifier != null) {
+            tokenVerifier.revoke(token);
+        }
         try {
             MultiValueMap<String, String> map = new LinkedMultiValueMap<>();
             map.add(TOKEN, token);
@@ -323,7 +383,6 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
     }
 
     @Override
-    @CacheEvict(value = "accountCache", key = "#token")
     public User updateUser(User user, UserInformationUpdateRequest request, String token) {
         Map<String, String> updatedFields = new HashMap<>();
         updatedFields.put(EMAIL, user.getEmail());
@@ -385,12 +444,27 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
      * Introspect a lightweight JWT token to get user information
      * @param token the lightweight JWT token to introspect
      * @return User object with user information, or null if token is invalid
+     * @throws RuntimeServiceException if the token could not be checked, so that it is not remembered as invalid
      */
     public User introspectToken(String token) {
         if (token == null || token.isEmpty()) {
             return null;
         }
-        
+
+        if (tokenVerifier != null) {
+            Map<String, Object> claims = tokenVerifier.verify(token);
+            if (claims == null) {
+                LOGGER.debug("Token failed local verification");
+                return null;
+            }
+            if (carriesUser(claims)) {
+                return toUser(claims);
+            }
+            // A lightweight access token leaves the username and roles to introspection
+            LOGGER.debug("Verified token carries no username or roles; introspecting it");
+        }
+
+
         try {
             MultiValueMap<String, String> form = new LinkedMultiValueMap<>();
             form.add(TOKEN, token);
@@ -414,8 +488,7 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             
             Map<String, Object> body = response.getBody();
             if (body == null) {
-                LOGGER.warn("Token introspection response body is null");
-                return null;
+                throw new RuntimeServiceException("Token introspection response body is null", null);
             }
             
             // Log the full introspection response for debugging
@@ -427,51 +500,80 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
                 LOGGER.debug("Token is not active");
                 return null;
             }
-            
-            // Extract user information from introspection response
-            String userId = (String) body.get("sub"); // Extract user ID from subject field
-            String username = (String) body.get("preferred_username");
-            String email = (String) body.get("email");
-            String firstName = (String) body.get("given_name");
-            String lastName = (String) body.get("family_name");
-            
-            if (username == null || username.isEmpty()) {
-                LOGGER.warn("Token introspection response contains no username");
-                return null;
-            }
-            
-            // Create user object
-            User user = new User();
-            user.setId(userId); // Set the user ID from the token's subject field
-            user.setLogin(username);
-            user.setEmail(email != null ? email : "");
-            user.setFirstName(firstName != null ? firstName : "");
-            user.setLastName(lastName != null ? lastName : "");
-            user.setDisplayName(user.getFirstName() + " " + user.getLastName());
-
-            // Log what we're looking for
-            LOGGER.debug("Looking for roles in introspection response...");
-            LOGGER.debug("Available keys in response: {}", body.keySet());
-
-            Object realmAccess = body.get("realm_access");
-            LOGGER.debug("realm_access: {}", realmAccess);
 
-            Object resourceAccess = body.get("resource_access");
-            LOGGER.debug("resource_access: {}", resourceAccess);
+            return toUser(body);
+        } catch (RuntimeServiceException e) {
+            throw e;
+        } catch (Exception e) {
+            // Keycloak answers an unknown or expired token with active=false. Anything else, including a refusal of
+            // this client's credentials, leaves the token unchecked rather than invalid.
+            throw new RuntimeServiceException("Failed to introspect lightweight JWT token", e);
+        }
+    }
 
-            Object directRoles = body.get(ROLES);
-            LOGGER.debug("Direct roles: {}", directRoles);
+    private static boolean carriesUser(Map<String, Object> claims) {
+        return claims.get("preferred_username") != null
+                && (claims.get("realm_access") != null || claims.get("resource_access") != null || claims.get(ROLES) != null);
+    }
 
-            extractRoles(realmAccess, resourceAccess, directRoles, user);
-            extractClientAccess(resourceAccess, user);
+    /**
+     * Build a user from token claims, as returned by introspection or read from a verified JWT
+     * @param body the token claims
+     * @return User object with user information, or null if the claims contain no username or are malformed
+     */
+    private User toUser(Map<String, Object> body) {
+        try {
+            return claimsToUser(body);
+        } catch (ClassCastException e) {
+            // A claim of an unexpected type, such as a numeric username, makes the token unusable
+            LOGGER.warn("Token claims are malformed: {}", e.getMessage());
+            return null;
+        }
+    }
 
-            LOGGER.debug("Lightweight JWT token introspection successful for user: {}", username);
-            return user;
-            
-        } catch (Exception e) {
-            LOGGER.error("Failed to introspect lightweight JWT token", e);
+    private User claimsToUser(Map<String, Object> body) {
+        // Extract user information from token claims
+        String userId = (String) body.get("sub"); // Extract user ID from subject field
+        String username = (String) body.get("preferred_username");
+        String email = (String) body.get("email");
+        String firstName = (String) body.get("given_name");
+        String lastName = (String) body.get("family_name");
+        
+        if (username == null || username.isEmpty()) {
+            LOGGER.warn("Token claims contain no username");
             return null;
         }
+        
+        // Create user object
+        User user = new User();
+        user.setId(userId); // Set the user ID from the token's subject field
+        user.setLogin(username);
+        user.setEmail(email != null ? email : "");
+        user.setFirstName(firstName != null ? firstName : "");
+        user.setLastName(lastName != null ? lastName : "");
+        user.setDisplayName(user.getFirstName() + " " + user.getLastName());
+        if (body.get("exp") instanceof Number exp) {
+            user.setTokenExpiry(exp.longValue() * 1000);
+        }
+
+        // Log what we're looking for
+        LOGGER.debug("Looking for roles in token claims...");
+        LOGGER.debug("Available keys in claims: {}", body.keySet());
+
+        Object realmAccess = body.get("realm_access");
+        LOGGER.debug("realm_access: {}", realmAccess);
+
+        Object resourceAccess = body.get("resource_access");
+        LOGGER.debug("resource_access: {}", resourceAccess);
+
+        Object directRoles = body.get(ROLES);
+        LOGGER.debug("Direct roles: {}", directRoles);
+
+        extractRoles(realmAccess, resourceAccess, directRoles, user);
+        extractClientAccess(resourceAccess, user);
+
+        LOGGER.debug("Token resolved to user: {}", username);
+        return user;
     }
 
     @Override
@@ -544,18 +646,36 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         }
     }
 
+    /**
+     * GET an admin API resource. Keycloak answers 401 once it stops accepting the cached admin token, for example after
+     * a restart, so the token is dropped and the call made once more with a new one.
+     */
+    private <T> ResponseEntity<T> adminGet(String url, HttpEntity<?> requestEntity, ParameterizedTypeReference<T> responseType) {
+        try {
+            return restTemplate.exchange(url, HttpMethod.GET, requestEntity, responseType);
+        } catch (HttpClientErrorException.Unauthorized e) {
+            String authorization = requestEntity.getHeaders().getFirst(HttpHeaders.AUTHORIZATION);
+            String rejectedToken = authorization != null ? authorization.substring("Bearer ".length()) : null;
+            String adminToken = adminTokenCache.renew(rejectedToken);
+            if (adminToken == null || adminToken.equals(rejectedToken)) {
+                throw e;
+            }
+            HttpHeaders headers = new HttpHeaders();
+            headers.putAll(requestEntity.getHeaders());
+            headers.setBearerAuth(adminToken);
+            return restTemplate.exchange(url, HttpMethod.GET, new HttpEntity<>(headers), responseType);
+        }
+    }
+
     private String getAdminToken() {
-        LOGGER.debug("Getting admin token for client ID: {}", keycloakAdminClientId);
-        String token = authenticateAsClient(this.keycloakAdminClientId, this.keycloakAdminClientSecret);
+        String token = adminTokenCache.getToken();
         if (token == null || token.isEmpty()) {
             LOGGER.error("Failed to obtain admin token - this will cause all admin API calls to fail");
-        } else {
-            LOGGER.debug("Admin token obtained successfully, length: {}", token.length());
         }
         return token;
     }
     
-    private String authenticateAsClient(String username, String password) {
+    private KeyCloakAdminTokenCache.AdminToken authenticateAsClient(String username, String password) {
         if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
             LOGGER.warn("Admin client credentials are null or empty - username: {}, password: {}", 
                 username != null ? "***" : "null", 
@@ -583,23 +703,24 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             LOGGER.debug("Request body parameters: grant_type={}, scope={}, client_id={}, client_secret={}", 
                 "client_credentials", OPENID_PROFILE_EMAIL, username, "***");
 
-            Map<String, String> response = restTemplate.postForObject(tokenUrl, request, HashMap.class);
+            Map<String, Object> response = restTemplate.postForObject(tokenUrl, request, HashMap.class);
             
             if (response == null) {
                 LOGGER.warn("Admin client authentication response is null");
                 return null;
             }
             
-            String accessToken = response.getOrDefault(ACCESS_TOKEN, "");
-            if (accessToken.isEmpty()) {
+            Object accessToken = response.get(ACCESS_TOKEN);
+            if (accessToken == null || accessToken.toString().isEmpty()) {
                 LOGGER.warn("Admin client authentication response contains no access_token. Response keys: {}", 
                     response.keySet());
-                LOGGER.debug("Full response: {}", response);
-            } else {
-                LOGGER.debug("Admin client authentication successful, token length: {}", accessToken.length());
+                return null;
             }
-            
-            return accessToken;
+
+            // Keycloak always sends expires_in; assume a short lifetime if it is ever missing
+            long expiresIn = response.get(EXPIRES_IN) instanceof Number number ? number.longValue() : 60;
+            LOGGER.debug("Admin client authentication successful, token length: {}, expires in: {}s", accessToken.toString().length(), expiresIn);
+            return new KeyCloakAdminTokenCache.AdminToken(accessToken.toString(), System.currentTimeMillis() + expiresIn * 1000);
         } catch (Exception e) {
             LOGGER.error("Failed to authenticate as admin client. URL: {}, Client ID: {}, Error: {}", 
                 keycloakUrl + REALMS + this.keycloakRealms + PROTOCOL_OPENID_CONNECT_TOKEN,
@@ -626,18 +747,27 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
      * Find a group by name using the Keycloak admin API
      * @param groupName the name of the group to find
      * @param requestEntity the HTTP request entity with admin token
+     * @param traversal the request's fan-out scope, used if the group tree has to be walked
      * @return list containing the group if found, empty list otherwise
      */
-    private List<KeyCloakGroup> findGroupByName(String groupName, HttpEntity<String> requestEntity) {
+    private List<KeyCloakGroup> findGroupByName(String groupName, HttpEntity<String> requestEntity, BoundedFanOut.Scope traversal) {
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        if (snapshot != null) {
+            List<KeyCloakGroup> groups = snapshot.findGroupsByName(groupName);
+            if (!groups.isEmpty()) {
+                LOGGER.debug("Found {} groups named {} in realm directory", groups.size(), groupName);
+                return groups;
+            }
+        }
+
         try {
             // Search for groups by name using Keycloak admin API
             String searchGroupUrl = ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_BASE + QUERY_SEARCH + groupName;
             String fullSearchGroupUrl = keycloakUrl + searchGroupUrl;
             LOGGER.debug("Searching for group by name: {} at URL: {}", groupName, fullSearchGroupUrl);
             
-            ResponseEntity<List<KeyCloakGroup>> groupResponse = restTemplate.exchange(
+            ResponseEntity<List<KeyCloakGroup>> groupResponse = adminGet(
                     fullSearchGroupUrl,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {
                     }
@@ -646,8 +776,8 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             List<KeyCloakGroup> groups = groupResponse.getBody();
             if (CollectionUtils.isEmpty(groups)) {
                 LOGGER.debug("No group found with name: {}", groupName);
-                // Fallback to deep traversal of group tree
-                return deepSearchGroupsByName(groupName, requestEntity);
+                // Fallback to deep traversal of group tree, unless the realm directory has already walked it
+                return snapshot != null ? Collections.emptyList() : deepSearchGroupsByName(groupName, requestEntity, traversal);
             }
             
             // Filter to exact match since search might return partial matches
@@ -661,17 +791,19 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             }
 
             // If we didn't get an exact match, walk the hierarchy just in case the search didn't return the nested node
-            return deepSearchGroupsByName(groupName, requestEntity);
+            return snapshot != null ? Collections.emptyList() : deepSearchGroupsByName(groupName, requestEntity, traversal);
             
+        } catch (RuntimeServiceException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error("Failed to find group by name: {}, Error: {}", groupName, e.getMessage(), e);
             return Collections.emptyList();
         }
     }
 
-    private List<KeyCloakGroup> deepSearchGroupsByName(String targetName, HttpEntity<String> requestEntity) {
+    private List<KeyCloakGroup> deepSearchGroupsByName(String targetName, HttpEntity<String> requestEntity, BoundedFanOut.Scope traversal) {
         LOGGER.debug("Deep searching all groups for exact name: {}", targetName);
-        List<KeyCloakGroup> matches = new ArrayList<>();
+        List<CompletableFuture<List<KeyCloakGroup>>> matches = new ArrayList<>();
         int first = 0;
         int pageSize = 100;
         while (true) {
@@ -679,30 +811,40 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             List<Map<String, Object>> topGroups = fetchListOfMaps(listTopLevelUrl, requestEntity);
             if (CollectionUtils.isEmpty(topGroups)) break;
             for (Map<String, Object> group : topGroups) {
-                addIfNameMatch(group, targetName, matches);
+                matches.add(CompletableFuture.completedFuture(nameMatches(group, targetName)));
                 Object id = group.get("id");
                 if (id != null) {
-                    traverseChildrenForName(id.toString(), targetName, requestEntity, matches);
+                    matches.add(traverseChildrenForName(id.toString(), targetName, requestEntity, traversal));
                 }
             }
             first += pageSize;
         }
-        return matches;
+        return traversal.join(BoundedFanOut.concat(matches));
     }
 
-    private void traverseChildrenForName(String parentGroupId,
-                                         String targetName,
-                                         HttpEntity<String> requestEntity,
-                                         List<KeyCloakGroup> matches) {
+    private CompletableFuture<List<KeyCloakGroup>> traverseChildrenForName(String parentGroupId,
+                                                                           String targetName,
+                                                                           HttpEntity<String> requestEntity,
+                                                                           BoundedFanOut.Scope traversal) {
         String childrenUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + parentGroupId + ADMIN_GROUPS_CHILDREN;
-        List<Map<String, Object>> children = fetchListOfMaps(childrenUrl, requestEntity);
-        for (Map<String, Object> child : children) {
-            addIfNameMatch(child, targetName, matches);
-            Object childId = child.get("id");
-            if (childId != null) {
-                traverseChildrenForName(childId.toString(), targetName, requestEntity, matches);
+        return traversal.supply(() -> fetchListOfMaps(childrenUrl, requestEntity)).thenCompose(children -> {
+            // Siblings are walked concurrently; concatenating in sibling order keeps the sequential depth-first result
+            List<CompletableFuture<List<KeyCloakGroup>>> matches = new ArrayList<>();
+            for (Map<String, Object> child : children) {
+                matches.add(CompletableFuture.completedFuture(nameMatches(child, targetName)));
+                Object childId = child.get("id");
+                if (childId != null) {
+                    matches.add(traverseChildrenForName(childId.toString(), targetName, requestEntity, traversal));
+                }
             }
-        }
+            return BoundedFanOut.concat(matches);
+        });
+    }
+
+    private List<KeyCloakGroup> nameMatches(Map<String, Object> groupMap, String targetName) {
+        List<KeyCloakGroup> matches = new ArrayList<>(1);
+        addIfNameMatch(groupMap, targetName, matches);
+        return matches;
     }
 
     private void addIfNameMatch(Map<String, Object> groupMap, String targetName, List<KeyCloakGroup> matches) {
@@ -716,45 +858,90 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         }
     }
 
-    private List<User> getUsersForGroup(final String groupName, final String username, List<KeyCloakGroup> keyCloakGroups, HttpEntity<String> requestEntity) {
-        return keyCloakGroups.stream()
+    private List<User> getUsersForGroup(final String groupName,
+                                        final String username,
+                                        List<KeyCloakGroup> keyCloakGroups,
+                                        HttpEntity<String> requestEntity,
+                                        int startAt,
+                                        int maxResults) {
+        if (startAt < 0 || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+
+        List<KeyCloakGroup> groups = keyCloakGroups.stream()
                 .filter(group -> group.getName().equals(groupName))
+                .toList();
+
+        // Members are filtered before the page is cut, so that a page only comes back short at the end of the listing.
+        // Groups are merged lazily, and no further page is requested once the page is full.
+        Stream<KeyCloakUser> members = groups.stream()
                 .flatMap(group -> {
-                    LOGGER.debug("Getting members for group: {} (ID: {})", group.getName(), group.getId());
-                    
-                    String groupMembersUrl = ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + group.getId() + ADMIN_GROUPS_MEMBERS + "?max=-1";
-                    String fullGroupMembersUrl = keycloakUrl + groupMembersUrl;
-                    LOGGER.debug("Making request to get group members from: {}", fullGroupMembersUrl);
-                    
-                    ResponseEntity<List<KeyCloakUser>> userResponse = restTemplate.exchange(
-                            fullGroupMembersUrl,
-                            HttpMethod.GET,
-                            requestEntity,
-                            new ParameterizedTypeReference<>() {
-                            }
-                    );
-                    
-                    LOGGER.debug("Group members response status: {}, body size: {}", 
-                        userResponse.getStatusCode(), userResponse.getBody() != null ? userResponse.getBody().size() : 0);
-                    
-                    List<KeyCloakUser> keyCloakUsers = userResponse.getBody();
-                    if (CollectionUtils.isEmpty(keyCloakUsers)) {
-                        LOGGER.debug("No members found for group: {}", group.getName());
-                        return Stream.empty();
-                    }
-                    
-                    LOGGER.debug("Found {} members in group: {}", keyCloakUsers.size(), group.getName());
-                    
-                    return keyCloakUsers.stream()
-                            .filter(KeyCloakUser::isEnabled)
-                            .filter(u -> !StringUtils.hasLength(username) || u.getUsername().contains(username))
-                            .map(u -> {
-                                User user = toUser(u);
-                                user.setEmail(null);
-                                LOGGER.debug("Mapped user: {} (enabled: {})", u.getUsername(), u.isEnabled());
-                                return user;
-                            });
-                }).distinct().toList();
+                    LOGGER.debug("Streaming members for group: {} (ID: {})", group.getName(), group.getId());
+                    return streamUsers(groupMembersUrl(group.getId()), 0, requestEntity);
+                });
+        return pageOfUsers(members, username, startAt, maxResults);
+    }
+
+    private String groupMembersUrl(String groupId) {
+        return keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + groupId + ADMIN_GROUPS_MEMBERS;
+    }
+
+    /**
+     * Lazily page through a Keycloak user listing; the next page is only requested once the previous one is consumed.
+     */
+    private Stream<KeyCloakUser> streamUsers(String url, int startAt, HttpEntity<String> requestEntity) {
+        return streamPages(url, startAt, pageUrl -> fetchUsers(pageUrl, requestEntity));
+    }
+
+    private <T> Stream<T> streamPages(String url, int startAt, Function<String, List<T>> fetchPage) {
+        Iterator<List<T>> pages = new Iterator<>() {
+            private int first = startAt;
+            private boolean lastPage = false;
+
+            @Override
+            public boolean hasNext() {
+                return !lastPage;
+            }
+
+            @Override
+            public List<T> next() {
+                if (lastPage) {
+                    throw new NoSuchElementException();
+                }
+                List<T> page = fetchPage.apply(url + QUERY_FIRST + first + QUERY_MAX + USER_PAGE_SIZE);
+                first += USER_PAGE_SIZE;
+                lastPage = page.size() < USER_PAGE_SIZE;
+                return page;
+            }
+        };
+        return StreamSupport.stream(Spliterators.spliteratorUnknownSize(pages, Spliterator.ORDERED), false)
+                .flatMap(List::stream);
+    }
+
+    private List<User> pageOfUsers(Stream<KeyCloakUser> users, String username, int startAt, int maxResults) {
+        return pageOfUsers(users, username, startAt, maxResults, new AtomicBoolean());
+    }
+
+    /**
+     * @param anyMatched set if any user passes the filters, even if the page starts after them all
+     */
+    private List<User> pageOfUsers(Stream<KeyCloakUser> users, String username, int startAt, int maxResults, AtomicBoolean anyMatched) {
+        if (startAt < 0 || maxResults <= 0) {
+            return Collections.emptyList();
+        }
+        return users
+                .filter(KeyCloakUser::isEnabled)
+                .filter(u -> !StringUtils.hasLength(username) || u.getUsername().contains(username))
+                .map(u -> {
+                    User user = toUser(u);
+                    user.setEmail(null);
+                    return user;
+                })
+                .distinct()
+                .peek(user -> anyMatched.set(true))
+                .skip(startAt)
+                .limit(maxResults)
+                .toList();
     }
 
     private void extractClientAccess(Object resourceAccess, User user) {
@@ -830,7 +1017,12 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         }
     }
 
-    private List<User> getUsersForRole(final String roleOrPrefixedRoleName, final String username, HttpEntity<String> requestEntity) {
+    private List<User> getUsersForRole(final String roleOrPrefixedRoleName,
+                                       final String username,
+                                       HttpEntity<String> requestEntity,
+                                       BoundedFanOut.Scope traversal,
+                                       int startAt,
+                                       int maxResults) {
         try {
             String roleName = roleOrPrefixedRoleName.startsWith(AuthoritiesConstants.ROLE_PREFIX)
                     ? roleOrPrefixedRoleName.substring(AuthoritiesConstants.ROLE_PREFIX.length())
@@ -841,141 +1033,136 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             // 1) Try realm role users endpoint
             String realmRoleUsersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_SLASH + encodedRole + ADMIN_USERS_COLLECTION;
             LOGGER.debug("Trying realm role users endpoint: {}", realmRoleUsersUrl);
-            List<KeyCloakUser> realmRoleUsers = fetchUsers(realmRoleUsersUrl, requestEntity);
+            Stream<KeyCloakUser> realmRoleUsers = streamUsersIfAny(realmRoleUsersUrl, requestEntity);
 
             // If found, map and return
-            if (!CollectionUtils.isEmpty(realmRoleUsers)) {
-                return mapAndFilterUsers(realmRoleUsers, username);
+            if (realmRoleUsers != null) {
+                return pageOfUsers(realmRoleUsers, username, startAt, maxResults);
             }
 
             // 2) Try client role users endpoint for our configured client
-            List<User> clientRoleUsers = getUsersForClientRole(username, requestEntity, encodedRole);
-            if (!CollectionUtils.isEmpty(clientRoleUsers)) {
-                return clientRoleUsers;
+            Stream<KeyCloakUser> clientRoleUsers = getUsersForClientRole(requestEntity, encodedRole);
+            if (clientRoleUsers != null) {
+                return pageOfUsers(clientRoleUsers, username, startAt, maxResults);
             }
 
             // 3) Fallback: search across all clients for a matching role name
-            List<User> acrossClients = getUsersForRoleAcrossAllClients(roleName, username, requestEntity);
-            if (!CollectionUtils.isEmpty(acrossClients)) {
+            AtomicBoolean anyAcrossClients = new AtomicBoolean();
+            List<User> acrossClients = pageOfUsers(streamUsersForRoleAcrossAllClients(roleName, requestEntity), username, startAt, maxResults, anyAcrossClients);
+            if (anyAcrossClients.get()) {
                 return acrossClients;
             }
 
             // 4) Final fallback: fetch users by groups that have the role assigned (group role mappings)
-            return getUsersViaGroupRoleAssignments(roleName, username, requestEntity);
+            return pageOfUsers(streamUsersViaGroupRoleAssignments(roleName, requestEntity, traversal), username, startAt, maxResults);
+        } catch (RuntimeServiceException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.error("Failed to search users by role: {}", roleOrPrefixedRoleName, e);
         }
         return Collections.emptyList();
     }
 
-    private List<User> getUsersForClientRole(String username, HttpEntity<String> requestEntity, String encodedRole) {
+    private Stream<KeyCloakUser> getUsersForClientRole(HttpEntity<String> requestEntity, String encodedRole) {
         try {
             String clientInternalId = resolveClientInternalId(this.keycloakClientId, requestEntity);
             if (clientInternalId != null) {
                 String clientRoleUsersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientInternalId + ADMIN_ROLES_SLASH + encodedRole + ADMIN_USERS_COLLECTION;
                 LOGGER.debug("Trying client role users endpoint: {}", clientRoleUsersUrl);
-                List<KeyCloakUser> clientRoleUsers = fetchUsers(clientRoleUsersUrl, requestEntity);
-                if (!CollectionUtils.isEmpty(clientRoleUsers)) {
-                    return mapAndFilterUsers(clientRoleUsers, username);
-                }
+                return streamUsersIfAny(clientRoleUsersUrl, requestEntity);
             } else {
                 LOGGER.debug("Could not resolve internal client ID for clientId: {}", this.keycloakClientId);
             }
         } catch (Exception e) {
             LOGGER.debug("Error resolving or querying client role users: {}", e.getMessage());
         }
-        return Collections.emptyList();
-    }
-
-    private List<User> mapAndFilterUsers(List<KeyCloakUser> users, String username) {
-        return users.stream()
-                .filter(KeyCloakUser::isEnabled)
-                .filter(u -> !StringUtils.hasLength(username) || u.getUsername().contains(username))
-                .map(u -> {
-                    User user = toUser(u);
-                    user.setEmail(null);
-                    return user;
-                })
-                .distinct()
-                .toList();
+        return null;
     }
 
-    private List<User> getUsersForRoleAcrossAllClients(String roleName, String username, HttpEntity<String> requestEntity) {
-        try {
-            LOGGER.debug("Searching all clients for role: {}", roleName);
-            String encodedRole = URLEncoder.encode(roleName, StandardCharsets.UTF_8);
-
-            List<User> aggregated = new ArrayList<>();
-            int pageSize = 100;
-            for (int first = 0; ; first += pageSize) {
-                List<Map<String, Object>> clients = fetchClientsPage(first, pageSize, requestEntity);
-                if (CollectionUtils.isEmpty(clients)) {
-                    break;
-                }
-                for (Map<String, Object> client : clients) {
-                    aggregated.addAll(aggregateUsersForClient(client, roleName, encodedRole, username, requestEntity));
-                }
-            }
-
-            return aggregated.stream().distinct().toList();
-        } catch (Exception e) {
-            LOGGER.debug("Error searching role across all clients: {}", e.getMessage());
-            return Collections.emptyList();
+    /**
+     * Fetch the first page of a user listing and, if it is not empty, return a lazy stream over the whole listing.
+     * @return all users in the listing, or null if there are none
+     */
+    private Stream<KeyCloakUser> streamUsersIfAny(String url, HttpEntity<String> requestEntity) {
+        List<KeyCloakUser> firstPage = fetchUsers(url + QUERY_FIRST + 0 + QUERY_MAX + USER_PAGE_SIZE, requestEntity);
+        if (firstPage.isEmpty()) {
+            return null;
         }
+        if (firstPage.size() < USER_PAGE_SIZE) {
+            return firstPage.stream();
+        }
+        return Stream.concat(firstPage.stream(), streamUsers(url, USER_PAGE_SIZE, requestEntity));
     }
 
-    private List<Map<String, Object>> fetchClientsPage(int first, int pageSize, HttpEntity<String> requestEntity) {
-        String clientsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_BASE + QUERY_FIRST + first + QUERY_MAX + pageSize;
-        return fetchListOfMaps(clientsUrl, requestEntity);
-    }
+    /**
+     * Users holding the role on any client, or failing that one of its composite roles, client by client. Clients
+     * are searched and their listings paged only as far as the caller reads.
+     */
+    private Stream<KeyCloakUser> streamUsersForRoleAcrossAllClients(String roleName, HttpEntity<String> requestEntity) {
+        LOGGER.debug("Searching all clients for role: {}", roleName);
+        String encodedRole = URLEncoder.encode(roleName, StandardCharsets.UTF_8);
 
-    private List<User> aggregateUsersForClient(Map<String, Object> client,
-                                               String roleName,
-                                               String encodedRole,
-                                               String username,
-                                               HttpEntity<String> requestEntity) {
-        Object idValue = client.get("id");
-        if (idValue == null) {
-            return Collections.emptyList();
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        Stream<String> clientIds;
+        if (snapshot != null) {
+            clientIds = snapshot.getClientIdsWithRole(roleName).stream();
+        } else {
+            String clientsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_BASE;
+            clientIds = streamPages(clientsUrl, 0, pageUrl -> fetchListOfMaps(pageUrl, requestEntity))
+                    .map(client -> client.get("id"))
+                    .filter(Objects::nonNull)
+                    .map(Object::toString)
+                    .filter(clientIdInternal -> clientHasRole(clientIdInternal, roleName, encodedRole, requestEntity));
         }
-        String clientIdInternal = idValue.toString();
+        return clientIds.flatMap(clientIdInternal -> streamUsersForClientRole(clientIdInternal, roleName, encodedRole, requestEntity, snapshot));
+    }
 
+    private boolean clientHasRole(String clientIdInternal, String roleName, String encodedRole, HttpEntity<String> requestEntity) {
         String rolesSearchUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_BASE + QUERY_SEARCH + encodedRole;
-        List<Map<String, Object>> roles = fetchListOfMaps(rolesSearchUrl, requestEntity);
-        boolean hasExactMatch = roles.stream().anyMatch(r -> roleName.equals(r.get("name")));
-        if (!hasExactMatch) {
-            return Collections.emptyList();
-        }
+        return fetchListOfMaps(rolesSearchUrl, requestEntity).stream().anyMatch(r -> roleName.equals(r.get("name")));
+    }
 
+    private Stream<KeyCloakUser> streamUsersForClientRole(String clientIdInternal,
+                                                          String roleName,
+                                                          String encodedRole,
+                                                          HttpEntity<String> requestEntity,
+                                                          KeyCloakRealmDirectory.Snapshot snapshot) {
         String usersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_SLASH + encodedRole + ADMIN_USERS_COLLECTION;
         LOGGER.debug("Found matching role on client {}. Fetching users via: {}", clientIdInternal, usersUrl);
-        List<KeyCloakUser> clientRoleUsers = fetchUsers(usersUrl, requestEntity);
-        if (!CollectionUtils.isEmpty(clientRoleUsers)) {
-            return mapAndFilterUsers(clientRoleUsers, username);
+        Stream<KeyCloakUser> clientRoleUsers = streamUsersIfAny(usersUrl, requestEntity);
+        if (clientRoleUsers != null) {
+            return clientRoleUsers;
         }
 
-        // If no direct users, expand composites and aggregate users from child roles
+        // If no direct users, expand composites and list the users of each child role
         LOGGER.debug("No direct users found for role {} on client {}. Expanding composites.", encodedRole, clientIdInternal);
-        List<User> aggregated = new ArrayList<>();
 
         // 1) Client role composites (returns both realm and client composites)
-        String clientCompositeUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_SLASH + encodedRole + ADMIN_COMPOSITES;
-        List<Map<String, Object>> clientCompositeRoles = fetchListOfMaps(clientCompositeUrl, requestEntity);
-        aggregated.addAll(fetchUsersForCompositeRoles(clientCompositeRoles, username, requestEntity));
+        List<Map<String, Object>> clientCompositeRoles;
+        if (snapshot != null) {
+            clientCompositeRoles = snapshot.getComposites(clientIdInternal, roleName);
+        } else {
+            String clientCompositeUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_SLASH + encodedRole + ADMIN_COMPOSITES;
+            clientCompositeRoles = fetchListOfMaps(clientCompositeUrl, requestEntity);
+        }
 
         // 2) Realm role composites (only applicable if a realm role with this name exists)
-        String realmCompositeUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_SLASH + encodedRole + ADMIN_COMPOSITES;
-        List<Map<String, Object>> realmCompositeRoles = fetchListOfMaps(realmCompositeUrl, requestEntity);
-        aggregated.addAll(fetchUsersForCompositeRoles(realmCompositeRoles, username, requestEntity));
+        List<Map<String, Object>> realmCompositeRoles;
+        if (snapshot != null) {
+            realmCompositeRoles = snapshot.getComposites(null, roleName);
+        } else {
+            String realmCompositeUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_SLASH + encodedRole + ADMIN_COMPOSITES;
+            realmCompositeRoles = fetchListOfMaps(realmCompositeUrl, requestEntity);
+        }
 
-        return aggregated.stream().distinct().toList();
+        return Stream.concat(compositeRoleUsersUrls(clientCompositeRoles).stream(), compositeRoleUsersUrls(realmCompositeRoles).stream())
+                .flatMap(url -> streamUsers(url, 0, requestEntity));
     }
 
     private List<Map<String, Object>> fetchListOfMaps(String url, HttpEntity<String> requestEntity) {
         try {
-            ResponseEntity<List<Map<String, Object>>> response = restTemplate.exchange(
+            ResponseEntity<List<Map<String, Object>>> response = adminGet(
                     url,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {}
             );
@@ -987,200 +1174,225 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
         }
     }
 
-    private List<User> getUsersViaGroupRoleAssignments(String roleName, String username, HttpEntity<String> requestEntity) {
+    /**
+     * Members of the groups holding the role, and of their subgroups. The group tree is walked concurrently to find
+     * the groups; their members are then listed a page at a time, only as far as the caller reads.
+     */
+    private Stream<KeyCloakUser> streamUsersViaGroupRoleAssignments(String roleName, HttpEntity<String> requestEntity, BoundedFanOut.Scope traversal) {
         try {
             String encodedRole = URLEncoder.encode(roleName, StandardCharsets.UTF_8);
-            List<User> realmUsers = getUsersViaRealmRoleAssignments(roleName, encodedRole, username, requestEntity);
-            List<User> clientUsers = getUsersViaClientRoleAssignments(roleName, encodedRole, username, requestEntity);
-            List<User> combined = new ArrayList<>(realmUsers.size() + clientUsers.size());
-            combined.addAll(realmUsers);
-            combined.addAll(clientUsers);
-            return combined.stream().distinct().toList();
+            List<String> groupIds = new ArrayList<>(getGroupIdsWithRealmRole(roleName, encodedRole, requestEntity, traversal));
+            groupIds.addAll(getGroupIdsWithClientRole(roleName, encodedRole, requestEntity, traversal));
+            LOGGER.debug("Role fallback: {} groups have role {}", groupIds.size(), roleName);
+            return groupIds.stream()
+                    .distinct()
+                    .flatMap(groupId -> streamUsers(groupMembersUrl(groupId), 0, requestEntity));
+        } catch (RuntimeServiceException e) {
+            throw e;
         } catch (Exception e) {
             LOGGER.debug("Error fetching users via group role assignments for role {}: {}", roleName, e.getMessage());
-            return Collections.emptyList();
+            return Stream.empty();
         }
     }
 
-    private List<User> getUsersViaRealmRoleAssignments(String roleName,
-                                                       String encodedRole,
-                                                       String username,
-                                                       HttpEntity<String> requestEntity) {
+    private List<String> getGroupIdsWithRealmRole(String roleName,
+                                                  String encodedRole,
+                                                  HttpEntity<String> requestEntity,
+                                                  BoundedFanOut.Scope traversal) {
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        if (snapshot != null) {
+            List<String> groupIds = snapshot.hasRealmRole(roleName) ? snapshot.getGroupIdsWithRealmRole(roleName) : Collections.emptyList();
+            LOGGER.debug("Role fallback (realm): {} groups in realm directory have role {}", groupIds.size(), roleName);
+            return groupsAndDescendants(groupIds, requestEntity, traversal);
+        }
+
         String realmRolesSearch = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_BASE + QUERY_SEARCH + encodedRole + QUERY_EXACT_TRUE;
         List<Map<String, Object>> realmRoles = fetchListOfMaps(realmRolesSearch, requestEntity);
-        LOGGER.debug("Role fallback (realm): search URL: {}, roles returned: {}", realmRolesSearch, realmRoles != null ? realmRoles.size() : 0);
-        List<User> aggregated = new ArrayList<>();
+        LOGGER.debug("Role fallback (realm): search URL: {}, roles returned: {}", realmRolesSearch, realmRoles.size());
+        List<String> aggregated = new ArrayList<>();
         for (Map<String, Object> role : realmRoles) {
             if (roleName.equals(role.get("name"))) {
                 Object roleId = role.get("id");
                 LOGGER.debug("Role fallback (realm): exact match '{}' with roleId: {}", roleName, roleId);
-                aggregated.addAll(fetchUsersFromGroupsForRoleId(roleId != null ? roleId.toString() : null, username, requestEntity));
+                aggregated.addAll(fetchGroupIdsForRoleId(roleId != null ? roleId.toString() : null, requestEntity, traversal));
             }
         }
-        LOGGER.debug("Role fallback (realm): aggregated users: {}", aggregated.size());
+        LOGGER.debug("Role fallback (realm): groups found: {}", aggregated.size());
         return aggregated;
     }
 
-    private List<User> getUsersViaClientRoleAssignments(String roleName,
-                                                        String encodedRole,
-                                                        String username,
-                                                        HttpEntity<String> requestEntity) {
-        List<User> aggregated = new ArrayList<>();
-        for (int first = 0; ; first += 100) {
-            List<Map<String, Object>> clients = fetchClientsPage(first, 100, requestEntity);
-            if (CollectionUtils.isEmpty(clients)) break;
-            for (Map<String, Object> client : clients) {
-                List<User> clientUsers = collectUsersForClientRoleName(client, roleName, encodedRole, username, requestEntity);
-                aggregated.addAll(clientUsers);
+    private List<String> getGroupIdsWithClientRole(String roleName,
+                                                   String encodedRole,
+                                                   HttpEntity<String> requestEntity,
+                                                   BoundedFanOut.Scope traversal) {
+        List<String> aggregated = new ArrayList<>();
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        if (snapshot != null) {
+            for (String clientIdInternal : snapshot.getClientIdsWithRole(roleName)) {
+                aggregated.addAll(groupsAndDescendants(snapshot.getGroupIdsWithClientRole(clientIdInternal, roleName), requestEntity, traversal));
             }
+            LOGGER.debug("Role fallback (clients): groups found across clients from realm directory: {}", aggregated.size());
+            return aggregated;
         }
-        LOGGER.debug("Role fallback (clients): aggregated users across clients: {}", aggregated.size());
+
+        String clientsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_BASE;
+        streamPages(clientsUrl, 0, pageUrl -> fetchListOfMaps(pageUrl, requestEntity))
+                .forEach(client -> aggregated.addAll(groupIdsWithClientRoleName(client, roleName, encodedRole, requestEntity, traversal)));
+        LOGGER.debug("Role fallback (clients): groups found across clients: {}", aggregated.size());
         return aggregated;
     }
 
-    private List<User> collectUsersForClientRoleName(Map<String, Object> client,
-                                                     String roleName,
-                                                     String encodedRole,
-                                                     String username,
-                                                     HttpEntity<String> requestEntity) {
+    private List<String> groupIdsWithClientRoleName(Map<String, Object> client,
+                                                    String roleName,
+                                                    String encodedRole,
+                                                    HttpEntity<String> requestEntity,
+                                                    BoundedFanOut.Scope traversal) {
         Object idValue = client.get("id");
         if (idValue == null) return Collections.emptyList();
         String clientIdInternal = idValue.toString();
         String rolesSearchUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_BASE + QUERY_SEARCH + encodedRole + QUERY_EXACT_TRUE;
         List<Map<String, Object>> roles = fetchListOfMaps(rolesSearchUrl, requestEntity);
-        LOGGER.debug("Role fallback (client {}): roles search URL: {}, roles returned: {}", clientIdInternal, rolesSearchUrl, roles != null ? roles.size() : 0);
-        List<User> aggregated = new ArrayList<>();
+        LOGGER.debug("Role fallback (client {}): roles search URL: {}, roles returned: {}", clientIdInternal, rolesSearchUrl, roles.size());
+        List<String> aggregated = new ArrayList<>();
         for (Map<String, Object> role : roles) {
             if (roleName.equals(role.get("name"))) {
                 Object roleId = role.get("id");
                 LOGGER.debug("Role fallback (client {}): exact match '{}' with roleId: {}", clientIdInternal, roleName, roleId);
                 // Try client-role -> groups endpoint first, then fallback to scanning all groups' client role-mappings
-                List<User> usersFromClientRoleGroups = fetchUsersFromGroupsForClientRole(clientIdInternal, roleName, username, requestEntity);
-                aggregated.addAll(usersFromClientRoleGroups);
+                aggregated.addAll(fetchGroupIdsForClientRole(clientIdInternal, roleName, requestEntity, traversal));
             }
         }
-        LOGGER.debug("Role fallback (client {}): users aggregated: {}", clientIdInternal, aggregated.size());
+        LOGGER.debug("Role fallback (client {}): groups found: {}", clientIdInternal, aggregated.size());
         return aggregated;
     }
 
-    private List<User> fetchUsersFromGroupsForClientRole(String clientIdInternal,
-                                                         String roleName,
-                                                         String username,
-                                                         HttpEntity<String> requestEntity) {
+    private List<String> fetchGroupIdsForClientRole(String clientIdInternal,
+                                                    String roleName,
+                                                    HttpEntity<String> requestEntity,
+                                                    BoundedFanOut.Scope traversal) {
         // 1) Attempt: direct groups listing for this client role (if supported by KC version)
         String encodedRole = URLEncoder.encode(roleName, StandardCharsets.UTF_8);
         String groupsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientIdInternal + ADMIN_ROLES_SLASH + encodedRole + ADMIN_GROUPS_BASE;
         List<Map<String, Object>> groups = fetchListOfMaps(groupsUrl, requestEntity);
-        LOGGER.debug("Role fallback (client-role groups): url: {}, groups size: {}", groupsUrl, groups != null ? groups.size() : 0);
-        List<User> aggregated = new ArrayList<>();
+        LOGGER.debug("Role fallback (client-role groups): url: {}, groups size: {}", groupsUrl, groups.size());
         if (!CollectionUtils.isEmpty(groups)) {
-            for (Map<String, Object> group : groups) {
-                Object gid = group.get("id");
-                if (gid != null) {
-                    aggregated.addAll(fetchUsersForGroupAndDescendants(gid.toString(), username, requestEntity));
-                }
-            }
-            return aggregated;
+            return groupsAndDescendants(groupIds(groups), requestEntity, traversal);
         }
 
         // 2) Fallback: scan all groups and inspect their client role-mappings
         LOGGER.debug("Role fallback (client-role groups): direct endpoint returned none; scanning group role-mappings for client {} and role {}", clientIdInternal, roleName);
+        List<CompletableFuture<List<String>>> aggregated = new ArrayList<>();
         int first = 0;
         int pageSize = 100;
         while (true) {
             String listTopLevelUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_BASE + QUERY_FIRST + first + QUERY_MAX + pageSize;
             List<Map<String, Object>> topGroups = fetchListOfMaps(listTopLevelUrl, requestEntity);
             if (CollectionUtils.isEmpty(topGroups)) break;
-            for (Map<String, Object> group : topGroups) {
-                Object id = group.get("id");
-                if (id != null) {
-                    collectUsersIfGroupHasClientRole(id.toString(), clientIdInternal, roleName, username, requestEntity, aggregated);
-                }
+            for (String groupId : groupIds(topGroups)) {
+                aggregated.add(groupIdsIfGroupHasClientRole(groupId, clientIdInternal, roleName, requestEntity, traversal));
             }
             first += pageSize;
         }
-        return aggregated;
+        return traversal.join(BoundedFanOut.concat(aggregated));
     }
 
-    private void collectUsersIfGroupHasClientRole(String groupId,
-                                                  String clientIdInternal,
-                                                  String roleName,
-                                                  String username,
-                                                  HttpEntity<String> requestEntity,
-                                                  List<User> aggregated) {
+    private CompletableFuture<List<String>> groupIdsIfGroupHasClientRole(String groupId,
+                                                                        String clientIdInternal,
+                                                                        String roleName,
+                                                                        HttpEntity<String> requestEntity,
+                                                                        BoundedFanOut.Scope traversal) {
         String mappingUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + groupId + "/role-mappings/clients/" + clientIdInternal;
-        List<Map<String, Object>> mappings = fetchListOfMaps(mappingUrl, requestEntity);
-        boolean hasRole = mappings.stream().anyMatch(r -> roleName.equals(r.get("name")));
-        if (hasRole) {
-            LOGGER.debug("Role fallback (scan): group {} has client role {} -> collecting members (and descendants)", groupId, roleName);
-            aggregated.addAll(fetchUsersForGroupAndDescendants(groupId, username, requestEntity));
-        }
+        CompletableFuture<List<String>> withRole = traversal.supply(() -> fetchListOfMaps(mappingUrl, requestEntity)).thenCompose(mappings -> {
+            boolean hasRole = mappings.stream().anyMatch(r -> roleName.equals(r.get("name")));
+            if (!hasRole) {
+                return CompletableFuture.completedFuture(Collections.emptyList());
+            }
+            LOGGER.debug("Role fallback (scan): group {} has client role {} -> collecting it and its descendants", groupId, roleName);
+            return groupAndDescendants(groupId, requestEntity, traversal);
+        });
+
         // Recurse children regardless; cheaper than fetching child mapping only if parent matched
         String childrenUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + groupId + ADMIN_GROUPS_CHILDREN;
-        List<Map<String, Object>> children = fetchListOfMaps(childrenUrl, requestEntity);
-        for (Map<String, Object> child : children) {
-            Object childId = child.get("id");
-            if (childId != null) {
-                collectUsersIfGroupHasClientRole(childId.toString(), clientIdInternal, roleName, username, requestEntity, aggregated);
+        CompletableFuture<List<String>> descendants = traversal.supply(() -> fetchListOfMaps(childrenUrl, requestEntity)).thenCompose(children -> {
+            List<CompletableFuture<List<String>>> childGroups = new ArrayList<>();
+            for (Map<String, Object> child : children) {
+                Object childId = child.get("id");
+                if (childId != null) {
+                    childGroups.add(groupIdsIfGroupHasClientRole(childId.toString(), clientIdInternal, roleName, requestEntity, traversal));
+                }
             }
-        }
+            return BoundedFanOut.concat(childGroups);
+        });
+        return BoundedFanOut.concat(List.of(withRole, descendants));
     }
 
-    private List<User> fetchUsersFromGroupsForRoleId(String roleId,
-                                                     String username,
-                                                     HttpEntity<String> requestEntity) {
+    private List<String> fetchGroupIdsForRoleId(String roleId,
+                                                HttpEntity<String> requestEntity,
+                                                BoundedFanOut.Scope traversal) {
         if (roleId == null || roleId.isEmpty()) return Collections.emptyList();
 
         // Roles-by-id group mappings endpoint
         String groupMappingsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_BY_ID + roleId + ADMIN_GROUPS_BASE;
         List<Map<String, Object>> groups = fetchListOfMaps(groupMappingsUrl, requestEntity);
-        LOGGER.debug("Role fallback (groups-by-roleId): url: {}, groups found: {}", groupMappingsUrl, groups != null ? groups.size() : 0);
-        if (CollectionUtils.isEmpty(groups)) return Collections.emptyList();
-
-        List<User> aggregated = new ArrayList<>();
-        for (Map<String, Object> group : groups) {
-            Object groupIdObj = group.get("id");
-            if (groupIdObj == null) continue;
-            String groupId = groupIdObj.toString();
+        LOGGER.debug("Role fallback (groups-by-roleId): url: {}, groups found: {}", groupMappingsUrl, groups.size());
+        return groupsAndDescendants(groupIds(groups), requestEntity, traversal);
+    }
 
-            // Gather members for this group and all subgroups
-            aggregated.addAll(fetchUsersForGroupAndDescendants(groupId, username, requestEntity));
+    private List<String> groupsAndDescendants(List<String> groupIds,
+                                              HttpEntity<String> requestEntity,
+                                              BoundedFanOut.Scope traversal) {
+        List<CompletableFuture<List<String>>> aggregated = new ArrayList<>();
+        for (String groupId : groupIds) {
+            aggregated.add(groupAndDescendants(groupId, requestEntity, traversal));
         }
-        return aggregated;
+        return traversal.join(BoundedFanOut.concat(aggregated));
     }
 
-    private List<User> fetchUsersForGroupAndDescendants(String groupId,
-                                                        String username,
-                                                        HttpEntity<String> requestEntity) {
-        List<User> aggregated = new ArrayList<>();
-        // Members of group
-        String membersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + groupId + ADMIN_GROUPS_MEMBERS + "?max=-1";
-        List<KeyCloakUser> members = fetchUsers(membersUrl, requestEntity);
-        LOGGER.debug("Role fallback (group members): groupId: {}, members fetched: {}", groupId, members != null ? members.size() : 0);
-        if (!CollectionUtils.isEmpty(members)) {
-            aggregated.addAll(mapAndFilterUsers(members, username));
+    /**
+     * The group followed by its subgroups, depth first.
+     */
+    private CompletableFuture<List<String>> groupAndDescendants(String groupId,
+                                                               HttpEntity<String> requestEntity,
+                                                               BoundedFanOut.Scope traversal) {
+        CompletableFuture<List<String>> descendants = fetchChildGroupIds(groupId, requestEntity, traversal).thenCompose(childIds -> {
+            List<CompletableFuture<List<String>>> childGroups = new ArrayList<>();
+            for (String childId : childIds) {
+                childGroups.add(groupAndDescendants(childId, requestEntity, traversal));
+            }
+            return BoundedFanOut.concat(childGroups);
+        });
+        return BoundedFanOut.concat(List.of(CompletableFuture.completedFuture(List.of(groupId)), descendants));
+    }
+
+    private static List<String> groupIds(List<Map<String, Object>> groups) {
+        return groups.stream()
+                .map(group -> group.get("id"))
+                .filter(Objects::nonNull)
+                .map(Object::toString)
+                .toList();
+    }
+
+    private CompletableFuture<List<String>> fetchChildGroupIds(String groupId, HttpEntity<String> requestEntity, BoundedFanOut.Scope traversal) {
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        List<String> knownChildIds = snapshot != null ? snapshot.getChildGroupIds(groupId) : null;
+        if (knownChildIds != null) {
+            return CompletableFuture.completedFuture(knownChildIds);
         }
 
-        // Recurse into subgroups
         String childrenUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_GROUPS_SLASH + groupId + ADMIN_GROUPS_CHILDREN;
-        List<Map<String, Object>> children = fetchListOfMaps(childrenUrl, requestEntity);
-        for (Map<String, Object> child : children) {
-            Object childId = child.get("id");
-            if (childId != null) {
-                aggregated.addAll(fetchUsersForGroupAndDescendants(childId.toString(), username, requestEntity));
-            }
-        }
-        return aggregated;
+        return traversal.supply(() -> fetchListOfMaps(childrenUrl, requestEntity).stream()
+                .map(child -> child.get("id"))
+                .filter(Objects::nonNull)
+                .map(Object::toString)
+                .toList());
     }
 
-    private List<User> fetchUsersForCompositeRoles(List<Map<String, Object>> compositeRoles,
-                                                   String username,
-                                                   HttpEntity<String> requestEntity) {
+    private List<String> compositeRoleUsersUrls(List<Map<String, Object>> compositeRoles) {
         if (CollectionUtils.isEmpty(compositeRoles)) {
             return Collections.emptyList();
         }
 
-        List<User> aggregated = new ArrayList<>();
+        List<String> usersUrls = new ArrayList<>();
         for (Map<String, Object> role : compositeRoles) {
             Object nameObj = role.get("name");
             Object clientIdObj = role.get("clientRole"); // boolean in KC indicating client role
@@ -1197,25 +1409,19 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
             }
             String encodedChildRole = URLEncoder.encode(nameObj.toString(), StandardCharsets.UTF_8);
 
-            String usersUrl;
             if (clientInternalIdFromRole != null) {
-                usersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientInternalIdFromRole + ADMIN_ROLES_SLASH + encodedChildRole + ADMIN_USERS_COLLECTION;
+                usersUrls.add(keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_SLASH + clientInternalIdFromRole + ADMIN_ROLES_SLASH + encodedChildRole + ADMIN_USERS_COLLECTION);
             } else {
-                usersUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_SLASH + encodedChildRole + ADMIN_USERS_COLLECTION;
-            }
-            List<KeyCloakUser> childUsers = fetchUsers(usersUrl, requestEntity);
-            if (!CollectionUtils.isEmpty(childUsers)) {
-                aggregated.addAll(mapAndFilterUsers(childUsers, username));
+                usersUrls.add(keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_ROLES_SLASH + encodedChildRole + ADMIN_USERS_COLLECTION);
             }
         }
-        return aggregated;
+        return usersUrls;
     }
 
     private List<KeyCloakUser> fetchUsers(String url, HttpEntity<String> requestEntity) {
         try {
-            ResponseEntity<List<KeyCloakUser>> userResponse = restTemplate.exchange(
+            ResponseEntity<List<KeyCloakUser>> userResponse = adminGet(
                     url,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {}
             );
@@ -1230,12 +1436,17 @@ public class KeyCloakIdentityProvider implements IdentityProvider {
     }
 
     private String resolveClientInternalId(String clientId, HttpEntity<String> requestEntity) {
+        KeyCloakRealmDirectory.Snapshot snapshot = getRealmSnapshot();
+        String knownId = snapshot != null ? snapshot.getClientInternalId(clientId) : null;
+        if (knownId != null) {
+            return knownId;
+        }
+
         try {
             String clientsUrl = keycloakUrl + ADMIN_REALMS + this.keycloakRealms + ADMIN_CLIENTS_BASE + "?clientId=" + URLEncoder.encode(clientId, StandardCharsets.UTF_8);
             LOGGER.debug("Resolving client internal ID via: {}", clientsUrl);
-            ResponseEntity<List<Map<String, Object>>> clientResponse = restTemplate.exchange(
+            ResponseEntity<List<Map<String, Object>>> clientResponse = adminGet(
                     clientsUrl,
-                    HttpMethod.GET,
                     requestEntity,
                     new ParameterizedTypeReference<>() {}
             );
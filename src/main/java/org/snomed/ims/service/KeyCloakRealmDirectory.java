@@ -0,0 +1,435 @@
+package org.snomed.ims.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.keycloak.KeyCloakGroup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.web.client.RestTemplate;
+
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.Supplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Periodically loaded, immutable copy of a Keycloak realm's structure: the group tree with each group's role mappings,
+ * the clients and their roles, the realm roles, and the composites of every composite role. Group and role lookups
+ * made while searching users resolve against the current snapshot rather than walking the admin API each time; user
+ * membership itself is still fetched live.
+ */
+class KeyCloakRealmDirectory {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KeyCloakRealmDirectory.class);
+	private static final ParameterizedTypeReference<List<Map<String, Object>>> LIST_OF_MAPS = new ParameterizedTypeReference<>() {
+	};
+	private static final ParameterizedTypeReference<Map<String, Object>> MAP = new ParameterizedTypeReference<>() {
+	};
+	private static final int PAGE_SIZE = 100;
+
+	private final RestTemplate restTemplate;
+	private final String adminRealmUrl;
+	private final Supplier<String> adminToken;
+	private final UnaryOperator<String> renewAdminToken;
+	private final BoundedFanOut fanOut;
+	private final ScheduledExecutorService scheduler;
+	private volatile Snapshot snapshot;
+	// Loads block on admin API calls, so a lock rather than synchronized keeps a virtual thread from pinning its carrier
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
+	/**
+	 * @param adminToken      Supplies the admin token to load the realm with.
+	 * @param renewAdminToken Given the admin token Keycloak has refused, supplies a new one.
+	 */
+	KeyCloakRealmDirectory(RestTemplate restTemplate, String keycloakUrl, String realm, Supplier<String> adminToken,
+			UnaryOperator<String> renewAdminToken, BoundedFanOut fanOut) {
+		this.restTemplate = restTemplate;
+		this.adminRealmUrl = keycloakUrl + "/admin/realms/" + realm;
+		this.adminToken = adminToken;
+		this.renewAdminToken = renewAdminToken;
+		this.fanOut = fanOut;
+		this.scheduler = Executors.newSingleThreadScheduledExecutor(runnable -> {
+			Thread thread = new Thread(runnable, "keycloak-realm-directory-refresh");
+			thread.setDaemon(true);
+			return thread;
+		});
+	}
+
+	/**
+	 * Load the realm in the background now and then again after every interval.
+	 */
+	void start(Duration refreshInterval) {
+		scheduler.scheduleWithFixedDelay(this::refresh, 0, refreshInterval.toMillis(), TimeUnit.MILLISECONDS);
+	}
+
+	/**
+	 * @return Most recently loaded snapshot, or null if the realm has not been loaded yet.
+	 */
+	Snapshot getSnapshot() {
+		return snapshot;
+	}
+
+	/**
+	 * Reload the realm now. The previous snapshot stays in use if loading fails.
+	 *
+	 * @return Whether a new snapshot was loaded.
+	 */
+	boolean refresh() {
+		refreshLock.lock();
+		try {
+			long start = System.currentTimeMillis();
+			String token = adminToken.get();
+			Snapshot loaded;
+			try {
+				loaded = load(token);
+			} catch (RuntimeException e) {
+				if (!KeyCloakAdminTokenCache.isRejection(e)) {
+					throw e;
+				}
+				loaded = load(renewAdminToken.apply(token));
+			}
+			snapshot = loaded;
+			LOGGER.info("Loaded realm directory: {} groups, {} clients, {} realm roles in {} ms",
+					loaded.groupCount(), loaded.clients.size(), loaded.realmRoles.size(), System.currentTimeMillis() - start);
+			return true;
+		} catch (RuntimeException e) {
+			LOGGER.error("Failed to load realm directory; keeping previous snapshot", e);
+			return false;
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	private Snapshot load(String token) {
+		if (token == null || token.isEmpty()) {
+			throw new IllegalStateException("No admin token available");
+		}
+		HttpHeaders headers = new HttpHeaders();
+		headers.setBearerAuth(token);
+		HttpEntity<String> request = new HttpEntity<>(headers);
+		BoundedFanOut.Scope scope = fanOut.open();
+
+		// Clients and their roles
+		List<Map<String, Object>> clients = fetchPaged(adminRealmUrl + "/clients", request);
+		List<CompletableFuture<List<Client>>> clientFutures = new ArrayList<>();
+		for (Map<String, Object> client : clients) {
+			String id = asString(client.get("id"));
+			String clientId = asString(client.get("clientId"));
+			if (id != null && clientId != null) {
+				clientFutures.add(scope.supply(() -> List.of(new Client(id, clientId, fetchList(adminRealmUrl + "/clients/" + id + "/roles", request)))));
+			}
+		}
+		List<Client> loadedClients = scope.join(BoundedFanOut.concat(clientFutures));
+
+		// Realm roles, then the composites of every composite role
+		List<Map<String, Object>> realmRoles = fetchPaged(adminRealmUrl + "/roles", request);
+		List<CompletableFuture<List<Map.Entry<String, List<Map<String, Object>>>>>> compositeFutures = new ArrayList<>();
+		addCompositeFetches(null, realmRoles, request, scope, compositeFutures);
+		for (Client client : loadedClients) {
+			addCompositeFetches(client.id(), client.roles(), request, scope, compositeFutures);
+		}
+		Map<String, List<Map<String, Object>>> composites = new HashMap<>();
+		for (Map.Entry<String, List<Map<String, Object>>> entry : scope.join(BoundedFanOut.concat(compositeFutures))) {
+			composites.put(entry.getKey(), entry.getValue());
+		}
+
+		// Group tree, depth first
+		List<CompletableFuture<List<Group>>> groupFutures = new ArrayList<>();
+		for (Map<String, Object> group : fetchPaged(adminRealmUrl + "/groups?briefRepresentation=false", request)) {
+			groupFutures.add(loadGroupTree(group, null, request, scope));
+		}
+		List<Group> groups = scope.join(BoundedFanOut.concat(groupFutures));
+
+		return new Snapshot(groups, loadedClients, realmRoles, composites);
+	}
+
+	private void addCompositeFetches(String clientInternalId,
+									 List<Map<String, Object>> roles,
+									 HttpEntity<String> request,
+									 BoundedFanOut.Scope scope,
+									 List<CompletableFuture<List<Map.Entry<String, List<Map<String, Object>>>>>> futures) {
+		for (Map<String, Object> role : roles) {
+			String roleId = asString(role.get("id"));
+			String roleName = asString(role.get("name"));
+			if (roleId != null && roleName != null && Boolean.TRUE.equals(role.get("composite"))) {
+				String key = compositeKey(clientInternalId, roleName);
+				futures.add(scope.supply(() -> List.of(Map.entry(key, fetchList(adminRealmUrl + "/roles-by-id/" + roleId + "/composites", request)))));
+			}
+		}
+	}
+
+	private CompletableFuture<List<Group>> loadGroupTree(Map<String, Object> group, String parentId, HttpEntity<String> request, BoundedFanOut.Scope scope) {
+		String id = asString(group.get("id"));
+		if (id == null) {
+			return CompletableFuture.completedFuture(Collections.emptyList());
+		}
+
+		CompletableFuture<Group> self;
+		if (group.containsKey("realmRoles") || group.containsKey("clientRoles")) {
+			self = CompletableFuture.completedFuture(toGroup(id, group, parentId));
+		} else {
+			// Brief representation; ask for the mappings explicitly
+			self = scope.supply(() -> toGroupFromMappings(id, group, parentId, fetchMap(adminRealmUrl + "/groups/" + id + "/role-mappings", request)));
+		}
+
+		CompletableFuture<List<Map<String, Object>>> children;
+		if (group.get("subGroups") instanceof List<?> subGroups && !subGroups.isEmpty()) {
+			// Older Keycloak versions nest the whole tree in the top-level listing
+			children = CompletableFuture.completedFuture(asListOfMaps(subGroups));
+		} else if (group.get("subGroupCount") instanceof Number count && count.longValue() == 0) {
+			children = CompletableFuture.completedFuture(Collections.emptyList());
+		} else {
+			children = scope.supply(() -> fetchPaged(adminRealmUrl + "/groups/" + id + "/children?briefRepresentation=false", request));
+		}
+
+		CompletableFuture<List<Group>> descendants = children.thenCompose(childGroups -> {
+			List<CompletableFuture<List<Group>>> subtrees = new ArrayList<>();
+			for (Map<String, Object> child : childGroups) {
+				subtrees.add(loadGroupTree(child, id, request, scope));
+			}
+			return BoundedFanOut.concat(subtrees);
+		});
+
+		return self.thenCombine(descendants, (parent, below) -> {
+			List<Group> subtree = new ArrayList<>(below.size() + 1);
+			subtree.add(parent);
+			subtree.addAll(below);
+			return subtree;
+		});
+	}
+
+	private static Group toGroup(String id, Map<String, Object> group, String parentId) {
+		Map<String, Set<String>> clientRoles = new HashMap<>();
+		if (group.get("clientRoles") instanceof Map<?, ?> byClient) {
+			byClient.forEach((clientId, roles) -> clientRoles.put(String.valueOf(clientId), asStringSet(roles)));
+		}
+		return new Group(id, asString(group.get("name")), parentId, asStringSet(group.get("realmRoles")), clientRoles);
+	}
+
+	private static Group toGroupFromMappings(String id, Map<String, Object> group, String parentId, Map<String, Object> mappings) {
+		Set<String> realmRoles = new HashSet<>();
+		if (mappings.get("realmMappings") instanceof List<?> realmMappings) {
+			for (Map<String, Object> role : asListOfMaps(realmMappings)) {
+				realmRoles.add(asString(role.get("name")));
+			}
+		}
+		Map<String, Set<String>> clientRoles = new HashMap<>();
+		if (mappings.get("clientMappings") instanceof Map<?, ?> clientMappings) {
+			clientMappings.forEach((clientId, mapping) -> {
+				if (mapping instanceof Map<?, ?> clientMapping && clientMapping.get("mappings") instanceof List<?> roles) {
+					Set<String> names = new HashSet<>();
+					for (Map<String, Object> role : asListOfMaps(roles)) {
+						names.add(asString(role.get("name")));
+					}
+					clientRoles.put(String.valueOf(clientId), names);
+				}
+			});
+		}
+		return new Group(id, asString(group.get("name")), parentId, realmRoles, clientRoles);
+	}
+
+	private List<Map<String, Object>> fetchPaged(String url, HttpEntity<String> request) {
+		String separator = url.contains("?") ? "&" : "?";
+		List<Map<String, Object>> all = new ArrayList<>();
+		for (int first = 0; ; first += PAGE_SIZE) {
+			List<Map<String, Object>> page = fetchList(url + separator + "first=" + first + "&max=" + PAGE_SIZE, request);
+			all.addAll(page);
+			if (page.size() < PAGE_SIZE) {
+				return all;
+			}
+		}
+	}
+
+	// Unlike the provider's lookups these let failures propagate, so that a partial realm is never published
+	private List<Map<String, Object>> fetchList(String url, HttpEntity<String> request) {
+		List<Map<String, Object>> body = restTemplate.exchange(url, HttpMethod.GET, request, LIST_OF_MAPS).getBody();
+		return body != null ? body : Collections.emptyList();
+	}
+
+	private Map<String, Object> fetchMap(String url, HttpEntity<String> request) {
+		Map<String, Object> body = restTemplate.exchange(url, HttpMethod.GET, request, MAP).getBody();
+		return body != null ? body : Collections.emptyMap();
+	}
+
+	private static String compositeKey(String clientInternalId, String roleName) {
+		return (clientInternalId != null ? clientInternalId : "") + "/" + roleName;
+	}
+
+	private static String asString(Object value) {
+		return value != null ? value.toString() : null;
+	}
+
+	private static Set<String> asStringSet(Object values) {
+		Set<String> strings = new HashSet<>();
+		if (values instanceof Collection<?> collection) {
+			for (Object value : collection) {
+				strings.add(String.valueOf(value));
+			}
+		}
+		return strings;
+	}
+
+	@SuppressWarnings("unchecked")
+	private static List<Map<String, Object>> asListOfMaps(List<?> values) {
+		List<Map<String, Object>> maps = new ArrayList<>(values.size());
+		for (Object value : values) {
+			if (value instanceof Map<?, ?> map) {
+				maps.add((Map<String, Object>) map);
+			}
+		}
+		return maps;
+	}
+
+	/**
+	 * A group as loaded, with client role mappings keyed by the client's clientId.
+	 */
+	record Group(String id, String name, String parentId, Set<String> realmRoles, Map<String, Set<String>> clientRoles) {
+	}
+
+	record Client(String id, String clientId, List<Map<String, Object>> roles) {
+	}
+
+	/**
+	 * Immutable, indexed view of the realm at the time it was loaded.
+	 */
+	static final class Snapshot {
+		private final Map<String, List<Group>> groupsByName;
+		private final Map<String, List<String>> childIdsByGroupId;
+		private final Map<String, List<String>> groupIdsByRealmRole;
+		private final Map<String, List<String>> groupIdsByClientRole;
+		private final List<Client> clients;
+		private final Map<String, String> clientInternalIdsByClientId;
+		private final Map<String, List<Client>> clientsByRoleName;
+		private final Set<String> realmRoles;
+		private final Map<String, List<Map<String, Object>>> composites;
+
+		Snapshot(List<Group> groups, List<Client> clients, List<Map<String, Object>> realmRoles, Map<String, List<Map<String, Object>>> composites) {
+			Map<String, String> clientInternalIds = new HashMap<>();
+			Map<String, List<Client>> byRoleName = new HashMap<>();
+			for (Client client : clients) {
+				clientInternalIds.put(client.clientId(), client.id());
+				for (Map<String, Object> role : client.roles()) {
+					Object name = role.get("name");
+					if (name != null) {
+						byRoleName.computeIfAbsent(name.toString(), k -> new ArrayList<>()).add(client);
+					}
+				}
+			}
+
+			// Groups arrive depth first, so every index below lists groups in the order a tree walk would visit them
+			Map<String, List<Group>> byName = new HashMap<>();
+			Map<String, List<String>> children = new HashMap<>();
+			Map<String, List<String>> byRealmRole = new HashMap<>();
+			Map<String, List<String>> byClientRole = new HashMap<>();
+			for (Group group : groups) {
+				if (group.name() != null) {
+					byName.computeIfAbsent(group.name(), k -> new ArrayList<>()).add(group);
+				}
+				children.computeIfAbsent(group.id(), k -> new ArrayList<>());
+				if (group.parentId() != null) {
+					children.computeIfAbsent(group.parentId(), k -> new ArrayList<>()).add(group.id());
+				}
+				for (String role : group.realmRoles()) {
+					byRealmRole.computeIfAbsent(role, k -> new ArrayList<>()).add(group.id());
+				}
+				group.clientRoles().forEach((clientId, roles) -> {
+					String clientInternalId = clientInternalIds.get(clientId);
+					if (clientInternalId != null) {
+						for (String role : roles) {
+							byClientRole.computeIfAbsent(compositeKey(clientInternalId, role), k -> new ArrayList<>()).add(group.id());
+						}
+					}
+				});
+			}
+
+			Set<String> realmRoleNames = new HashSet<>();
+			for (Map<String, Object> role : realmRoles) {
+				Object name = role.get("name");
+				if (name != null) {
+					realmRoleNames.add(name.toString());
+				}
+			}
+
+			this.groupsByName = copyOf(byName);
+			this.childIdsByGroupId = copyOf(children);
+			this.groupIdsByRealmRole = copyOf(byRealmRole);
+			this.groupIdsByClientRole = copyOf(byClientRole);
+			this.clients = List.copyOf(clients);
+			this.clientInternalIdsByClientId = Map.copyOf(clientInternalIds);
+			this.clientsByRoleName = copyOf(byRoleName);
+			this.realmRoles = Set.copyOf(realmRoleNames);
+			this.composites = Map.copyOf(composites);
+		}
+
+		/**
+		 * @return Groups anywhere in the tree with exactly this name; empty if there are none.
+		 */
+		List<KeyCloakGroup> findGroupsByName(String name) {
+			List<KeyCloakGroup> matches = new ArrayList<>();
+			for (Group group : groupsByName.getOrDefault(name, Collections.emptyList())) {
+				KeyCloakGroup keyCloakGroup = new KeyCloakGroup();
+				keyCloakGroup.setId(group.id());
+				keyCloakGroup.setName(group.name());
+				keyCloakGroup.setParentId(group.parentId());
+				matches.add(keyCloakGroup);
+			}
+			return matches;
+		}
+
+		/**
+		 * @return Ids of the group's direct subgroups, or null if the group was not in the realm when it was loaded.
+		 */
+		List<String> getChildGroupIds(String groupId) {
+			return childIdsByGroupId.get(groupId);
+		}
+
+		List<String> getGroupIdsWithRealmRole(String roleName) {
+			return groupIdsByRealmRole.getOrDefault(roleName, Collections.emptyList());
+		}
+
+		List<String> getGroupIdsWithClientRole(String clientInternalId, String roleName) {
+			return groupIdsByClientRole.getOrDefault(compositeKey(clientInternalId, roleName), Collections.emptyList());
+		}
+
+		String getClientInternalId(String clientId) {
+			return clientInternalIdsByClientId.get(clientId);
+		}
+
+		/**
+		 * @return Internal ids of the clients that define a role with this name, in the order Keycloak lists clients.
+		 */
+		List<String> getClientIdsWithRole(String roleName) {
+			return clientsByRoleName.getOrDefault(roleName, Collections.emptyList()).stream().map(Client::id).toList();
+		}
+
+		boolean hasRealmRole(String roleName) {
+			return realmRoles.contains(roleName);
+		}
+
+		/**
+		 * @param clientInternalId Internal id of the client owning the role, or null for a realm role.
+		 * @return The role's composite roles; empty if the role is not composite.
+		 */
+		List<Map<String, Object>> getComposites(String clientInternalId, String roleName) {
+			return composites.getOrDefault(compositeKey(clientInternalId, roleName), Collections.emptyList());
+		}
+
+		int groupCount() {
+			return childIdsByGroupId.size();
+		}
+
+		private static <V> Map<String, List<V>> copyOf(Map<String, List<V>> map) {
+			Map<String, List<V>> copy = new HashMap<>(map.size() * 2);
+			map.forEach((key, values) -> copy.put(key, List.copyOf(values)));
+			return Map.copyOf(copy);
+		}
+	}
+}
@@ -0,0 +1,350 @@
+package org.snomed.ims.service;
+
+import com.fasterxml.jackson.core.type.TypeReference;
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.RestTemplate;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.security.*;
+import java.security.spec.*;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Verifies Keycloak access tokens locally using the realm's published signing keys, as an alternative to calling the
+ * introspection endpoint for every token. Keys are fetched from the realm JWKS endpoint and looked up by key id; an
+ * unknown key id triggers a (rate limited) re-fetch so that key rotation is picked up without a restart.
+ */
+public class KeyCloakTokenVerifier {
+	private static final Logger LOGGER = LoggerFactory.getLogger(KeyCloakTokenVerifier.class);
+	private static final TypeReference<Map<String, Object>> JSON_MAP = new TypeReference<>() {
+	};
+	private static final long CLOCK_SKEW_SECONDS = 30;
+	private static final long MIN_KEY_REFRESH_INTERVAL_MILLIS = 10_000;
+	private static final long MAX_KEY_AGE_MILLIS = 3_600_000;
+	private static final Map<String, String> SIGNATURE_ALGORITHMS = Map.of(
+			"RS256", "SHA256withRSA",
+			"RS384", "SHA384withRSA",
+			"RS512", "SHA512withRSA",
+			"ES256", "SHA256withECDSA",
+			"ES384", "SHA384withECDSA",
+			"ES512", "SHA512withECDSA"
+	);
+	private static final Map<String, String> EC_CURVES = Map.of(
+			"P-256", "secp256r1",
+			"P-384", "secp384r1",
+			"P-521", "secp521r1"
+	);
+
+	private final RestTemplate restTemplate;
+	private final String certsUrl;
+	private final String issuer;
+	private final String audience;
+	private final boolean revocationCheck;
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private final Map<String, Long> revokedTokenIds = new ConcurrentHashMap<>();
+
+	private volatile Map<String, PublicKey> keys = Collections.emptyMap();
+	private volatile long keysFetchedAt;
+	private volatile boolean keysUnavailable;
+	// A lock rather than synchronized, as the fetch blocks on I/O and would otherwise pin a virtual thread to its carrier
+	private final ReentrantLock refreshLock = new ReentrantLock();
+
+	public KeyCloakTokenVerifier(RestTemplate restTemplate, String keycloakUrl, String realm, String audience, boolean revocationCheck) {
+		this(restTemplate, keycloakUrl, realm, null, audience, revocationCheck);
+	}
+
+	/**
+	 * @param issuer Expected iss claim, where Keycloak's frontend URL differs from keycloakUrl; null or empty to expect
+	 *               the realm URL under keycloakUrl.
+	 */
+	public KeyCloakTokenVerifier(RestTemplate restTemplate, String keycloakUrl, String realm, String issuer, String audience, boolean revocationCheck) {
+		String baseUrl = keycloakUrl.endsWith("/") ? keycloakUrl.substring(0, keycloakUrl.length() - 1) : keycloakUrl;
+		String realmUrl = baseUrl + "/realms/" + realm;
+		this.restTemplate = restTemplate;
+		this.issuer = issuer != null && !issuer.isEmpty() ? issuer : realmUrl;
+		// Keys are always fetched from the internal URL, whatever the tokens name as their issuer
+		this.certsUrl = realmUrl + "/protocol/openid-connect/certs";
+		this.audience = audience;
+		this.revocationCheck = revocationCheck;
+	}
+
+	/**
+	 * Return the token's claims if it is an access token whose signature, expiry, issuer and audience are valid;
+	 * otherwise return null.
+	 *
+	 * @param token Access token to verify.
+	 * @return Token claims if the token is valid; otherwise null.
+	 * @throws RuntimeServiceException if the realm signing keys cannot be fetched, so the token cannot be checked.
+	 */
+	public Map<String, Object> verify(String token) {
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+
+		String[] parts = token.split("\\.");
+		if (parts.length != 3) {
+			LOGGER.debug("Token is not a signed JWT");
+			return null;
+		}
+
+		try {
+			Map<String, Object> header = decodeJson(parts[0]);
+			String algorithm = SIGNATURE_ALGORITHMS.get(String.valueOf(header.get("alg")));
+			if (algorithm == null) {
+				LOGGER.warn("Unsupported token signature algorithm: {}", header.get("alg"));
+				return null;
+			}
+
+			PublicKey key = getKey(String.valueOf(header.get("kid")));
+			if (key == null) {
+				LOGGER.warn("No signing key found for token key id: {}", header.get("kid"));
+				return null;
+			}
+
+			byte[] signature = Base64.getUrlDecoder().decode(parts[2]);
+			if (algorithm.endsWith("ECDSA")) {
+				signature = toDerSignature(signature);
+			}
+			Signature verifier = Signature.getInstance(algorithm);
+			verifier.initVerify(key);
+			verifier.update((parts[0] + "." + parts[1]).getBytes(StandardCharsets.US_ASCII));
+			if (!verifier.verify(signature)) {
+				LOGGER.debug("Token signature is invalid");
+				return null;
+			}
+
+			Map<String, Object> claims = decodeJson(parts[1]);
+			return hasValidClaims(claims) ? claims : null;
+		} catch (IllegalArgumentException | IOException | GeneralSecurityException e) {
+			LOGGER.debug("Failed to verify token: {}", e.getMessage());
+			return null;
+		}
+	}
+
+	/**
+	 * Record a token as revoked so that local verification rejects it until it expires. Only applies when the
+	 * revocation check is enabled.
+	 *
+	 * @param token Token that has been invalidated.
+	 */
+	public void revoke(String token) {
+		TokenRevocation revocation = getRevocation(token);
+		if (revocation != null) {
+			revoke(revocation);
+		}
+	}
+
+	/**
+	 * Record a token revoked on another node.
+	 *
+	 * @param revocation Id and expiry of the token.
+	 */
+	public void revoke(TokenRevocation revocation) {
+		if (!revocationCheck) {
+			return;
+		}
+		long now = System.currentTimeMillis() / 1000;
+		revokedTokenIds.values().removeIf(expiry -> expiry + CLOCK_SKEW_SECONDS < now);
+		revokedTokenIds.put(revocation.tokenId(), revocation.expiresAt());
+	}
+
+	/**
+	 * @param token Token that is being invalidated.
+	 * @return The token's id and expiry; null if the revocation check is disabled or the token does not carry them.
+	 */
+	public TokenRevocation getRevocation(String token) {
+		if (!revocationCheck || token == null) {
+			return null;
+		}
+
+		String[] parts = token.split("\\.");
+		if (parts.length != 3) {
+			return null;
+		}
+
+		try {
+			Map<String, Object> claims = decodeJson(parts[1]);
+			Object jti = claims.get("jti");
+			if (jti != null && claims.get("exp") instanceof Number exp) {
+				return new TokenRevocation(jti.toString(), exp.longValue());
+			}
+		} catch (IllegalArgumentException | IOException e) {
+			LOGGER.debug("Failed to read token id: {}", e.getMessage());
+		}
+		return null;
+	}
+
+	private boolean hasValidClaims(Map<String, Object> claims) {
+		long now = System.currentTimeMillis() / 1000;
+		if (!(claims.get("exp") instanceof Number exp) || exp.longValue() + CLOCK_SKEW_SECONDS < now) {
+			LOGGER.debug("Token has expired");
+			return false;
+		}
+		if (claims.get("nbf") instanceof Number nbf && nbf.longValue() - CLOCK_SKEW_SECONDS > now) {
+			LOGGER.debug("Token is not yet valid");
+			return false;
+		}
+		if (!"Bearer".equals(claims.get("typ"))) {
+			// ID and refresh tokens are signed by the same keys and name the client too
+			LOGGER.debug("Token type {} is not an access token", claims.get("typ"));
+			return false;
+		}
+		if (!issuer.equals(claims.get("iss"))) {
+			LOGGER.debug("Token issuer {} does not match {}", claims.get("iss"), issuer);
+			return false;
+		}
+		if (!hasAudience(claims)) {
+			LOGGER.debug("Token audience {} (azp {}) does not include {}", claims.get("aud"), claims.get("azp"), audience);
+			return false;
+		}
+		if (revocationCheck && claims.get("jti") != null && revokedTokenIds.containsKey(claims.get("jti").toString())) {
+			LOGGER.debug("Token has been revoked");
+			return false;
+		}
+		return true;
+	}
+
+	private boolean hasAudience(Map<String, Object> claims) {
+		if (audience == null || audience.isEmpty()) {
+			return true;
+		}
+
+		// Keycloak names the requesting client in azp; aud only lists clients added by audience mappers
+		Object aud = claims.get("aud");
+		if (aud instanceof Collection<?> audiences && audiences.contains(audience)) {
+			return true;
+		}
+		return audience.equals(aud) || audience.equals(claims.get("azp"));
+	}
+
+	private PublicKey getKey(String kid) {
+		PublicKey key = keys.get(kid);
+		long sinceFetch = System.currentTimeMillis() - keysFetchedAt;
+		if ((key == null && sinceFetch > MIN_KEY_REFRESH_INTERVAL_MILLIS) || sinceFetch > MAX_KEY_AGE_MILLIS) {
+			refreshKeys();
+			key = keys.get(kid);
+		}
+		if (key == null && keysUnavailable) {
+			// Without the current key set an unknown key id says nothing about the token
+			throw new RuntimeServiceException("Realm signing keys are unavailable from " + certsUrl, null);
+		}
+		return key;
+	}
+
+	private void refreshKeys() {
+		refreshLock.lock();
+		try {
+			if (System.currentTimeMillis() - keysFetchedAt <= MIN_KEY_REFRESH_INTERVAL_MILLIS) {
+				// Another thread refreshed while we were waiting
+				return;
+			}
+			fetchKeys();
+		} finally {
+			refreshLock.unlock();
+		}
+	}
+
+	private void fetchKeys() {
+		try {
+			LOGGER.debug("Fetching realm signing keys from {}", certsUrl);
+			ResponseEntity<Map<String, Object>> response = restTemplate.exchange(
+					certsUrl,
+					HttpMethod.GET,
+					null,
+					new ParameterizedTypeReference<>() {}
+			);
+			Map<String, Object> body = response.getBody();
+			if (body != null && body.get("keys") instanceof List<?> jwks) {
+				Map<String, PublicKey> fetched = new HashMap<>();
+				for (Object jwk : jwks) {
+					if (jwk instanceof Map<?, ?> map) {
+						addKey(map, fetched);
+					}
+				}
+				keys = Map.copyOf(fetched);
+				keysUnavailable = false;
+				LOGGER.info("Loaded {} realm signing keys", fetched.size());
+			} else {
+				keysUnavailable = true;
+				LOGGER.error("Realm signing keys response from {} holds no keys", certsUrl);
+			}
+		} catch (Exception e) {
+			keysUnavailable = true;
+			LOGGER.error("Failed to fetch realm signing keys from {}", certsUrl, e);
+		} finally {
+			keysFetchedAt = System.currentTimeMillis();
+		}
+	}
+
+	private void addKey(Map<?, ?> jwk, Map<String, PublicKey> keysByKid) {
+		Object kid = jwk.get("kid");
+		if (kid == null || "enc".equals(jwk.get("use"))) {
+			return;
+		}
+
+		try {
+			Object kty = jwk.get("kty");
+			if ("RSA".equals(kty)) {
+				RSAPublicKeySpec spec = new RSAPublicKeySpec(toBigInteger(jwk.get("n")), toBigInteger(jwk.get("e")));
+				keysByKid.put(kid.toString(), KeyFactory.getInstance("RSA").generatePublic(spec));
+			} else if ("EC".equals(kty) && EC_CURVES.containsKey(String.valueOf(jwk.get("crv")))) {
+				AlgorithmParameters parameters = AlgorithmParameters.getInstance("EC");
+				parameters.init(new ECGenParameterSpec(EC_CURVES.get(String.valueOf(jwk.get("crv")))));
+				ECPoint point = new ECPoint(toBigInteger(jwk.get("x")), toBigInteger(jwk.get("y")));
+				ECPublicKeySpec spec = new ECPublicKeySpec(point, parameters.getParameterSpec(ECParameterSpec.class));
+				keysByKid.put(kid.toString(), KeyFactory.getInstance("EC").generatePublic(spec));
+			}
+		} catch (GeneralSecurityException | IllegalArgumentException e) {
+			LOGGER.warn("Ignoring unusable realm signing key {}: {}", kid, e.getMessage());
+		}
+	}
+
+	private Map<String, Object> decodeJson(String part) throws IOException {
+		return objectMapper.readValue(Base64.getUrlDecoder().decode(part), JSON_MAP);
+	}
+
+	private static BigInteger toBigInteger(Object base64Url) {
+		return new BigInteger(1, Base64.getUrlDecoder().decode(String.valueOf(base64Url)));
+	}
+
+	/**
+	 * JWS carries ECDSA signatures as the raw concatenation of r and s; the JDK expects ASN.1 DER.
+	 */
+	private static byte[] toDerSignature(byte[] jwsSignature) throws SignatureException {
+		if (jwsSignature.length == 0 || jwsSignature.length % 2 != 0) {
+			throw new SignatureException("Invalid ECDSA signature length");
+		}
+		int half = jwsSignature.length / 2;
+		byte[] r = new BigInteger(1, Arrays.copyOfRange(jwsSignature, 0, half)).toByteArray();
+		byte[] s = new BigInteger(1, Arrays.copyOfRange(jwsSignature, half, jwsSignature.length)).toByteArray();
+
+		int sequenceLength = 2 + r.length + 2 + s.length;
+		ByteArrayOutputStream der = new ByteArrayOutputStream();
+		der.write(0x30);
+		writeDerLength(der, sequenceLength);
+		der.write(0x02);
+		writeDerLength(der, r.length);
+		der.writeBytes(r);
+		der.write(0x02);
+		writeDerLength(der, s.length);
+		der.writeBytes(s);
+		return der.toByteArray();
+	}
+
+	private static void writeDerLength(ByteArrayOutputStream der, int length) {
+		if (length > 127) {
+			der.write(0x81);
+		}
+		der.write(length);
+	}
+}
@@ -0,0 +1,34 @@
+package org.snomed.ims.service;
+
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.function.Consumer;
+
+/**
+ * In-process bus, for a single node, or for several nodes in one JVM as in tests. Invalidations are delivered
+ * synchronously on the publishing thread.
+ */
+public class LocalInvalidationBus implements InvalidationBus {
+	private static final Logger LOGGER = LoggerFactory.getLogger(LocalInvalidationBus.class);
+
+	private final List<Consumer<Invalidation>> subscribers = new CopyOnWriteArrayList<>();
+
+	@Override
+	public void publish(Invalidation invalidation) {
+		for (Consumer<Invalidation> subscriber : subscribers) {
+			try {
+				subscriber.accept(invalidation);
+			} catch (RuntimeException e) {
+				LOGGER.warn("Failed to apply invalidation {}. {}", invalidation.scope(), e.getMessage());
+			}
+		}
+	}
+
+	@Override
+	public void subscribe(Consumer<Invalidation> subscriber) {
+		subscribers.add(subscriber);
+	}
+}
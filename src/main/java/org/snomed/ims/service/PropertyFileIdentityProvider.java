@@ -2,24 +2,50 @@ package org.snomed.ims.service;
 
 import org.slf4j.Logger;
 import org.slf4j.LoggerFactory;
+import org.snomed.ims.domain.TokenKey;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.UserInformationUpdateRequest;
 import org.springframework.cache.annotation.CacheEvict;
 
+import java.io.Closeable;
 import java.io.File;
 import java.io.IOException;
+import java.time.Duration;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+public class PropertyFileIdentityProvider implements IdentityProvider, Closeable {
+	private static final String USERS_FILE = "users.txt";
+	private static final String USER_GROUPS_FILE = "user-groups.txt";
+	private static final Duration RELOAD_DEBOUNCE = Duration.ofMillis(500);
+	private static final Duration DEFAULT_POLL_INTERVAL = Duration.ofSeconds(5);
+
+	/**
+	 * Users and passwords as read from the files. Never modified once built; a reload swaps in a new instance.
+	 */
+	private record Directory(Map<String, User> users, Map<String, String> passwords) {
+	}
 
-public class PropertyFileIdentityProvider implements IdentityProvider {
-
-	private final Map<String, User> users = new HashMap<>();
-	private final Map<String, String> passwords = new HashMap<>();
-	private final Map<String, User> authorisationTokens = new HashMap<>();
+	private volatile Directory directory = new Directory(Map.of(), Map.of());
+	// Tokens refer to users by login so that a reload is picked up without rewriting the token maps
+	private final Map<String, String> loginsByToken = new ConcurrentHashMap<>();
+	private final Map<String, String> tokensByLogin = new ConcurrentHashMap<>();
 	private final FileSource usersFileSource;
 	private final FileSource userGroupFileSource;
+	private final DirectoryWatcher directoryWatcher;
 	private final Logger logger = LoggerFactory.getLogger(getClass());
 
 	PropertyFileIdentityProvider(String fileDirectory) throws IOException {
+		this(fileDirectory, false, DEFAULT_POLL_INTERVAL);
+	}
+
+	/**
+	 * @param fileDirectory Directory holding the users and user-groups files.
+	 * @param poll          Check the files for changes on every poll interval rather than waiting for filesystem change
+	 *                      events, for filesystems (such as some network or container mounts) that do not deliver them.
+	 * @param pollInterval  How often to check the files when polling, including when change events are unavailable.
+	 */
+	PropertyFileIdentityProvider(String fileDirectory, boolean poll, Duration pollInterval) throws IOException {
 		File directory = new File(fileDirectory);
 		if (!directory.exists()) {
 			logger.error("File directory does not exist: '{}'", directory.getAbsolutePath());
@@ -29,9 +55,17 @@ public class PropertyFileIdentityProvider implements IdentityProvider {
 			logger.error("File directory is not a directory: '{}'", directory.getAbsolutePath());
 			System.exit(1);
 		}
-		usersFileSource = new FileSource(directory, "users.txt");
-		userGroupFileSource = new FileSource(directory, "user-groups.txt");
+		usersFileSource = new FileSource(directory, USERS_FILE);
+		userGroupFileSource = new FileSource(directory, USER_GROUPS_FILE);
 		readFiles();
+
+		// Reload in the background so that requests never touch the filesystem
+		directoryWatcher = new DirectoryWatcher(directory.toPath(), Set.of(USERS_FILE, USER_GROUPS_FILE), RELOAD_DEBOUNCE, this::readFilesIfChanged);
+		if (poll) {
+			directoryWatcher.poll(pollInterval);
+		} else {
+			directoryWatcher.watch(pollInterval);
+		}
 	}
 
 	@Override
@@ -39,53 +73,47 @@ public class PropertyFileIdentityProvider implements IdentityProvider {
 		if (username == null || username.isEmpty() || password == null || password.isEmpty()) {
 			return null;
 		}
-		readFilesIfChanged();
+		Directory current = directory;
+		if (!password.equals(current.passwords().get(username)) || !current.users().containsKey(username)) {
+			return null;
+		}
 
-		if (password.equals(passwords.get(username))) {
-			User user = users.get(username);
-			if (user != null) {
-				synchronized (authorisationTokens) {
-					for (Map.Entry<String, User> entry : authorisationTokens.entrySet()) {
-						// If already authenticated, reuse existing token
-						if (entry.getValue().equals(user)) {
-							return entry.getKey();
-						}
-					}
-					// No existing token found. Create new.
-					String token = UUID.randomUUID().toString();
-					authorisationTokens.put(token, user);
-					return token;
-				}
+		while (true) {
+			// If already authenticated, reuse existing token; otherwise create new
+			String token = tokensByLogin.computeIfAbsent(username, login -> {
+				String created = UUID.randomUUID().toString();
+				loginsByToken.put(created, login);
+				return created;
+			});
+			if (loginsByToken.containsKey(token)) {
+				return token;
 			}
+			// The token was invalidated while we were reusing it; drop the stale entry and try again
+			tokensByLogin.remove(username, token);
 		}
-		return null;
 	}
 
 	@Override
 	public User getUser(String username) {
-		readFilesIfChanged();
-
-		return users.get(username);
+		return directory.users().get(username);
 	}
 
 	@Override
 	public User getUserByToken(String token) {
-		readFilesIfChanged();
-
-		synchronized (authorisationTokens) {
-			return authorisationTokens.get(token);
+		if (token == null) {
+			return null;
 		}
+		String login = loginsByToken.get(token);
+		return login != null ? directory.users().get(login) : null;
 	}
 
 	@Override
 	public List<String> getUserRoles(String username) {
-		readFilesIfChanged();
-
 		if (username == null || username.isEmpty()) {
 			return Collections.emptyList();
 		}
 
-		User user = users.get(username);
+		User user = directory.users().get(username);
 		if (user != null) {
 			return user.getRoles();
 		}
@@ -94,27 +122,27 @@ public class PropertyFileIdentityProvider implements IdentityProvider {
 
 	@Override
 	public List<User> searchUsersByGroup(String currentUserId, String groupName, String username, int maxResults, int startAt) {
-		return users.values().stream()
-				.filter(user -> (username == null || username.equals(user.getLogin())) && user.getRoles().contains(groupName))
+		return directory.users().values().stream()
+				.filter(user -> (username == null || username.equals(user.getLogin())) && user.hasRole(groupName))
 				.map(User::publicClone)
 				.toList();
 	}
 
 	@Override
-	@CacheEvict(value = "accountCache", key = "#token")
+	@CacheEvict(value = "accountCache", key = TokenKey.TOKEN_PARAMETER)
 	public boolean invalidateToken(String token) {
 		if (token == null || token.isEmpty()) {
 			return false;
 		}
 
-		synchronized (authorisationTokens) {
-			authorisationTokens.remove(token);
+		String login = loginsByToken.remove(token);
+		if (login != null) {
+			tokensByLogin.remove(login, token);
 		}
 		return true;
 	}
 
 	@Override
-	@CacheEvict(value = "accountCache", key = "#token")
 	public User updateUser(User user, UserInformationUpdateRequest request, String token) {
 		throw new UnsupportedOperationException("Password reset is not supported via API.");
 	}
@@ -134,18 +162,40 @@ public class PropertyFileIdentityProvider implements IdentityProvider {
 		return null;
 	}
 
+	@Override
+	public boolean refreshDirectory() {
+		try {
+			readFiles();
+			return true;
+		} catch (IOException | IllegalArgumentException e) {
+			logger.error("Failed to reload user or group files.", e);
+			return false;
+		}
+	}
+
 	public void readFilesIfChanged() {
 		try {
-			if (usersFileSource.hasChanged() || userGroupFileSource.hasChanged()) {
-				readFiles();
+			if (hasFileChanged()) {
+				synchronized (this) {
+					// Another thread may have reloaded while we waited
+					if (hasFileChanged()) {
+						readFiles();
+					}
+				}
 			}
 		} catch (IOException e) {
 			throw new RuntimeServiceException("Failed to read user or group files.", e);
 		}
 	}
 
-	public void readFiles() throws IOException {
+	private boolean hasFileChanged() throws IOException {
+		return usersFileSource.hasChanged() || userGroupFileSource.hasChanged();
+	}
+
+	public synchronized void readFiles() throws IOException {
 		logger.info("Loading users and groups from files.");
+		Map<String, User> users = new HashMap<>();
+		Map<String, String> passwords = new HashMap<>();
 		Properties userProperties = usersFileSource.readProperties();
 		for (Map.Entry<Object, Object> entry : userProperties.entrySet()) {
 			User user = new User();
@@ -167,11 +217,17 @@ public class PropertyFileIdentityProvider implements IdentityProvider {
 			}
 			user.setRoles(groups);
 		}
-		synchronized (authorisationTokens) {
-			for (Map.Entry<String, User> entry : authorisationTokens.entrySet()) {
-				entry.setValue(users.get(entry.getValue().getLogin()));
-			}
-		}
+		directory = new Directory(Collections.unmodifiableMap(users), Collections.unmodifiableMap(passwords));
+		usersFileSource.markLoaded();
+		userGroupFileSource.markLoaded();
+	}
+
+	/**
+	 * Stop watching the files for changes.
+	 */
+	@Override
+	public void close() throws IOException {
+		directoryWatcher.close();
 	}
 
 }
@@ -0,0 +1,66 @@
+package org.snomed.ims.service;
+
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Supplier;
+
+/**
+ * Coalesces concurrent calls for the same key into one. The first caller runs the lookup on its own thread; callers
+ * arriving while it is in flight wait for and share its result, or its exception. Nothing is remembered once the
+ * lookup completes, so this only removes duplicate work and never serves stale results.
+ *
+ * @param <K> Lookup key; must implement equals and hashCode.
+ * @param <V> Lookup result.
+ */
+public class SingleFlight<K, V> {
+	private final Map<K, CompletableFuture<V>> inFlight = new ConcurrentHashMap<>();
+
+	/**
+	 * Return the result of the lookup for key, running it only if no identical lookup is already in flight.
+	 *
+	 * @param key    Identifies the lookup.
+	 * @param lookup Performs the lookup; run on the calling thread.
+	 * @return Result of the lookup, which may be shared with other callers.
+	 */
+	public V execute(K key, Supplier<V> lookup) {
+		CompletableFuture<V> ours = new CompletableFuture<>();
+		CompletableFuture<V> existing = inFlight.putIfAbsent(key, ours);
+		if (existing != null) {
+			return join(existing);
+		}
+
+		try {
+			V result = lookup.get();
+			ours.complete(result);
+			return result;
+		} catch (RuntimeException | Error e) {
+			ours.completeExceptionally(e);
+			throw e;
+		} finally {
+			inFlight.remove(key, ours);
+		}
+	}
+
+	/**
+	 * @return Number of lookups currently in flight.
+	 */
+	public int size() {
+		return inFlight.size();
+	}
+
+	private V join(CompletableFuture<V> future) {
+		try {
+			return future.join();
+		} catch (CompletionException e) {
+			if (e.getCause() instanceof RuntimeException runtimeException) {
+				throw runtimeException;
+			}
+			if (e.getCause() instanceof Error error) {
+				throw error;
+			}
+			throw e;
+		}
+	}
+}
@@ -0,0 +1,10 @@
+package org.snomed.ims.service;
+
+/**
+ * A logged out token, as nodes that verify tokens locally need it to go on rejecting the token.
+ *
+ * @param tokenId   The token's id (jti claim).
+ * @param expiresAt When the token expires, in seconds since the epoch (exp claim); it need not be rejected after that.
+ */
+public record TokenRevocation(String tokenId, long expiresAt) {
+}
@@ -0,0 +1,81 @@
+package org.snomed.ims.service;
+
+import java.time.Duration;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Number and total duration of the upstream calls made on behalf of one inbound request. Held for the thread serving
+ * the request, and carried to the threads its fan-out runs on, so calls made in parallel are counted against the
+ * request that caused them. Calls made outside any request, such as background refreshes, are not counted.
+ */
+public final class UpstreamCalls {
+	private static final ThreadLocal<UpstreamCalls> CURRENT = new ThreadLocal<>();
+
+	private final LongAdder count = new LongAdder();
+	private final LongAdder nanos = new LongAdder();
+
+	private UpstreamCalls() {
+	}
+
+	/**
+	 * Start counting the calls made by the current thread.
+	 */
+	public static UpstreamCalls begin() {
+		UpstreamCalls calls = new UpstreamCalls();
+		CURRENT.set(calls);
+		return calls;
+	}
+
+	/**
+	 * Stop counting the calls made by the current thread.
+	 */
+	public static void end() {
+		CURRENT.remove();
+	}
+
+	/**
+	 * Record a call made by the current thread, if its calls are being counted.
+	 */
+	public static void record(long durationNanos) {
+		UpstreamCalls calls = CURRENT.get();
+		if (calls != null) {
+			calls.count.increment();
+			calls.nanos.add(durationNanos);
+		}
+	}
+
+	/**
+	 * Wrap task so that calls it makes, on whichever thread, are counted against the current thread's request.
+	 */
+	public static Runnable propagate(Runnable task) {
+		UpstreamCalls calls = CURRENT.get();
+		if (calls == null) {
+			return task;
+		}
+
+		return () -> {
+			UpstreamCalls previous = CURRENT.get();
+			CURRENT.set(calls);
+			try {
+				task.run();
+			} finally {
+				if (previous != null) {
+					CURRENT.set(previous);
+				} else {
+					CURRENT.remove();
+				}
+			}
+		};
+	}
+
+	public long count() {
+		return count.sum();
+	}
+
+	/**
+	 * @return Sum of the calls' durations; more than the request's own duration where calls ran in parallel.
+	 */
+	public Duration time() {
+		return Duration.ofNanos(nanos.sum());
+	}
+}
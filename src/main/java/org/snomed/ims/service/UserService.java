@@ -0,0 +1,450 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.MeterRegistry;
+import org.ehcache.event.EventFiring;
+import org.ehcache.event.EventOrdering;
+import org.ehcache.event.EventType;
+import org.slf4j.Logger;
+import org.slf4j.LoggerFactory;
+import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.config.CacheEventLogger;
+import org.snomed.ims.config.UserSerializer;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.snomed.ims.domain.UserInformationUpdateRequest;
+import org.springframework.cache.Cache;
+import org.springframework.cache.CacheManager;
+import org.springframework.stereotype.Service;
+
+import java.time.Duration;
+import java.util.EnumSet;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Executor;
+
+/**
+ * Resolves users from tokens on behalf of the controllers, holding them in the account cache until the cache or the
+ * token expires them. Evictions and logouts are shared with other nodes over the invalidation bus.
+ */
+@Service
+public class UserService {
+	public static final String ACCOUNT_CACHE = "accountCache";
+	public static final String REJECTED_TOKEN_CACHE = "rejectedTokenCache";
+
+	private static final Logger LOGGER = LoggerFactory.getLogger(UserService.class);
+	private static final int EXPECTED_INVALIDATED_TOKENS = 100_000;
+	private static final double INVALIDATED_FALSE_POSITIVE_RATE = 0.001;
+	private static final Duration INVALIDATED_TOKEN_RETENTION = Duration.ofHours(12);
+	private static final UserSerializer USER_SERIALIZER = new UserSerializer(UserService.class.getClassLoader());
+	private static final int TOKEN_KEY_BYTES = 16;
+
+	private final IdentityProvider identityProvider;
+	private final CacheManager cacheManager;
+	private final Cache accountCache;
+	private final Executor refreshExecutor;
+	private final AccountRefreshPolicy refreshPolicy;
+	private final InvalidatedTokenFilter invalidatedTokens = new InvalidatedTokenFilter(
+			EXPECTED_INVALIDATED_TOKENS, INVALIDATED_FALSE_POSITIVE_RATE, INVALIDATED_TOKEN_RETENTION);
+	// Identical lookups made concurrently, as when a page opens several requests with the same cookie, share one upstream call
+	private final SingleFlight<TokenKey, User> tokenLookups = new SingleFlight<>();
+	private final SingleFlight<String, List<String>> roleLookups = new SingleFlight<>();
+	private final SingleFlight<GroupSearch, List<User>> groupSearches = new SingleFlight<>();
+	private final AccountCacheIndex index = new AccountCacheIndex();
+	private final boolean indexedByListener;
+	private final Map<String, CacheStatistics> statistics;
+	private final CacheStatistics accountStatistics;
+	private final AccountInvalidations invalidations;
+
+	private record GroupSearch(String currentUserId, String groupName, String username, int maxResults, int startAt) {
+	}
+
+	public UserService(IdentityProvider identityProvider, CacheManager cacheManager, ApplicationProperties applicationProperties, MeterRegistry meterRegistry,
+			InvalidationBus invalidationBus) {
+		this.identityProvider = identityProvider;
+		this.cacheManager = cacheManager;
+		this.accountCache = cacheManager.getCache(ACCOUNT_CACHE);
+		if (this.accountCache == null) {
+			throw new IllegalStateException("Cache '" + ACCOUNT_CACHE + "' is not configured.");
+		}
+		Cache rejectedTokenCache = cacheManager.getCache(REJECTED_TOKEN_CACHE);
+		if (rejectedTokenCache == null) {
+			LOGGER.warn("Cache '{}' is not configured; rejected tokens will be checked upstream every time.", REJECTED_TOKEN_CACHE);
+		}
+
+		this.refreshExecutor = BoundedFanOut.newExecutor(Math.max(1, applicationProperties.getAccountCacheRefreshThreads()), "account-refresh");
+		this.refreshPolicy = new AccountRefreshPolicy(rejectedTokenCache, applicationProperties.getAccountCacheFreshSeconds() * 1000L,
+				applicationProperties.getAccountCacheMaxStaleSeconds() * 1000L, refreshExecutor, meterRegistry);
+
+		this.indexedByListener = attachIndex();
+		this.statistics = attachStatistics(meterRegistry, applicationProperties.getCacheEventLogSampleEvery());
+		this.accountStatistics = statistics.get(ACCOUNT_CACHE);
+		this.invalidations = new AccountInvalidations(invalidationBus, new RemoteEvictions());
+	}
+
+	/**
+	 * Return user if found by token; otherwise return null. A cached user older than the freshness window is served
+	 * while it is resolved again in the background, and goes on being served if that fails until it is older than the
+	 * max staleness too, so a slow or unavailable upstream does not log users out.
+	 *
+	 * @param token Token to match against User.
+	 * @return User if found by token; otherwise return null.
+	 */
+	public User getUserByToken(String token) {
+		if (token == null || token.isEmpty()) {
+			return null;
+		}
+
+		TokenKey key = TokenKey.of(token);
+		if (refreshPolicy.isRejected(key)) {
+			return null;
+		}
+
+		// A token that may have been invalidated is never served from the account cache
+		User cached = !invalidatedTokens.mightContain(key) ? accountCache.get(key, User.class) : null;
+		if (cached == null) {
+			refreshPolicy.missed();
+		} else {
+			switch (refreshPolicy.check(cached)) {
+				case FRESH -> {
+					return cached;
+				}
+				case STALE -> {
+					// A refresh only drops the stale user; the next request resolves the token and remembers any rejection
+					refreshPolicy.refreshInBackground(key, () -> tokenLookups.execute(key, () -> resolve(token, key, false)));
+					return cached;
+				}
+				case EXPIRED -> uncache(key);
+				case TOO_STALE -> {
+					// Resolved below
+				}
+			}
+		}
+
+		return tokenLookups.execute(key, () -> resolve(token, key, true));
+	}
+
+	/**
+	 * Return roles for the given username.
+	 *
+	 * @param username Username to find roles for.
+	 * @return Roles for the given username.
+	 */
+	public List<String> getUserRoles(String username) {
+		if (username == null) {
+			return identityProvider.getUserRoles(null);
+		}
+
+		return roleLookups.execute(username, () -> identityProvider.getUserRoles(username));
+	}
+
+	/**
+	 * Return page of users that are members of the given group.
+	 *
+	 * @param currentUserId Identifier of the user making the request.
+	 * @param groupName     Group to find members of.
+	 * @param username      Optional filter on member usernames.
+	 * @param maxResults    Maximum number of users to return.
+	 * @param startAt       Offset of the first user to return.
+	 * @return Page of users that are members of the given group.
+	 */
+	public List<User> searchUsersByGroup(String currentUserId, String groupName, String username, int maxResults, int startAt) {
+		GroupSearch search = new GroupSearch(currentUserId, groupName, username, maxResults, startAt);
+		return groupSearches.execute(search, () -> identityProvider.searchUsersByGroup(currentUserId, groupName, username, maxResults, startAt));
+	}
+
+	/**
+	 * Return whether inactivating token has been successful. The token is removed from the account cache regardless.
+	 *
+	 * @param token Token to invalidate.
+	 * @return Whether inactivating token has been successful.
+	 */
+	public boolean invalidateToken(String token) {
+		if (token == null || token.isEmpty()) {
+			return false;
+		}
+
+		TokenKey key = TokenKey.of(token);
+		logOut(key);
+		// Nodes that verify tokens locally also need the token's id, or they would accept it again once it is no longer rejected here
+		invalidations.logOut(key, identityProvider.getRevocation(token));
+		return identityProvider.invalidateToken(token);
+	}
+
+	/**
+	 * Update the user's details with the identity provider and evict every cached session of the user, on every node.
+	 *
+	 * @param user    User to update.
+	 * @param request New details.
+	 * @param token   The user's token.
+	 * @return The updated user.
+	 */
+	public User updateUser(User user, UserInformationUpdateRequest request, String token) {
+		User updated = identityProvider.updateUser(user, request, token);
+		evictByLogin(user.getLogin());
+		return updated;
+	}
+
+	/**
+	 * Evict every cached user with the given login, so each of their sessions is resolved again on its next request.
+	 *
+	 * @param login Login of the user to evict.
+	 * @return Number of cached entries evicted from this node.
+	 */
+	public int evictByLogin(String login) {
+		invalidations.evictLogin(login);
+		return evict(index.keysForLogin(login));
+	}
+
+	/**
+	 * Evict every cached user with the given identity provider id.
+	 *
+	 * @param userId Id of the user to evict.
+	 * @return Number of cached entries evicted from this node.
+	 */
+	public int evictByUserId(String userId) {
+		invalidations.evictUserId(userId);
+		return evict(index.keysForUserId(userId));
+	}
+
+	/**
+	 * Evict every cached user holding the given role, as after the role's membership or mappings change.
+	 *
+	 * @param role Role or group, with or without its ROLE_ prefix.
+	 * @return Number of cached entries evicted from this node.
+	 */
+	public int evictByRole(String role) {
+		invalidations.evictRole(role);
+		return evict(index.keysForRole(role));
+	}
+
+	/**
+	 * Evict the cached user for a single token.
+	 *
+	 * @param key Key of the token.
+	 * @return Whether a user was cached for the token on this node.
+	 */
+	public boolean evictByTokenKey(TokenKey key) {
+		invalidations.evictToken(key);
+		return evictLocally(key);
+	}
+
+	/**
+	 * Clear every cache.
+	 */
+	public void clearAll() {
+		invalidations.clear();
+		clearLocally();
+	}
+
+	/**
+	 * @return Statistics of each cache, by cache name.
+	 */
+	public Map<String, CacheStatistics.Snapshot> getCacheStatistics() {
+		Map<String, CacheStatistics.Snapshot> snapshots = new TreeMap<>();
+		statistics.forEach((name, cacheStatistics) -> snapshots.put(name, cacheStatistics.snapshot()));
+		return snapshots;
+	}
+
+	/**
+	 * Evictions made by other nodes, repeated on this node.
+	 */
+	private class RemoteEvictions implements AccountInvalidations.Target {
+
+		@Override
+		public void logOut(TokenKey key, TokenRevocation revocation) {
+			UserService.this.logOut(key);
+			if (revocation != null) {
+				identityProvider.revoke(revocation);
+			}
+		}
+
+		@Override
+		public void evictToken(TokenKey key) {
+			evictLocally(key);
+		}
+
+		@Override
+		public void evictLogin(String login) {
+			evict(index.keysForLogin(login));
+		}
+
+		@Override
+		public void evictUserId(String userId) {
+			evict(index.keysForUserId(userId));
+		}
+
+		@Override
+		public void evictRole(String role) {
+			evict(index.keysForRole(role));
+		}
+
+		@Override
+		public void clear() {
+			clearLocally();
+		}
+	}
+
+	private void logOut(TokenKey key) {
+		invalidatedTokens.add(key);
+		refreshPolicy.reject(key);
+		uncache(key);
+	}
+
+	private boolean evictLocally(TokenKey key) {
+		boolean present = accountCache.evictIfPresent(key);
+		if (!indexedByListener) {
+			index.remove(key);
+		}
+		return present;
+	}
+
+	private void clearLocally() {
+		for (String name : cacheManager.getCacheNames()) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache != null) {
+				LOGGER.info("Cache {} cleared", name);
+				cache.clear();
+			}
+			CacheStatistics cacheStatistics = statistics.get(name);
+			if (cacheStatistics != null) {
+				cacheStatistics.cleared();
+			}
+		}
+		// Clearing does not raise events
+		index.clear();
+	}
+
+	private int evict(Set<TokenKey> keys) {
+		for (TokenKey key : keys) {
+			uncache(key);
+			// Also drops a key the index kept because the events reached it out of order
+			index.remove(key);
+		}
+		LOGGER.info("Evicted {} cached users", keys.size());
+		return keys.size();
+	}
+
+	private void cache(TokenKey key, User user) {
+		accountCache.put(key, user);
+		if (!indexedByListener) {
+			index.add(key, user);
+		}
+	}
+
+	private void uncache(TokenKey key) {
+		accountCache.evict(key);
+		if (!indexedByListener) {
+			index.remove(key);
+		}
+	}
+
+	/**
+	 * Where the account cache is Ehcache, keep the index up to date from the cache's own events, so entries that
+	 * expire, are evicted for space or are evicted by the identity provider leave it too. Entries restored from the
+	 * disk tier are indexed in the background.
+	 *
+	 * @return Whether the index is kept up to date by the cache.
+	 */
+	private boolean attachIndex() {
+		org.ehcache.Cache<Object, Object> ehcache = ehcache(accountCache);
+		if (ehcache == null) {
+			if (accountCache.getNativeCache() instanceof javax.cache.Cache) {
+				LOGGER.warn("Cache '{}' is not Ehcache; indexing it as it is written to.", ACCOUNT_CACHE);
+			}
+			return false;
+		}
+
+		// Off the writing thread, so cache writes never wait on the index
+		ehcache.getRuntimeConfiguration().registerCacheEventListener(index, EventOrdering.UNORDERED, EventFiring.ASYNCHRONOUS, EnumSet.allOf(EventType.class));
+		refreshExecutor.execute(() -> {
+			for (org.ehcache.Cache.Entry<Object, Object> entry : ehcache) {
+				if (entry.getKey() instanceof TokenKey key && entry.getValue() instanceof User user) {
+					index.add(key, user);
+				}
+			}
+			LOGGER.info("Indexed {} cached users", index.size());
+		});
+		return true;
+	}
+
+	/**
+	 * Count the events of every cache that is Ehcache, synchronously and in no particular order, and log a sample of
+	 * them if asked for. The account cache's entries are counted by its index, which includes entries restored from
+	 * disk, and their size is estimated as they would be written to the off-heap and disk tiers.
+	 *
+	 * @return Statistics by cache name.
+	 */
+	private Map<String, CacheStatistics> attachStatistics(MeterRegistry meterRegistry, int eventLogSampleEvery) {
+		Set<String> names = new LinkedHashSet<>(cacheManager.getCacheNames());
+		names.add(ACCOUNT_CACHE);
+
+		Map<String, CacheStatistics> attached = new TreeMap<>();
+		for (String name : names) {
+			Cache cache = cacheManager.getCache(name);
+			if (cache == null) {
+				continue;
+			}
+
+			CacheStatistics cacheStatistics = ACCOUNT_CACHE.equals(name)
+					? new CacheStatistics(name, meterRegistry, index::size, UserService::serializedSize)
+					: new CacheStatistics(name, meterRegistry, null, null);
+			attached.put(name, cacheStatistics);
+
+			org.ehcache.Cache<Object, Object> ehcache = ehcache(cache);
+			if (ehcache != null) {
+				ehcache.getRuntimeConfiguration().registerCacheEventListener(cacheStatistics, EventOrdering.UNORDERED, EventFiring.SYNCHRONOUS, EnumSet.allOf(EventType.class));
+				if (eventLogSampleEvery > 0) {
+					ehcache.getRuntimeConfiguration().registerCacheEventListener(new CacheEventLogger(eventLogSampleEvery), EventOrdering.UNORDERED, EventFiring.ASYNCHRONOUS, EnumSet.allOf(EventType.class));
+				}
+			}
+		}
+		return attached;
+	}
+
+	/**
+	 * @return The Ehcache behind cache; null if it is not Ehcache.
+	 */
+	@SuppressWarnings("unchecked")
+	private static org.ehcache.Cache<Object, Object> ehcache(Cache cache) {
+		if (!(cache.getNativeCache() instanceof javax.cache.Cache<?, ?> jcache)) {
+			return null;
+		}
+
+		try {
+			return jcache.unwrap(org.ehcache.Cache.class);
+		} catch (IllegalArgumentException e) {
+			return null;
+		}
+	}
+
+	private static int serializedSize(Object value) {
+		return value instanceof User user ? TOKEN_KEY_BYTES + USER_SERIALIZER.serialize(user).remaining() : TOKEN_KEY_BYTES;
+	}
+
+	/**
+	 * @param rememberRejection whether a token the provider rules out is remembered as rejected. Providers throw rather
+	 *                          than return null when the token could not be checked.
+	 */
+	private User resolve(String token, TokenKey key, boolean rememberRejection) {
+		User user = accountStatistics.recordLoad(() -> identityProvider.getUserByToken(token));
+		if (user == null) {
+			if (rememberRejection) {
+				refreshPolicy.reject(key);
+			}
+			uncache(key);
+			return null;
+		}
+
+		// Re-checked after resolving, in case the token was invalidated while the provider was being asked
+		if (!user.isTokenExpired() && !invalidatedTokens.mightContain(key)) {
+			user.setResolvedAt(System.currentTimeMillis());
+			cache(key, user);
+		}
+
+		return user;
+	}
+
+}
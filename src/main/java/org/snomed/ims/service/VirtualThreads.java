@@ -0,0 +1,24 @@
+package org.snomed.ims.service;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Virtual threads for blocking work. A blocked virtual thread releases its carrier, letting thousands of requests wait
+ * on upstream calls at once without as many platform threads.
+ */
+public final class VirtualThreads {
+
+	private VirtualThreads() {
+	}
+
+	/**
+	 * Create an executor that runs every task on a new virtual thread.
+	 *
+	 * @param namePrefix Prefix for the thread names.
+	 * @return A new executor.
+	 */
+	public static ExecutorService newExecutor(String namePrefix) {
+		return Executors.newThreadPerTaskExecutor(Thread.ofVirtual().name(namePrefix + "-", 1).factory());
+	}
+}
@@ -0,0 +1,25 @@
+package org.snomed.ims.config;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.TokenKey;
+
+import java.nio.ByteBuffer;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenKeySerializerTest {
+	private final TokenKeySerializer serializer = new TokenKeySerializer(getClass().getClassLoader());
+
+	@Test
+	void read_ShouldReturnSameKey_WhenSerialized() {
+		// given
+		TokenKey key = TokenKey.of("test-token");
+
+		// when
+		ByteBuffer binary = serializer.serialize(key);
+
+		// then
+		assertEquals(16, binary.remaining());
+		assertEquals(key, serializer.read(binary));
+	}
+}
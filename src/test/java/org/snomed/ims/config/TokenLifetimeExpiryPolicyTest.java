@@ -0,0 +1,63 @@
+package org.snomed.ims.config;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.User;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenLifetimeExpiryPolicyTest {
+	private final TokenLifetimeExpiryPolicy expiryPolicy = new TokenLifetimeExpiryPolicy(Duration.ofMinutes(15));
+
+	@Test
+	void getExpiryForCreation_ShouldReturnTokenLifetime_WhenShorterThanMax() {
+		// when
+		Duration expiry = expiryPolicy.getExpiryForCreation("token", userExpiringIn(60_000));
+
+		// then
+		assertTrue(expiry.compareTo(Duration.ofSeconds(55)) > 0 && expiry.compareTo(Duration.ofSeconds(60)) <= 0, expiry.toString());
+	}
+
+	@Test
+	void getExpiryForCreation_ShouldReturnMax_WhenTokenOutlivesIt() {
+		// when
+		Duration expiry = expiryPolicy.getExpiryForCreation("token", userExpiringIn(8 * 3_600_000));
+
+		// then
+		assertEquals(Duration.ofMinutes(15), expiry);
+	}
+
+	@Test
+	void getExpiryForCreation_ShouldReturnMax_WhenTokenExpiryUnknown() {
+		// when
+		Duration expiry = expiryPolicy.getExpiryForCreation("token", new User());
+
+		// then
+		assertEquals(Duration.ofMinutes(15), expiry);
+	}
+
+	@Test
+	void getExpiryForCreation_ShouldReturnZero_WhenTokenExpired() {
+		// when
+		Duration expiry = expiryPolicy.getExpiryForCreation("token", userExpiringIn(-1));
+
+		// then
+		assertEquals(Duration.ZERO, expiry);
+	}
+
+	@Test
+	void getExpiryForAccess_ShouldLeaveExpiryUnchanged() {
+		// when
+		Duration expiry = expiryPolicy.getExpiryForAccess("token", () -> userExpiringIn(60_000));
+
+		// then
+		assertNull(expiry);
+	}
+
+	private User userExpiringIn(long millis) {
+		User user = new User();
+		user.setTokenExpiry(System.currentTimeMillis() + millis);
+		return user;
+	}
+}
@@ -0,0 +1,55 @@
+package org.snomed.ims.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.service.UpstreamCalls;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UpstreamCallInterceptorTest {
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final UpstreamCallInterceptor interceptor = new UpstreamCallInterceptor("crowd", meterRegistry, UpstreamOperations::crowd);
+	private final ClientHttpRequestExecution execution = mock(ClientHttpRequestExecution.class);
+	private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://localhost/crowd/rest/usermanagement/1/session/abc"));
+
+	@Test
+	void intercept_ShouldTimeCallAndCountItAgainstRequest() throws IOException {
+		// given
+		when(execution.execute(any(), any())).thenReturn(new MockClientHttpResponse(new byte[0], HttpStatus.NOT_FOUND));
+		UpstreamCalls calls = UpstreamCalls.begin();
+
+		// when
+		try {
+			interceptor.intercept(request, new byte[0], execution);
+		} finally {
+			UpstreamCalls.end();
+		}
+
+		// then
+		assertEquals(1, calls.count());
+		assertEquals(1, meterRegistry.get("ims.upstream.calls")
+				.tags("upstream", "crowd", "operation", "session", "outcome", "client_error").timer().count());
+	}
+
+	@Test
+	void intercept_ShouldRecordIoError_WhenCallFails() throws IOException {
+		// given
+		when(execution.execute(any(), any())).thenThrow(new IOException("Connection refused"));
+
+		// when
+		assertThrows(IOException.class, () -> interceptor.intercept(request, new byte[0], execution));
+
+		// then
+		assertEquals(1, meterRegistry.get("ims.upstream.calls").tag("outcome", "io_error").timer().count());
+	}
+}
@@ -0,0 +1,71 @@
+package org.snomed.ims.config;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.client.ClientHttpRequestExecution;
+import org.springframework.http.client.ClientHttpResponse;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+import org.springframework.mock.http.client.MockClientHttpResponse;
+
+import java.io.IOException;
+import java.net.URI;
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.*;
+
+class UpstreamConcurrencyLimitTest {
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final UpstreamConcurrencyLimit limit = new UpstreamConcurrencyLimit("keycloak", 1, Duration.ofMillis(50), meterRegistry);
+	private final ClientHttpRequestExecution execution = mock(ClientHttpRequestExecution.class);
+	private final MockClientHttpRequest request = new MockClientHttpRequest(HttpMethod.GET, URI.create("http://localhost/realms/snomed/protocol/openid-connect/certs"));
+
+	@Test
+	void intercept_ShouldRejectCall_WhenLimitReached() throws IOException {
+		// given
+		when(execution.execute(any(), any())).thenAnswer(invocation -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+		ClientHttpResponse inFlight = limit.intercept(request, new byte[0], execution);
+
+		// when
+		assertThrows(IOException.class, () -> limit.intercept(request, new byte[0], execution));
+
+		// then
+		verify(execution, times(1)).execute(any(), any());
+		assertEquals(1, meterRegistry.get("ims.upstream.concurrency").tag("upstream", "keycloak").gauge().value());
+		assertEquals(1, meterRegistry.get("ims.upstream.permit.rejected").tag("upstream", "keycloak").counter().count());
+		inFlight.close();
+	}
+
+	@Test
+	void intercept_ShouldReleasePermit_WhenResponseClosed() throws IOException {
+		// given
+		when(execution.execute(any(), any())).thenAnswer(invocation -> new MockClientHttpResponse(new byte[0], HttpStatus.OK));
+		ClientHttpResponse first = limit.intercept(request, new byte[0], execution);
+
+		// when
+		first.close();
+		first.close();
+		ClientHttpResponse second = limit.intercept(request, new byte[0], execution);
+
+		// then
+		assertEquals(HttpStatus.OK, second.getStatusCode());
+		assertEquals(1, meterRegistry.get("ims.upstream.concurrency").tag("upstream", "keycloak").gauge().value());
+		second.close();
+		assertEquals(0, meterRegistry.get("ims.upstream.concurrency").tag("upstream", "keycloak").gauge().value());
+	}
+
+	@Test
+	void intercept_ShouldReleasePermit_WhenCallFails() throws IOException {
+		// given
+		when(execution.execute(any(), any())).thenThrow(new IOException("Connection refused"));
+
+		// when
+		assertThrows(IOException.class, () -> limit.intercept(request, new byte[0], execution));
+
+		// then
+		assertEquals(0, meterRegistry.get("ims.upstream.concurrency").tag("upstream", "keycloak").gauge().value());
+	}
+}
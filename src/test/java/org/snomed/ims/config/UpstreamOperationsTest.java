@@ -0,0 +1,57 @@
+package org.snomed.ims.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpMethod;
+import org.springframework.mock.http.client.MockClientHttpRequest;
+
+import java.net.URI;
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UpstreamOperationsTest {
+	private static final String KEYCLOAK = "https://keycloak.example.org";
+	private static final String CROWD = "http://localhost:8095/crowd/rest/usermanagement/1";
+
+	@Test
+	void keycloak_ShouldNameAdminCalls() {
+		assertEquals("members", keycloak(HttpMethod.GET, "/admin/realms/snomed/groups/0b1c/members?max=-1"));
+		assertEquals("group-search", keycloak(HttpMethod.GET, "/admin/realms/snomed/groups?search=ms-"));
+		assertEquals("role-users", keycloak(HttpMethod.GET, "/admin/realms/snomed/clients/9f2e/roles/ims%20admin/users"));
+		assertEquals("role-users", keycloak(HttpMethod.GET, "/admin/realms/snomed/roles/ims-admin/users"));
+		assertEquals("role-composites", keycloak(HttpMethod.GET, "/admin/realms/snomed/roles-by-id/77aa/composites"));
+		assertEquals("client-page", keycloak(HttpMethod.GET, "/admin/realms/snomed/clients?first=0&max=100"));
+		assertEquals("user-roles", keycloak(HttpMethod.GET, "/admin/realms/snomed/users/5c3d/role-mappings"));
+		assertEquals("other", keycloak(HttpMethod.GET, "/admin/realms/snomed/events"));
+	}
+
+	@Test
+	void keycloak_ShouldNameTokenCallsByGrantType() {
+		assertEquals("introspect", UpstreamOperations.keycloak(request(HttpMethod.POST, KEYCLOAK + "/realms/snomed/protocol/openid-connect/token/introspect"), new byte[0]));
+		assertEquals("admin-token", UpstreamOperations.keycloak(request(HttpMethod.POST, KEYCLOAK + "/realms/snomed/protocol/openid-connect/token"),
+				"grant_type=client_credentials&client_id=admin-client".getBytes(StandardCharsets.UTF_8)));
+		assertEquals("login", UpstreamOperations.keycloak(request(HttpMethod.POST, KEYCLOAK + "/realms/snomed/protocol/openid-connect/token"),
+				"username=alice&grant_type=password".getBytes(StandardCharsets.UTF_8)));
+	}
+
+	@Test
+	void crowd_ShouldNameCallsByMethodAndPath() {
+		assertEquals("authenticate", crowd(HttpMethod.POST, "/session"));
+		assertEquals("session", crowd(HttpMethod.GET, "/session/abc123"));
+		assertEquals("logout", crowd(HttpMethod.DELETE, "/session/abc123"));
+		assertEquals("members", crowd(HttpMethod.GET, "/group/user/direct?groupname=ims-users&expand=user"));
+		assertEquals("user-update", crowd(HttpMethod.PUT, "/user?username=alice"));
+	}
+
+	private static String keycloak(HttpMethod method, String path) {
+		return UpstreamOperations.keycloak(request(method, KEYCLOAK + path), new byte[0]);
+	}
+
+	private static String crowd(HttpMethod method, String path) {
+		return UpstreamOperations.crowd(request(method, CROWD + path), new byte[0]);
+	}
+
+	private static MockClientHttpRequest request(HttpMethod method, String uri) {
+		return new MockClientHttpRequest(method, URI.create(uri));
+	}
+}
@@ -0,0 +1,74 @@
+package org.snomed.ims.config;
+
+import org.ehcache.spi.serialization.SerializerException;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.User;
+
+import java.nio.ByteBuffer;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class UserSerializerTest {
+	private final UserSerializer serializer = new UserSerializer(getClass().getClassLoader());
+
+	@Test
+	void read_ShouldReturnEveryField_WhenSerialized() {
+		// given
+		User user = new User("test-login", "test-first-name", "test-last-name", "test-email", "en", List.of("ROLE_a", "ROLE_b"));
+		user.setId("test-id");
+		user.setActive(true);
+		user.setDisplayName("test-display-name");
+		user.setClientAccess(List.of("client"));
+		user.setTokenExpiry(1_900_000_000_000L);
+		user.setResolvedAt(1_800_000_000_000L);
+
+		// when
+		User read = serializer.read(serializer.serialize(user));
+
+		// then
+		assertEquals("test-id", read.getId());
+		assertEquals("test-login", read.getLogin());
+		assertEquals("en", read.getLangKey());
+		assertEquals(Boolean.TRUE, read.getActive());
+		assertEquals("test-first-name", read.getFirstName());
+		assertEquals("test-last-name", read.getLastName());
+		assertEquals("test-display-name", read.getDisplayName());
+		assertEquals("test-email", read.getEmail());
+		assertEquals(List.of("ROLE_a", "ROLE_b"), read.getRoles());
+		assertEquals(List.of("client"), read.getClientAccess());
+		assertEquals(1_900_000_000_000L, read.getTokenExpiry());
+		assertEquals(1_800_000_000_000L, read.getResolvedAt());
+	}
+
+	@Test
+	void read_ShouldReturnNulls_WhenFieldsUnset() {
+		// when
+		User read = serializer.read(serializer.serialize(new User()));
+
+		// then
+		assertNull(read.getLogin());
+		assertNull(read.getActive());
+		assertNull(read.getRoles());
+		assertNull(read.getTokenExpiry());
+	}
+
+	@Test
+	void equals_ShouldReturnFalse_WhenOnlyLoginMatches() {
+		// given
+		User user = new User().setLogin("test-login").setEmail("old-email");
+		ByteBuffer binary = serializer.serialize(user);
+
+		// when
+		boolean equal = serializer.equals(new User().setLogin("test-login").setEmail("new-email"), binary);
+
+		// then
+		assertFalse(equal);
+	}
+
+	@Test
+	void read_ShouldThrowExpected_WhenVersionUnknown() {
+		// then
+		assertThrows(SerializerException.class, () -> serializer.read(ByteBuffer.wrap(new byte[]{99})));
+	}
+}
@@ -0,0 +1,72 @@
+package org.snomed.ims.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RoleDictionaryTest {
+	@Test
+	void share_ShouldReturnSameInstance_WhenSameRoles() {
+		// given
+		List<String> first = new ArrayList<>(List.of("ROLE_a", "ROLE_b"));
+		List<String> second = new ArrayList<>(List.of(new String("ROLE_a"), new String("ROLE_b")));
+
+		// when
+		List<String> sharedFirst = RoleDictionary.share(first);
+		List<String> sharedSecond = RoleDictionary.share(second);
+
+		// then
+		assertSame(sharedFirst, sharedSecond);
+		assertEquals(List.of("ROLE_a", "ROLE_b"), sharedSecond);
+	}
+
+	@Test
+	void share_ShouldKeepOrder() {
+		// when
+		List<String> shared = RoleDictionary.share(List.of("ROLE_z", "ROLE_a"));
+
+		// then
+		assertEquals(List.of("ROLE_z", "ROLE_a"), shared);
+		assertNotEquals(RoleDictionary.share(List.of("ROLE_a", "ROLE_z")), shared);
+	}
+
+	@Test
+	void share_ShouldReturnImmutableList() {
+		// when
+		List<String> shared = RoleDictionary.share(List.of("ROLE_a"));
+
+		// then
+		assertThrows(UnsupportedOperationException.class, () -> shared.add("ROLE_b"));
+	}
+
+	@Test
+	void share_ShouldReturnNull_WhenGivenNull() {
+		// then
+		assertNull(RoleDictionary.share(null));
+	}
+
+	@Test
+	void intern_ShouldReturnSameInstance_WhenEqualNames() {
+		// when
+		String first = RoleDictionary.intern(new String("ROLE_interned"));
+		String second = RoleDictionary.intern(new String("ROLE_interned"));
+
+		// then
+		assertSame(first, second);
+	}
+
+	@Test
+	void hasRole_ShouldReturnExpected() {
+		// given
+		User user = new User();
+		user.setRoles(List.of("ROLE_a", "ROLE_ims-administrators"));
+
+		// then
+		assertTrue(user.hasRole("ROLE_ims-administrators"));
+		assertFalse(user.hasRole("ROLE_c"));
+		assertFalse(new User().hasRole("ROLE_a"));
+	}
+}
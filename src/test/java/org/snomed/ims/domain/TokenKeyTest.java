@@ -0,0 +1,87 @@
+package org.snomed.ims.domain;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TokenKeyTest {
+	@Test
+	void of_ShouldThrowExpected_WhenGivenNull() {
+		// then
+		assertThrows(IllegalArgumentException.class, () -> TokenKey.of(null));
+	}
+
+	@Test
+	void equals_ShouldReturnTrue_WhenSameToken() {
+		// when
+		TokenKey first = TokenKey.of("test-token");
+		TokenKey second = TokenKey.of("test-token");
+
+		// then
+		assertEquals(first, second);
+		assertEquals(first.hashCode(), second.hashCode());
+	}
+
+	@Test
+	void equals_ShouldReturnFalse_WhenDifferentToken() {
+		// when
+		TokenKey first = TokenKey.of("test-token");
+		TokenKey second = TokenKey.of("test-token2");
+
+		// then
+		assertNotEquals(first, second);
+	}
+
+	@Test
+	void fromHex_ShouldReturnSameKey_WhenGivenHex() {
+		// given
+		TokenKey key = TokenKey.of("test-token");
+
+		// when
+		TokenKey parsed = TokenKey.fromHex(key.toHex());
+
+		// then
+		assertEquals(32, key.toHex().length());
+		assertEquals(key, parsed);
+	}
+
+	@Test
+	void fromHex_ShouldThrowExpected_WhenNotHex() {
+		// then
+		assertThrows(IllegalArgumentException.class, () -> TokenKey.fromHex("not-hex"));
+		assertThrows(IllegalArgumentException.class, () -> TokenKey.fromHex("zz" + "0".repeat(30)));
+	}
+
+	@Test
+	void toString_ShouldNotContainToken() {
+		// when
+		String string = TokenKey.of("test-token").toString();
+
+		// then
+		assertFalse(string.contains("test-token"));
+	}
+
+	@Test
+	void serialize_ShouldRoundTrip() throws Exception {
+		// given
+		TokenKey key = TokenKey.of("test-token");
+		ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+		try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+			out.writeObject(key);
+		}
+
+		// when
+		Object read;
+		try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+			read = in.readObject();
+		}
+
+		// then
+		assertEquals(key, read);
+	}
+}
@@ -4,10 +4,12 @@ package org.snomed.ims.rest;
 import jakarta.servlet.http.Cookie;
 import org.junit.jupiter.api.Test;
 import org.snomed.ims.domain.User;
+import org.snomed.ims.service.RuntimeServiceException;
 
 import org.springframework.test.web.servlet.ResultActions;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
 import static org.junit.jupiter.api.Assertions.assertTrue;
 import static org.mockito.ArgumentMatchers.*;
 import static org.mockito.Mockito.when;
@@ -65,6 +67,22 @@ class AccountControllerTest extends IntegrationTest {
 		assertTrue(body.contains("\"loginUrl\""));
 	}
 
+	@Test
+	void getAccount_ShouldKeepCookie_WhenIdentityProviderUnavailable() {
+		// given
+		Cookie cookie = new Cookie(applicationProperties.getCookieName(), "test-access-token");
+		when(identityProvider.getUserByToken(anyString())).thenThrow(new RuntimeServiceException("Upstream unavailable", null));
+
+		// when
+		ResultActions resultActions = get(GET_ACCOUNT, cookie);
+		int status = getStatus(resultActions);
+		String setCookie = getResponseHeader(resultActions, "Set-Cookie");
+
+		// then
+		assertEquals(503, status);
+		assertNull(setCookie);
+	}
+
 	@Test
 	void getAccount_ShouldReturnExpected_WhenSuccessfullyGettingUser() {
 		// given
@@ -0,0 +1,45 @@
+package org.snomed.ims.rest;
+
+import jakarta.servlet.http.Cookie;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.service.RuntimeServiceException;
+import org.springframework.test.web.servlet.ResultActions;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.Mockito.when;
+
+class CacheControllerTest extends IntegrationTest {
+	private static final String POST_EVICT_ROLE = "/cache/evict/role?role=ROLE_author";
+	private static final String POST_CLEAR_ALL = "/cache/clear-all";
+
+	@Test
+	void evictRole_ShouldReturnServiceUnavailable_WhenIdentityProviderUnavailable() {
+		// given
+		Cookie cookie = new Cookie(applicationProperties.getCookieName(), "test-access-token");
+		when(identityProvider.getUserByToken(anyString())).thenThrow(new RuntimeServiceException("Upstream unavailable", null));
+
+		// when
+		ResultActions resultActions = post(POST_EVICT_ROLE, cookie);
+		int status = getStatus(resultActions);
+		String setCookie = getResponseHeader(resultActions, "Set-Cookie");
+
+		// then
+		assertEquals(503, status);
+		assertNull(setCookie);
+	}
+
+	@Test
+	void clearCache_ShouldReturnServiceUnavailable_WhenIdentityProviderUnavailable() {
+		// given
+		Cookie cookie = new Cookie(applicationProperties.getCookieName(), "test-access-token");
+		when(identityProvider.getUserByToken(anyString())).thenThrow(new RuntimeServiceException("Upstream unavailable", null));
+
+		// when
+		ResultActions resultActions = post(POST_CLEAR_ALL, cookie);
+
+		// then
+		assertEquals(503, getStatus(resultActions));
+	}
+}
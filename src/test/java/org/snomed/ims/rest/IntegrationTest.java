@@ -1,14 +1,18 @@
 package org.snomed.ims.rest;
 
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
 import jakarta.servlet.http.Cookie;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 import org.snomed.ims.config.ApplicationProperties;
 import org.snomed.ims.service.IdentityProvider;
+import org.snomed.ims.service.LocalInvalidationBus;
+import org.snomed.ims.service.UserService;
 
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.boot.info.BuildProperties;
 import org.springframework.boot.test.context.SpringBootTest;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
 import org.springframework.test.context.ActiveProfiles;
 import org.springframework.test.context.ContextConfiguration;
 import org.springframework.test.web.servlet.MockMvc;
@@ -37,7 +41,8 @@ class IntegrationTest {
 
 	@BeforeEach
 	void setUp() {
-		AccountController accountController = new AccountController(identityProvider, applicationProperties);
+		UserService userService = new UserService(identityProvider, new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE), applicationProperties, new SimpleMeterRegistry(), new LocalInvalidationBus());
+		AccountController accountController = new AccountController(identityProvider, userService, applicationProperties);
 		AuthController authController = new AuthController(identityProvider, applicationProperties);
 		VersionController versionController = new VersionController(buildProperties);
 
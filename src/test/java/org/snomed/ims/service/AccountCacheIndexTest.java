@@ -0,0 +1,117 @@
+package org.snomed.ims.service;
+
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.EventType;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AccountCacheIndexTest {
+	private final AccountCacheIndex index = new AccountCacheIndex();
+
+	@Test
+	void onEvent_ShouldIndexUser_WhenCreated() {
+		// given
+		TokenKey key = TokenKey.of("token");
+
+		// when
+		index.onEvent(event(EventType.CREATED, key, user("alice", "id-1", "ROLE_a")));
+
+		// then
+		assertEquals(Set.of(key), index.keysForLogin("alice"));
+		assertEquals(Set.of(key), index.keysForUserId("id-1"));
+		assertEquals(Set.of(key), index.keysForRole("ROLE_a"));
+	}
+
+	@Test
+	void onEvent_ShouldReindexUser_WhenUpdated() {
+		// given
+		TokenKey key = TokenKey.of("token");
+		index.onEvent(event(EventType.CREATED, key, user("alice", "id-1", "ROLE_a")));
+
+		// when
+		index.onEvent(event(EventType.UPDATED, key, user("alice", "id-1", "ROLE_b")));
+
+		// then
+		assertTrue(index.keysForRole("ROLE_a").isEmpty());
+		assertEquals(Set.of(key), index.keysForRole("ROLE_b"));
+	}
+
+	@Test
+	void onEvent_ShouldUnindexUser_WhenExpiredOrEvicted() {
+		// given
+		TokenKey first = TokenKey.of("token-1");
+		TokenKey second = TokenKey.of("token-2");
+		index.onEvent(event(EventType.CREATED, first, user("alice", "id-1", "ROLE_a")));
+		index.onEvent(event(EventType.CREATED, second, user("alice", "id-1", "ROLE_a")));
+
+		// when
+		index.onEvent(event(EventType.EXPIRED, first, null));
+		index.onEvent(event(EventType.EVICTED, second, null));
+
+		// then
+		assertTrue(index.keysForLogin("alice").isEmpty());
+		assertEquals(0, index.size());
+	}
+
+	@Test
+	void keysForRole_ShouldMatchWithOrWithoutPrefix_WhenRoleUnprefixed() {
+		// given
+		TokenKey key = TokenKey.of("token");
+
+		// when
+		index.onEvent(event(EventType.CREATED, key, user("alice", "id-1", "test-group1")));
+
+		// then
+		assertEquals(Set.of(key), index.keysForRole("test-group1"));
+		assertEquals(Set.of(key), index.keysForRole("ROLE_test-group1"));
+	}
+
+	@Test
+	void onEvent_ShouldKeepEveryKey_WhenUsersIndexedConcurrently() throws Exception {
+		// given
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<?>> writes = new ArrayList<>();
+
+		// when
+		for (int i = 0; i < 1_000; i++) {
+			CacheEvent<Object, Object> created = event(EventType.CREATED, TokenKey.of("token-" + i), user("alice", "id-1", "ROLE_a"));
+			writes.add(executor.submit(() -> index.onEvent(created)));
+		}
+		for (Future<?> write : writes) {
+			write.get();
+		}
+		executor.shutdown();
+
+		// then
+		assertEquals(1_000, index.keysForRole("a").size());
+		assertEquals(1_000, index.size());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CacheEvent<Object, Object> event(EventType type, TokenKey key, User newValue) {
+		CacheEvent<Object, Object> event = mock(CacheEvent.class);
+		when(event.getType()).thenReturn(type);
+		when(event.getKey()).thenReturn(key);
+		when(event.getNewValue()).thenReturn(newValue);
+		return event;
+	}
+
+	private static User user(String login, String id, String role) {
+		User user = new User();
+		user.setLogin(login);
+		user.setId(id);
+		user.setRoles(List.of(role));
+		return user;
+	}
+}
@@ -0,0 +1,79 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.TokenKey;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class AccountInvalidationsTest {
+	private static final TokenKey KEY = TokenKey.of("test-token");
+
+	private final LocalInvalidationBus invalidationBus = new LocalInvalidationBus();
+	private final AccountInvalidations.Target thisNode = mock(AccountInvalidations.Target.class);
+	private final AccountInvalidations.Target otherNode = mock(AccountInvalidations.Target.class);
+	private final AccountInvalidations invalidations = new AccountInvalidations(invalidationBus, thisNode);
+
+	@Test
+	void logOut_ShouldRevokeTokenOnOtherNodes_WhenTokenHasId() {
+		// given
+		new AccountInvalidations(invalidationBus, otherNode);
+		TokenRevocation revocation = new TokenRevocation("token-id", 1_900_000_000L);
+
+		// when
+		invalidations.logOut(KEY, revocation);
+
+		// then
+		verify(otherNode).logOut(KEY, revocation);
+		verifyNoInteractions(thisNode);
+	}
+
+	@Test
+	void logOut_ShouldLogOutOnOtherNodes_WhenTokenHasNoId() {
+		// given
+		new AccountInvalidations(invalidationBus, otherNode);
+
+		// when
+		invalidations.logOut(KEY, null);
+
+		// then
+		verify(otherNode).logOut(KEY, null);
+	}
+
+	@Test
+	void evictRole_ShouldEvictRoleOnOtherNodes() {
+		// given
+		new AccountInvalidations(invalidationBus, otherNode);
+		List<Invalidation> published = new ArrayList<>();
+		invalidationBus.subscribe(published::add);
+
+		// when
+		invalidations.evictRole("ROLE_with space");
+
+		// then
+		verify(otherNode).evictRole("ROLE_with space");
+		assertEquals(Invalidation.Scope.ROLE, published.get(0).scope());
+	}
+
+	@Test
+	void decode_ShouldReadEncodedLogOut() {
+		// given
+		AccountInvalidations.LogOut logOut = new AccountInvalidations.LogOut(KEY, new TokenRevocation("id with space", 1_900_000_000L));
+
+		// when
+		AccountInvalidations.LogOut decoded = AccountInvalidations.LogOut.decode(logOut.encode());
+
+		// then
+		assertEquals(logOut, decoded);
+	}
+
+	@Test
+	void decode_ShouldThrow_WhenNotLogOut() {
+		// then
+		assertThrows(IllegalArgumentException.class, () -> AccountInvalidations.LogOut.decode(KEY.toHex() + " 1900000000"));
+		assertThrows(IllegalArgumentException.class, () -> AccountInvalidations.LogOut.decode(KEY.toHex() + " never token-id"));
+	}
+}
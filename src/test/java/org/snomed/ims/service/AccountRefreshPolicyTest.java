@@ -0,0 +1,77 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.springframework.cache.concurrent.ConcurrentMapCache;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class AccountRefreshPolicyTest {
+	private static final TokenKey KEY = TokenKey.of("test-token");
+
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final ConcurrentMapCache rejectedTokenCache = new ConcurrentMapCache(UserService.REJECTED_TOKEN_CACHE);
+	// Refreshes run on the calling thread
+	private final AccountRefreshPolicy policy = new AccountRefreshPolicy(rejectedTokenCache, 60_000, 600_000, Runnable::run, meterRegistry);
+
+	@Test
+	void check_ShouldGradeUserByAge() {
+		// then
+		assertEquals(AccountRefreshPolicy.Freshness.FRESH, policy.check(userResolvedAgo(1_000)));
+		assertEquals(AccountRefreshPolicy.Freshness.STALE, policy.check(userResolvedAgo(120_000)));
+		assertEquals(AccountRefreshPolicy.Freshness.TOO_STALE, policy.check(userResolvedAgo(1_000_000)));
+		assertEquals(1, meterRegistry.counter("ims.account.cache.requests", "result", "too_stale").count());
+	}
+
+	@Test
+	void check_ShouldReturnExpired_WhenTokenExpired() {
+		// given
+		User user = userResolvedAgo(1_000);
+		user.setTokenExpiry(System.currentTimeMillis() - 1);
+
+		// then
+		assertEquals(AccountRefreshPolicy.Freshness.EXPIRED, policy.check(user));
+	}
+
+	@Test
+	void isRejected_ShouldReturnTrue_WhenTokenRejected() {
+		// when
+		policy.reject(KEY);
+
+		// then
+		assertTrue(policy.isRejected(KEY));
+		assertEquals(1, meterRegistry.counter("ims.account.cache.requests", "result", "rejected").count());
+	}
+
+	@Test
+	void refreshInBackground_ShouldCountFailure_WhenResolvingThrows() {
+		// when
+		policy.refreshInBackground(KEY, () -> {
+			throw new RuntimeServiceException("Upstream unavailable", null);
+		});
+
+		// then
+		assertEquals(1, meterRegistry.counter("ims.account.cache.refreshes", "outcome", "failed").count());
+		assertFalse(policy.isRejected(KEY));
+	}
+
+	@Test
+	void refreshInBackground_ShouldNotRejectToken_WhenTokenRuledOut() {
+		// when
+		policy.refreshInBackground(KEY, () -> null);
+
+		// then
+		assertEquals(1, meterRegistry.counter("ims.account.cache.refreshes", "outcome", "rejected").count());
+		assertFalse(policy.isRejected(KEY));
+	}
+
+	private static User userResolvedAgo(long millis) {
+		User user = new User();
+		user.setLogin("test-login");
+		user.setTokenExpiry(System.currentTimeMillis() + 3_600_000);
+		user.setResolvedAt(System.currentTimeMillis() - millis);
+		return user;
+	}
+}
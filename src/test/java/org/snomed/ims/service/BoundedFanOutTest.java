@@ -0,0 +1,175 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class BoundedFanOutTest {
+	private final ExecutorService executor = BoundedFanOut.newExecutor(8, "fan-out-test");
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void concat_ShouldKeepSubmissionOrder_WhenTasksFinishOutOfOrder() {
+		// given
+		BoundedFanOut.Scope scope = new BoundedFanOut(executor, 4, Duration.ofSeconds(5)).open();
+		List<CompletableFuture<List<Integer>>> parts = new ArrayList<>();
+		for (int i = 0; i < 10; i++) {
+			int value = i;
+			parts.add(scope.supply(() -> {
+				sleep((10 - value) * 5L);
+				return List.of(value);
+			}));
+		}
+
+		// when
+		List<Integer> result = scope.join(BoundedFanOut.concat(parts));
+
+		// then
+		assertEquals(List.of(0, 1, 2, 3, 4, 5, 6, 7, 8, 9), result);
+	}
+
+	@Test
+	void supply_ShouldNotExceedParallelism_WhenManyTasksQueued() {
+		// given
+		BoundedFanOut.Scope scope = new BoundedFanOut(executor, 2, Duration.ofSeconds(5)).open();
+		AtomicInteger running = new AtomicInteger();
+		AtomicInteger maxRunning = new AtomicInteger();
+		List<CompletableFuture<List<Integer>>> parts = new ArrayList<>();
+
+		// when
+		for (int i = 0; i < 12; i++) {
+			parts.add(scope.supply(() -> {
+				maxRunning.accumulateAndGet(running.incrementAndGet(), Math::max);
+				sleep(10);
+				running.decrementAndGet();
+				return List.of(1);
+			}));
+		}
+		scope.join(BoundedFanOut.concat(parts));
+
+		// then
+		assertTrue(maxRunning.get() <= 2);
+	}
+
+	@Test
+	void supply_ShouldWalkTree_WhenPoolSmallerThanTreeDepth() {
+		// given
+		ExecutorService singleThread = BoundedFanOut.newExecutor(1, "fan-out-single");
+		BoundedFanOut.Scope scope = new BoundedFanOut(singleThread, 1, Duration.ofSeconds(5)).open();
+
+		// when
+		List<Integer> depths = scope.join(walk(scope, 0, 5));
+
+		// then
+		assertEquals(List.of(0, 1, 2, 3, 4, 5), depths);
+		singleThread.shutdownNow();
+	}
+
+	@Test
+	void join_ShouldThrow_WhenDeadlinePasses() {
+		// given
+		CountDownLatch release = new CountDownLatch(1);
+		BoundedFanOut.Scope scope = new BoundedFanOut(executor, 1, Duration.ofMillis(100)).open();
+		CompletableFuture<List<Integer>> slow = scope.supply(() -> {
+			await(release);
+			return List.of(1);
+		});
+		CompletableFuture<List<Integer>> queued = scope.supply(() -> List.of(2));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> scope.join(BoundedFanOut.concat(List.of(slow, queued))));
+		release.countDown();
+	}
+
+	@Test
+	void join_ShouldCancelQueuedTasks_WhenDeadlinePasses() {
+		// given
+		CountDownLatch release = new CountDownLatch(1);
+		AtomicInteger ran = new AtomicInteger();
+		BoundedFanOut.Scope scope = new BoundedFanOut(executor, 1, Duration.ofMillis(100)).open();
+		CompletableFuture<List<Integer>> slow = scope.supply(() -> {
+			await(release);
+			return List.of(1);
+		});
+		CompletableFuture<List<Integer>> queued = scope.supply(() -> {
+			ran.incrementAndGet();
+			return List.of(2);
+		});
+
+		// when
+		assertThrows(RuntimeServiceException.class, () -> scope.join(slow));
+
+		// then
+		assertTrue(queued.isCancelled());
+		assertTrue(scope.supply(() -> List.of(3)).isCancelled());
+		release.countDown();
+		assertEquals(0, ran.get());
+	}
+
+	@Test
+	void supply_ShouldCountUpstreamCallsAgainstSubmittingRequest_WhenWalkingTree() {
+		// given
+		UpstreamCalls calls = UpstreamCalls.begin();
+		BoundedFanOut.Scope scope = new BoundedFanOut(executor, 2, Duration.ofSeconds(5)).open();
+
+		// when
+		try {
+			scope.join(walk(scope, 0, 4, () -> UpstreamCalls.record(1_000_000)));
+		} finally {
+			UpstreamCalls.end();
+		}
+
+		// then
+		assertEquals(5, calls.count());
+		assertEquals(Duration.ofMillis(5), calls.time());
+	}
+
+	private CompletableFuture<List<Integer>> walk(BoundedFanOut.Scope scope, int depth, int maxDepth) {
+		return walk(scope, depth, maxDepth, () -> {
+		});
+	}
+
+	private CompletableFuture<List<Integer>> walk(BoundedFanOut.Scope scope, int depth, int maxDepth, Runnable call) {
+		return scope.supply(() -> {
+			call.run();
+			return depth;
+		}).thenCompose(current -> {
+			List<CompletableFuture<List<Integer>>> parts = new ArrayList<>();
+			parts.add(CompletableFuture.completedFuture(List.of(current)));
+			if (current < maxDepth) {
+				parts.add(walk(scope, current + 1, maxDepth, call));
+			}
+			return BoundedFanOut.concat(parts);
+		});
+	}
+
+	private static void sleep(long millis) {
+		try {
+			Thread.sleep(millis);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
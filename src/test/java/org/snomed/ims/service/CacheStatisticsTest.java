@@ -0,0 +1,79 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.ehcache.event.CacheEvent;
+import org.ehcache.event.EventType;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.Mockito.*;
+
+class CacheStatisticsTest {
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+
+	@Test
+	void onEvent_ShouldTrackEntries_WhenCreatedAndRemoved() {
+		// given
+		CacheStatistics statistics = new CacheStatistics("testCache", meterRegistry, null, null);
+
+		// when
+		statistics.onEvent(event(EventType.CREATED, "a"));
+		statistics.onEvent(event(EventType.CREATED, "b"));
+		statistics.onEvent(event(EventType.UPDATED, "b"));
+		statistics.onEvent(event(EventType.EXPIRED, null));
+
+		// then
+		CacheStatistics.Snapshot snapshot = statistics.snapshot();
+		assertEquals(1, snapshot.entries());
+		assertEquals(1, snapshot.expired());
+		assertNull(snapshot.estimatedBytes());
+		assertEquals(1, meterRegistry.counter("ims.cache.events", "cache", "testCache", "type", "expired").count());
+		assertEquals(1, meterRegistry.get("ims.cache.entries").tag("cache", "testCache").gauge().value());
+	}
+
+	@Test
+	void cleared_ShouldResetEntries() {
+		// given
+		CacheStatistics statistics = new CacheStatistics("testCache", meterRegistry, null, null);
+		statistics.onEvent(event(EventType.CREATED, "a"));
+
+		// when
+		statistics.cleared();
+
+		// then
+		assertEquals(0, statistics.entries());
+	}
+
+	@Test
+	void estimatedBytes_ShouldMultiplyEntriesBySampledSize() {
+		// given
+		CacheStatistics statistics = new CacheStatistics("testCache", meterRegistry, () -> 1000, value -> ((String) value).length());
+
+		// when
+		statistics.onEvent(event(EventType.CREATED, "x".repeat(100)));
+
+		// then
+		assertEquals(100_000L, statistics.snapshot().estimatedBytes());
+	}
+
+	@Test
+	void recordLoad_ShouldTimeLoad() {
+		// given
+		CacheStatistics statistics = new CacheStatistics("testCache", meterRegistry, null, null);
+
+		// when
+		String loaded = statistics.recordLoad(() -> "value");
+
+		// then
+		assertEquals("value", loaded);
+		assertEquals(1, statistics.snapshot().loads());
+	}
+
+	@SuppressWarnings("unchecked")
+	private static CacheEvent<Object, Object> event(EventType type, Object newValue) {
+		CacheEvent<Object, Object> event = mock(CacheEvent.class);
+		when(event.getType()).thenReturn(type);
+		when(event.getNewValue()).thenReturn(newValue);
+		return event;
+	}
+}
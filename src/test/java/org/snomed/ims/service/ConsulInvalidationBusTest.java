@@ -0,0 +1,95 @@
+package org.snomed.ims.service;
+
+import com.ecwid.consul.transport.TransportException;
+import com.ecwid.consul.v1.ConsulClient;
+import com.ecwid.consul.v1.QueryParams;
+import com.ecwid.consul.v1.Response;
+import com.ecwid.consul.v1.kv.model.GetValue;
+import com.ecwid.consul.v1.kv.model.PutParams;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.Base64;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class ConsulInvalidationBusTest {
+	private static final String PREFIX = "ims/invalidations/";
+
+	private final ConsulClient consul = mock(ConsulClient.class);
+	private final ConsulInvalidationBus bus = new ConsulInvalidationBus(consul, "", PREFIX, Duration.ofSeconds(1), Duration.ofMinutes(15));
+
+	@AfterEach
+	void tearDown() {
+		bus.close();
+	}
+
+	@Test
+	void subscribe_ShouldDeliverEachInvalidationOnce_WhenWatchReturnsItAgain() {
+		// given
+		Invalidation invalidation = new Invalidation(Invalidation.Scope.LOGIN, "alice", "node-a", 1);
+		Response<List<GetValue>> response = new Response<>(List.of(value(PREFIX + "node-a/" + System.currentTimeMillis() + "-1", invalidation, 7)), 7L, true, 0L);
+		when(consul.getKVValues(eq(PREFIX), isNull(), any(QueryParams.class))).thenAnswer(invocation -> {
+			Thread.sleep(20);
+			return response;
+		});
+		List<Invalidation> received = new CopyOnWriteArrayList<>();
+
+		// when
+		bus.subscribe(received::add);
+
+		// then
+		verify(consul, timeout(5000).atLeast(3)).getKVValues(eq(PREFIX), isNull(), any(QueryParams.class));
+		assertEquals(List.of(invalidation), received);
+	}
+
+	@Test
+	void publish_ShouldKeepInvalidationPending_WhenConsulUnavailable() {
+		// given
+		when(consul.setKVValue(startsWith(PREFIX + "node-a/"), anyString(), isNull(), any(PutParams.class)))
+				.thenThrow(new TransportException(new IOException("Connection refused")))
+				.thenReturn(new Response<>(true, 1L, true, 0L));
+
+		// when
+		bus.publish(new Invalidation(Invalidation.Scope.ALL, null, "node-a", 1));
+
+		// then
+		verify(consul, timeout(5000)).setKVValue(startsWith(PREFIX + "node-a/"), eq("ALL node-a 1 "), isNull(), any(PutParams.class));
+		assertEquals(1, bus.pending());
+
+		// when
+		bus.flush();
+
+		// then
+		assertEquals(0, bus.pending());
+		verify(consul, times(2)).setKVValue(startsWith(PREFIX + "node-a/"), eq("ALL node-a 1 "), isNull(), any(PutParams.class));
+	}
+
+	@Test
+	void decode_ShouldReturnEncodedInvalidation() {
+		// given
+		Invalidation invalidation = new Invalidation(Invalidation.Scope.ROLE, "ROLE_with space", "node-a", 42);
+
+		// when
+		Invalidation decoded = Invalidation.decode(invalidation.encode());
+
+		// then
+		assertEquals(invalidation, decoded);
+		assertThrows(IllegalArgumentException.class, () -> Invalidation.decode("LOGIN node-a"));
+	}
+
+	private static GetValue value(String key, Invalidation invalidation, long modifyIndex) {
+		GetValue value = new GetValue();
+		value.setKey(key);
+		value.setValue(Base64.getEncoder().encodeToString(invalidation.encode().getBytes(StandardCharsets.UTF_8)));
+		value.setModifyIndex(modifyIndex);
+		return value;
+	}
+}
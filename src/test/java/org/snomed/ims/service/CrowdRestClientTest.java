@@ -7,7 +7,11 @@ import org.snomed.ims.domain.crowd.GroupsCollection;
 import org.snomed.ims.domain.crowd.Session;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.crowd.UsersCollection;
+import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
 import org.springframework.web.client.RestClientException;
 import org.springframework.web.client.RestTemplate;
 
@@ -171,6 +175,52 @@ class CrowdRestClientTest {
 		assertEquals(expected, actual);
 	}
 
+	@Test
+	void getUserByToken_ShouldReturnSessionExpiry_WhenUserFound() {
+		// given
+		Session session = new Session();
+		session.setUser(new User());
+		session.setExpiryDate(1_900_000_000_000L);
+		givenSessionKnown(session);
+
+		// when
+		User actual = crowdRestClient.getUserByToken("known");
+
+		// then
+		assertEquals(1_900_000_000_000L, actual.getTokenExpiry());
+	}
+
+	@Test
+	void getUserByToken_ShouldThrow_WhenCrowdUnavailable() {
+		// given
+		when(restTemplate.getForObject(anyString(), eq(Session.class), anyMap())).thenThrow(new ResourceAccessException("Connection refused"));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> crowdRestClient.getUserByToken("known"));
+	}
+
+	@Test
+	void getUserByToken_ShouldThrow_WhenCrowdRefusesApplication() {
+		// given
+		when(restTemplate.getForObject(anyString(), eq(Session.class), anyMap()))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY, null, null));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> crowdRestClient.getUserByToken("known"));
+	}
+
+	@Test
+	void getUserByToken_ShouldThrow_WhenRolesUnavailable() {
+		// given
+		Session session = new Session();
+		session.setUser(new User());
+		givenSessionKnown(session);
+		when(restTemplate.getForObject(anyString(), eq(GroupsCollection.class), anyMap())).thenThrow(new ResourceAccessException("Connection refused"));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> crowdRestClient.getUserByToken("known"));
+	}
+
 	@Test
 	void getUserByToken_ShouldReturnExpected_WhenRolesFound() {
 		// given
@@ -213,6 +263,15 @@ class CrowdRestClientTest {
 		assertEquals(0, result.size());
 	}
 
+	@Test
+	void getUserRoles_ShouldThrow_WhenCrowdUnavailable() {
+		// given
+		when(restTemplate.getForObject(anyString(), eq(GroupsCollection.class), anyMap())).thenThrow(new ResourceAccessException("Connection refused"));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> crowdRestClient.getUserRoles("known"));
+	}
+
 	@Test
 	void getUserRoles_ShouldReturnExpected_WhenUsernameKnown() {
 		// given
@@ -262,6 +321,23 @@ class CrowdRestClientTest {
 		assertEquals("test-username", result.iterator().next().getLogin());
 	}
 
+	@Test
+	void searchUsersByGroup_ShouldNotLookUpMembers_WhenDetailsExpanded() {
+		// given
+		User member = new User().setLogin("test-username").setEmail("test-email");
+		member.setActive(true);
+		givenUsersFound(new UsersCollection().setUsers(List.of(member)));
+
+		// when
+		List<User> result = crowdRestClient.searchUsersByGroup(null, "test-group-name", null, 0, 10);
+
+		// then
+		assertEquals(1, result.size());
+		assertEquals("test-username", result.iterator().next().getLogin());
+		assertNull(result.iterator().next().getEmail()); // Hidden
+		Mockito.verify(restTemplate, Mockito.never()).getForObject(anyString(), eq(User.class), anyMap());
+	}
+
 	@Test
 	void searchUsersByGroup_ShouldReturnExpected_WhenGroupAndUsernameFound() {
 		// given
@@ -329,9 +405,13 @@ class CrowdRestClientTest {
 
 	private void givenUserUnknown() {
 		// when
-		when(restTemplate.getForObject(anyString(), eq(Object.class), anyMap())).thenThrow(RestClientException.class);
-		when(restTemplate.getForObject(anyString(), eq(Map.class), anyMap())).thenThrow(RestClientException.class);
-		when(restTemplate.getForObject(anyString(), eq(GroupsCollection.class), anyMap())).thenThrow(RestClientException.class);
+		when(restTemplate.getForObject(anyString(), eq(Object.class), anyMap())).thenThrow(notFound());
+		when(restTemplate.getForObject(anyString(), eq(Map.class), anyMap())).thenThrow(notFound());
+		when(restTemplate.getForObject(anyString(), eq(GroupsCollection.class), anyMap())).thenThrow(notFound());
+	}
+
+	private static HttpClientErrorException notFound() {
+		return HttpClientErrorException.create(HttpStatus.NOT_FOUND, "Not Found", HttpHeaders.EMPTY, null, null);
 	}
 
 	private void givenUserKnown(User user) {
@@ -0,0 +1,75 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.Set;
+import java.io.UncheckedIOException;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class DirectoryWatcherTest {
+	@TempDir
+	Path directory;
+
+	private DirectoryWatcher watcher;
+
+	@AfterEach
+	void tearDown() throws IOException {
+		if (watcher != null) {
+			watcher.close();
+		}
+	}
+
+	@Test
+	void watch_ShouldCallBackOnce_WhenWatchedFileWrittenRepeatedly() throws Exception {
+		// given
+		Path users = directory.resolve("users.txt");
+		BlockingQueue<String> seen = new LinkedBlockingQueue<>();
+		watcher = new DirectoryWatcher(directory, Set.of("users.txt"), Duration.ofMillis(300), () -> seen.add(read(users)));
+		watcher.watch(Duration.ofMillis(200));
+
+		// when
+		for (int i = 0; i < 5; i++) {
+			Files.writeString(users, "user" + i + "=password");
+		}
+		String first = seen.poll(15, TimeUnit.SECONDS);
+		// Callbacks are made in order from one thread, so a second callback for the burst would arrive before this one
+		Files.writeString(users, "marker=password");
+		String second = seen.poll(15, TimeUnit.SECONDS);
+
+		// then
+		assertEquals("user4=password", first);
+		assertEquals("marker=password", second);
+	}
+
+	@Test
+	void poll_ShouldCallBackPeriodically() throws Exception {
+		// given
+		CountDownLatch polled = new CountDownLatch(2);
+		watcher = new DirectoryWatcher(directory, Set.of("users.txt"), Duration.ofMillis(300), polled::countDown);
+
+		// when
+		watcher.poll(Duration.ofMillis(50));
+
+		// then
+		assertTrue(polled.await(5, TimeUnit.SECONDS));
+	}
+
+	private static String read(Path file) {
+		try {
+			return Files.readString(file);
+		} catch (IOException e) {
+			throw new UncheckedIOException(e);
+		}
+	}
+}
@@ -0,0 +1,62 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.TokenKey;
+
+import java.time.Duration;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InvalidatedTokenFilterTest {
+	@Test
+	void mightContain_ShouldReturnTrue_WhenTokenAdded() {
+		// given
+		InvalidatedTokenFilter filter = new InvalidatedTokenFilter(1_000, 0.001, Duration.ofHours(1));
+		for (int i = 0; i < 1_000; i++) {
+			filter.add(TokenKey.of("token-" + i));
+		}
+
+		// then
+		for (int i = 0; i < 1_000; i++) {
+			assertTrue(filter.mightContain(TokenKey.of("token-" + i)));
+		}
+	}
+
+	@Test
+	void mightContain_ShouldRarelyReturnTrue_WhenTokenNotAdded() {
+		// given
+		InvalidatedTokenFilter filter = new InvalidatedTokenFilter(1_000, 0.001, Duration.ofHours(1));
+		for (int i = 0; i < 1_000; i++) {
+			filter.add(TokenKey.of("token-" + i));
+		}
+
+		// when
+		int falsePositives = 0;
+		for (int i = 0; i < 10_000; i++) {
+			if (filter.mightContain(TokenKey.of("other-" + i))) {
+				falsePositives++;
+			}
+		}
+
+		// then
+		assertTrue(falsePositives < 50, "False positives: " + falsePositives);
+	}
+
+	@Test
+	void mightContain_ShouldReturnFalse_WhenRetentionPassedTwice() {
+		// given
+		MutableClock clock = new MutableClock();
+		InvalidatedTokenFilter filter = new InvalidatedTokenFilter(1_000, 0.001, Duration.ofHours(1), clock);
+		filter.add(TokenKey.of("token"));
+
+		// when
+		clock.advance(Duration.ofMinutes(61));
+		boolean afterOnePeriod = filter.mightContain(TokenKey.of("token"));
+		clock.advance(Duration.ofMinutes(61));
+		boolean afterTwoPeriods = filter.mightContain(TokenKey.of("token"));
+
+		// then
+		assertTrue(afterOnePeriod);
+		assertFalse(afterTwoPeriods);
+	}
+}
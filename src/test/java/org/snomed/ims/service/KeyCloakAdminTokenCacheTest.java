@@ -0,0 +1,143 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.Test;
+import org.mockito.ArgumentCaptor;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.Supplier;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeyCloakAdminTokenCacheTest {
+	private final MutableClock clock = new MutableClock();
+	private final ScheduledExecutorService scheduler = mock(ScheduledExecutorService.class);
+	private final AtomicInteger requests = new AtomicInteger();
+
+	@Test
+	void getToken_ShouldRequestOnce_WhenTokenStillValid() {
+		// given
+		KeyCloakAdminTokenCache cache = newCache(() -> tokenValidFor("token-" + requests.incrementAndGet(), 300_000));
+
+		// when
+		String first = cache.getToken();
+		clock.advance(Duration.ofSeconds(200));
+		String second = cache.getToken();
+
+		// then
+		assertEquals("token-1", first);
+		assertEquals("token-1", second);
+		assertEquals(1, requests.get());
+	}
+
+	@Test
+	void getToken_ShouldRequestNewToken_WhenHeldTokenExpires() {
+		// given
+		KeyCloakAdminTokenCache cache = newCache(() -> tokenValidFor("token-" + requests.incrementAndGet(), 300_000));
+		cache.getToken();
+
+		// when
+		clock.advance(Duration.ofSeconds(300));
+		String token = cache.getToken();
+
+		// then
+		assertEquals("token-2", token);
+	}
+
+	@Test
+	void getToken_ShouldShareOneRequest_WhenCalledConcurrently() throws Exception {
+		// given
+		CountDownLatch requested = new CountDownLatch(1);
+		CountDownLatch release = new CountDownLatch(1);
+		KeyCloakAdminTokenCache cache = newCache(() -> {
+			requests.incrementAndGet();
+			requested.countDown();
+			await(release);
+			return tokenValidFor("shared", 300_000);
+		});
+
+		ExecutorService executor = Executors.newFixedThreadPool(8);
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(cache::getToken));
+		}
+
+		// when
+		assertTrue(requested.await(5, TimeUnit.SECONDS));
+		release.countDown();
+
+		// then
+		for (Future<String> result : results) {
+			assertEquals("shared", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, requests.get());
+		executor.shutdownNow();
+	}
+
+	@Test
+	void getToken_ShouldRefreshInBackground_BeforeExpiry() {
+		// given
+		KeyCloakAdminTokenCache cache = newCache(() -> tokenValidFor("token-" + requests.incrementAndGet(), 300_000));
+		ArgumentCaptor<Runnable> refresh = ArgumentCaptor.forClass(Runnable.class);
+		cache.getToken();
+		verify(scheduler).schedule(refresh.capture(), eq(270_000L), eq(TimeUnit.MILLISECONDS));
+
+		// when
+		clock.advance(Duration.ofSeconds(270));
+		refresh.getValue().run();
+
+		// then
+		assertEquals(2, requests.get());
+		assertEquals("token-2", cache.getToken());
+	}
+
+	@Test
+	void getToken_ShouldReturnNull_WhenKeycloakIssuesNoToken() {
+		// given
+		KeyCloakAdminTokenCache cache = newCache(() -> null);
+
+		// when
+		String token = cache.getToken();
+
+		// then
+		assertNull(token);
+	}
+
+	@Test
+	void renew_ShouldRequestNewTokenOnce_WhenHeldTokenRejected() {
+		// given
+		KeyCloakAdminTokenCache cache = newCache(() -> tokenValidFor("token-" + requests.incrementAndGet(), 300_000));
+		cache.getToken();
+
+		// when
+		String renewed = cache.renew("token-1");
+		String renewedAgain = cache.renew("token-1");
+
+		// then
+		assertEquals("token-2", renewed);
+		assertEquals("token-2", renewedAgain);
+		assertEquals(2, requests.get());
+	}
+
+	private KeyCloakAdminTokenCache newCache(Supplier<KeyCloakAdminTokenCache.AdminToken> tokenRequest) {
+		doReturn(mock(ScheduledFuture.class)).when(scheduler).schedule(any(Runnable.class), anyLong(), any(TimeUnit.class));
+		return new KeyCloakAdminTokenCache(tokenRequest, Duration.ofSeconds(30), clock, scheduler);
+	}
+
+	private KeyCloakAdminTokenCache.AdminToken tokenValidFor(String value, long millis) {
+		return new KeyCloakAdminTokenCache.AdminToken(value, clock.millis() + millis);
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
@@ -0,0 +1,278 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.User;
+import org.snomed.ims.domain.keycloak.KeyCloakGroup;
+import org.snomed.ims.domain.keycloak.KeyCloakUser;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeyCloakIdentityProviderTest {
+	private static final String KEYCLOAK_URL = "https://keycloak.test";
+	private static final Pattern PAGE = Pattern.compile("first=(\\d+)&max=(\\d+)");
+
+	private final RestTemplate restTemplate = mock(RestTemplate.class);
+	private final List<String> requestedUrls = Collections.synchronizedList(new ArrayList<>());
+	private final Map<String, List<KeyCloakUser>> membersByGroupId = new HashMap<>();
+	private final List<Map<String, Object>> topLevelGroups = new ArrayList<>();
+	private final Map<String, Object> responses = new HashMap<>();
+	private final ExecutorService traversalExecutor = BoundedFanOut.newExecutor(4, "keycloak-test-traversal");
+	private KeyCloakIdentityProvider identityProvider;
+
+	@BeforeEach
+	void setUp() {
+		when(restTemplate.postForObject(anyString(), any(), eq(HashMap.class))).thenReturn(adminTokenResponse("admin-token"));
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenAnswer(invocation -> respond(invocation.getArgument(0)));
+		identityProvider = new KeyCloakIdentityProvider(restTemplate, KEYCLOAK_URL, "snomed", "ims", "secret", "admin", "admin-secret",
+				new BoundedFanOut(traversalExecutor, 2, Duration.ofSeconds(10)));
+	}
+
+	@AfterEach
+	void tearDown() {
+		traversalExecutor.shutdownNow();
+	}
+
+	@Test
+	void searchUsersByGroup_ShouldThrow_WhenGroupWalkMissesDeadline() {
+		// given
+		topLevelGroups.add(Map.of("id", "top-1", "name", "top-1"));
+		// An executor that never runs the walk, so the deadline always passes
+		identityProvider = new KeyCloakIdentityProvider(restTemplate, KEYCLOAK_URL, "snomed", "ims", "secret", "admin", "admin-secret",
+				new BoundedFanOut(task -> {
+				}, 2, Duration.ofMillis(50)));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> identityProvider.searchUsersByGroup("current", "reviewers", null, 10, 0));
+	}
+
+	@Test
+	void searchUsersByGroup_ShouldFillPageWithEnabledMembers_WhenSomeDisabled() {
+		// given
+		givenGroupMembers("g-1", 500);
+		membersByGroupId.get("g-1").subList(0, 20).forEach(user -> user.setEnabled(false));
+
+		// when
+		List<User> users = identityProvider.searchUsersByGroup("current", "authors", null, 10, 20);
+
+		// then
+		assertEquals(10, users.size());
+		assertEquals("user-40", users.get(0).getLogin());
+		assertEquals(1, requestedUrls.stream().filter(url -> url.contains("/members")).count());
+		assertTrue(requestedUrls.stream().noneMatch(url -> url.contains("max=-1")));
+	}
+
+	@Test
+	void searchUsersByGroup_ShouldPageMembersOfGroupsWithRole_WhenNoGroupMatches() {
+		// given
+		responses.put("/roles?search=editors&exact=true", List.of(Map.of("id", "r-1", "name", "editors")));
+		responses.put("/roles-by-id/r-1/groups", List.of(Map.of("id", "g-2", "name", "editorial")));
+		givenGroupMembers("g-2", 500);
+
+		// when
+		List<User> users = identityProvider.searchUsersByGroup("current", "editors", null, 10, 20);
+
+		// then
+		assertEquals(10, users.size());
+		assertEquals("user-20", users.get(0).getLogin());
+		assertEquals(1, requestedUrls.stream().filter(url -> url.contains("/members")).count());
+		assertTrue(requestedUrls.stream().noneMatch(url -> url.contains("max=-1")));
+	}
+
+	@Test
+	void searchUsersByGroup_ShouldStopPaging_WhenFilteredPageFilled() {
+		// given
+		givenGroupMembers("g-1", 500);
+
+		// when
+		List<User> users = identityProvider.searchUsersByGroup("current", "authors", "user-1", 5, 0);
+
+		// then
+		assertEquals(List.of("user-1", "user-10", "user-11", "user-12", "user-13"), users.stream().map(User::getLogin).toList());
+		assertEquals(1, requestedUrls.stream().filter(url -> url.contains("/members")).count());
+	}
+
+	@Test
+	void getUser_ShouldRetryWithNewAdminToken_WhenKeycloakRefusesHeldOne() {
+		// given
+		when(restTemplate.postForObject(anyString(), any(), eq(HashMap.class)))
+				.thenReturn(adminTokenResponse("admin-token"), adminTokenResponse("renewed-token"));
+		when(restTemplate.exchange(contains("/users?exact=true"), eq(HttpMethod.GET), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenAnswer(invocation -> {
+					HttpEntity<?> request = invocation.getArgument(2);
+					if ("Bearer admin-token".equals(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION))) {
+						throw HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY, null, null);
+					}
+					KeyCloakUser user = new KeyCloakUser();
+					user.setId("id-jane");
+					user.setUsername("jane");
+					user.setEnabled(true);
+					return ResponseEntity.ok(List.of(user));
+				});
+
+		// when
+		User user = identityProvider.getUser("jane");
+
+		// then
+		assertNotNull(user);
+		assertEquals("jane", user.getLogin());
+		verify(restTemplate, times(2)).postForObject(anyString(), any(), eq(HashMap.class));
+	}
+
+	@Test
+	void getUserByToken_ShouldIntrospect_WhenVerifiedTokenIsLightweight() {
+		// given
+		KeyCloakTokenVerifier tokenVerifier = mock(KeyCloakTokenVerifier.class);
+		when(tokenVerifier.verify("access-token")).thenReturn(Map.of("sub", "id-jane", "exp", 4_000_000_000L));
+		identityProvider.setTokenVerifier(tokenVerifier);
+		when(restTemplate.exchange(contains("/token/introspect"), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenReturn(ResponseEntity.ok(Map.of("active", true, "sub", "id-jane", "preferred_username", "jane",
+						"realm_access", Map.of("roles", List.of("author")))));
+
+		// when
+		User user = identityProvider.getUserByToken("access-token");
+
+		// then
+		assertNotNull(user);
+		assertEquals("jane", user.getLogin());
+		assertEquals(List.of("ROLE_author"), user.getRoles());
+	}
+
+	@Test
+	void getUserByToken_ShouldReturnNull_WhenClaimsMalformed() {
+		// given
+		KeyCloakTokenVerifier tokenVerifier = mock(KeyCloakTokenVerifier.class);
+		when(tokenVerifier.verify("access-token")).thenReturn(Map.of("sub", 42, "preferred_username", "jane",
+				"realm_access", Map.of("roles", List.of("author"))));
+		identityProvider.setTokenVerifier(tokenVerifier);
+
+		// when
+		User user = identityProvider.getUserByToken("access-token");
+
+		// then
+		assertNull(user);
+	}
+
+	@Test
+	void getUserByToken_ShouldReturnNull_WhenTokenInactive() {
+		// given
+		when(restTemplate.exchange(contains("/token/introspect"), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenReturn(ResponseEntity.ok(Map.of("active", false)));
+
+		// when
+		User user = identityProvider.getUserByToken("access-token");
+
+		// then
+		assertNull(user);
+	}
+
+	@Test
+	void getUserByToken_ShouldThrow_WhenIntrospectionRefusesClient() {
+		// given
+		when(restTemplate.exchange(contains("/token/introspect"), eq(HttpMethod.POST), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY, null, null));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> identityProvider.getUserByToken("access-token"));
+	}
+
+	@Test
+	void getUser_ShouldThrow_WhenAdminClientForbidden() {
+		// given
+		when(restTemplate.exchange(contains("/users?exact=true"), eq(HttpMethod.GET), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.FORBIDDEN, "Forbidden", HttpHeaders.EMPTY, null, null));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> identityProvider.getUser("jane"));
+	}
+
+	@Test
+	void authenticate_ShouldReturnNull_WhenCredentialsRefused() {
+		// given
+		when(restTemplate.postForObject(eq("/realms/snomed/protocol/openid-connect/token"), any(), eq(HashMap.class)))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY,
+						"{\"error\":\"invalid_grant\"}".getBytes(), null));
+
+		// when
+		String token = identityProvider.authenticate("jane", "wrong");
+
+		// then
+		assertNull(token);
+	}
+
+	@Test
+	void authenticate_ShouldThrow_WhenClientRefused() {
+		// given
+		when(restTemplate.postForObject(eq("/realms/snomed/protocol/openid-connect/token"), any(), eq(HashMap.class)))
+				.thenThrow(HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY,
+						"{\"error\":\"unauthorized_client\"}".getBytes(), null));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> identityProvider.authenticate("jane", "secret"));
+	}
+
+	private static HashMap<String, Object> adminTokenResponse(String accessToken) {
+		return new HashMap<>(Map.of("access_token", accessToken, "expires_in", 300));
+	}
+
+	private void givenGroupMembers(String groupId, int count) {
+		List<KeyCloakUser> members = new ArrayList<>();
+		for (int i = 0; i < count; i++) {
+			KeyCloakUser user = new KeyCloakUser();
+			user.setId("id-" + i);
+			user.setUsername("user-" + i);
+			user.setEnabled(true);
+			members.add(user);
+		}
+		membersByGroupId.put(groupId, members);
+	}
+
+	private ResponseEntity<?> respond(String url) {
+		requestedUrls.add(url);
+		if (url.contains("/groups?search=authors")) {
+			KeyCloakGroup group = new KeyCloakGroup();
+			group.setId("g-1");
+			group.setName("authors");
+			return ResponseEntity.ok(List.of(group));
+		}
+		if (url.contains("/groups?first=0&")) {
+			return ResponseEntity.ok(topLevelGroups);
+		}
+		for (Map.Entry<String, Object> entry : responses.entrySet()) {
+			if (url.contains(entry.getKey())) {
+				return ResponseEntity.ok(entry.getValue());
+			}
+		}
+		for (Map.Entry<String, List<KeyCloakUser>> entry : membersByGroupId.entrySet()) {
+			if (url.contains("/groups/" + entry.getKey() + "/members")) {
+				Matcher page = PAGE.matcher(url);
+				List<KeyCloakUser> members = entry.getValue();
+				if (!page.find()) {
+					return ResponseEntity.ok(members);
+				}
+				int first = Math.min(Integer.parseInt(page.group(1)), members.size());
+				int max = Integer.parseInt(page.group(2));
+				return ResponseEntity.ok(members.subList(first, Math.min(first + max, members.size())));
+			}
+		}
+		return ResponseEntity.ok(Collections.emptyList());
+	}
+}
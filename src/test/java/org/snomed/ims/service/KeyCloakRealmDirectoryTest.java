@@ -0,0 +1,136 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.domain.keycloak.KeyCloakGroup;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpEntity;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.HttpClientErrorException;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.time.Duration;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeyCloakRealmDirectoryTest {
+	private static final String ADMIN = "https://keycloak.test/admin/realms/snomed";
+
+	private final RestTemplate restTemplate = mock(RestTemplate.class);
+	private final ExecutorService executor = BoundedFanOut.newExecutor(4, "realm-directory-test");
+	private final Map<String, Object> responses = new HashMap<>();
+	private boolean rejectAdminToken;
+	private KeyCloakRealmDirectory directory;
+
+	@BeforeEach
+	void setUp() {
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), any(HttpEntity.class), any(ParameterizedTypeReference.class)))
+				.thenAnswer(invocation -> {
+					String url = invocation.getArgument(0);
+					HttpEntity<?> request = invocation.getArgument(2);
+					if (rejectAdminToken && "Bearer admin-token".equals(request.getHeaders().getFirst(HttpHeaders.AUTHORIZATION))) {
+						throw HttpClientErrorException.create(HttpStatus.UNAUTHORIZED, "Unauthorized", HttpHeaders.EMPTY, null, null);
+					}
+					if (!responses.containsKey(url)) {
+						throw new ResourceAccessException("Unexpected URL " + url);
+					}
+					return ResponseEntity.ok(responses.get(url));
+				});
+		directory = new KeyCloakRealmDirectory(restTemplate, "https://keycloak.test", "snomed", () -> "admin-token",
+				rejected -> "renewed-token", new BoundedFanOut(executor, 4, Duration.ofSeconds(5)));
+
+		responses.put(ADMIN + "/clients?first=0&max=100", List.of(Map.of("id", "c-1", "clientId", "ims")));
+		responses.put(ADMIN + "/clients/c-1/roles", List.of(
+				Map.of("id", "r-author", "name", "author", "composite", false),
+				Map.of("id", "r-admin", "name", "admin", "composite", true)));
+		responses.put(ADMIN + "/roles-by-id/r-admin/composites", List.of(Map.of("id", "r-author", "name", "author", "clientRole", true, "containerId", "c-1")));
+		responses.put(ADMIN + "/roles?first=0&max=100", List.of(Map.of("id", "r-user", "name", "user", "composite", false)));
+		responses.put(ADMIN + "/groups?briefRepresentation=false&first=0&max=100", List.of(
+				group("g-1", "editors", 1, List.of("user"), Map.of("ims", List.of("author"))),
+				group("g-2", "reviewers", 0, List.of(), Map.of())));
+		responses.put(ADMIN + "/groups/g-1/children?briefRepresentation=false&first=0&max=100", List.of(
+				group("g-3", "reviewers", 0, List.of(), Map.of("ims", List.of("admin")))));
+	}
+
+	@AfterEach
+	void tearDown() {
+		executor.shutdownNow();
+	}
+
+	@Test
+	void refresh_ShouldIndexGroupsInTreeOrder() {
+		// when
+		assertTrue(directory.refresh());
+		KeyCloakRealmDirectory.Snapshot snapshot = directory.getSnapshot();
+
+		// then
+		List<KeyCloakGroup> reviewers = snapshot.findGroupsByName("reviewers");
+		assertEquals(List.of("g-3", "g-2"), reviewers.stream().map(KeyCloakGroup::getId).toList());
+		assertEquals(List.of("g-3"), snapshot.getChildGroupIds("g-1"));
+		assertEquals(List.of(), snapshot.getChildGroupIds("g-3"));
+		assertNull(snapshot.getChildGroupIds("unknown"));
+	}
+
+	@Test
+	void refresh_ShouldIndexRolesAndClients() {
+		// when
+		directory.refresh();
+		KeyCloakRealmDirectory.Snapshot snapshot = directory.getSnapshot();
+
+		// then
+		assertEquals("c-1", snapshot.getClientInternalId("ims"));
+		assertEquals(List.of("c-1"), snapshot.getClientIdsWithRole("author"));
+		assertTrue(snapshot.hasRealmRole("user"));
+		assertEquals(List.of("g-1"), snapshot.getGroupIdsWithRealmRole("user"));
+		assertEquals(List.of("g-3"), snapshot.getGroupIdsWithClientRole("c-1", "admin"));
+		assertEquals("author", snapshot.getComposites("c-1", "admin").get(0).get("name"));
+		assertTrue(snapshot.getComposites("c-1", "author").isEmpty());
+	}
+
+	@Test
+	void refresh_ShouldKeepPreviousSnapshot_WhenLoadFails() {
+		// given
+		directory.refresh();
+		KeyCloakRealmDirectory.Snapshot previous = directory.getSnapshot();
+		responses.remove(ADMIN + "/roles?first=0&max=100");
+
+		// when
+		boolean refreshed = directory.refresh();
+
+		// then
+		assertFalse(refreshed);
+		assertSame(previous, directory.getSnapshot());
+	}
+
+	@Test
+	void refresh_ShouldRetryWithNewToken_WhenAdminTokenRefused() {
+		// given
+		rejectAdminToken = true;
+
+		// when
+		boolean refreshed = directory.refresh();
+
+		// then
+		assertTrue(refreshed);
+		assertEquals("c-1", directory.getSnapshot().getClientInternalId("ims"));
+	}
+
+	private static Map<String, Object> group(String id, String name, int subGroupCount, List<String> realmRoles, Map<String, List<String>> clientRoles) {
+		Map<String, Object> group = new HashMap<>();
+		group.put("id", id);
+		group.put("name", name);
+		group.put("subGroupCount", subGroupCount);
+		group.put("realmRoles", realmRoles);
+		group.put("clientRoles", clientRoles);
+		return group;
+	}
+}
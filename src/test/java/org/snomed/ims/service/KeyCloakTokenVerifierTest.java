@@ -0,0 +1,203 @@
+package org.snomed.ims.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.springframework.core.ParameterizedTypeReference;
+import org.springframework.http.HttpMethod;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.client.ResourceAccessException;
+import org.springframework.web.client.RestTemplate;
+
+import java.nio.charset.StandardCharsets;
+import java.security.KeyPair;
+import java.security.KeyPairGenerator;
+import java.security.Signature;
+import java.security.interfaces.RSAPublicKey;
+import java.util.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.*;
+import static org.mockito.Mockito.*;
+
+class KeyCloakTokenVerifierTest {
+	private static final String KEYCLOAK_URL = "https://keycloak.test";
+	private static final String REALM = "snomed";
+	private static final String ISSUER = KEYCLOAK_URL + "/realms/" + REALM;
+	private static final String CLIENT = "ims";
+
+	private final RestTemplate restTemplate = mock(RestTemplate.class);
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private KeyPair keyPair;
+	private KeyCloakTokenVerifier verifier;
+
+	@BeforeEach
+	void setUp() throws Exception {
+		KeyPairGenerator generator = KeyPairGenerator.getInstance("RSA");
+		generator.initialize(2048);
+		keyPair = generator.generateKeyPair();
+		givenRealmKeys(Map.of("keys", List.of(jwk("key-1", (RSAPublicKey) keyPair.getPublic()))));
+		verifier = new KeyCloakTokenVerifier(restTemplate, KEYCLOAK_URL, REALM, CLIENT, true);
+	}
+
+	@Test
+	void verify_ShouldReturnClaims_WhenTokenValid() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, CLIENT, 300));
+
+		// when
+		Map<String, Object> claims = verifier.verify(token);
+
+		// then
+		assertNotNull(claims);
+		assertEquals("test-user", claims.get("preferred_username"));
+	}
+
+	@Test
+	void verify_ShouldFetchKeysOnce_WhenVerifyingManyTokens() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, CLIENT, 300));
+
+		// when
+		for (int i = 0; i < 10; i++) {
+			verifier.verify(token);
+		}
+
+		// then
+		verify(restTemplate, times(1)).exchange(anyString(), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenTokenExpired() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, CLIENT, -300));
+
+		// then
+		assertNull(verifier.verify(token));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenIssuerDiffers() throws Exception {
+		// given
+		String token = sign("key-1", claims("https://elsewhere.test/realms/" + REALM, CLIENT, 300));
+
+		// then
+		assertNull(verifier.verify(token));
+	}
+
+	@Test
+	void verify_ShouldAcceptConfiguredIssuer_WhenFrontendUrlDiffers() throws Exception {
+		// given
+		String publicIssuer = "https://login.example.org/realms/" + REALM;
+		KeyCloakTokenVerifier publicVerifier = new KeyCloakTokenVerifier(restTemplate, KEYCLOAK_URL, REALM, publicIssuer, CLIENT, true);
+
+		// then
+		assertNotNull(publicVerifier.verify(sign("key-1", claims(publicIssuer, CLIENT, 300))));
+		assertNull(publicVerifier.verify(sign("key-1", claims(ISSUER, CLIENT, 300))));
+		verify(restTemplate, atLeastOnce()).exchange(eq(ISSUER + "/protocol/openid-connect/certs"), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenAudienceDiffers() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, "other-client", 300));
+
+		// then
+		assertNull(verifier.verify(token));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenSignatureTampered() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, CLIENT, 300));
+		String[] parts = token.split("\\.");
+		Map<String, Object> forged = claims(ISSUER, CLIENT, 300);
+		forged.put("preferred_username", "admin");
+		String tampered = parts[0] + "." + encode(forged) + "." + parts[2];
+
+		// then
+		assertNull(verifier.verify(tampered));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenTokenRevoked() throws Exception {
+		// given
+		String token = sign("key-1", claims(ISSUER, CLIENT, 300));
+
+		// when
+		verifier.revoke(token);
+
+		// then
+		assertNull(verifier.verify(token));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenTokenIsIdToken() throws Exception {
+		// given
+		Map<String, Object> claims = claims(ISSUER, CLIENT, 300);
+		claims.put("typ", "ID");
+		claims.put("aud", CLIENT);
+
+		// then
+		assertNull(verifier.verify(sign("key-1", claims)));
+	}
+
+	@Test
+	void verify_ShouldThrow_WhenRealmKeysUnavailable() throws Exception {
+		// given
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class)))
+				.thenThrow(new ResourceAccessException("Connection refused"));
+		String token = sign("key-1", claims(ISSUER, CLIENT, 300));
+
+		// then
+		assertThrows(RuntimeServiceException.class, () -> verifier.verify(token));
+	}
+
+	@Test
+	void verify_ShouldReturnNull_WhenNotJwt() {
+		// then
+		assertNull(verifier.verify("opaque-token"));
+	}
+
+	private void givenRealmKeys(Map<String, Object> jwks) {
+		when(restTemplate.exchange(anyString(), eq(HttpMethod.GET), isNull(), any(ParameterizedTypeReference.class)))
+				.thenReturn(ResponseEntity.ok(jwks));
+	}
+
+	private Map<String, Object> claims(String issuer, String azp, long expiresInSeconds) {
+		Map<String, Object> claims = new HashMap<>();
+		claims.put("iss", issuer);
+		claims.put("azp", azp);
+		claims.put("aud", "account");
+		claims.put("typ", "Bearer");
+		claims.put("exp", System.currentTimeMillis() / 1000 + expiresInSeconds);
+		claims.put("jti", UUID.randomUUID().toString());
+		claims.put("sub", "user-id");
+		claims.put("preferred_username", "test-user");
+		return claims;
+	}
+
+	private String sign(String kid, Map<String, Object> claims) throws Exception {
+		String signingInput = encode(Map.of("alg", "RS256", "typ", "JWT", "kid", kid)) + "." + encode(claims);
+		Signature signature = Signature.getInstance("SHA256withRSA");
+		signature.initSign(keyPair.getPrivate());
+		signature.update(signingInput.getBytes(StandardCharsets.US_ASCII));
+		return signingInput + "." + Base64.getUrlEncoder().withoutPadding().encodeToString(signature.sign());
+	}
+
+	private String encode(Map<String, Object> json) throws Exception {
+		return Base64.getUrlEncoder().withoutPadding().encodeToString(objectMapper.writeValueAsBytes(json));
+	}
+
+	private static Map<String, Object> jwk(String kid, RSAPublicKey key) {
+		Base64.Encoder encoder = Base64.getUrlEncoder().withoutPadding();
+		return Map.of(
+				"kid", kid,
+				"kty", "RSA",
+				"alg", "RS256",
+				"use", "sig",
+				"n", encoder.encodeToString(key.getModulus().toByteArray()),
+				"e", encoder.encodeToString(key.getPublicExponent().toByteArray())
+		);
+	}
+}
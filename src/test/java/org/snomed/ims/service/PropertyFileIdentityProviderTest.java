@@ -1,13 +1,23 @@
 package org.snomed.ims.service;
 
+import org.junit.jupiter.api.AfterEach;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
 import org.snomed.ims.domain.User;
 import org.snomed.ims.domain.UserInformationUpdateRequest;
 
 import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
 import java.util.UUID;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
 
 import static org.junit.jupiter.api.Assertions.*;
 
@@ -20,6 +30,28 @@ class PropertyFileIdentityProviderTest {
         identityProvider = new PropertyFileIdentityProvider("src/test/resources");
     }
 
+    @AfterEach
+    void tearDown() throws IOException {
+        identityProvider.close();
+    }
+
+    @Test
+    void readFilesIfChanged_RejectedGroupsFile_RetriedOnNextCheck(@TempDir Path directory) throws IOException {
+        write(directory.resolve("users.txt"), "testUser=testPass", 1);
+        write(directory.resolve("user-groups.txt"), "testUser=test-group1", 1);
+        try (PropertyFileIdentityProvider provider = new PropertyFileIdentityProvider(directory.toString())) {
+            write(directory.resolve("user-groups.txt"), "testUser=test-group1\nnewUser=test-group1", 2);
+            assertThrows(IllegalArgumentException.class, provider::readFilesIfChanged);
+            assertThrows(IllegalArgumentException.class, provider::readFilesIfChanged, "Rejected file should be read again");
+
+            // Only the users file changes; the groups file is picked up with it
+            write(directory.resolve("users.txt"), "testUser=testPass\nnewUser=newPass", 2);
+            provider.readFilesIfChanged();
+
+            assertEquals(List.of("test-group1"), provider.getUserRoles("newUser"));
+        }
+    }
+
     @Test
     void authenticate_ValidCredentials_ReturnsToken() {
         String username = "testUser";
@@ -102,6 +134,37 @@ class PropertyFileIdentityProviderTest {
         assertNull(identityProvider.getUserByToken(token), "User should be null after token invalidation");
     }
 
+    @Test
+    void authenticate_RepeatedLogin_ReusesToken() {
+        String first = identityProvider.authenticate("testUser", "testPass");
+        String second = identityProvider.authenticate("testUser", "testPass");
+        assertEquals(first, second, "Logging in again should reuse the existing token");
+    }
+
+    @Test
+    void authenticate_AfterInvalidation_ReturnsNewToken() {
+        String first = identityProvider.authenticate("testUser", "testPass");
+        identityProvider.invalidateToken(first);
+        String second = identityProvider.authenticate("testUser", "testPass");
+        assertNotEquals(first, second, "A new token should be issued after invalidation");
+        assertNotNull(identityProvider.getUserByToken(second), "User should be retrieved for the new token");
+    }
+
+    @Test
+    void authenticate_ConcurrentLogins_ShareOneToken() throws Exception {
+        ExecutorService executor = Executors.newFixedThreadPool(8);
+        List<Future<String>> results = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            results.add(executor.submit(() -> identityProvider.authenticate("testUser", "testPass")));
+        }
+        HashSet<String> tokens = new HashSet<>();
+        for (Future<String> result : results) {
+            tokens.add(result.get());
+        }
+        executor.shutdown();
+        assertEquals(1, tokens.size(), "Concurrent logins should all receive the same token");
+    }
+
     @Test
     void invalidateToken_InvalidToken_ReturnsFalse() {
         String token = UUID.randomUUID().toString();
@@ -129,4 +192,10 @@ class PropertyFileIdentityProviderTest {
             identityProvider.resetUserPassword(user, newPassword);
         }, "resetUserPassword should throw UnsupportedOperationException");
     }
+
+    private static void write(Path file, String content, long modifiedSeconds) throws IOException {
+        Files.writeString(file, content);
+        // Explicit times so the change is seen on filesystems with coarse timestamps
+        Files.setLastModifiedTime(file, FileTime.fromMillis(modifiedSeconds * 1000));
+    }
 }
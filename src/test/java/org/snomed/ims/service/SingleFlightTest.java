@@ -0,0 +1,99 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class SingleFlightTest {
+	private final SingleFlight<String, String> singleFlight = new SingleFlight<>();
+
+	@Test
+	void execute_ShouldLookUpOnce_WhenCalledConcurrentlyWithSameKey() throws Exception {
+		// given
+		AtomicInteger lookups = new AtomicInteger();
+		CountDownLatch release = new CountDownLatch(1);
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(8, runnable -> {
+			Thread thread = new Thread(runnable);
+			threads.add(thread);
+			return thread;
+		});
+
+		// when
+		List<Future<String>> results = new ArrayList<>();
+		for (int i = 0; i < 8; i++) {
+			results.add(executor.submit(() -> singleFlight.execute("key", () -> {
+				lookups.incrementAndGet();
+				await(release);
+				return "value";
+			})));
+		}
+		awaitWaiting(threads, 7);
+		release.countDown();
+
+		// then
+		for (Future<String> result : results) {
+			assertEquals("value", result.get(5, TimeUnit.SECONDS));
+		}
+		assertEquals(1, lookups.get());
+		assertEquals(0, singleFlight.size());
+		executor.shutdown();
+	}
+
+	@Test
+	void execute_ShouldLookUpAgain_WhenPreviousLookupCompleted() {
+		// given
+		AtomicInteger lookups = new AtomicInteger();
+
+		// when
+		singleFlight.execute("key", () -> "value-" + lookups.incrementAndGet());
+		String second = singleFlight.execute("key", () -> "value-" + lookups.incrementAndGet());
+
+		// then
+		assertEquals("value-2", second);
+	}
+
+	@Test
+	void execute_ShouldRethrowAndForget_WhenLookupFails() {
+		// when
+		assertThrows(IllegalStateException.class, () -> singleFlight.execute("key", () -> {
+			throw new IllegalStateException("Upstream unavailable");
+		}));
+
+		// then
+		assertEquals(0, singleFlight.size());
+		assertEquals("value", singleFlight.execute("key", () -> "value"));
+	}
+
+	/**
+	 * Wait until the given number of threads are parked indefinitely, as callers sharing an in-flight lookup are.
+	 */
+	private static void awaitWaiting(List<Thread> threads, int count) throws TimeoutException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (threads.stream().filter(thread -> thread.getState() == Thread.State.WAITING).count() < count) {
+			if (System.nanoTime() > deadline) {
+				throw new TimeoutException("Callers did not join the lookup in flight");
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	private static void await(CountDownLatch latch) {
+		try {
+			latch.await(5, TimeUnit.SECONDS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+	}
+}
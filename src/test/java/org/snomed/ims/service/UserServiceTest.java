@@ -0,0 +1,458 @@
+package org.snomed.ims.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.domain.TokenKey;
+import org.snomed.ims.domain.User;
+import org.snomed.ims.domain.UserInformationUpdateRequest;
+import org.springframework.cache.CacheManager;
+import org.springframework.cache.concurrent.ConcurrentMapCacheManager;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.*;
+
+class UserServiceTest {
+	private static final String TOKEN = "test-token";
+
+	private final IdentityProvider identityProvider = mock(IdentityProvider.class);
+	private final SimpleMeterRegistry meterRegistry = new SimpleMeterRegistry();
+	private final LocalInvalidationBus invalidationBus = new LocalInvalidationBus();
+	private final UserService userService = new UserService(identityProvider, new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE), new ApplicationProperties(), meterRegistry, invalidationBus);
+
+	@Test
+	void getUserByToken_ShouldReturnExpected_WhenGivenNull() {
+		// when
+		User user = userService.getUserByToken(null);
+
+		// then
+		assertNull(user);
+		verifyNoInteractions(identityProvider);
+	}
+
+	@Test
+	void getUserByToken_ShouldResolveOnce_WhenTokenWarm() {
+		// given
+		givenUserForToken(userExpiringIn(60_000));
+
+		// when
+		User first = userService.getUserByToken(TOKEN);
+		User second = userService.getUserByToken(TOKEN);
+
+		// then
+		assertEquals("test-login", first.getLogin());
+		assertSame(first, second);
+		verify(identityProvider, times(1)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldResolveAgain_WhenCachedTokenExpired() {
+		// given
+		givenUserForToken(userExpiringIn(-1));
+
+		// when
+		userService.getUserByToken(TOKEN);
+		userService.getUserByToken(TOKEN);
+
+		// then
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldNotCache_WhenUserNotFound() {
+		// when
+		userService.getUserByToken(TOKEN);
+		userService.getUserByToken(TOKEN);
+
+		// then
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void invalidateToken_ShouldEvictCachedUser() {
+		// given
+		givenUserForToken(userExpiringIn(60_000));
+		when(identityProvider.invalidateToken(TOKEN)).thenReturn(true);
+		userService.getUserByToken(TOKEN);
+
+		// when
+		boolean success = userService.invalidateToken(TOKEN);
+		userService.getUserByToken(TOKEN);
+
+		// then
+		assertTrue(success);
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldResolveOnce_WhenTokenRejected() {
+		// given
+		UserService userService = userServiceWithRejectedTokenCache();
+
+		// when
+		User first = userService.getUserByToken(TOKEN);
+		User second = userService.getUserByToken(TOKEN);
+
+		// then
+		assertNull(first);
+		assertNull(second);
+		verify(identityProvider, times(1)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldResolveAgain_WhenProviderFailed() {
+		// given
+		UserService userService = userServiceWithRejectedTokenCache();
+		User expected = userExpiringIn(60_000);
+		when(identityProvider.getUserByToken(TOKEN)).thenThrow(new RuntimeServiceException("Upstream unavailable", null)).thenReturn(expected);
+
+		// when
+		assertThrows(RuntimeServiceException.class, () -> userService.getUserByToken(TOKEN));
+		User user = userService.getUserByToken(TOKEN);
+
+		// then
+		assertSame(expected, user);
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldNotRememberRejection_WhenRefreshFindsTokenInactive() throws TimeoutException {
+		// given
+		CacheManager cacheManager = new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE, UserService.REJECTED_TOKEN_CACHE);
+		UserService userService = userServiceWithSoftExpiry(cacheManager);
+		givenCachedUser(cacheManager, 120_000);
+		givenUserForToken(null);
+
+		// when
+		userService.getUserByToken(TOKEN);
+		awaitCount("ims.account.cache.refreshes", "outcome", "rejected");
+
+		// then
+		assertNull(cacheManager.getCache(UserService.REJECTED_TOKEN_CACHE).get(TokenKey.of(TOKEN)));
+	}
+
+	@Test
+	void getUserByToken_ShouldNotResolve_WhenTokenInvalidated() {
+		// given
+		UserService userService = userServiceWithRejectedTokenCache();
+		givenUserForToken(userExpiringIn(60_000));
+		userService.getUserByToken(TOKEN);
+
+		// when
+		userService.invalidateToken(TOKEN);
+		User user = userService.getUserByToken(TOKEN);
+
+		// then
+		assertNull(user);
+		verify(identityProvider, times(1)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserByToken_ShouldStillCacheOtherTokens_WhenTokenInvalidated() {
+		// given
+		UserService userService = userServiceWithRejectedTokenCache();
+		givenUserForToken(userExpiringIn(60_000));
+		userService.invalidateToken("other-token");
+
+		// when
+		userService.getUserByToken(TOKEN);
+		userService.getUserByToken(TOKEN);
+
+		// then
+		verify(identityProvider, times(1)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void getUserRoles_ShouldCallProviderOnce_WhenCalledConcurrently() throws Exception {
+		// given
+		CountDownLatch release = new CountDownLatch(1);
+		when(identityProvider.getUserRoles("test-login")).thenAnswer(invocation -> {
+			release.await(5, TimeUnit.SECONDS);
+			return List.of("ROLE_test");
+		});
+		List<Thread> threads = new CopyOnWriteArrayList<>();
+		ExecutorService executor = Executors.newFixedThreadPool(4, runnable -> {
+			Thread thread = new Thread(runnable);
+			threads.add(thread);
+			return thread;
+		});
+
+		// when
+		List<Future<List<String>>> results = new ArrayList<>();
+		for (int i = 0; i < 4; i++) {
+			results.add(executor.submit(() -> userService.getUserRoles("test-login")));
+		}
+		awaitWaiting(threads, 3);
+		release.countDown();
+
+		// then
+		for (Future<List<String>> result : results) {
+			assertEquals(List.of("ROLE_test"), result.get(5, TimeUnit.SECONDS));
+		}
+		verify(identityProvider, times(1)).getUserRoles("test-login");
+		executor.shutdown();
+	}
+
+	@Test
+	void getUserByToken_ShouldServeStaleAndRefresh_WhenPastFreshnessWindow() {
+		// given
+		CacheManager cacheManager = new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE);
+		UserService userService = userServiceWithSoftExpiry(cacheManager);
+		User stale = givenCachedUser(cacheManager, 120_000);
+		User refreshed = userExpiringIn(60_000);
+		givenUserForToken(refreshed);
+
+		// when
+		User user = userService.getUserByToken(TOKEN);
+
+		// then
+		assertSame(stale, user);
+		verify(identityProvider, timeout(5_000)).getUserByToken(TOKEN);
+		assertEquals(1, meterRegistry.counter("ims.account.cache.requests", "result", "stale").count());
+	}
+
+	@Test
+	void getUserByToken_ShouldKeepServingStale_WhenRefreshFails() {
+		// given
+		CacheManager cacheManager = new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE);
+		UserService userService = userServiceWithSoftExpiry(cacheManager);
+		User stale = givenCachedUser(cacheManager, 120_000);
+		when(identityProvider.getUserByToken(TOKEN)).thenThrow(new RuntimeServiceException("Upstream unavailable", null));
+
+		// when
+		userService.getUserByToken(TOKEN);
+		verify(identityProvider, timeout(5_000)).getUserByToken(TOKEN);
+		User user = userService.getUserByToken(TOKEN);
+
+		// then
+		assertSame(stale, user);
+	}
+
+	@Test
+	void getUserByToken_ShouldResolveSynchronously_WhenPastMaxStaleness() {
+		// given
+		CacheManager cacheManager = new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE);
+		UserService userService = userServiceWithSoftExpiry(cacheManager);
+		givenCachedUser(cacheManager, 1_000_000);
+		when(identityProvider.getUserByToken(TOKEN)).thenThrow(new RuntimeServiceException("Upstream unavailable", null));
+
+		// when
+		assertThrows(RuntimeServiceException.class, () -> userService.getUserByToken(TOKEN));
+
+		// then
+		assertEquals(1, meterRegistry.counter("ims.account.cache.requests", "result", "too_stale").count());
+		assertEquals(0, meterRegistry.counter("ims.account.cache.requests", "result", "miss").count());
+	}
+
+	@Test
+	void evictByLogin_ShouldEvictEverySessionOfUser_WhenCached() {
+		// given
+		givenUsersForTokens("token-1", "alice", "ROLE_a", "token-2", "alice", "ROLE_a", "token-3", "bob", "ROLE_a");
+
+		// when
+		int evicted = userService.evictByLogin("alice");
+		userService.getUserByToken("token-1");
+		userService.getUserByToken("token-2");
+		userService.getUserByToken("token-3");
+
+		// then
+		assertEquals(2, evicted);
+		verify(identityProvider, times(2)).getUserByToken("token-1");
+		verify(identityProvider, times(2)).getUserByToken("token-2");
+		verify(identityProvider, times(1)).getUserByToken("token-3");
+	}
+
+	@Test
+	void evictByRole_ShouldEvictEveryUserHoldingRole_WhenCached() {
+		// given
+		givenUsersForTokens("token-1", "alice", "ROLE_a", "token-2", "bob", "ROLE_b", "token-3", "carol", "ROLE_a");
+
+		// when
+		int evicted = userService.evictByRole("ROLE_a");
+
+		// then
+		assertEquals(2, evicted);
+		assertEquals(0, userService.evictByLogin("alice"));
+		assertEquals(1, userService.evictByLogin("bob"));
+	}
+
+	@Test
+	void evictByTokenKey_ShouldEvictOnlyThatToken() {
+		// given
+		givenUsersForTokens("token-1", "alice", "ROLE_a", "token-2", "alice", "ROLE_a");
+
+		// when
+		boolean evicted = userService.evictByTokenKey(TokenKey.fromHex(TokenKey.of("token-1").toHex()));
+
+		// then
+		assertTrue(evicted);
+		assertEquals(1, userService.evictByLogin("alice"));
+	}
+
+	@Test
+	void invalidateToken_ShouldEvictTokenOnOtherNodes() {
+		// given
+		UserService otherNode = userServiceWithRejectedTokenCache();
+		givenUserForToken(userExpiringIn(60_000));
+		otherNode.getUserByToken(TOKEN);
+
+		// when
+		userService.invalidateToken(TOKEN);
+		User user = otherNode.getUserByToken(TOKEN);
+
+		// then
+		assertNull(user);
+		verify(identityProvider, times(1)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void evictByLogin_ShouldEvictUserOnOtherNodes() {
+		// given
+		UserService otherNode = userServiceWithRejectedTokenCache();
+		givenUserForToken(userExpiringIn(60_000));
+		otherNode.getUserByToken(TOKEN);
+
+		// when
+		userService.evictByLogin("test-login");
+		otherNode.getUserByToken(TOKEN);
+
+		// then
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void invalidateToken_ShouldRevokeTokenOnOtherNodes_WhenTokenHasId() {
+		// given
+		userServiceWithRejectedTokenCache();
+		TokenRevocation revocation = new TokenRevocation("token-id", 1_900_000_000L);
+		when(identityProvider.getRevocation(TOKEN)).thenReturn(revocation);
+
+		// when
+		userService.invalidateToken(TOKEN);
+
+		// then
+		// Only by the other node, as this node's provider revokes the token itself while invalidating it
+		verify(identityProvider).revoke(revocation);
+	}
+
+	@Test
+	void updateUser_ShouldEvictUserOnEveryNode() {
+		// given
+		UserService otherNode = userServiceWithRejectedTokenCache();
+		User user = userExpiringIn(60_000);
+		givenUserForToken(user);
+		otherNode.getUserByToken(TOKEN);
+
+		// when
+		userService.updateUser(user, new UserInformationUpdateRequest("Jane", "Doe", "Jane Doe"), TOKEN);
+		otherNode.getUserByToken(TOKEN);
+
+		// then
+		verify(identityProvider).updateUser(eq(user), any(UserInformationUpdateRequest.class), eq(TOKEN));
+		verify(identityProvider, times(2)).getUserByToken(TOKEN);
+	}
+
+	@Test
+	void clearAll_ShouldIgnoreInvalidation_WhenPublishedByThisNode() {
+		// given
+		givenUsersForTokens("token-1", "alice", "ROLE_a");
+		List<Invalidation> published = new ArrayList<>();
+		invalidationBus.subscribe(published::add);
+
+		// when
+		userService.evictByRole("ROLE_b");
+		invalidationBus.publish(new Invalidation(Invalidation.Scope.ALL, null, published.get(0).origin(), 2));
+
+		// then
+		assertEquals(1, userService.evictByLogin("alice"));
+	}
+
+	@Test
+	void getCacheStatistics_ShouldCountAccountCacheEntriesAndLoads() {
+		// given
+		givenUsersForTokens("token-1", "alice", "ROLE_a", "token-2", "bob", "ROLE_a");
+
+		// when
+		CacheStatistics.Snapshot statistics = userService.getCacheStatistics().get(UserService.ACCOUNT_CACHE);
+
+		// then
+		assertEquals(2, statistics.entries());
+		assertEquals(2, statistics.loads());
+		assertNotNull(statistics.estimatedBytes());
+	}
+
+	private void givenUsersForTokens(String... tokenLoginRole) {
+		for (int i = 0; i < tokenLoginRole.length; i += 3) {
+			User user = userExpiringIn(60_000);
+			user.setLogin(tokenLoginRole[i + 1]);
+			user.setRoles(List.of(tokenLoginRole[i + 2]));
+			when(identityProvider.getUserByToken(tokenLoginRole[i])).thenReturn(user);
+			userService.getUserByToken(tokenLoginRole[i]);
+		}
+	}
+
+	private UserService userServiceWithSoftExpiry(CacheManager cacheManager) {
+		ApplicationProperties applicationProperties = new ApplicationProperties();
+		applicationProperties.setAccountCacheFreshSeconds(60);
+		applicationProperties.setAccountCacheMaxStaleSeconds(600);
+		applicationProperties.setAccountCacheRefreshThreads(1);
+		return new UserService(identityProvider, cacheManager, applicationProperties, meterRegistry, invalidationBus);
+	}
+
+	private User givenCachedUser(CacheManager cacheManager, long resolvedMillisAgo) {
+		User user = userExpiringIn(3_600_000);
+		user.setResolvedAt(System.currentTimeMillis() - resolvedMillisAgo);
+		cacheManager.getCache(UserService.ACCOUNT_CACHE).put(TokenKey.of(TOKEN), user);
+		return user;
+	}
+
+	private UserService userServiceWithRejectedTokenCache() {
+		return new UserService(identityProvider, new ConcurrentMapCacheManager(UserService.ACCOUNT_CACHE, UserService.REJECTED_TOKEN_CACHE), new ApplicationProperties(), meterRegistry, invalidationBus);
+	}
+
+	private void givenUserForToken(User user) {
+		when(identityProvider.getUserByToken(TOKEN)).thenReturn(user);
+	}
+
+	private User userExpiringIn(long millis) {
+		User user = new User();
+		user.setLogin("test-login");
+		user.setTokenExpiry(System.currentTimeMillis() + millis);
+		return user;
+	}
+
+	private void awaitCount(String counter, String tag, String value) throws TimeoutException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (meterRegistry.counter(counter, tag, value).count() < 1) {
+			if (System.nanoTime() > deadline) {
+				throw new TimeoutException("Counter " + counter + " was not incremented");
+			}
+			Thread.onSpinWait();
+		}
+	}
+
+	/**
+	 * Wait until the given number of threads are parked indefinitely, as callers sharing an in-flight lookup are.
+	 */
+	private static void awaitWaiting(List<Thread> threads, int count) throws TimeoutException {
+		long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+		while (threads.stream().filter(thread -> thread.getState() == Thread.State.WAITING).count() < count) {
+			if (System.nanoTime() > deadline) {
+				throw new TimeoutException("Callers did not join the lookup in flight");
+			}
+			Thread.onSpinWait();
+		}
+	}
+}
@@ -0,0 +1,190 @@
+package org.snomed.ims.service;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingStream;
+import org.apache.hc.client5.http.impl.classic.CloseableHttpClient;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.snomed.ims.config.ApplicationProperties;
+import org.snomed.ims.config.RestTemplateConfig;
+import org.snomed.ims.domain.User;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Makes Keycloak and Crowd calls from many virtual threads at once, through the pooled clients the application builds,
+ * and fails if JFR reports a virtual thread that blocked while pinned to its carrier.
+ */
+class VirtualThreadPinningTest {
+	private static final String PINNED_EVENT = "jdk.VirtualThreadPinned";
+	private static final int CALLS = 200;
+	// Slow enough that callers queue for pooled connections and concurrency permits
+	private static final long RESPONSE_DELAY_MILLIS = 2;
+
+	private final ObjectMapper objectMapper = new ObjectMapper();
+	private HttpServer server;
+	private ExecutorService serverExecutor;
+	private String baseUrl;
+	private RestTemplateConfig restTemplateConfig;
+
+	@BeforeEach
+	void setUp() throws IOException {
+		server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+		server.createContext("/", this::respond);
+		// Platform threads, so the server's own blocking is not recorded
+		serverExecutor = Executors.newFixedThreadPool(16);
+		server.setExecutor(serverExecutor);
+		server.start();
+		baseUrl = "http://" + server.getAddress().getHostString() + ":" + server.getAddress().getPort();
+
+		ApplicationProperties applicationProperties = new ApplicationProperties();
+		applicationProperties.setKeycloakUrl(baseUrl);
+		applicationProperties.setCrowdApiUrl(baseUrl + "/crowd");
+		applicationProperties.setCrowdApiAppName("ims");
+		applicationProperties.setCrowdApiAppPassword("secret");
+		// Far fewer connections and permits than concurrent calls
+		applicationProperties.setHttpClientMaxConnectionsPerRoute(4);
+		applicationProperties.setHttpClientMaxConnectionsTotal(8);
+		applicationProperties.setHttpClientConnectTimeoutMs(10_000);
+		applicationProperties.setHttpClientReadTimeoutMs(10_000);
+		applicationProperties.setHttpClientIdleEvictionSeconds(30);
+		applicationProperties.setHttpClientConnectionTtlSeconds(300);
+		applicationProperties.setUpstreamMaxConcurrentCalls(8);
+		restTemplateConfig = new RestTemplateConfig(applicationProperties, new SimpleMeterRegistry());
+	}
+
+	@AfterEach
+	void tearDown() {
+		server.stop(0);
+		serverExecutor.shutdownNow();
+	}
+
+	@Test
+	void keyCloakCalls_ShouldNotPinVirtualThreads() throws Exception {
+		try (CloseableHttpClient httpClient = restTemplateConfig.keyCloakHttpClient()) {
+			// given
+			KeyCloakIdentityProvider identityProvider = new KeyCloakIdentityProvider(restTemplateConfig.keyCloakRestTemplate(httpClient),
+					baseUrl, "snomed", "ims", "secret", "admin", "admin-secret", new BoundedFanOut(Runnable::run, 1, Duration.ofSeconds(10)));
+
+			// when
+			List<RecordedEvent> pinned = recordPinning(() -> {
+				User user = identityProvider.getUserByToken("access-token");
+				assertEquals("jane", user.getLogin());
+				assertEquals(List.of("ROLE_ihtsdo-users"), identityProvider.getUserRoles("jane"));
+			});
+
+			// then
+			assertNotPinned(pinned);
+		}
+	}
+
+	@Test
+	void crowdCalls_ShouldNotPinVirtualThreads() throws Exception {
+		try (CloseableHttpClient httpClient = restTemplateConfig.crowdHttpClient()) {
+			// given
+			CrowdRestClient identityProvider = new CrowdRestClient(restTemplateConfig.crowdRestTemplate(httpClient));
+
+			// when
+			List<RecordedEvent> pinned = recordPinning(() -> {
+				User user = identityProvider.getUserByToken("access-token");
+				assertEquals("jane", user.getLogin());
+				assertEquals(List.of("ROLE_ihtsdo-users"), user.getRoles());
+			});
+
+			// then
+			assertNotPinned(pinned);
+		}
+	}
+
+	private static List<RecordedEvent> recordPinning(Runnable call) throws Exception {
+		// Classes are loaded and the pools filled by a first call, outside the recording
+		call.run();
+
+		List<RecordedEvent> pinned = new CopyOnWriteArrayList<>();
+		try (RecordingStream recording = new RecordingStream()) {
+			// Any pinned block is reported, however short
+			recording.enable(PINNED_EVENT).withThreshold(Duration.ZERO).withStackTrace();
+			recording.onEvent(PINNED_EVENT, pinned::add);
+			recording.startAsync();
+
+			ExecutorService executor = VirtualThreads.newExecutor("pinning-test");
+			try {
+				List<Future<?>> calls = new ArrayList<>();
+				for (int i = 0; i < CALLS; i++) {
+					calls.add(executor.submit(call));
+				}
+				for (Future<?> future : calls) {
+					future.get(30, TimeUnit.SECONDS);
+				}
+			} finally {
+				executor.shutdown();
+			}
+
+			// Flushes the recording, so every event is seen before the stream closes
+			recording.stop();
+		}
+		return pinned;
+	}
+
+	private static void assertNotPinned(List<RecordedEvent> pinned) {
+		assertTrue(pinned.isEmpty(), () -> pinned.size() + " virtual threads blocked while pinned:\n"
+				+ pinned.stream().map(RecordedEvent::toString).collect(Collectors.joining("\n")));
+	}
+
+	private void respond(HttpExchange exchange) throws IOException {
+		String path = exchange.getRequestURI().getPath();
+		exchange.getRequestBody().readAllBytes();
+		try {
+			Thread.sleep(RESPONSE_DELAY_MILLIS);
+		} catch (InterruptedException e) {
+			Thread.currentThread().interrupt();
+		}
+
+		Object body;
+		if (path.endsWith("/protocol/openid-connect/token/introspect")) {
+			body = Map.of("active", true, "sub", "id-jane", "preferred_username", "jane");
+		} else if (path.endsWith("/protocol/openid-connect/token")) {
+			body = Map.of("access_token", "admin-token", "expires_in", 300);
+		} else if (path.endsWith("/admin/realms/snomed/users")) {
+			body = List.of(Map.of("id", "id-jane", "username", "jane", "enabled", true));
+		} else if (path.endsWith("/admin/realms/snomed/users/id-jane/role-mappings")) {
+			body = Map.of("clientMappings", Map.of("ims", Map.of("mappings", List.of(Map.of("name", "ihtsdo-users")))));
+		} else if (path.startsWith("/crowd/session/")) {
+			body = Map.of("token", "access-token", "user", Map.of("name", "jane", "active", true),
+					"expiry-date", System.currentTimeMillis() + 3_600_000);
+		} else if (path.equals("/crowd/user/group/direct")) {
+			body = Map.of("groups", List.of(Map.of("name", "ihtsdo-users")));
+		} else {
+			exchange.sendResponseHeaders(404, -1);
+			exchange.close();
+			return;
+		}
+
+		byte[] json = objectMapper.writeValueAsBytes(body);
+		exchange.getResponseHeaders().set("Content-Type", "application/json");
+		exchange.sendResponseHeaders(200, json.length);
+		try (OutputStream out = exchange.getResponseBody()) {
+			out.write(json);
+		}
+	}
+}
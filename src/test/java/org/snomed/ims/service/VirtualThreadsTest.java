@@ -0,0 +1,33 @@
+package org.snomed.ims.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class VirtualThreadsTest {
+
+	@Test
+	void newExecutor_ShouldRunTasksOnNamedVirtualThreads() throws Exception {
+		// given
+		ExecutorService executor = VirtualThreads.newExecutor("test");
+
+		// when
+		Thread first;
+		Thread second;
+		try {
+			first = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+			second = executor.submit(Thread::currentThread).get(5, TimeUnit.SECONDS);
+		} finally {
+			executor.shutdown();
+		}
+
+		// then
+		assertTrue(first.isVirtual());
+		assertEquals("test-1", first.getName());
+		assertEquals("test-2", second.getName());
+		assertFalse(Thread.currentThread().isVirtual());
+	}
+}